@@ -2,6 +2,7 @@ package applicationMain;
 	
 import java.sql.SQLException;
 import database.Database;
+import database.DatabaseAsync;
 import javafx.application.Application;
 import javafx.stage.Stage;
 import javafx.scene.control.Alert;
@@ -55,6 +56,7 @@ import javafx.scene.control.Alert.AlertType;
  *
  * @version 3.00	2025-08-17 Rewrite of this application for the Fall offering of CSE 360 and
  * other ASU courses.
+ * @version 3.01	2026-10-18 quit(): the Quit buttons close the database before exiting
  */
 
 public class HW2Main extends Application {
@@ -115,6 +117,35 @@ public class HW2Main extends Application {
 		// With the JavaFX pages set up, this thread of the execution comes to an end.
 	}
 
+	/*******
+	 * <p> Method: stop() </p>
+	 *
+	 * <p> Description: Called by JavaFX when the last window closes.  Stops the asynchronous
+	 * database executor, then releases the admin connection and the shared connection pool so
+	 * H2 can close the database cleanly.</p>
+	 */
+	@Override
+	public void stop() {
+		closeDatabase();
+	}
+
+	/*******
+	 * <p> Method: quit() </p>
+	 *
+	 * <p> Description: Ends the application from a page's Quit button.  System.exit skips
+	 * stop(), so this closes the database the same way first: queued read/unread changes are
+	 * written, the search indexes saved and the connection pool closed.</p>
+	 */
+	public static void quit() {
+		closeDatabase();
+		System.exit(0);
+	}
+
+	private static void closeDatabase() {
+		DatabaseAsync.shutdown();
+		database.closeConnection();
+	}
+
 	/*******
 	 * <p> Title: FoundationsMain main method that starts up JavaFX</p>
 	 * 
@@ -0,0 +1,55 @@
+package database;
+
+import java.sql.SQLException;
+
+/*******
+ * <p> Title: CallCancellation Class. </p>
+ *
+ * <p> Description: Lets an asynchronous call whose result nobody wants any more stop early.
+ * {@link DatabaseAsync} runs each call inside {@link #run}, which makes this cancellation current
+ * on the worker thread, and calls {@link #cancel} when the call's future is cancelled;
+ * {@link Database} calls {@link #check} before it executes a streamed query and between its
+ * rows, so a cancelled call does not start its query and a streamed result stops at its next
+ * row.</p>
+ *
+ * <p> A statement already executing is left to finish. H2 looks at
+ * <code>Statement.cancel()</code> only between result rows, so a scan that finds nothing never
+ * sees it, and a cancel that arrives late stays on the cached statement and fails its next use;
+ * a session cancel is not checked in joins at all. Interrupting the thread is worse: H2 closes
+ * its data file when a thread is interrupted during file I/O.</p>
+ *
+ * <p> Outside a {@link #run} scope (synchronous callers) {@link #check} is a no-op.</p>
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+final class CallCancellation {
+
+    // SQLSTATE of a cancelled statement, as H2 reports it
+    private static final String CANCELLED_STATE = "57014";
+
+    private static final ThreadLocal<CallCancellation> CURRENT = new ThreadLocal<>();
+
+    private volatile boolean cancelled = false;
+
+    /** Runs call on the calling thread with this cancellation current. */
+    <T> T run(DatabaseAsync.DbCall<T> call) throws Exception {
+        CURRENT.set(this);
+        try {
+            return call.call();
+        } finally {
+            CURRENT.remove();
+        }
+    }
+
+    /** Marks the call cancelled; it stops at its next check. Any thread. */
+    void cancel() {
+        cancelled = true;
+    }
+
+    /** Fails if the current call has been cancelled; cheap enough to call per row. */
+    static void check() throws SQLException {
+        CallCancellation c = CURRENT.get();
+        if (c != null && c.cancelled) throw new SQLException("Query cancelled", CANCELLED_STATE);
+    }
+}
@@ -0,0 +1,152 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import entityClasses.Completion;
+
+/*******
+ * <p> Title: CompletionTrie Class. </p>
+ *
+ * <p> Description: Immutable radix trie from lower-cased keys to weighted {@link Completion}s,
+ * for search-as-you-type. Each node also records the largest weight below it, so the best k
+ * completions of a prefix are found best-first, following about k paths instead of visiting
+ * every key under the prefix. A trie is built in one go from a batch of entries and replaced
+ * as a whole, never updated, so readers need no locking.</p>
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+final class CompletionTrie {
+
+    private static final class Node {
+        final String edge;          // label of the edge into this node
+        final Node[] kids;          // by first character of their edge
+        final Completion value;     // non-null if a key ends here
+        final int weight;
+        final int best;             // largest weight in this subtree
+
+        Node(String edge, Node[] kids, Completion value, int weight, int best) {
+            this.edge = edge;
+            this.kids = kids;
+            this.value = value;
+            this.weight = weight;
+            this.best = best;
+        }
+    }
+
+    private record Entry(String key, Completion value, int weight) {}
+
+    // A subtree still to expand, or a completion ready to emit, ordered by weight
+    private record Candidate(Node node, boolean emit, int weight) {}
+
+    private final Node root;
+
+    private CompletionTrie(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * A trie of texts with their weights; keys are the texts lower-cased, and of texts that
+     * differ only in case the heaviest wins.
+     */
+    static CompletionTrie build(Map<String, Integer> weights, Completion.Kind kind) {
+        Entry[] entries = new Entry[weights.size()];
+        int n = 0;
+        for (Map.Entry<String, Integer> e : weights.entrySet()) {
+            String text = e.getKey();
+            if (text == null || text.isBlank()) continue;
+            entries[n++] = new Entry(text.trim().toLowerCase(Locale.ROOT),
+                                     new Completion(kind, text.trim()), Math.max(1, e.getValue()));
+        }
+        entries = Arrays.copyOf(entries, n);
+        Arrays.sort(entries, Comparator.comparing(Entry::key).thenComparing(Entry::weight, Comparator.reverseOrder()));
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || !entries[i].key().equals(entries[distinct - 1].key())) entries[distinct++] = entries[i];
+        }
+        Node root = distinct == 0 ? new Node("", new Node[0], null, 0, 0) : node(entries, 0, distinct, 0, true);
+        return new CompletionTrie(root);
+    }
+
+    // The node for entries[lo, hi), which share their first from characters
+    private static Node node(Entry[] entries, int lo, int hi, int from, boolean root) {
+        int end = from;
+        if (!root) {
+            // children are split on the character at from, so the edge has at least that one;
+            // it goes on while every key has the same next character (sorted: first and last agree)
+            end = from + 1;
+            while (entries[lo].key().length() > end
+                    && entries[lo].key().charAt(end) == entries[hi - 1].key().charAt(end)) end++;
+        }
+        String edge = entries[lo].key().substring(from, end);
+        Completion value = null;
+        int weight = 0;
+        if (entries[lo].key().length() == end) {
+            value = entries[lo].value();
+            weight = entries[lo].weight();
+            lo++;
+        }
+        List<Node> kids = new ArrayList<>();
+        int best = weight;
+        for (int i = lo; i < hi; ) {
+            char c = entries[i].key().charAt(end);
+            int j = i + 1;
+            while (j < hi && entries[j].key().charAt(end) == c) j++;
+            Node kid = node(entries, i, j, end, false);
+            kids.add(kid);
+            best = Math.max(best, kid.best);
+            i = j;
+        }
+        return new Node(edge, kids.toArray(new Node[0]), value, weight, best);
+    }
+
+    /** The heaviest at most k completions of prefix (case-insensitive), heaviest first. */
+    List<Completion> complete(String prefix, int k) {
+        if (prefix == null || k <= 0) return List.of();
+        String p = prefix.trim().toLowerCase(Locale.ROOT);
+        Node n = root;
+        int i = 0;
+        while (i < p.length()) {
+            Node kid = child(n, p.charAt(i));
+            if (kid == null) return List.of();
+            int m = 0;
+            while (m < kid.edge.length() && i + m < p.length() && kid.edge.charAt(m) == p.charAt(i + m)) m++;
+            if (i + m < p.length() && m < kid.edge.length()) return List.of();    // diverges inside the edge
+            i += m;
+            n = kid;
+        }
+
+        List<Completion> out = new ArrayList<>(k);
+        PriorityQueue<Candidate> queue = new PriorityQueue<>(
+                Comparator.comparingInt(Candidate::weight).reversed().thenComparing(Candidate::emit, Comparator.reverseOrder()));
+        queue.add(new Candidate(n, false, n.best));
+        while (!queue.isEmpty() && out.size() < k) {
+            Candidate c = queue.poll();
+            if (c.emit()) {
+                out.add(c.node().value);
+                continue;
+            }
+            if (c.node().value != null) queue.add(new Candidate(c.node(), true, c.node().weight));
+            for (Node kid : c.node().kids) queue.add(new Candidate(kid, false, kid.best));
+        }
+        return out;
+    }
+
+    private static Node child(Node n, char c) {
+        int lo = 0, hi = n.kids.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char first = n.kids[mid].edge.charAt(0);
+            if (first < c) lo = mid + 1;
+            else if (first > c) hi = mid - 1;
+            else return n.kids[mid];
+        }
+        return null;
+    }
+}
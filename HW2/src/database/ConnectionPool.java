@@ -0,0 +1,259 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*******
+ * <p> Title: ConnectionPool Class. </p>
+ *
+ * <p> Description: Bounded pool of H2 connections used by every static helper in
+ * {@link Database}. Connections are opened once (warmed up to the minimum size at startup),
+ * validated when borrowed, and handed out as thin wrappers whose close() returns the physical
+ * connection to the pool instead of tearing down the H2 session. Each physical connection
+ * carries its own {@link StatementCache}, so prepared statements live as long as the
+ * connection does.</p>
+ *
+ * <p> A background watcher reports any connection that has been held longer than the leak
+ * threshold, together with the stack trace of the code that borrowed it.</p>
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version (replaces per-call DriverManager.getConnection in Database)
+ *  - Physical connections are wrapped in a per-connection StatementCache
+ *
+ * @version 1.01  2026-10-18
+ *  - Unused size getters dropped
+ */
+public class ConnectionPool {
+
+    private final String url;
+    private final String user;
+    private final String pass;
+
+    private final int  minSize;
+    private final int  maxSize;
+    private final long borrowTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final int  validationTimeoutSeconds;
+    private final int  statementCacheSize;
+
+    // Physical connections that are ready to be borrowed (most recently returned first)
+    private final LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+
+    // One permit per connection that may be out on loan at the same time
+    private final Semaphore permits;
+
+    // Physical connection -> who borrowed it and when (for the leak detector)
+    private final Map<Connection, Lease> leased = new ConcurrentHashMap<>();
+
+    private final AtomicInteger physicalCount = new AtomicInteger();
+    private final ScheduledExecutorService leakWatcher;
+    private volatile boolean closed = false;
+
+    public ConnectionPool(String url, String user, String pass,
+                          int minSize, int maxSize,
+                          long borrowTimeoutMillis, long leakThresholdMillis,
+                          int validationTimeoutSeconds, int statementCacheSize) {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize)
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        this.url = url;
+        this.user = user;
+        this.pass = pass;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.leakWatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-leak-watcher");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000L, leakThresholdMillis / 2);
+        leakWatcher.scheduleAtFixedRate(this::reportLeaks, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /*======================== Borrow / Return ========================*/
+
+    /** Opens connections until the pool holds at least minSize idle ones. */
+    public void warmUp() throws SQLException {
+        while (physicalCount.get() < minSize) {
+            idle.offerLast(openPhysical());
+        }
+    }
+
+    /**
+     * Borrow a connection. Closing the returned connection hands it back to the pool.
+     * Throws SQLException if none becomes available within the borrow timeout.
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + borrowTimeoutMillis
+                        + " ms waiting for a database connection (pool max " + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            Connection raw = takeValidIdle();
+            if (raw == null) raw = openPhysical();
+            Lease lease = new Lease(Thread.currentThread().getName(), System.nanoTime(),
+                    new Throwable("Connection borrowed here"));
+            leased.put(raw, lease);
+            return wrap(raw);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /** Pops idle connections until one passes validation; discards the broken ones. */
+    private Connection takeValidIdle() {
+        Connection raw;
+        while ((raw = idle.pollFirst()) != null) {
+            try {
+                if (raw.isValid(validationTimeoutSeconds)) return raw;
+            } catch (SQLException ignored) {}
+            discard(raw);
+        }
+        return null;
+    }
+
+    private void giveBack(Connection raw) {
+        leased.remove(raw);
+        try {
+            boolean reusable = !closed && !raw.isClosed();
+            if (reusable && !raw.getAutoCommit()) {
+                // never hand a half-finished transaction to the next borrower
+                raw.rollback();
+                raw.setAutoCommit(true);
+            }
+            if (reusable) idle.offerFirst(raw);
+            else discard(raw);
+        } catch (SQLException e) {
+            discard(raw);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private Connection openPhysical() throws SQLException {
+        try {
+            Class.forName(Database.JDBC_DRIVER);
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("JDBC driver not found", e);
+        }
+        Connection c = DriverManager.getConnection(url, user, pass);
+        physicalCount.incrementAndGet();
+        return StatementCache.wrap(c, statementCacheSize);
+    }
+
+    private void discard(Connection raw) {
+        physicalCount.decrementAndGet();
+        try { raw.close(); } catch (SQLException ignored) {}
+    }
+
+    /*======================== Leak detection ========================*/
+
+    private void reportLeaks() {
+        long now = System.nanoTime();
+        for (Lease lease : leased.values()) {
+            long heldMillis = TimeUnit.NANOSECONDS.toMillis(now - lease.borrowedAtNanos);
+            if (heldMillis >= leakThresholdMillis && !lease.reported) {
+                lease.reported = true;
+                System.err.println("*** Possible connection leak: held for " + heldMillis
+                        + " ms by thread '" + lease.threadName + "'");
+                lease.origin.printStackTrace();
+            }
+        }
+    }
+
+    /*======================== Shutdown ========================*/
+
+    /** Closes idle connections now; leased ones are closed when they are returned. */
+    public void shutdown() {
+        closed = true;
+        leakWatcher.shutdownNow();
+        Connection raw;
+        while ((raw = idle.pollFirst()) != null) discard(raw);
+    }
+
+    /*======================== Internals ========================*/
+
+    private static final class Lease {
+        final String threadName;
+        final long borrowedAtNanos;
+        final Throwable origin;
+        volatile boolean reported;
+
+        Lease(String threadName, long borrowedAtNanos, Throwable origin) {
+            this.threadName = threadName;
+            this.borrowedAtNanos = borrowedAtNanos;
+            this.origin = origin;
+        }
+    }
+
+    private Connection wrap(Connection raw) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new PooledConnection(raw));
+    }
+
+    /**
+     * Logical connection handed to callers. close() returns the physical connection to the
+     * pool exactly once; any other call after close() fails like a closed JDBC connection.
+     */
+    private final class PooledConnection implements InvocationHandler {
+        private final Connection raw;
+        private boolean logicallyClosed = false;
+
+        PooledConnection(Connection raw) { this.raw = raw; }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!logicallyClosed) {
+                        logicallyClosed = true;
+                        giveBack(raw);
+                    }
+                    return null;
+                case "isClosed":
+                    return logicallyClosed || raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + raw + "]";
+                default:
+                    if (logicallyClosed) throw new SQLException("Connection is closed");
+            }
+            try {
+                return method.invoke(raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
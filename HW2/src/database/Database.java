@@ -1,12 +1,27 @@
 package database;
 
+import java.nio.file.Path;
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+
+import entityClasses.Completion;
+import entityClasses.PostItem;
+import entityClasses.PostRow;
+import entityClasses.ReplyRow;
 import entityClasses.User;
+import entityClasses.UserSnapshot;
 
 /*******
  * <p> Title: Database Class. </p>
@@ -14,6 +29,146 @@ import entityClasses.User;
  * <p> Description: H2 file DB at ~/FoundationDatabase. Creates schema and offers
  * legacy admin features plus student posts/replies.</p>
  *
+ * @version 2.28  2026-10-18
+ *  - Feed pages above a cursor (FeedQuery.before/through) take the rows nearest it through
+ *    idx_posts_created and return them newest first; getPostCreatedAt(postId) gives a deep
+ *    link's cursor
+ *  - Keyset predicates carry a plain created_at bound, so a page seeks to its cursor instead
+ *    of scanning every row above it
+ *  - getUnreadReplyCounts removed: nothing called it, and feeds get unread counts from their
+ *    own statement
+ *  - closeConnection() logs the statement cache's hit / miss / eviction totals
+ *  - The read set holds read posts only; isReplyRead, which nothing called, is gone, and with
+ *    it the per-session scan of every reply the user has read
+ *  - A search with category, kind, author, seen or keyword filters ranks only the posts
+ *    passing them, so its top hits are not cut down to the few global ones that pass
+ *  - deleteReplyByAuthor logs the delete in reply_deletions (SchemaMigrations V12), so the
+ *    reply index catches up with it even if it was not saved; a hit found only through a
+ *    reply that is gone is dropped
+ *  - A reply excerpt reads only a window of the reply around the match the index located
+ *  - A query hit whose phrase the index did not locate in the body (it matched inside longer
+ *    words, or the hit came from the unranked tail) gets its snippet at the phrase
+ *
+ * @version 2.27  2026-10-18
+ *  - Search hits carry a snippet of the body around their first match, with the matching
+ *    words marked (PostItem.snippet / snippetMatches, and replyMatches for reply excerpts);
+ *    the index supplies the match offset, so only a window of each body is read, on the
+ *    worker thread. PostItem.matchAt / matchLength let the reader open the post at the match
+ *
+ * @version 2.26  2026-10-18
+ *  - Search finds posts through their replies: a reply SearchIndex (grouped by post) is kept
+ *    current by addReply / updateReplyByAuthor / deleteReplyByAuthor, and a hit whose best
+ *    match is a reply carries an excerpt of it (PostItem.replyExcerpt)
+ *  - Reply edits stamp replies.updated_at (SchemaMigrations V11)
+ *
+ * @version 2.25  2026-10-18
+ *  - Unpaged searches are answered from a SearchResultCache when run again; post and reply
+ *    writes bump its write sequence, a user's read-state changes only refresh the read
+ *    flags and unread counts of that user's cached rows
+ *
+ * @version 2.24  2026-10-18
+ *  - FeedQuery.query(text): search language with fields, phrases and AND / OR / NOT
+ *    (SearchQuery); QueryPlanner picks the driving index from PostStatistics and the rest
+ *    become SQL predicates or, for large word id sets, checks in Java
+ *  - Newest-first feeds read idx_posts_created_desc (SchemaMigrations V10) instead of sorting
+ *  - markAllRead of a query marks its matches in batches of ids
+ *
+ * @version 2.23  2026-10-18
+ *  - complete(prefix, perKind): search-as-you-type completions of terms, thread names and
+ *    authors from in-memory tries (SearchCompletions)
+ *  - Streamed reads of a cancelled DatabaseAsync call stop before the query and between
+ *    rows (CallCancellation)
+ *
+ * @version 2.22  2026-10-18
+ *  - Typo-tolerant search: a query term also matches indexed terms that contain it or are
+ *    trigram-similar to it (IndexSegment trigram tables, format 2)
+ *  - FeedQuery.keyword on a live-posts feed takes its candidate ids from the search index
+ *    (SEARCH_MAX_CANDIDATES) and rechecks them with LIKE instead of scanning every post
+ *
+ * @version 2.21  2026-10-18
+ *  - Full-text post search: FeedQuery.search(text) ranks posts with BM25 from a SearchIndex
+ *    (memory-mapped segments under ~/FoundationDatabase.search) instead of LIKE scans;
+ *    createPostStudent / updatePostByAuthor / softDeletePostByAuthor keep it current and
+ *    closeConnection() writes it out
+ *
+ * @version 2.20  2026-10-18
+ *  - markAllRead(user, FeedQuery): marks every matching post and all of its replies read with
+ *    three set-based statements in one transaction
+ *
+ * @version 2.19  2026-10-18
+ *  - isPostRead / isReplyRead answer from a per-user ReadSet (compressed LongBitmaps loaded once
+ *    per session and updated in place by setPostRead / setReplyRead) instead of one query each;
+ *    endReadSession() flushes and drops them at logout
+ *
+ * @version 2.18  2026-10-18
+ *  - Watermark read model (SchemaMigrations V8): per (user, post) the last reply id read in
+ *    order plus a small exception set replaces reply_reads and user_post_read_counts; unread
+ *    counts are a range count over replies(post_id, id)
+ *
+ * @version 2.17  2026-10-18
+ *  - Read tracking is write-behind: setPostRead / setReplyRead / markPostViewed queue the change
+ *    in a ReadStateBuffer, which coalesces repeated toggles and writes them in JDBC batches
+ *    (READ_STATE_BATCH_SIZE changes or READ_STATE_FLUSH_MS, whichever comes first);
+ *    flushReadState() forces the write and closeConnection() calls it
+ *
+ * @version 2.16  2026-10-18
+ *  - findUsers(UserQuery) / countUsers(UserQuery): paged, server-sorted user directory with
+ *    prefix search and role filters, one statement per page (USER_PAGE_SIZE)
+ *
+ * @version 2.15  2026-10-18
+ *  - Remove the mutable current* user fields and getCurrent*() getters; getUserAccountDetails
+ *    returns an immutable UserSnapshot (null if no such user)
+ *  - User lookups and updates borrow pooled connections instead of sharing the instance
+ *    connection, so they can run concurrently on background threads
+ *  - listUsers() reads every user in one query (List Users did one lookup per user)
+ *
+ * @version 2.14  2026-10-18
+ *  - forEachFeedRow(...) streams feed rows (loadFeed collects them), for chunked rendering
+ *
+ * @version 2.13  2026-10-18
+ *  - posts.thread_id references threads(id); category filters compare ids (idx_posts_thread_id)
+ *  - Thread name/id lookups go through the copy-on-write ThreadDictionary; upsertThread is a
+ *    single MERGE ... FINAL TABLE statement
+ *
+ * @version 2.12  2026-10-18
+ *  - findPosts/findReplies return PostRow/ReplyRow records instead of List<Map>; forEachPost and
+ *    forEachReply stream rows to a Consumer (lazy H2 execution, STREAM_FETCH_SIZE)
+ *  - Reply rows carry the user's read flag, so renderReplies no longer queries per reply
+ *
+ * @version 2.11  2026-10-18
+ *  - posts.preview is written with the body; loadFeed returns the preview instead of the CLOB
+ *  - getPostBody(...) fetches a full body on demand through a small LRU PostBodyCache
+ *
+ * @version 2.10  2026-10-18
+ *  - Keyset paging for loadFeed (FeedQuery.after/through, FEED_PAGE_SIZE)
+ *
+ * @version 2.09  2026-10-18
+ *  - loadFeed(user, FeedQuery): one statement returns posts with reply count, unread count
+ *    and the user's read flag for Read Posts, My Posts and Search Posts
+ *
+ * @version 2.08  2026-10-18
+ *  - Per-user read-reply counters (user_post_read_counts) kept current by setReplyRead and
+ *    deleteReplyByAuthor; unread = posts.reply_count - read_count, so the feeds get unread
+ *    counts from the same query instead of one LEFT JOIN per post
+ *
+ * @version 2.07  2026-10-18
+ *  - posts.reply_count / posts.last_activity_at are maintained transactionally by addReply
+ *    and deleteReplyByAuthor; feed queries read them instead of counting replies per row
+ *  - deleteReplyByAuthor also removes the reply's read marks (they blocked the delete via FK)
+ *  - checkPostCounters(...) finds/repairs counter drift
+ *
+ * @version 2.06  2026-10-18
+ *  - Schema is managed by versioned SchemaMigrations (schema_version table); adds the
+ *    feed/lookup indexes and skips all DDL when the schema is already current
+ *  - Remove the legacy createTables() and the per-call ensureSchema(...) replays
+ *
+ * @version 2.05  2026-10-18
+ *  - Pooled and admin connections reuse prepared statements through a StatementCache
+ *  - findPosts() picks one of eight precomputed SQL shapes instead of building SQL per call
+ *
+ * @version 2.04  2026-10-18
+ *  - getConnection() borrows from a bounded ConnectionPool instead of opening a new H2 session
+ *
  * @version 2.03  2025-10-14
  *  - Make isDatabaseEmpty() robust and not depend on instance state
  *  - Ensure all schema is created in ensureSchema(...)
@@ -31,22 +186,69 @@ public class Database {
     static final String USER = "sa";
     static final String PASS = "";
 
+    // Connection pool tuning (override with -Ddb.pool.min=... etc.)
+    static final int  POOL_MIN_SIZE          = Integer.getInteger("db.pool.min", 2);
+    static final int  POOL_MAX_SIZE          = Integer.getInteger("db.pool.max", 8);
+    static final long POOL_BORROW_TIMEOUT_MS = Long.getLong("db.pool.borrowTimeoutMs", 5_000L);
+    static final long POOL_LEAK_THRESHOLD_MS = Long.getLong("db.pool.leakThresholdMs", 30_000L);
+    static final int  POOL_VALIDATE_TIMEOUT_S = Integer.getInteger("db.pool.validateTimeoutSec", 2);
+
+    // Prepared statements kept per connection (LRU); 0 disables the cache
+    static final int  STATEMENT_CACHE_SIZE   = Integer.getInteger("db.statementCache.size", 64);
+
+    // Rows per network round trip for the streaming forEach* queries
+    static final int  STREAM_FETCH_SIZE      = Integer.getInteger("db.fetchSize", 200);
+
+    // Full post bodies kept in memory for recently opened posts (LRU)
+    static final int  POST_BODY_CACHE_SIZE   = Integer.getInteger("db.postBodyCache.size", 32);
+    private static final PostBodyCache BODY_CACHE = new PostBodyCache(POST_BODY_CACHE_SIZE);
+
+    // Recent search results per user (LRU), dropped by any later post or reply write
+    static final int  SEARCH_CACHE_SIZE      = Integer.getInteger("db.searchCache.size", 64);
+    private static final SearchResultCache RESULTS = new SearchResultCache(SEARCH_CACHE_SIZE);
+
+    // Read-state changes are written once this many are pending, or this long after the first
+    static final int  READ_STATE_BATCH_SIZE  = Integer.getInteger("db.readState.batchSize", 64);
+    static final long READ_STATE_FLUSH_MS    = Long.getLong("db.readState.flushMs", 2_000L);
+    private static final ReadStateBuffer READ_STATE =
+            new ReadStateBuffer(Database::writeReadState, READ_STATE_BATCH_SIZE, READ_STATE_FLUSH_MS);
+
+    // Post search index: posts kept in memory before they become a segment, segments kept before
+    // the smallest are merged, threads for a rebuild, the most hits one search returns, and the
+    // most keyword candidates worth an id list (a broader keyword scans the posts with LIKE).
+    // Replies have an index of their own, whose matches count toward their posts.
+    static final int  SEARCH_DELTA_DOCS      = Integer.getInteger("db.search.deltaDocs", 5_000);
+    static final int  SEARCH_MAX_SEGMENTS    = Integer.getInteger("db.search.maxSegments", 8);
+    static final int  SEARCH_THREADS         = Integer.getInteger("db.search.threads",
+            Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), POOL_MAX_SIZE / 2)));
+    static final int  SEARCH_MAX_HITS        = Integer.getInteger("db.search.maxHits", 200);
+    static final int  SEARCH_MAX_CANDIDATES  = Integer.getInteger("db.search.maxCandidates", 20_000);
+    private static final SearchIndex REPLY_SEARCH = new SearchIndex(
+            Path.of(System.getProperty("user.home"), "FoundationDatabase.replies"), SearchIndex.REPLIES, null,
+            Database::getConnection, SEARCH_THREADS, SEARCH_DELTA_DOCS, SEARCH_MAX_SEGMENTS);
+    private static final SearchIndex SEARCH = new SearchIndex(
+            Path.of(System.getProperty("user.home"), "FoundationDatabase.search"), SearchIndex.POSTS, REPLY_SEARCH,
+            Database::getConnection, SEARCH_THREADS, SEARCH_DELTA_DOCS, SEARCH_MAX_SEGMENTS);
+
+    // Search-as-you-type: the most frequent index terms offered as completions, and how old the
+    // completion tries may get before they are rebuilt in the background
+    static final int  COMPLETE_MAX_TERMS     = Integer.getInteger("db.complete.maxTerms", 50_000);
+    static final long COMPLETE_REFRESH_MS    = Long.getLong("db.complete.refreshMs", 30_000L);
+    private static final SearchCompletions COMPLETIONS = new SearchCompletions(
+            Database::getConnection, SEARCH, COMPLETE_MAX_TERMS, COMPLETE_REFRESH_MS);
+
+    // Structured queries: row-count statistics for the planner, gathered again once this old
+    static final long STATS_REFRESH_MS       = Long.getLong("db.stats.refreshMs", 60_000L);
+    private static final PostStatistics STATISTICS = new PostStatistics(Database::getConnection, STATS_REFRESH_MS);
+    private static final QueryPlanner PLANNER = new QueryPlanner(SEARCH, STATISTICS, SEARCH_MAX_CANDIDATES);
+
+    // Length of posts.preview (must match the column width in SchemaMigrations V5)
+    public static final int PREVIEW_CHARS = 120;
+
     // Legacy/instance connection for admin features
     private Connection connection = null;
     private Statement  statement  = null;
 
-    // Current user snapshot for UI convenience
-    private String  currentUsername;
-    private String  currentPassword;
-    private String  currentFirstName;
-    private String  currentMiddleName;
-    private String  currentLastName;
-    private String  currentPreferredFirstName;
-    private String  currentEmailAddress;
-    private boolean currentAdminRole;
-    private boolean currentStudentRole;
-    private boolean currentReviewerRole;
-
     public Database() {}
 
     /*========================= Legacy Admin Connection =========================*/
@@ -54,48 +256,17 @@ public class Database {
     public void connectToDatabase() throws SQLException {
         try {
             Class.forName(JDBC_DRIVER);
-            connection = DriverManager.getConnection(DB_URL, USER, PASS);
+            connection = StatementCache.wrap(
+                    DriverManager.getConnection(DB_URL, USER, PASS), STATEMENT_CACHE_SIZE);
             statement  = connection.createStatement();
             // statement.execute("DROP ALL OBJECTS"); // (optional) clean reset
             ensureSchema(connection);                // make sure all tables exist
+            pool();                                  // warm the shared pool for the static helpers
         } catch (ClassNotFoundException e) {
             throw new SQLException("JDBC driver not found", e);
         }
     }
 
-    /** Legacy method (kept for compatibility) */
-    private void createTables() throws SQLException {
-        // userDB
-        String userTable = "CREATE TABLE IF NOT EXISTS userDB ("
-                + "id INT AUTO_INCREMENT PRIMARY KEY, "
-                + "userName VARCHAR(255) UNIQUE, "
-                + "password VARCHAR(255), "
-                + "firstName VARCHAR(255), "
-                + "middleName VARCHAR(255), "
-                + "lastName VARCHAR(255), "
-                + "preferredFirstName VARCHAR(255), "
-                + "emailAddress VARCHAR(255), "
-                + "adminRole BOOL DEFAULT FALSE, "
-                + "studentRole BOOL DEFAULT FALSE, "
-                + "reviewerRole BOOL DEFAULT FALSE)";
-        statement.execute(userTable);
-
-        // InvitationCodes
-        String invitationCodesTable = "CREATE TABLE IF NOT EXISTS InvitationCodes ("
-                + "code VARCHAR(10) PRIMARY KEY, "
-                + "emailAddress VARCHAR(255), "
-                + "deadline TIMESTAMP, "
-                + "role VARCHAR(10))";
-        statement.execute(invitationCodesTable);
-
-        // OneTimePass
-        String oneTimePassTable = "CREATE TABLE IF NOT EXISTS OneTimePass ("
-                + "emailAddress VARCHAR(255), "
-                + "password VARCHAR(32) PRIMARY KEY, "
-                + "used BOOL DEFAULT FALSE)";
-        statement.execute(oneTimePassTable);
-    }
-
     /*========================= First-Run / Counts =========================*/
 
     /** Robust first-run check: if anything goes wrong, treat DB as empty. */
@@ -147,25 +318,25 @@ public class Database {
         String insertUser = "INSERT INTO userDB (userName, password, firstName, middleName, "
                 + "lastName, preferredFirstName, emailAddress, adminRole, studentRole, reviewerRole) "
                 + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement pstmt = connection.prepareStatement(insertUser)) {
-            currentUsername = user.getUserName();        pstmt.setString(1, currentUsername);
-            currentPassword = user.getPassword();        pstmt.setString(2, currentPassword);
-            currentFirstName = user.getFirstName();      pstmt.setString(3, currentFirstName);
-            currentMiddleName = user.getMiddleName();    pstmt.setString(4, currentMiddleName);
-            currentLastName = user.getLastName();        pstmt.setString(5, currentLastName);
-            currentPreferredFirstName = user.getPreferredFirstName();
-                                                        pstmt.setString(6, currentPreferredFirstName);
-            currentEmailAddress = user.getEmailAddress();pstmt.setString(7, currentEmailAddress);
-            currentAdminRole = user.getAdminRole();      pstmt.setBoolean(8, currentAdminRole);
-            currentStudentRole = user.getStudentRole();  pstmt.setBoolean(9, currentStudentRole);
-            currentReviewerRole = user.getReviewerRole();pstmt.setBoolean(10, currentReviewerRole);
+        try (Connection c = getConnection();
+             PreparedStatement pstmt = c.prepareStatement(insertUser)) {
+            pstmt.setString(1, user.getUserName());
+            pstmt.setString(2, user.getPassword());
+            pstmt.setString(3, user.getFirstName());
+            pstmt.setString(4, user.getMiddleName());
+            pstmt.setString(5, user.getLastName());
+            pstmt.setString(6, user.getPreferredFirstName());
+            pstmt.setString(7, user.getEmailAddress());
+            pstmt.setBoolean(8, user.getAdminRole());
+            pstmt.setBoolean(9, user.getStudentRole());
+            pstmt.setBoolean(10, user.getReviewerRole());
             pstmt.executeUpdate();
         }
     }
 
     public void removeUser(String username) throws SQLException {
-        try (PreparedStatement pstmt =
-                     connection.prepareStatement("DELETE from userDB WHERE userName = ?")) {
+        try (Connection c = getConnection();
+             PreparedStatement pstmt = c.prepareStatement("DELETE from userDB WHERE userName = ?")) {
             pstmt.setString(1, username);
             pstmt.executeUpdate();
         }
@@ -175,49 +346,137 @@ public class Database {
         List<String> userList = new ArrayList<>();
         userList.add("<Select a User>");
         String query = "SELECT userName FROM userDB";
-        try (PreparedStatement pstmt = connection.prepareStatement(query)) {
-            ResultSet rs = pstmt.executeQuery();
+        try (Connection c = getConnection();
+             PreparedStatement pstmt = c.prepareStatement(query);
+             ResultSet rs = pstmt.executeQuery()) {
             while (rs.next()) userList.add(rs.getString("userName"));
         } catch (SQLException e) { return null; }
         return userList;
     }
 
-    public boolean loginAdmin(User user){
-        String q = "SELECT * FROM userDB WHERE userName = ? AND password = ? AND adminRole = TRUE";
-        try (PreparedStatement ps = connection.prepareStatement(q)) {
-            ps.setString(1, user.getUserName());
-            ps.setString(2, user.getPassword());
-            return ps.executeQuery().next();
-        } catch  (SQLException e) { e.printStackTrace(); }
-        return false;
+    /** Every user, ordered by user name, read in one query. */
+    public List<UserSnapshot> listUsers() throws SQLException {
+        return findUsers(UserQuery.all());
+    }
+
+    /*------------------------- User directory (paged) -------------------------*/
+
+    // Rows per page of the List Users table and the user pickers
+    public static final int USER_PAGE_SIZE = Integer.getInteger("db.users.pageSize", 100);
+
+    // One SQL text per UserQuery shape, built on first use
+    private static final ConcurrentHashMap<Integer, String> USER_SQL =
+            new ConcurrentHashMap<>();
+
+    private static String userSql(int shape) {
+        return USER_SQL.computeIfAbsent(shape, s -> {
+            boolean count = (s & UserQuery.COUNT) != 0;
+            boolean desc  = (s & UserQuery.DESCENDING) != 0;
+            String col = UserQuery.Sort.values()[s >>> UserQuery.SORT_SHIFT].column;
+
+            StringBuilder sql = new StringBuilder(count
+                    ? "SELECT COUNT(*) FROM userDB WHERE 1=1"
+                    : "SELECT " + USER_COLUMNS + " FROM userDB WHERE 1=1");
+            if ((s & UserQuery.BY_PREFIX) != 0)
+                sql.append(" AND (LOWER(userName) LIKE ? ESCAPE '\\' OR LOWER(firstName) LIKE ? ESCAPE '\\'"
+                         + " OR LOWER(lastName) LIKE ? ESCAPE '\\' OR LOWER(preferredFirstName) LIKE ? ESCAPE '\\'"
+                         + " OR LOWER(emailAddress) LIKE ? ESCAPE '\\')");
+            if ((s & UserQuery.ADMIN) != 0)    sql.append(" AND adminRole = TRUE");
+            if ((s & UserQuery.STUDENT) != 0)  sql.append(" AND studentRole = TRUE");
+            if ((s & UserQuery.REVIEWER) != 0) sql.append(" AND reviewerRole = TRUE");
+            if (count) return sql.toString();
+
+            // keyset on (col, userName); NULLs sort first ascending and last descending
+            if ((s & UserQuery.AFTER) != 0) {
+                boolean nullCursor = (s & UserQuery.AFTER_NULL) != 0;
+                if (!desc) sql.append(nullCursor
+                        ? " AND (" + col + " IS NOT NULL OR userName > ?)"
+                        : " AND (" + col + " > ? OR (" + col + " = ? AND userName > ?))");
+                else sql.append(nullCursor
+                        ? " AND (" + col + " IS NULL AND userName < ?)"
+                        : " AND (" + col + " < ? OR " + col + " IS NULL OR (" + col + " = ? AND userName < ?))");
+            }
+            sql.append(desc ? " ORDER BY " + col + " DESC NULLS LAST, userName DESC"
+                            : " ORDER BY " + col + " ASC NULLS FIRST, userName ASC");
+            if ((s & UserQuery.LIMITED) != 0) sql.append(" LIMIT ?");
+            return sql.toString();
+        });
+    }
+
+    private static int bindUserFilters(PreparedStatement ps, UserQuery q) throws SQLException {
+        int idx = 1;
+        if (q.prefix != null) for (int i = 0; i < 5; i++) ps.setString(idx++, q.prefix);
+        return idx;
+    }
+
+    /** One page (or all, without a limit) of the user directory in the query's sort order. */
+    public static List<UserSnapshot> findUsers(UserQuery q) throws SQLException {
+        List<UserSnapshot> out = new ArrayList<>();
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(userSql(q.shape()))) {
+            int idx = bindUserFilters(ps, q);
+            if (q.hasAfter) {
+                if (q.afterValue != null) {
+                    ps.setObject(idx++, q.afterValue);
+                    ps.setObject(idx++, q.afterValue);
+                }
+                ps.setString(idx++, q.afterUserName);
+            }
+            if (q.limit > 0) ps.setInt(idx, q.limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) out.add(userSnapshot(rs));
+            }
+        }
+        return out;
+    }
+
+    /** Number of users matching the query's filters (its sort, cursor and limit are ignored). */
+    public static int countUsers(UserQuery q) throws SQLException {
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(userSql(
+                     (q.shape() & (UserQuery.BY_PREFIX | UserQuery.ADMIN | UserQuery.STUDENT | UserQuery.REVIEWER))
+                     | UserQuery.COUNT))) {
+            bindUserFilters(ps, q);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    public boolean loginAdmin(User user) {
+        return login(user, "adminRole");
     }
 
     public boolean loginStudent(User user) {
-        String q = "SELECT * FROM userDB WHERE userName = ? AND password = ? AND studentRole = TRUE";
-        try (PreparedStatement ps = connection.prepareStatement(q)) {
-            ps.setString(1, user.getUserName());
-            ps.setString(2, user.getPassword());
-            return ps.executeQuery().next();
-        } catch  (SQLException e) { e.printStackTrace(); }
-        return false;
+        return login(user, "studentRole");
     }
 
     public boolean loginReviewer(User user) {
-        String q = "SELECT * FROM userDB WHERE userName = ? AND password = ? AND reviewerRole = TRUE";
-        try (PreparedStatement ps = connection.prepareStatement(q)) {
+        return login(user, "reviewerRole");
+    }
+
+    // roleColumn is one of the fixed names above, never user input
+    private static boolean login(User user, String roleColumn) {
+        String q = "SELECT 1 FROM userDB WHERE userName = ? AND password = ? AND " + roleColumn + " = TRUE";
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(q)) {
             ps.setString(1, user.getUserName());
             ps.setString(2, user.getPassword());
-            return ps.executeQuery().next();
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
         } catch  (SQLException e) { e.printStackTrace(); }
         return false;
     }
 
     public boolean doesUserExist(String userName) {
         String q = "SELECT COUNT(*) FROM userDB WHERE userName = ?";
-        try (PreparedStatement ps = connection.prepareStatement(q)) {
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(q)) {
             ps.setString(1, userName);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) return rs.getInt(1) > 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) return rs.getInt(1) > 0;
+            }
         } catch (SQLException e) { e.printStackTrace(); }
         return false;
     }
@@ -241,7 +500,6 @@ public class Database {
             ps.setString(4, role);
             ps.executeUpdate();
         } catch (SQLException e) { e.printStackTrace(); }
-        currentPassword = code;
         return code;
     }
 
@@ -281,17 +539,15 @@ public class Database {
             ps.setBoolean(3, false);
             ps.executeUpdate();
         } catch (SQLException e) { e.printStackTrace(); }
-        currentPassword = code;
         return code;
     }
 
     public void updatePassword(String password, String emailAddress) {
-        try (PreparedStatement ps =
-                     connection.prepareStatement("UPDATE userDB SET password = ? WHERE emailAddress = ?")) {
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement("UPDATE userDB SET password = ? WHERE emailAddress = ?")) {
             ps.setString(1, password);
             ps.setString(2, emailAddress);
             ps.executeUpdate();
-            currentEmailAddress = emailAddress;
         } catch (SQLException e) { e.printStackTrace(); }
     }
 
@@ -349,234 +605,132 @@ public class Database {
     }
 
     public void updatePassword2(String password, String username) {
-        try (PreparedStatement ps =
-                     connection.prepareStatement("UPDATE userDB SET password = ? WHERE userName = ?")) {
-            ps.setString(1, password);
-            ps.setString(2, username);
-            ps.executeUpdate();
-            currentPassword = password;
-        } catch (SQLException e) { e.printStackTrace(); }
+        writeUserField(username, "password", password);
     }
 
     public String getFirstName(String username) {
-        try (PreparedStatement ps =
-                     connection.prepareStatement("SELECT firstName FROM userDB WHERE userName = ?")) {
-            ps.setString(1, username);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) return rs.getString("firstName");
-        } catch (SQLException e) { e.printStackTrace(); }
-        return null;
+        return readUserField(username, "firstName");
     }
 
     public void updateFirstName(String username, String firstName) {
-        try (PreparedStatement ps =
-                     connection.prepareStatement("UPDATE userDB SET firstName = ? WHERE username = ?")) {
-            ps.setString(1, firstName);
-            ps.setString(2, username);
-            ps.executeUpdate();
-            currentFirstName = firstName;
-        } catch (SQLException e) { e.printStackTrace(); }
+        writeUserField(username, "firstName", firstName);
     }
 
     public String getMiddleName(String username) {
-        try (PreparedStatement ps =
-                     connection.prepareStatement("SELECT middleName FROM userDB WHERE userName = ?")) {
-            ps.setString(1, username);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) return rs.getString("middleName");
-        } catch (SQLException e) { e.printStackTrace(); }
-        return null;
+        return readUserField(username, "middleName");
     }
 
     public void updateMiddleName(String username, String middleName) {
-        try (PreparedStatement ps =
-                     connection.prepareStatement("UPDATE userDB SET middleName = ? WHERE username = ?")) {
-            ps.setString(1, middleName);
-            ps.setString(2, username);
-            ps.executeUpdate();
-            currentMiddleName = middleName;
-        } catch (SQLException e) { e.printStackTrace(); }
+        writeUserField(username, "middleName", middleName);
     }
 
     public String getLastName(String username) {
-        try (PreparedStatement ps =
-                     connection.prepareStatement("SELECT lastName FROM userDB WHERE userName = ?")) {
-            ps.setString(1, username);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) return rs.getString("lastName");
-        } catch (SQLException e) { e.printStackTrace(); }
-        return null;
+        return readUserField(username, "lastName");
     }
 
     public void updateLastName(String username, String lastName) {
-        try (PreparedStatement ps =
-                     connection.prepareStatement("UPDATE userDB SET lastName = ? WHERE username = ?")) {
-            ps.setString(1, lastName);
-            ps.setString(2, username);
-            ps.executeUpdate();
-            currentLastName = lastName;
-        } catch (SQLException e) { e.printStackTrace(); }
+        writeUserField(username, "lastName", lastName);
     }
 
     public String getPreferredFirstName(String username) {
-        try (PreparedStatement ps =
-                     connection.prepareStatement("SELECT preferredFirstName FROM userDB WHERE userName = ?")) {
-            ps.setString(1, username);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) return rs.getString("preferredFirstName");
-        } catch (SQLException e) { e.printStackTrace(); }
-        return null;
+        return readUserField(username, "preferredFirstName");
     }
 
     public void updatePreferredFirstName(String username, String preferredFirstName) {
-        try (PreparedStatement ps =
-                     connection.prepareStatement("UPDATE userDB SET preferredFirstName = ? WHERE username = ?")) {
-            ps.setString(1, preferredFirstName);
-            ps.setString(2, username);
-            ps.executeUpdate();
-            currentPreferredFirstName = preferredFirstName;
-        } catch (SQLException e) { e.printStackTrace(); }
+        writeUserField(username, "preferredFirstName", preferredFirstName);
     }
 
     public String getEmailAddress(String username) {
-        try (PreparedStatement ps =
-                     connection.prepareStatement("SELECT emailAddress FROM userDB WHERE userName = ?")) {
+        return readUserField(username, "emailAddress");
+    }
+
+    public void updateEmailAddress(String username, String emailAddress) {
+        writeUserField(username, "emailAddress", emailAddress);
+    }
+
+    // column is always one of the literal userDB column names above, never user input
+    private static String readUserField(String username, String column) {
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT " + column + " FROM userDB WHERE userName = ?")) {
             ps.setString(1, username);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) return rs.getString("emailAddress");
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) return rs.getString(1);
+            }
         } catch (SQLException e) { e.printStackTrace(); }
         return null;
     }
 
-    public void updateEmailAddress(String username, String emailAddress) {
-        try (PreparedStatement ps =
-                     connection.prepareStatement("UPDATE userDB SET emailAddress = ? WHERE username = ?")) {
-            ps.setString(1, emailAddress);
+    private static void writeUserField(String username, String column, String value) {
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement("UPDATE userDB SET " + column + " = ? WHERE userName = ?")) {
+            ps.setString(1, value);
             ps.setString(2, username);
             ps.executeUpdate();
-            currentEmailAddress = emailAddress;
         } catch (SQLException e) { e.printStackTrace(); }
     }
 
-    public boolean getUserAccountDetails(String username) {
-        String q = "SELECT * FROM userDB WHERE username = ?";
-        try (PreparedStatement ps = connection.prepareStatement(q)) {
+    /**
+     * Reads one user. Returns an immutable snapshot of the row, or null if there is no such
+     * user (or the lookup failed). Nothing is cached on the Database instance.
+     */
+    public UserSnapshot getUserAccountDetails(String username) {
+        String q = "SELECT " + USER_COLUMNS + " FROM userDB WHERE userName = ?";
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement(q)) {
             ps.setString(1, username);
-            ResultSet rs = ps.executeQuery();
-            rs.next();
-            currentUsername           = rs.getString(2);
-            currentPassword           = rs.getString(3);
-            currentFirstName          = rs.getString(4);
-            currentMiddleName         = rs.getString(5);
-            currentLastName           = rs.getString(6);
-            currentPreferredFirstName = rs.getString(7);
-            currentEmailAddress       = rs.getString(8);
-            currentAdminRole          = rs.getBoolean(9);
-            currentStudentRole        = rs.getBoolean(10);
-            currentReviewerRole       = rs.getBoolean(11);
-            return true;
-        } catch (SQLException e) { return false; }
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? userSnapshot(rs) : null;
+            }
+        } catch (SQLException e) { return null; }
+    }
+
+    // Column order read by userSnapshot(...)
+    private static final String USER_COLUMNS = "userName, password, firstName, middleName, lastName, "
+            + "preferredFirstName, emailAddress, adminRole, studentRole, reviewerRole";
+
+    private static UserSnapshot userSnapshot(ResultSet rs) throws SQLException {
+        return new UserSnapshot(
+                rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                rs.getString(5), rs.getString(6), rs.getString(7),
+                rs.getBoolean(8), rs.getBoolean(9), rs.getBoolean(10));
     }
 
     public boolean updateUserRole(String username, String role, String value) {
-        if (role.compareTo("Admin") == 0) {
-            try (PreparedStatement ps =
-                         connection.prepareStatement("UPDATE userDB SET adminRole = ? WHERE username = ?")) {
-                ps.setString(1, value);
-                ps.setString(2, username);
-                ps.executeUpdate();
-                currentAdminRole = "true".equals(value);
-                return true;
-            } catch (SQLException e) { return false; }
-        }
-        if (role.compareTo("Student") == 0) {
-            try (PreparedStatement ps =
-                         connection.prepareStatement("UPDATE userDB SET studentRole = ? WHERE username = ?")) {
-                ps.setString(1, value);
-                ps.setString(2, username);
-                ps.executeUpdate();
-                currentStudentRole = "true".equals(value);
-                return true;
-            } catch (SQLException e) { return false; }
-        }
-        if (role.compareTo("Reviewer") == 0) {
-            try (PreparedStatement ps =
-                         connection.prepareStatement("UPDATE userDB SET reviewerRole = ? WHERE username = ?")) {
-                ps.setString(1, value);
-                ps.setString(2, username);
-                ps.executeUpdate();
-                currentReviewerRole = "true".equals(value);
-                return true;
-            } catch (SQLException e) { return false; }
-        }
-        return false;
+        String column = switch (role) {
+            case "Admin"    -> "adminRole";
+            case "Student"  -> "studentRole";
+            case "Reviewer" -> "reviewerRole";
+            default         -> null;
+        };
+        if (column == null) return false;
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement("UPDATE userDB SET " + column + " = ? WHERE username = ?")) {
+            ps.setString(1, value);
+            ps.setString(2, username);
+            ps.executeUpdate();
+            return true;
+        } catch (SQLException e) { return false; }
     }
 
     /*======================== Student Posts / Replies ========================*/
 
-    public static long upsertThread(String name) throws Exception {
-        if (name == null || name.isBlank()) name = "General";
+    /** Id of the named thread, creating it if needed (one MERGE round trip at most). */
+    public static long upsertThread(String name) throws SQLException {
         try (Connection c = getConnection()) {
-            ensureSchema(c);
-            try (PreparedStatement sel = c.prepareStatement(
-                    "SELECT id FROM threads WHERE LOWER(name)=LOWER(?)")) {
-                sel.setString(1, name);
-                try (ResultSet rs = sel.executeQuery()) {
-                    if (rs.next()) return rs.getLong(1);
-                }
-            }
-            try (PreparedStatement ins = c.prepareStatement(
-                    "INSERT INTO threads(name) VALUES (?)", Statement.RETURN_GENERATED_KEYS)) {
-                ins.setString(1, name);
-                ins.executeUpdate();
-                try (ResultSet rs = ins.getGeneratedKeys()) {
-                    if (rs.next()) return rs.getLong(1);
-                }
-            }
-            try (PreparedStatement sel2 = c.prepareStatement(
-                    "SELECT id FROM threads WHERE LOWER(name)=LOWER(?)")) {
-                sel2.setString(1, name);
-                try (ResultSet rs2 = sel2.executeQuery()) {
-                    if (rs2.next()) return rs2.getLong(1);
-                }
-            }
-            throw new IllegalStateException("upsertThread failed for: " + name);
+            return ThreadDictionary.resolve(c, name);
         }
     }
-    
-    // Return thread id by exact name (case-insensitive); null if not found
+
+    // Return thread id by name (case-insensitive); null if not found
     public static Long fetchThreadIdByName(Connection c, String name) throws SQLException {
-        if (name == null || name.isBlank()) return null;
-        try (PreparedStatement ps = c.prepareStatement(
-                "SELECT id FROM threads WHERE LOWER(name)=LOWER(?)")) {
-            ps.setString(1, name.trim());
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) return rs.getLong(1);
-            }
-        }
-        return null;
+        return ThreadDictionary.idOf(c, name);
     }
-    
- // Return "General" id (exists by ensureSchema)
+
+    // Return "General" id (seeded by the schema migrations)
     public static long getGeneralThreadId(Connection c) throws SQLException {
-        try (PreparedStatement ps = c.prepareStatement(
-                "SELECT id FROM threads WHERE name='General'")) {
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) return rs.getLong(1);
-            }
-        }
-        // fallback (shouldn't happen)
-        try (PreparedStatement ins = c.prepareStatement(
-                "INSERT INTO threads(name) VALUES('General')",
-                Statement.RETURN_GENERATED_KEYS)) {
-            ins.executeUpdate();
-            try (ResultSet rs = ins.getGeneratedKeys()) {
-                if (rs.next()) return rs.getLong(1);
-            }
-        }
-        throw new SQLException("Failed to ensure 'General' thread.");
+        return ThreadDictionary.resolve(c, ThreadDictionary.GENERAL);
     }
-    
+
     public static long createPostStudent(
             String author,
             String thread,        // e.g., "General"
@@ -586,28 +740,33 @@ public class Database {
             boolean isPrivate,
             boolean isAnonymous
     ) throws SQLException {
-        // Normalize thread to default "General" when null/blank
-        thread = (thread == null || thread.isBlank()) ? "General" : thread.trim();
-
         final String sql = """
-            INSERT INTO posts(author, thread, title, kind, content, is_private, is_anonymous, created_at)
-            VALUES (?,?,?,?,?,?,?, CURRENT_TIMESTAMP)
+            INSERT INTO posts(author, thread_id, thread, title, kind, content, preview, is_private, is_anonymous,
+                              created_at, last_activity_at)
+            VALUES (?,?,?,?,?,?,?,?,?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)
             """;
-        try (Connection c = getConnection();
-             PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            ensureSchema(c);
-            ps.setString(1, author);
-            ps.setString(2, thread);
-            ps.setString(3, title);
-            ps.setString(4, kind);
-            ps.setString(5, content);
-            ps.setBoolean(6, isPrivate);
-            ps.setBoolean(7, isAnonymous);
-            ps.executeUpdate();
-            try (ResultSet rs = ps.getGeneratedKeys()) {
-                if (rs.next()) return rs.getLong(1);
+        try (Connection c = getConnection()) {
+            // blank -> General; the stored name is the dictionary's spelling of the thread
+            long threadId = ThreadDictionary.resolve(c, thread);
+            try (PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                ps.setString(1, author);
+                ps.setLong(2, threadId);
+                ps.setString(3, ThreadDictionary.nameOf(c, threadId));
+                ps.setString(4, title);
+                ps.setString(5, kind);
+                ps.setString(6, content);
+                ps.setString(7, previewOf(content));
+                ps.setBoolean(8, isPrivate);
+                ps.setBoolean(9, isAnonymous);
+                ps.executeUpdate();
+                long postId = -1L;
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    if (rs.next()) postId = rs.getLong(1);
+                }
+                if (postId > 0) SEARCH.indexed(postId, title, content);
+                RESULTS.written();
+                return postId;
             }
-            return -1L;
         }
     }
 
@@ -618,28 +777,54 @@ public class Database {
             INSERT INTO replies (post_id, author, content, created_at)
             VALUES (?, ?, ?, CURRENT_TIMESTAMP)
         """;
-        try (Connection c = getConnection();
-             PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-            ensureSchema(c);
-            ps.setLong(1, postId);
-            ps.setString(2, author);
-            ps.setString(3, content);
-            ps.executeUpdate();
-            try (ResultSet rs = ps.getGeneratedKeys()) {
-                if (rs.next()) return rs.getLong(1);
+        long id = inTransaction(c -> {
+            long replyId = -1L; // fallback if the driver doesn’t return keys
+            try (PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                ps.setLong(1, postId);
+                ps.setString(2, author);
+                ps.setString(3, content);
+                ps.executeUpdate();
+                try (ResultSet rs = ps.getGeneratedKeys()) {
+                    if (rs.next()) replyId = rs.getLong(1);
+                }
             }
-            return -1L; // fallback if the driver doesn’t return keys
-        }
+            try (PreparedStatement ps = c.prepareStatement("""
+                UPDATE posts
+                   SET reply_count = reply_count + 1,
+                       last_activity_at = CURRENT_TIMESTAMP
+                 WHERE id = ?
+            """)) {
+                ps.setLong(1, postId);
+                ps.executeUpdate();
+            }
+            return replyId;
+        });
+        if (id > 0) REPLY_SEARCH.indexed(id, postId, "", content);
+        RESULTS.written();
+        return id;
     }
 
-    // tiny helper so static ops don't depend on instance state
-    private static Connection open() throws SQLException {
-        try {
-            Class.forName(JDBC_DRIVER);         // keep your existing constants
-        } catch (ClassNotFoundException e) {
-            throw new SQLException("JDBC driver not found", e);
+    /** Unit of work run by inTransaction(...) on a single pooled connection. */
+    @FunctionalInterface
+    private interface TxWork<T> {
+        T run(Connection c) throws SQLException;
+    }
+
+    /** Runs work in one transaction: commit on success, roll back on any failure. */
+    private static <T> T inTransaction(TxWork<T> work) throws SQLException {
+        try (Connection c = getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                T result = work.run(c);
+                c.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
         }
-        return DriverManager.getConnection(DB_URL, USER, PASS);
     }
 
     /** Ownership enforcing helpers (UI should use these) */
@@ -652,6 +837,7 @@ public class Database {
             UPDATE posts
                SET deleted = TRUE,
                    content = ?,
+                   preview = ?,
                    deleted_at = CURRENT_TIMESTAMP
              WHERE id = ? AND author = ?
                AND COALESCE(deleted, FALSE) = FALSE
@@ -659,10 +845,14 @@ public class Database {
         try (Connection c = getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setString(1, PLACEHOLDER);
-            ps.setLong(2, postId);
-            ps.setString(3, author);
+            ps.setString(2, PLACEHOLDER);
+            ps.setLong(3, postId);
+            ps.setString(4, author);
             int n = ps.executeUpdate();
             if (n == 0) throw new SQLException("You can only delete your own non-deleted post.");
+            BODY_CACHE.invalidate(postId);
+            SEARCH.removed(postId);
+            RESULTS.written();
         }
     }
 
@@ -673,392 +863,1233 @@ public class Database {
             UPDATE posts
                SET title = ?,
                    content = ?,
+                   preview = ?,
                    updated_at = CURRENT_TIMESTAMP
              WHERE id = ? AND author = ?
                AND COALESCE(deleted, FALSE) = FALSE
         """;
         try (Connection c = getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, newTitle == null ? "" : newTitle.trim());
-            ps.setString(2, newContent == null ? "" : newContent.trim());
-            ps.setLong(3, postId);
-            ps.setString(4, author);
+            String title = newTitle == null ? "" : newTitle.trim();
+            String body = newContent == null ? "" : newContent.trim();
+            ps.setString(1, title);
+            ps.setString(2, body);
+            ps.setString(3, previewOf(body));
+            ps.setLong(4, postId);
+            ps.setString(5, author);
             int n = ps.executeUpdate();
             if (n == 0) throw new SQLException("You can only edit your own non-deleted post.");
+            BODY_CACHE.invalidate(postId);
+            SEARCH.indexed(postId, title, body);
+            RESULTS.written();
         }
     }
 
+    /** The stored list preview for a body: trimmed and cut to PREVIEW_CHARS. */
+    public static String previewOf(String content) {
+        if (content == null) return null;
+        String t = content.trim();
+        return t.length() > PREVIEW_CHARS ? t.substring(0, PREVIEW_CHARS) : t;
+    }
+
+    /** Full body of a post, from the LRU body cache when it was opened recently. */
+    public static String getPostBody(long postId) throws SQLException {
+        String body = BODY_CACHE.get(postId);
+        if (body != null) return body;
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT content FROM posts WHERE id = ?")) {
+            ps.setLong(1, postId);
+            try (ResultSet rs = ps.executeQuery()) {
+                body = rs.next() ? rs.getString(1) : null;
+            }
+        }
+        if (body == null) body = "";
+        BODY_CACHE.put(postId, body);
+        return body;
+    }
+
+    /** A post's created_at, the feed cursor of a deep link to it; null if there is no such post. */
+    public static Timestamp getPostCreatedAt(long postId) throws SQLException {
+        try (Connection c = getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT created_at FROM posts WHERE id = ?")) {
+            ps.setLong(1, postId);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getTimestamp(1) : null;
+            }
+        }
+    }
+
+    /** Cached body of a post without touching the database; null if not cached. */
+    public static String peekPostBody(long postId) {
+        return BODY_CACHE.get(postId);
+    }
+
     /** Update a reply's content, only if 'author' wrote it. */
     public static void updateReplyByAuthor(long replyId, String author, String newContent) throws SQLException {
         if (author == null || author.isBlank()) throw new SQLException("Missing author");
-        final String sql = "UPDATE replies SET content=? WHERE id=? AND author=?";
-        try (Connection c = getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setString(1, newContent == null ? "" : newContent.trim());
-            ps.setLong(2, replyId);
-            ps.setString(3, author);
-            int n = ps.executeUpdate();
-            if (n == 0) throw new SQLException("You can only edit your own reply.");
+        final String sql = "UPDATE replies SET content=?, updated_at=CURRENT_TIMESTAMP WHERE id=? AND author=?";
+        String content = newContent == null ? "" : newContent.trim();
+        try (Connection c = getConnection()) {
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                ps.setString(1, content);
+                ps.setLong(2, replyId);
+                ps.setString(3, author);
+                int n = ps.executeUpdate();
+                if (n == 0) throw new SQLException("You can only edit your own reply.");
+            }
+            try (PreparedStatement ps = c.prepareStatement("SELECT post_id FROM replies WHERE id=?")) {
+                ps.setLong(1, replyId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) REPLY_SEARCH.indexed(replyId, rs.getLong(1), "", content);
+                }
+            }
+            RESULTS.written();
         }
     }
 
     /** Delete a reply, only if 'author' wrote it. */
     public static void deleteReplyByAuthor(long replyId, String author) throws SQLException {
         if (author == null || author.isBlank()) throw new SQLException("Missing author");
-        final String sql = "DELETE FROM replies WHERE id=? AND author=?";
-        try (Connection c = getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setLong(1, replyId);
-            ps.setString(2, author);
-            int n = ps.executeUpdate();
-            if (n == 0) throw new SQLException("You can only delete your own reply.");
+        inTransaction(c -> {
+            long postId;
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT post_id FROM replies WHERE id=? AND author=? FOR UPDATE")) {
+                ps.setLong(1, replyId);
+                ps.setString(2, author);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) throw new SQLException("You can only delete your own reply.");
+                    postId = rs.getLong(1);
+                }
+            }
+            // marks are plain id thresholds and need no change; only exceptions point at the row
+            try (PreparedStatement ps = c.prepareStatement("DELETE FROM reply_read_exceptions WHERE reply_id=?")) {
+                ps.setLong(1, replyId);
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = c.prepareStatement("DELETE FROM replies WHERE id=?")) {
+                ps.setLong(1, replyId);
+                ps.executeUpdate();
+            }
+            // the row is gone, so the reply search index learns of the delete from this log
+            try (PreparedStatement ps = c.prepareStatement(
+                    "INSERT INTO reply_deletions(reply_id, post_id, deleted_at) VALUES (?, ?, CURRENT_TIMESTAMP)")) {
+                ps.setLong(1, replyId);
+                ps.setLong(2, postId);
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = c.prepareStatement("""
+                UPDATE posts p
+                   SET reply_count = GREATEST(p.reply_count - 1, 0),
+                       last_activity_at = COALESCE(
+                           (SELECT MAX(r.created_at) FROM replies r
+                             WHERE r.post_id = p.id AND r.created_at > p.created_at),
+                           p.created_at)
+                 WHERE p.id = ?
+            """)) {
+                ps.setLong(1, postId);
+                ps.executeUpdate();
+            }
+            return null;
+        });
+        REPLY_SEARCH.removed(replyId);
+        RESULTS.written();
+    }
+
+    /**
+     * Compares posts.reply_count / last_activity_at with the replies table. When repair is
+     * true the drifted posts are rewritten. Returns the number of posts that were out of sync.
+     */
+    public static int checkPostCounters(boolean repair) throws SQLException {
+        try (Connection c = getConnection()) {
+            int drifted = PostCounters.check(c, repair);
+            if (repair && drifted > 0) RESULTS.written();
+            return drifted;
         }
     }
 
     
-    public static java.util.List<java.util.Map<String,Object>> findPosts(
-            String keyword, String threadName, String author) throws Exception {
-
-        StringBuilder sql = new StringBuilder("""
-            SELECT p.id, p.author, p.thread AS thread,
-                   p.title, p.kind, p.content,
-                   COALESCE(p.deleted, FALSE) AS deleted,
-                   p.created_at,
-                   (SELECT COUNT(*) FROM replies r WHERE r.post_id = p.id) AS reply_count
-              FROM posts p
-             WHERE 1=1
-        """);
-
-        java.util.List<Object> params = new java.util.ArrayList<>();
-
-        if (threadName != null && !threadName.isBlank()) {
-            sql.append(" AND LOWER(p.thread) = LOWER(?)");
-            params.add(threadName.trim());
+    // findPosts() filter combinations -> fixed SQL text, so each shape is prepared once per
+    // connection. Index bits: 1 = thread, 2 = keyword, 4 = author.
+    private static final int FIND_BY_THREAD  = 1;
+    private static final int FIND_BY_KEYWORD = 2;
+    private static final int FIND_BY_AUTHOR  = 4;
+    private static final String[] FIND_POSTS_SQL = new String[8];
+    static {
+        for (int shape = 0; shape < FIND_POSTS_SQL.length; shape++) {
+            StringBuilder sql = new StringBuilder("""
+                SELECT p.id, p.author, p.thread AS thread,
+                       p.title, p.kind, p.content,
+                       COALESCE(p.deleted, FALSE) AS deleted,
+                       p.created_at,
+                       p.reply_count
+                  FROM posts p
+                 WHERE 1=1
+            """);
+            if ((shape & FIND_BY_THREAD) != 0)  sql.append(" AND p.thread_id = ?");
+            if ((shape & FIND_BY_KEYWORD) != 0) sql.append(" AND (LOWER(p.title) LIKE ? OR LOWER(p.content) LIKE ?)");
+            if ((shape & FIND_BY_AUTHOR) != 0)  sql.append(" AND p.author = ?");
+            sql.append(" ORDER BY p.created_at DESC, p.id DESC");
+            FIND_POSTS_SQL[shape] = sql.toString();
         }
-        if (keyword != null && !keyword.isBlank()) {
-            String kw = "%" + keyword.toLowerCase().trim() + "%";
-            sql.append(" AND (LOWER(p.title) LIKE ? OR LOWER(p.content) LIKE ?)");
-            params.add(kw);
-            params.add(kw);
+    }
+
+    /** Maps the current ResultSet row to a typed value. */
+    @FunctionalInterface
+    private interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Runs ps and hands each mapped row to sink without collecting them. The session is put in
+     * H2's lazy mode for the duration, so rows are produced as they are read and memory stays
+     * flat however large the result; the fetch size covers server-mode connections.
+     */
+    private static <T> void streamRows(Connection c, PreparedStatement ps, RowMapper<T> mapper,
+                                       Consumer<? super T> sink) throws SQLException {
+        streamRows(c, ps, null, 0, mapper, sink);
+    }
+
+    /** {@link #streamRows} of the rows passing filter (null = all), stopping after max of them (0 = all). */
+    private static <T> void streamRows(Connection c, PreparedStatement ps, QueryPlanner.RowTest filter, int max,
+                                       RowMapper<T> mapper, Consumer<? super T> sink) throws SQLException {
+        CallCancellation.check();
+        ps.setFetchSize(STREAM_FETCH_SIZE);
+        try (Statement s = c.createStatement()) {
+            s.execute("SET LAZY_QUERY_EXECUTION TRUE");
         }
-        if (author != null && !author.isBlank()) {
-            sql.append(" AND p.author = ?");
-            params.add(author.trim());
+        try (ResultSet rs = ps.executeQuery()) {
+            int sent = 0;
+            while (rs.next()) {
+                CallCancellation.check();
+                if (filter != null && !filter.test(rs)) continue;
+                sink.accept(mapper.map(rs));
+                if (++sent == max) break;
+            }
+        } finally {
+            try (Statement s = c.createStatement()) {
+                s.execute("SET LAZY_QUERY_EXECUTION FALSE");
+            }
         }
+    }
+
+    private static PostRow postRow(ResultSet rs) throws SQLException {
+        return new PostRow(
+                rs.getLong("id"),
+                rs.getString("author"),
+                rs.getString("thread"),
+                rs.getString("title"),
+                rs.getString("kind"),
+                rs.getString("content"),
+                rs.getBoolean("deleted"),
+                rs.getTimestamp("created_at"),
+                rs.getInt("reply_count"));
+    }
 
-        sql.append(" ORDER BY p.created_at DESC, p.id DESC");
+    private static ReplyRow replyRow(ResultSet rs) throws SQLException {
+        return new ReplyRow(
+                rs.getLong("id"),
+                rs.getLong("post_id"),
+                rs.getString("author"),
+                rs.getString("content"),
+                rs.getTimestamp("created_at"),
+                rs.getBoolean("is_read"));
+    }
+
+    /** Posts matching the optional keyword / thread / author filters, newest first. */
+    public static List<PostRow> findPosts(String keyword, String threadName, String author) throws SQLException {
+        List<PostRow> out = new ArrayList<>();
+        forEachPost(keyword, threadName, author, out::add);
+        return out;
+    }
 
+    /** Streaming form of {@link #findPosts}: rows are passed to sink as they are read. */
+    public static void forEachPost(String keyword, String threadName, String author,
+                                   Consumer<? super PostRow> sink) throws SQLException {
+        int shape = 0;
+        if (threadName != null && !threadName.isBlank()) shape |= FIND_BY_THREAD;
+        if (keyword != null && !keyword.isBlank())       shape |= FIND_BY_KEYWORD;
+        if (author != null && !author.isBlank())         shape |= FIND_BY_AUTHOR;
+
+        try (Connection c = getConnection()) {
+            Long threadId = null;
+            if ((shape & FIND_BY_THREAD) != 0 && (threadId = ThreadDictionary.idOf(c, threadName)) == null) return;
+            streamPosts(c, shape, threadId, keyword, author, sink);
+        }
+    }
+
+    private static void streamPosts(Connection c, int shape, Long threadId, String keyword, String author,
+                                    Consumer<? super PostRow> sink) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(FIND_POSTS_SQL[shape])) {
+            int idx = 1;
+            if ((shape & FIND_BY_THREAD) != 0) ps.setLong(idx++, threadId);
+            if ((shape & FIND_BY_KEYWORD) != 0) {
+                String kw = "%" + keyword.toLowerCase().trim() + "%";
+                ps.setString(idx++, kw);
+                ps.setString(idx++, kw);
+            }
+            if ((shape & FIND_BY_AUTHOR) != 0) ps.setString(idx++, author.trim());
+            streamRows(c, ps, Database::postRow, sink);
+        }
+    }
+
+    // Reply read model (SchemaMigrations V8): a reply is read when its id is at or below the
+    // user's mark for its post, unless a reply_read_exceptions row flips it. Expects aliases
+    // r (replies), m (the user's reply_read_marks row) and x (the reply's exception row).
+    private static final String REPLY_IS_READ =
+            "((r.id <= COALESCE(m.last_reply_id, 0)) <> (x.reply_id IS NOT NULL))";
+
+    // Unread replies of post p for the user whose mark is m: the id range above the mark,
+    // minus exceptions above it (read out of order), plus exceptions at or below it (marked
+    // unread again). Binds the user name once.
+    private static final String UNREAD_COUNT = """
+        ((SELECT COUNT(*) FROM replies ur
+           WHERE ur.post_id = p.id AND ur.id > COALESCE(m.last_reply_id, 0))
+         + COALESCE((SELECT SUM(CASE WHEN ux.reply_id > COALESCE(m.last_reply_id, 0) THEN -1 ELSE 1 END)
+                       FROM reply_read_exceptions ux
+                      WHERE ux.user_name = ? AND ux.post_id = p.id), 0))""";
+
+    // Replies of one post, oldest first, with the given user's read flag
+    private static final String REPLIES_SQL =
+          "SELECT r.id, r.post_id, r.author, r.content, r.created_at, " + REPLY_IS_READ + " AS is_read"
+        + " FROM replies r"
+        + " LEFT JOIN reply_read_marks m ON m.user_name = ? AND m.post_id = r.post_id"
+        + " LEFT JOIN reply_read_exceptions x ON x.user_name = ? AND x.reply_id = r.id"
+        + " WHERE r.post_id = ?"
+        + " ORDER BY r.created_at ASC, r.id ASC";
+
+    public static List<ReplyRow> findReplies(long postId) throws SQLException {
+        return findReplies(postId, null);
+    }
+
+    /** Replies of a post, oldest first; ReplyRow.read is userName's checkbox. */
+    public static List<ReplyRow> findReplies(long postId, String userName) throws SQLException {
+        List<ReplyRow> out = new ArrayList<>();
+        forEachReply(postId, userName, out::add);
+        return out;
+    }
+
+    /** Streaming form of {@link #findReplies(long, String)}. */
+    public static void forEachReply(long postId, String userName,
+                                    Consumer<? super ReplyRow> sink) throws SQLException {
+        if (userName != null) flushReadState();
         try (Connection c = getConnection();
-             PreparedStatement ps = c.prepareStatement(sql.toString())) {
-            ensureSchema(c);
-            for (int i = 0; i < params.size(); i++) {
-                Object p = params.get(i);
-                if (p instanceof String s)      ps.setString(i + 1, s);
-                else if (p instanceof Long l)   ps.setLong(i + 1, l);
-                else                            ps.setObject(i + 1, p);
+             PreparedStatement ps = c.prepareStatement(REPLIES_SQL)) {
+            ps.setString(1, userName);
+            ps.setString(2, userName);
+            ps.setLong(3, postId);
+            streamRows(c, ps, Database::replyRow, sink);
+        }
+    }
+
+    /*======================== Feed (Read / My / Search Posts) ========================*/
+
+    // Rows per page of the Read Posts feed (override with -Ddb.feed.pageSize=...)
+    public static final int FEED_PAGE_SIZE = Integer.getInteger("db.feed.pageSize", 50);
+
+    // FeedQuery shape -> SQL text, built once per shape so the statement cache sees stable text
+    private static final ConcurrentHashMap<Integer, String> FEED_SQL =
+            new ConcurrentHashMap<>();
+
+    // The feed's columns (binds the user for UNREAD_COUNT) and its joins on posts p (binds the
+    // user twice); a QueryPlanner plan puts its own FROM between them
+    private static final String FEED_COLUMNS = """
+        SELECT p.id, p.author, p.thread, p.title, COALESCE(p.kind, 'Post') AS kind, p.preview,
+               p.is_anonymous, p.is_private, p.created_at,
+               COALESCE(p.deleted, FALSE) AS deleted,
+               p.reply_count,
+    """ + UNREAD_COUNT + """
+     AS unread_count,
+               pr.post_id IS NOT NULL AS is_read
+    """;
+    private static final String FEED_JOINS = """
+          LEFT JOIN reply_read_marks m
+            ON m.user_name = ? AND m.post_id = p.id
+          LEFT JOIN post_reads pr
+            ON pr.post_id = p.id AND pr.user_name = ?
+    """;
+
+    private static String feedSql(int shape) {
+        return FEED_SQL.computeIfAbsent(shape, s -> {
+            StringBuilder sql = new StringBuilder(FEED_COLUMNS).append(" FROM posts p").append(FEED_JOINS)
+                    .append(" WHERE 1=1");
+            appendFeedFilters(sql, s);
+            // keyset predicates on the (created_at, id) sort key; below a cursor reads
+            // idx_posts_created_desc, above one reads idx_posts_created upward from it. The
+            // plain created_at bound is what H2 seeks on (it cannot range-scan the OR alone)
+            boolean upward = (s & (FeedQuery.BEFORE | FeedQuery.THROUGH)) != 0;
+            if ((s & FeedQuery.AFTER) != 0)
+                sql.append(" AND p.created_at <= ? AND (p.created_at < ? OR (p.created_at = ? AND p.id < ?))");
+            if ((s & FeedQuery.BEFORE) != 0)
+                sql.append(" AND p.created_at >= ? AND (p.created_at > ? OR (p.created_at = ? AND p.id > ?))");
+            if ((s & FeedQuery.THROUGH) != 0)
+                sql.append(" AND p.created_at >= ? AND (p.created_at > ? OR (p.created_at = ? AND p.id >= ?))");
+            sql.append(upward ? " ORDER BY p.created_at ASC, p.id ASC" : " ORDER BY p.created_at DESC, p.id DESC");
+            if ((s & FeedQuery.LIMITED) != 0)    sql.append(" LIMIT ?");
+            // the rows nearest an upward cursor, put back in feed order
+            if (upward) return "SELECT * FROM (" + sql + ") f ORDER BY f.created_at DESC, f.id DESC";
+            return sql.toString();
+        });
+    }
+
+    /** The optional filter predicates of a feed shape (aliases p = posts, pr = the user's post_reads). */
+    private static void appendFeedFilters(StringBuilder sql, int s) {
+        if ((s & FeedQuery.BY_THREAD) != 0)  sql.append(" AND p.thread_id = ?");
+        if ((s & FeedQuery.BY_KIND) != 0)    sql.append(" AND LOWER(p.kind) = LOWER(?)");
+        if ((s & FeedQuery.BY_AUTHOR) != 0)  sql.append(" AND p.author = ?");
+        if ((s & FeedQuery.BY_SEEN) != 0)
+            sql.append((s & FeedQuery.SEEN_READ) != 0 ? " AND pr.post_id IS NOT NULL"
+                                                      : " AND pr.post_id IS NULL");
+        if ((s & FeedQuery.BY_KEYWORD) != 0) sql.append(" AND (LOWER(p.title) LIKE ? OR LOWER(p.content) LIKE ?)");
+        if ((s & FeedQuery.KEYWORD_IDS) != 0) sql.append(" AND p.id = ANY(?)");
+        if ((s & FeedQuery.LIVE_ONLY) != 0)  sql.append(" AND COALESCE(p.deleted, FALSE) = FALSE");
+        if ((s & FeedQuery.BY_SEARCH) != 0)  sql.append(" AND p.id = ANY(?)");
+    }
+
+    /**
+     * Binds the parameters of {@link #appendFeedFilters} from idx on; returns the next index.
+     * m holds the search index's answers for q (see {@link #indexMatches}).
+     */
+    private static int bindFeedFilters(PreparedStatement ps, int idx, FeedQuery q, Long threadId,
+                                       IndexMatches m) throws SQLException {
+        if (q.thread != null)  ps.setLong(idx++, threadId);
+        if (q.kind != null)    ps.setString(idx++, q.kind);
+        if (q.author != null)  ps.setString(idx++, q.author);
+        if (q.keyword != null) {
+            String kw = "%" + q.keyword + "%";
+            ps.setString(idx++, kw);
+            ps.setString(idx++, kw);
+        }
+        if (m.keywordIds() != null) ps.setObject(idx++, boxed(m.keywordIds()));
+        if (m.ranked() != null)     ps.setObject(idx++, boxed(m.ranked().ids()));
+        return idx;
+    }
+
+    static Long[] boxed(long[] ids) {
+        Long[] out = new Long[ids.length];
+        for (int i = 0; i < ids.length; i++) out[i] = ids[i];
+        return out;
+    }
+
+    /**
+     * What the search index answers for a feed query: ranked hits for its search text, and
+     * candidate ids for its keyword (null when there is none, or when the LIKE scan has to do).
+     */
+    private record IndexMatches(SearchIndex.Hits ranked, long[] keywordIds) {
+
+        /** True if the index already shows that nothing matches. */
+        boolean empty() {
+            return (ranked != null && ranked.ids().length == 0)
+                || (keywordIds != null && keywordIds.length == 0);
+        }
+
+        /** q's shape for this statement: a ranked search is not paged, candidates add a predicate. */
+        int shape(int s) {
+            if (keywordIds != null) s |= FeedQuery.KEYWORD_IDS;
+            return ranked == null ? s : s & FeedQuery.FILTERS;
+        }
+    }
+
+    // Filters that narrow a search down; the index only holds live posts, so LIVE_ONLY does not
+    private static final int SEARCH_NARROWING =
+            FeedQuery.BY_THREAD | FeedQuery.BY_KIND | FeedQuery.BY_AUTHOR | FeedQuery.BY_SEEN | FeedQuery.BY_KEYWORD;
+
+    private static IndexMatches indexMatches(String userName, FeedQuery q) throws SQLException {
+        long[] keywordIds = null;
+        // the index holds live posts only, so a feed that shows deleted ones keeps the LIKE scan
+        if (q.keyword != null && q.excludeDeleted) {
+            keywordIds = SEARCH.substringCandidates(q.keyword, SEARCH_MAX_CANDIDATES);
+        }
+        SearchIndex.Hits ranked = null;
+        if (q.search != null) {
+            // with filters, only the posts passing them are ranked: the global top hits could
+            // all fail them
+            long[] within = (q.shape() & SEARCH_NARROWING) == 0 ? null : filteredIds(userName, q, keywordIds);
+            ranked = SEARCH.search(q.search, SEARCH_MAX_HITS, within);
+        }
+        return new IndexMatches(ranked, keywordIds);
+    }
+
+    private static final ConcurrentHashMap<Integer, String> FILTERED_IDS_SQL =
+            new ConcurrentHashMap<>();
+
+    // Ids passing the filters of shape; deleted posts are not in the index anyway, and without a
+    // Seen filter the statement needs no row reads beyond the filters' indexes
+    private static String filteredIdsSql(int shape) {
+        return FILTERED_IDS_SQL.computeIfAbsent(shape, s -> {
+            StringBuilder sql = new StringBuilder("SELECT p.id FROM posts p");
+            if ((s & FeedQuery.BY_SEEN) != 0) {
+                sql.append(" LEFT JOIN post_reads pr ON pr.post_id = p.id AND pr.user_name = ?");
             }
+            sql.append(" WHERE 1=1");
+            appendFeedFilters(sql, s);
+            return sql.toString();
+        });
+    }
 
-            java.util.List<java.util.Map<String,Object>> out = new java.util.ArrayList<>();
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    java.util.Map<String,Object> row = new java.util.HashMap<>();
-                    row.put("id",          rs.getLong("id"));
-                    row.put("author",      rs.getString("author"));
-                    row.put("thread",      rs.getString("thread"));
-                    row.put("title",       rs.getString("title"));
-                    row.put("kind",        rs.getString("kind"));
-                    row.put("content",     rs.getString("content"));
-                    row.put("deleted",     rs.getBoolean("deleted"));
-                    row.put("created_at",  rs.getTimestamp("created_at"));
-                    row.put("reply_count", rs.getInt("reply_count"));
-                    out.add(row);
+    /** Ids (ascending) of the live or deleted posts passing q's filters other than its search text. */
+    private static long[] filteredIds(String userName, FeedQuery q, long[] keywordIds) throws SQLException {
+        IndexMatches m = new IndexMatches(null, keywordIds);
+        int shape = m.shape(q.shape() & FeedQuery.FILTERS & ~(FeedQuery.BY_SEARCH | FeedQuery.LIVE_ONLY));
+        LongStream.Builder ids = LongStream.builder();
+        try (Connection c = getConnection()) {
+            Long threadId = q.thread == null ? null : ThreadDictionary.idOf(c, q.thread);
+            if (q.thread != null && threadId == null) return new long[0];
+            try (PreparedStatement ps = c.prepareStatement(filteredIdsSql(shape))) {
+                int idx = 1;
+                if ((shape & FeedQuery.BY_SEEN) != 0) ps.setString(idx++, userName);
+                bindFeedFilters(ps, idx, q, threadId, m);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) ids.add(rs.getLong(1));
                 }
             }
-            return out;
         }
+        return ids.build().sorted().toArray();
     }
 
+    /**
+     * Completions of a partly typed search word: up to perKind thread names, then authors, then
+     * search terms that start with prefix, each kind most used first. Answered from memory.
+     */
+    public static List<Completion> complete(String prefix, int perKind) throws SQLException {
+        return COMPLETIONS.complete(prefix, perKind);
+    }
 
-    public static java.util.List<java.util.Map<String,Object>> findReplies(long postId) throws Exception {
-        try (Connection c = getConnection();
-             PreparedStatement ps = c.prepareStatement(
-                "SELECT id, author, content, created_at FROM replies WHERE post_id=? ORDER BY created_at ASC, id ASC")) {
-            ensureSchema(c);
-            ps.setLong(1, postId);
-            java.util.List<java.util.Map<String,Object>> out = new java.util.ArrayList<>();
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    java.util.Map<String,Object> row = new java.util.HashMap<>();
-                    row.put("id", rs.getLong("id"));
-                    row.put("author", rs.getString("author"));
-                    row.put("content", rs.getString("content"));
-                    row.put("created_at", rs.getTimestamp("created_at"));
-                    out.add(row);
+    /**
+     * Runs a feed query for userName in one statement. Each PostItem comes back with its reply
+     * count, the user's unread reply count and the user's read flag filled in.
+     */
+    public static List<PostItem> loadFeed(String userName, FeedQuery q) throws SQLException {
+        List<PostItem> out = new ArrayList<>();
+        forEachFeedRow(userName, q, out::add);
+        return out;
+    }
+
+    /**
+     * Streaming form of {@link #loadFeed}: rows are passed to sink as they are read. With a
+     * search text the rows come in rank order instead, after the last one has been read. A
+     * search run again before any post or reply changed comes from the SearchResultCache.
+     */
+    public static void forEachFeedRow(String userName, FeedQuery q,
+                                      Consumer<? super PostItem> sink) throws SQLException {
+        SearchResultCache.Key key = RESULTS.key(userName, q);
+        if (key != null) {
+            List<PostItem> cached = cachedResults(key, q);
+            if (cached != null) {
+                cached.forEach(sink);
+                return;
+            }
+        }
+        // taken before the statements run, so a write or read toggle meanwhile leaves the entry stale
+        long writeSeq = RESULTS.writeSequence();
+        long readEpoch = RESULTS.readEpoch(userName);
+        if (userName != null) flushReadState();
+        if (key == null) {
+            uncachedFeedRows(userName, q, sink);
+            return;
+        }
+        List<PostItem> rows = new ArrayList<>();
+        uncachedFeedRows(userName, q, it -> {
+            rows.add(SearchResultCache.copy(it));
+            sink.accept(it);
+        });
+        RESULTS.put(key, new SearchResultCache.Entry(writeSeq, readEpoch, rows.toArray(new PostItem[0])));
+    }
+
+    // Unread reply counts of the posts in the id array (binds the user twice, then the array)
+    private static final String UNREAD_COUNTS_SQL =
+            "SELECT p.id, " + UNREAD_COUNT + " AS unread"
+          + " FROM TABLE(x BIGINT = ?) dv JOIN posts p ON p.id = dv.x"
+          + " LEFT JOIN reply_read_marks m ON m.user_name = ? AND m.post_id = p.id";
+
+    /**
+     * The cached rows for key, or null on a miss. If the user's read state changed since the
+     * entry was filled, its read flags (from the user's ReadSet) and unread counts (one
+     * statement for the cached ids) are refreshed first; a query that filters on read state
+     * is run again instead.
+     */
+    private static List<PostItem> cachedResults(SearchResultCache.Key key, FeedQuery q) throws SQLException {
+        SearchResultCache.Entry e = RESULTS.get(key);
+        if (e == null) return null;
+        String userName = key.userName();
+        long readEpoch = RESULTS.readEpoch(userName);
+        if (e.readEpoch() == readEpoch) return e.items();
+        if (q.usesReadState()) return null;
+
+        List<PostItem> rows = e.items();
+        ReadSet read = readSet(userName);
+        LongStream.Builder replied = LongStream.builder();
+        for (PostItem it : rows) {
+            it.isRead = read.isPostRead(it.id);
+            it.unreadReplyCount = 0;
+            if (it.replyCount > 0) replied.add(it.id);
+        }
+        long[] ids = replied.build().toArray();
+        if (ids.length > 0) {
+            flushReadState();
+            Map<Long, Integer> unread = new HashMap<>(ids.length * 2);
+            try (Connection c = getConnection();
+                 PreparedStatement ps = c.prepareStatement(UNREAD_COUNTS_SQL)) {
+                ps.setString(1, userName);             // UNREAD_COUNT
+                ps.setObject(2, boxed(ids));
+                ps.setString(3, userName);             // reply_read_marks
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) unread.put(rs.getLong(1), Math.max(0, rs.getInt(2)));
                 }
             }
-            return out;
+            for (PostItem it : rows) it.unreadReplyCount = unread.getOrDefault(it.id, 0);
         }
+        SearchResultCache.Entry fresh = new SearchResultCache.Entry(e.writeSeq(), readEpoch, rows.toArray(new PostItem[0]));
+        RESULTS.put(key, fresh);
+        return fresh.items();
     }
 
-    /*======================== Connection + Schema ========================*/
+    // forEachFeedRow without the result cache; the caller has flushed the read state
+    private static void uncachedFeedRows(String userName, FeedQuery q,
+                                         Consumer<? super PostItem> sink) throws SQLException {
+        if (q.parsed != null) {
+            forEachQueryRow(userName, q, sink);
+            return;
+        }
+        IndexMatches m = indexMatches(userName, q);
+        if (m.empty()) return;
+        feedRows(userName, q, m, sink);
+    }
 
- // Optional: track schema init exactly once
-    private static volatile boolean SCHEMA_READY = false;
+    /** Runs the feed statement of q's shape, with m from {@link #indexMatches}. */
+    private static void feedRows(String userName, FeedQuery q, IndexMatches m,
+                                 Consumer<? super PostItem> sink) throws SQLException {
+        // a ranked search is not paged: the paging bits are dropped and the limit applied after ranking
+        int shape = m.shape(q.shape());
+        try (Connection c = getConnection()) {
+            // the category filter compares thread ids; a name with no thread matches nothing
+            Long threadId = q.thread == null ? null : ThreadDictionary.idOf(c, q.thread);
+            if (q.thread != null && threadId == null) return;
+
+            try (PreparedStatement ps = c.prepareStatement(feedSql(shape))) {
+                int idx = 1;
+                ps.setString(idx++, userName);     // UNREAD_COUNT
+                ps.setString(idx++, userName);     // reply_read_marks
+                ps.setString(idx++, userName);     // post_reads
+                idx = bindFeedFilters(ps, idx, q, threadId, m);
+                if ((shape & FeedQuery.AFTER) != 0) {
+                    ps.setTimestamp(idx++, q.afterCreatedAt);
+                    ps.setTimestamp(idx++, q.afterCreatedAt);
+                    ps.setTimestamp(idx++, q.afterCreatedAt);
+                    ps.setLong(idx++, q.afterId);
+                }
+                if ((shape & (FeedQuery.BEFORE | FeedQuery.THROUGH)) != 0) {
+                    ps.setTimestamp(idx++, q.beforeCreatedAt);
+                    ps.setTimestamp(idx++, q.beforeCreatedAt);
+                    ps.setTimestamp(idx++, q.beforeCreatedAt);
+                    ps.setLong(idx++, q.beforeId);
+                }
+                if ((shape & FeedQuery.LIMITED) != 0) ps.setInt(idx++, q.limit);
 
-    public static Connection getConnection() throws SQLException {
-        try {
-            Class.forName(JDBC_DRIVER);
-            Connection c = DriverManager.getConnection(DB_URL, USER, PASS);
-            if (!SCHEMA_READY) {
-                // ensureSchema is idempotent; this just makes it cheaper after first call
-                ensureSchema(c);
-                SCHEMA_READY = true;
+                SearchIndex.Hits hits = m.ranked();
+                if (hits == null) {
+                    streamRows(c, ps, rs -> feedItem(rs, userName), sink);
+                    return;
+                }
+                Map<Long, Integer> rank = new HashMap<>(hits.ids().length * 2);
+                for (int i = 0; i < hits.ids().length; i++) rank.put(hits.ids()[i], i);
+                PostItem[] ranked = new PostItem[hits.ids().length];
+                streamRows(c, ps, rs -> feedItem(rs, userName), it -> ranked[rank.get(it.id)] = it);
+                List<String> terms = Tokenizer.terms(q.search);
+                attachSnippets(c, ranked, hits.matchAt(), terms);
+                attachReplyExcerpts(c, ranked, hits.replies(), hits.replyAt(), hits.repliesOnly(), terms);
+                int sent = 0;
+                for (PostItem it : ranked) {
+                    if (it == null) continue;               // filtered out by the other predicates
+                    if (q.limit > 0 && sent++ == q.limit) break;
+                    sink.accept(it);
+                }
             }
-            return c; // callers can safely close this in try-with-resources
-        } catch (ClassNotFoundException e) {
-            throw new SQLException("JDBC driver not found", e);
         }
     }
 
-    /** Global schema creation (idempotent). Safe no matter who calls it first. */
-    private static void ensureSchema(Connection c) throws SQLException {
-        try (Statement s = c.createStatement()) {
-            // --- Core admin/user tables (so first-run checks always succeed) ---
-            s.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS userDB (
-                  id INT AUTO_INCREMENT PRIMARY KEY,
-                  userName VARCHAR(255) UNIQUE,
-                  password VARCHAR(255),
-                  firstName VARCHAR(255),
-                  middleName VARCHAR(255),
-                  lastName VARCHAR(255),
-                  preferredFirstName VARCHAR(255),
-                  emailAddress VARCHAR(255),
-                  adminRole BOOL DEFAULT FALSE,
-                  studentRole BOOL DEFAULT FALSE,
-                  reviewerRole BOOL DEFAULT FALSE
-                )
-            """);
+    // A window of the body of each post named in the id array: window length, ids, window starts (from 0)
+    private static final String BODY_WINDOW_SQL =
+            "SELECT dv.x, SUBSTRING(p.content, dv.s + 1, ?) FROM TABLE(x BIGINT = ?, s INT = ?) dv"
+          + " JOIN posts p ON p.id = dv.x";
+
+    // A snippet's window reaches this far back from the match, and is twice PREVIEW_CHARS long
+    private static final int SNIPPET_LEAD = PREVIEW_CHARS / 2;
+    private static final int SNIPPET_WINDOW = 2 * PREVIEW_CHARS;
+
+    /**
+     * Sets the snippet and match fields of the ranked rows whose body matched (matchAt[i] is
+     * the body offset of ranked[i]'s first match, -1 if none), reading only a window of each
+     * body around the match, in one statement.
+     */
+    private static void attachSnippets(Connection c, PostItem[] ranked, int[] matchAt,
+                                       List<String> terms) throws SQLException {
+        Map<Long, PostItem> byPost = new HashMap<>();
+        Map<Long, Integer> at = new HashMap<>();
+        for (int i = 0; i < ranked.length; i++) {
+            if (ranked[i] == null || matchAt[i] < 0) continue;
+            byPost.put(ranked[i].id, ranked[i]);
+            at.put(ranked[i].id, matchAt[i]);
+        }
+        if (byPost.isEmpty()) return;
+        Long[] ids = byPost.keySet().toArray(new Long[0]);
+        Integer[] from = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i++) from[i] = Math.max(0, at.get(ids[i]) - SNIPPET_LEAD);
+        try (PreparedStatement ps = c.prepareStatement(BODY_WINDOW_SQL)) {
+            ps.setInt(1, SNIPPET_WINDOW);
+            ps.setObject(2, ids);
+            ps.setObject(3, from);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    PostItem it = byPost.get(rs.getLong(1));
+                    String window = rs.getString(2);
+                    int match = at.get(it.id), start = Math.max(0, match - SNIPPET_LEAD);
+                    Snippets.Snippet s = Snippets.around(window, match - start, start == 0,
+                            window == null || window.length() < SNIPPET_WINDOW, terms, PREVIEW_CHARS);
+                    it.snippet = s.text();
+                    it.snippetMatches = s.matches();
+                    if (s.matchLength() > 0) {
+                        it.matchAt = match;
+                        it.matchLength = s.matchLength();
+                    }
+                }
+            }
+        }
+    }
 
-            s.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS InvitationCodes(
-                  code VARCHAR(10) PRIMARY KEY,
-                  emailAddress VARCHAR(255),
-                  deadline TIMESTAMP,
-                  role VARCHAR(10)
-                )
-            """);
+    // A window of each reply named in the id array, as BODY_WINDOW_SQL
+    private static final String REPLY_WINDOW_SQL =
+            "SELECT dv.x, SUBSTRING(r.content, dv.s + 1, ?) FROM TABLE(x BIGINT = ?, s INT = ?) dv"
+          + " JOIN replies r ON r.id = dv.x";
+
+    /**
+     * Sets replyExcerpt and replyMatches on the ranked rows whose best match was a reply
+     * (replies[i] is the best reply of ranked[i], 0 if none, and replyAt[i] the offset of its
+     * first match), reading only a window of each reply around the match, in one statement. A
+     * row found only through its reply (repliesOnly[i]) is cleared if that reply has been
+     * deleted since the index last heard of it.
+     */
+    private static void attachReplyExcerpts(Connection c, PostItem[] ranked, long[] replies, int[] replyAt,
+                                            boolean[] repliesOnly, List<String> terms) throws SQLException {
+        Map<Long, Integer> byReply = new HashMap<>();
+        for (int i = 0; i < ranked.length; i++) {
+            if (ranked[i] != null && replies[i] != 0) byReply.put(replies[i], i);
+        }
+        if (byReply.isEmpty()) return;
+        Long[] ids = byReply.keySet().toArray(new Long[0]);
+        Integer[] from = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i++) from[i] = Math.max(0, replyAt[byReply.get(ids[i])] - SNIPPET_LEAD);
+        try (PreparedStatement ps = c.prepareStatement(REPLY_WINDOW_SQL)) {
+            ps.setInt(1, SNIPPET_WINDOW);
+            ps.setObject(2, ids);
+            ps.setObject(3, from);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int i = byReply.remove(rs.getLong(1));
+                    PostItem it = ranked[i];
+                    String window = rs.getString(2);
+                    int match = replyAt[i], start = Math.max(0, match - SNIPPET_LEAD);
+                    Snippets.Snippet s = Snippets.around(window, match < 0 ? -1 : match - start, start == 0,
+                            window == null || window.length() < SNIPPET_WINDOW, terms, PREVIEW_CHARS);
+                    it.replyExcerpt = s.text();
+                    it.replyMatches = s.matches();
+                }
+            }
+        }
+        for (int i : byReply.values()) if (repliesOnly[i]) ranked[i] = null;    // reply rows not found
+    }
 
-            s.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS OneTimePass(
-                  emailAddress VARCHAR(255),
-                  password VARCHAR(32) PRIMARY KEY,
-                  used BOOL DEFAULT FALSE
-                )
-            """);
+    // The columns a plan's residual may test, for the id-only statements of a query
+    private static final String QUERY_ID_COLUMNS =
+            "SELECT p.id, p.author, p.thread, COALESCE(p.kind, 'Post') AS kind, p.created_at, p.reply_count,"
+          + " pr.post_id IS NOT NULL AS is_read";
+
+    /**
+     * {@link #forEachFeedRow} of a structured query. Without words to rank by, the planned
+     * statement returns the page newest first. Otherwise it only returns the matching ids; the
+     * search index ranks them, matches with no ranked word follow newest first, and the top
+     * rows are fetched like a search's. A query of fields alone has no text to match, so its
+     * rows carry no snippet.
+     */
+    private static void forEachQueryRow(String userName, FeedQuery q,
+                                        Consumer<? super PostItem> sink) throws SQLException {
+        boolean ranked = !q.parsed.rankingTerms().isEmpty();
+        SearchIndex.Hits hits;
+        String rankText;
+        try (Connection c = getConnection()) {
+            QueryPlanner.Plan plan = PLANNER.plan(c, q, readPostCount(userName), !ranked, q.limit);
+            if (plan.empty()) return;
+            if (!ranked) {
+                // a residual is checked in Java, so the limit is too
+                boolean sqlLimit = q.limit > 0 && plan.residual() == null;
+                String sql = FEED_COLUMNS + " FROM " + plan.from() + FEED_JOINS + " WHERE 1=1" + plan.where()
+                           + " ORDER BY p.created_at DESC, p.id DESC" + (sqlLimit ? " LIMIT ?" : "");
+                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                    int idx = 1;
+                    ps.setString(idx++, userName);     // UNREAD_COUNT
+                    idx = plan.bindFrom(ps, idx);
+                    ps.setString(idx++, userName);     // reply_read_marks
+                    ps.setString(idx++, userName);     // post_reads
+                    idx = plan.bindWhere(ps, idx);
+                    if (sqlLimit) ps.setInt(idx, q.limit);
+                    streamRows(c, ps, plan.residual(), q.limit, rs -> feedItem(rs, userName), sink);
+                }
+                return;
+            }
+            long[] ids = plan.ids() != null ? plan.ids() : queryIds(c, userName, plan);
+            int max = q.limit > 0 ? Math.min(q.limit, SEARCH_MAX_HITS) : SEARCH_MAX_HITS;
+            hits = withUnranked(SEARCH.search(plan.rankText(), max, ids), ids, max);
+            hits = withPhraseMatches(c, hits, q.parsed.rankingPhrases());
+            rankText = plan.rankText();
+        }
+        if (hits.ids().length == 0) return;
+        feedRows(userName, FeedQuery.all().search(rankText).limit(q.limit), new IndexMatches(hits, null), sink);
+    }
 
-            // --- Threads (must exist before posts) ---
-            s.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS threads(
-                  id IDENTITY PRIMARY KEY,
-                  name VARCHAR(120) NOT NULL UNIQUE
-                )
-            """);
+    /** Ids of the posts matching plan (ascending). */
+    private static long[] queryIds(Connection c, String userName, QueryPlanner.Plan plan) throws SQLException {
+        String sql = QUERY_ID_COLUMNS + " FROM " + plan.from()
+                   + " LEFT JOIN post_reads pr ON pr.post_id = p.id AND pr.user_name = ?"
+                   + " WHERE 1=1" + plan.where();
+        LongStream.Builder ids = LongStream.builder();
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            int idx = plan.bindFrom(ps, 1);
+            ps.setString(idx++, userName);
+            plan.bindWhere(ps, idx);
+            streamRows(c, ps, plan.residual(), 0, rs -> rs.getLong("id"), ids::add);
+        }
+        return ids.build().sorted().toArray();
+    }
 
-            // --- Posts ---
-            
-            try (Statement st = c.createStatement()) {
-                // Base tables if missing
-                st.execute("""
-                    CREATE TABLE IF NOT EXISTS posts (
-                      id IDENTITY PRIMARY KEY,
-                      author VARCHAR(100) NOT NULL,
-                      title VARCHAR(255),
-                      content CLOB,
-                      thread VARCHAR(100) DEFAULT 'General',
-                      kind VARCHAR(50) DEFAULT 'Post',
-                      is_private BOOLEAN DEFAULT FALSE,
-                      is_anonymous BOOLEAN DEFAULT FALSE,
-                      created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                      updated_at TIMESTAMP,
-                      deleted BOOLEAN DEFAULT FALSE,
-                      deleted_at TIMESTAMP
-                    )
-                """);
-
-                st.execute("""
-                    CREATE TABLE IF NOT EXISTS replies (
-                      id IDENTITY PRIMARY KEY,
-                      post_id BIGINT NOT NULL,
-                      author VARCHAR(100) NOT NULL,
-                      content CLOB,
-                      created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                      updated_at TIMESTAMP,
-                      FOREIGN KEY (post_id) REFERENCES posts(id)
-                    )
-                """);
-
-                // If your DB was created earlier without these columns, add them:
-                st.execute("ALTER TABLE posts ADD COLUMN IF NOT EXISTS thread VARCHAR(100) DEFAULT 'General'");
-                st.execute("ALTER TABLE posts ADD COLUMN IF NOT EXISTS kind VARCHAR(50) DEFAULT 'Post'");
-                st.execute("ALTER TABLE posts ADD COLUMN IF NOT EXISTS is_private BOOLEAN DEFAULT FALSE");
-                st.execute("ALTER TABLE posts ADD COLUMN IF NOT EXISTS is_anonymous BOOLEAN DEFAULT FALSE");
-                // Ensure soft-delete columns exist (H2 supports IF NOT EXISTS)
-                st.execute("ALTER TABLE posts ADD COLUMN IF NOT EXISTS deleted BOOLEAN DEFAULT FALSE");
-                st.execute("ALTER TABLE posts ADD COLUMN IF NOT EXISTS deleted_at TIMESTAMP");
-
-                // Optional: a real threads table (staff manages this). We’ll seed “General”.
-                st.execute("""
-                    CREATE TABLE IF NOT EXISTS threads (
-                      id IDENTITY PRIMARY KEY,
-                      name VARCHAR(100) UNIQUE NOT NULL
-                    )
-                """);
-                st.execute("""
-                    INSERT INTO threads(name)
-                    SELECT 'General'
-                    WHERE NOT EXISTS (SELECT 1 FROM threads WHERE name = 'General')
-                """);
-             
+    // Offset + 1 of a phrase (lower case) in the body of each post named in the id array, 0 if absent
+    private static final String PHRASE_AT_SQL =
+            "SELECT dv.x, LOCATE(?, LOWER(p.content)) FROM TABLE(x BIGINT = ?) dv JOIN posts p ON p.id = dv.x";
+
+    /**
+     * hits, with the first occurrence of one of phrases as the body match of those the index
+     * found none for: a phrase also matches inside longer words ("overdue dates"), which the
+     * index does not count as its terms, and the unranked tail has no offsets at all.
+     */
+    private static SearchIndex.Hits withPhraseMatches(Connection c, SearchIndex.Hits hits,
+                                                      List<String> phrases) throws SQLException {
+        Map<Long, Integer> missing = new HashMap<>();
+        for (int i = 0; i < hits.ids().length; i++) if (hits.matchAt()[i] < 0) missing.put(hits.ids()[i], i);
+        if (missing.isEmpty() || phrases.isEmpty()) return hits;
+        int[] matchAt = hits.matchAt().clone();
+        Long[] ids = missing.keySet().toArray(new Long[0]);
+        try (PreparedStatement ps = c.prepareStatement(PHRASE_AT_SQL)) {
+            for (String phrase : phrases) {
+                ps.setString(1, phrase);
+                ps.setObject(2, ids);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        int i = missing.get(rs.getLong(1)), at = rs.getInt(2) - 1;
+                        if (at >= 0 && (matchAt[i] < 0 || at < matchAt[i])) matchAt[i] = at;
+                    }
+                }
             }
+        }
+        return new SearchIndex.Hits(hits.ids(), hits.scores(), hits.replies(), hits.replyAt(), matchAt,
+                                    hits.repliesOnly(), hits.total());
+    }
 
-            // --- Read tracking ---
-            s.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS post_reads(
-                  user_name VARCHAR(120) NOT NULL,
-                  post_id BIGINT NOT NULL,
-                  last_read_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                  PRIMARY KEY(user_name, post_id),
-                  CONSTRAINT fk_post_reads_post FOREIGN KEY (post_id) REFERENCES posts(id)
-                )
-            """);
+    // hits, followed by further matching ids newest (highest id) first, unscored, up to max
+    private static SearchIndex.Hits withUnranked(SearchIndex.Hits hits, long[] matching, int max) {
+        int size = Math.min(max, matching.length);
+        if (hits.ids().length >= size) return hits;
+        Set<Long> ranked = new HashSet<>();
+        for (long id : hits.ids()) ranked.add(id);
+        long[] ids = Arrays.copyOf(hits.ids(), size);
+        float[] scores = Arrays.copyOf(hits.scores(), size);
+        long[] replies = Arrays.copyOf(hits.replies(), size);
+        int[] replyAt = Arrays.copyOf(hits.replyAt(), size);
+        int[] matchAt = Arrays.copyOf(hits.matchAt(), size);
+        boolean[] repliesOnly = Arrays.copyOf(hits.repliesOnly(), size);
+        int n = hits.ids().length;
+        Arrays.fill(matchAt, n, size, -1);
+        for (int i = matching.length - 1; i >= 0 && n < size; i--) {
+            if (!ranked.contains(matching[i])) ids[n++] = matching[i];
+        }
+        return new SearchIndex.Hits(ids, scores, replies, replyAt, matchAt, repliesOnly, matching.length);
+    }
 
-            s.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS reply_reads(
-                  user_name VARCHAR(120) NOT NULL,
-                  reply_id BIGINT NOT NULL,
-                  read_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-                  PRIMARY KEY(user_name, reply_id),
-                  CONSTRAINT fk_reply_reads_reply FOREIGN KEY (reply_id) REFERENCES replies(id)
-                )
-            """);
+    private static PostItem feedItem(ResultSet rs, String userName) throws SQLException {
+        PostItem it = new PostItem(
+                rs.getLong("id"),
+                rs.getString("author"),
+                rs.getString("thread"),
+                rs.getString("title"),
+                rs.getString("kind"),
+                null,                       // body is fetched on open (getPostBody)
+                rs.getBoolean("is_anonymous"),
+                rs.getBoolean("is_private"),
+                rs.getTimestamp("created_at"),
+                rs.getInt("reply_count"),
+                userName == null ? 0 : Math.max(0, rs.getInt("unread_count")));
+        it.preview = rs.getString("preview");
+        it.isDeleted = rs.getBoolean("deleted");
+        it.isRead = rs.getBoolean("is_read");
+        return it;
+    }
 
-            // --- Seed default thread (omit id so IDENTITY auto-generates) ---
-            s.executeUpdate("""
-                MERGE INTO threads (name)
-                KEY(name)
-                VALUES ('General')
-            """);
+    /*======================== Connection + Schema ========================*/
+
+    private static volatile ConnectionPool POOL = null;
+
+    /** Lazily builds the shared pool and warms it up; the schema is ensured by connectToDatabase. */
+    private static ConnectionPool pool() throws SQLException {
+        ConnectionPool p = POOL;
+        if (p != null) return p;
+        synchronized (Database.class) {
+            if (POOL == null) {
+                ConnectionPool created = new ConnectionPool(DB_URL, USER, PASS,
+                        POOL_MIN_SIZE, POOL_MAX_SIZE,
+                        POOL_BORROW_TIMEOUT_MS, POOL_LEAK_THRESHOLD_MS, POOL_VALIDATE_TIMEOUT_S,
+                        STATEMENT_CACHE_SIZE);
+                try {
+                    created.warmUp();
+                } catch (SQLException e) {
+                    created.shutdown();
+                    throw e;
+                }
+                POOL = created;
+            }
+            return POOL;
         }
     }
 
+    /** Borrow a pooled connection; callers close it (try-with-resources) to return it. */
+    public static Connection getConnection() throws SQLException {
+        return pool().borrow();
+    }
+
+    /** Brings the schema up to date (no DDL at all when it is already current). */
+    private static void ensureSchema(Connection c) throws SQLException {
+        SchemaMigrations.migrate(c);
+    }
+
     /*======================== Read/Unread helpers ========================*/
 
     // Keep your existing helpers (markPostViewed, getUnreadReplyCount, listReplies, etc.) as-is.
     // Below are the explicit checkbox-driven helpers.
+    //
+    // Writes go through READ_STATE (write-behind) and update the user's ReadSet, which answers
+    // point lookups from memory; set-based reads (feeds, reply lists, unread counts) flush
+    // READ_STATE before querying.
+
+    // Read sets of the users with a session in this JVM (normally only the one logged in)
+    private static final ConcurrentHashMap<String, ReadSet> READ_SETS =
+            new ConcurrentHashMap<>();
 
     public static boolean isPostRead(String userName, long postId) throws Exception {
         if (userName == null) return false;
-        try (Connection c = getConnection();
-             PreparedStatement ps = c.prepareStatement(
-                     "SELECT 1 FROM post_reads WHERE user_name=? AND post_id=?")) {
-            ps.setString(1, userName);
-            ps.setLong(2, postId);
-            try (ResultSet rs = ps.executeQuery()) {
-                return rs.next();
-            }
-        }
+        return readSet(userName).isPostRead(postId);
     }
 
-    public static void setPostRead(String userName, long postId, boolean read) throws Exception {
+    /** Queues the post's read flag; it reaches post_reads with the next batch. */
+    public static void setPostRead(String userName, long postId, boolean read) {
         if (userName == null) return;
-        try (Connection c = getConnection()) {
-            if (read) {
-                try (PreparedStatement ps = c.prepareStatement("""
-                    MERGE INTO post_reads(user_name, post_id, last_read_at)
-                    KEY(user_name, post_id)
-                    VALUES(?, ?, CURRENT_TIMESTAMP)
-                """)) {
-                    ps.setString(1, userName);
-                    ps.setLong(2, postId);
-                    ps.executeUpdate();
-                }
-            } else {
-                try (PreparedStatement ps = c.prepareStatement(
-                        "DELETE FROM post_reads WHERE user_name=? AND post_id=?")) {
-                    ps.setString(1, userName);
-                    ps.setLong(2, postId);
-                    ps.executeUpdate();
+        ReadSet set = READ_SETS.get(userName);
+        if (set != null) set.setPostRead(postId, read);
+        READ_STATE.setPostRead(userName, postId, read);
+        RESULTS.readChanged(userName);
+    }
+
+    /** Queues the reply's read flag; the user's mark/exceptions follow with the next batch. */
+    public static void setReplyRead(String userName, long replyId, boolean read) {
+        if (userName == null) return;
+        READ_STATE.setReplyRead(userName, replyId, read);
+        RESULTS.readChanged(userName);
+    }
+
+    /** How many posts the user has read, if the user's read set is loaded (else -1). */
+    private static long readPostCount(String userName) {
+        ReadSet set = userName == null ? null : READ_SETS.get(userName);
+        return set == null ? -1 : set.readPostCount();
+    }
+
+    /** The user's read set, loading it on first use from post_reads; concurrent callers share one load. */
+    private static ReadSet readSet(String userName) throws SQLException {
+        ReadSet set = READ_SETS.get(userName);
+        if (set != null) return set;
+        ReadSet fresh = new ReadSet();
+        set = READ_SETS.putIfAbsent(userName, fresh);
+        if (set != null) return set;
+        try {
+            flushReadState();
+            LongBitmap posts = new LongBitmap();
+            try (Connection c = getConnection();
+                 PreparedStatement ps = c.prepareStatement("SELECT post_id FROM post_reads WHERE user_name = ?")) {
+                ps.setString(1, userName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) posts.add(rs.getLong(1));
                 }
             }
+            fresh.loaded(posts);
+            return fresh;
+        } catch (SQLException | RuntimeException e) {
+            READ_SETS.remove(userName, fresh);
+            fresh.failed();
+            throw e;
         }
     }
 
-    public static boolean isReplyRead(String userName, long replyId) throws Exception {
-        if (userName == null) return false;
-        try (Connection c = getConnection();
-             PreparedStatement ps = c.prepareStatement(
-                     "SELECT 1 FROM reply_reads WHERE user_name=? AND reply_id=?")) {
+    // Ids of the posts matching a FeedQuery's filters (paging ignored); binds the user, then the filters
+    private static final ConcurrentHashMap<Integer, String> MATCHING_POSTS_SQL =
+            new ConcurrentHashMap<>();
+
+    private static String matchingPostsSql(int shape) {
+        return MATCHING_POSTS_SQL.computeIfAbsent(shape, s -> {
+            StringBuilder sql = new StringBuilder(
+                    "SELECT p.id FROM posts p"
+                  + " LEFT JOIN post_reads pr ON pr.post_id = p.id AND pr.user_name = ?"
+                  + " WHERE 1=1");
+            appendFeedFilters(sql, s);
+            return sql.toString();
+        });
+    }
+
+    // A batch of a query's matching ids, in the same form (binds the user, then the ids)
+    private static final String MATCHING_IDS_SQL =
+            "SELECT p.id FROM posts p"
+          + " LEFT JOIN post_reads pr ON pr.post_id = p.id AND pr.user_name = ?"
+          + " WHERE p.id = ANY(?)";
+
+    /** Binds the filters of a matching-posts statement from the given index on. */
+    private interface MatchingBinder {
+        void bind(PreparedStatement ps, int idx) throws SQLException;
+    }
+
+    /**
+     * Marks every post matching q's filters read for userName, together with all of their
+     * replies (each post's mark moves to its last reply and its exceptions are dropped).
+     * Paging in q is ignored. Runs three set-based statements in one transaction, however
+     * many posts and replies match; returns the number of posts matched. For a structured
+     * query the matching ids are found first and marked QueryPlanner.ANY_MAX at a time.
+     */
+    public static int markAllRead(String userName, FeedQuery q) throws SQLException {
+        if (userName == null) return 0;
+        flushReadState();    // older queued toggles must not land on top of this
+        int marked;
+        if (q.parsed != null) {
+            marked = inTransaction(c -> {
+                QueryPlanner.Plan plan = PLANNER.plan(c, q, readPostCount(userName), false, 0);
+                if (plan.empty()) return 0;
+                long[] ids = plan.ids() != null ? plan.ids() : queryIds(c, userName, plan);
+                int n = 0;
+                for (int from = 0; from < ids.length; from += QueryPlanner.ANY_MAX) {
+                    Long[] batch = boxed(Arrays.copyOfRange(ids, from, Math.min(ids.length, from + QueryPlanner.ANY_MAX)));
+                    n += markMatchingRead(c, userName, MATCHING_IDS_SQL, (ps, idx) -> ps.setObject(idx, batch));
+                }
+                return n;
+            });
+        } else {
+            IndexMatches m = indexMatches(userName, q);
+            if (m.empty()) return 0;
+            String matching = matchingPostsSql(m.shape(q.shape() & FeedQuery.FILTERS));
+            marked = inTransaction(c -> {
+                Long threadId = q.thread == null ? null : ThreadDictionary.idOf(c, q.thread);
+                if (q.thread != null && threadId == null) return 0;
+                return markMatchingRead(c, userName, matching, (ps, idx) -> bindFeedFilters(ps, idx, q, threadId, m));
+            });
+        }
+        READ_SETS.remove(userName);     // reloaded on the next lookup
+        RESULTS.readChanged(userName);
+        return marked;
+    }
+
+    // The three statements of markAllRead for the posts of matching; returns the posts marked
+    private static int markMatchingRead(Connection c, String userName, String matching,
+                                        MatchingBinder filters) throws SQLException {
+        // replies first: marking the posts read changes what a Seen/Unseen filter matches
+        try (PreparedStatement ps = c.prepareStatement(
+                "DELETE FROM reply_read_exceptions WHERE user_name = ? AND post_id IN (" + matching + ")")) {
             ps.setString(1, userName);
-            ps.setLong(2, replyId);
-            try (ResultSet rs = ps.executeQuery()) {
-                return rs.next();
-            }
+            ps.setString(2, userName);
+            filters.bind(ps, 3);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = c.prepareStatement(
+                "MERGE INTO reply_read_marks(user_name, post_id, last_reply_id) KEY(user_name, post_id)"
+              + " SELECT CAST(? AS VARCHAR(120)), r.post_id, MAX(r.id) FROM replies r"
+              + " WHERE r.post_id IN (" + matching + ") GROUP BY r.post_id")) {
+            ps.setString(1, userName);
+            ps.setString(2, userName);
+            filters.bind(ps, 3);
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = c.prepareStatement(
+                "MERGE INTO post_reads(user_name, post_id, last_read_at) KEY(user_name, post_id)"
+              + " SELECT CAST(? AS VARCHAR(120)), mp.id, CURRENT_TIMESTAMP FROM (" + matching + ") mp")) {
+            ps.setString(1, userName);
+            ps.setString(2, userName);
+            filters.bind(ps, 3);
+            return ps.executeUpdate();
         }
     }
 
-    public static void setReplyRead(String userName, long replyId, boolean read) throws Exception {
-        if (userName == null) return;
-        try (Connection c = getConnection()) {
-            if (read) {
-                try (PreparedStatement ps = c.prepareStatement("""
-                    MERGE INTO reply_reads(user_name, reply_id, read_at)
-                    KEY(user_name, reply_id)
-                    VALUES(?, ?, CURRENT_TIMESTAMP)
-                """)) {
-                    ps.setString(1, userName);
-                    ps.setLong(2, replyId);
-                    ps.executeUpdate();
+    /** Ends the read-tracking session: writes queued changes and drops the in-memory read sets. */
+    public static void endReadSession() throws SQLException {
+        flushReadState();
+        READ_SETS.clear();
+    }
+
+    /** Writes every queued read-state change now (logout, exit, before set-based reads). */
+    public static void flushReadState() throws SQLException {
+        READ_STATE.flush();
+    }
+
+    /** Writes one batch of read-state changes in a single transaction. */
+    static void writeReadState(Map<ReadStateBuffer.Key, Boolean> posts,
+                               Map<ReadStateBuffer.Key, Boolean> replies) throws SQLException {
+        inTransaction(c -> {
+            if (!posts.isEmpty()) {
+                try (PreparedStatement merge = c.prepareStatement("""
+                         MERGE INTO post_reads(user_name, post_id, last_read_at)
+                         KEY(user_name, post_id)
+                         VALUES(?, ?, CURRENT_TIMESTAMP)
+                     """);
+                     PreparedStatement delete = c.prepareStatement(
+                         "DELETE FROM post_reads WHERE user_name=? AND post_id=?")) {
+                    boolean merges = false, deletes = false;
+                    for (var e : posts.entrySet()) {
+                        PreparedStatement ps = e.getValue() ? merge : delete;
+                        ps.setString(1, e.getKey().userName());
+                        ps.setLong(2, e.getKey().id());
+                        ps.addBatch();
+                        if (e.getValue()) merges = true; else deletes = true;
+                    }
+                    if (merges)  merge.executeBatch();
+                    if (deletes) delete.executeBatch();
                 }
-            } else {
-                try (PreparedStatement ps = c.prepareStatement(
-                        "DELETE FROM reply_reads WHERE user_name=? AND reply_id=?")) {
-                    ps.setString(1, userName);
-                    ps.setLong(2, replyId);
-                    ps.executeUpdate();
+            }
+            if (!replies.isEmpty()) writeReplyReads(c, replies);
+            return null;
+        });
+    }
+
+    /**
+     * Applies reply read flags to the watermark model. A flag equal to the default for the
+     * reply's position (read at or below the mark, unread above it) removes its exception row;
+     * any other flag adds one. Marks then advance over replies that are now read in order.
+     */
+    private static void writeReplyReads(Connection c, Map<ReadStateBuffer.Key, Boolean> replies)
+            throws SQLException {
+        // (user, post) -> current mark, for posts where a reply above the mark was read
+        Map<ReadStateBuffer.Key, Long> advance = new LinkedHashMap<>();
+        try (PreparedStatement locate = c.prepareStatement("""
+                 SELECT r.post_id, COALESCE(m.last_reply_id, 0)
+                   FROM replies r
+                   LEFT JOIN reply_read_marks m ON m.user_name = ? AND m.post_id = r.post_id
+                  WHERE r.id = ?
+             """);
+             PreparedStatement add = c.prepareStatement("""
+                 MERGE INTO reply_read_exceptions(user_name, reply_id, post_id)
+                 KEY(user_name, reply_id)
+                 VALUES(?, ?, ?)
+             """);
+             PreparedStatement remove = c.prepareStatement(
+                 "DELETE FROM reply_read_exceptions WHERE user_name=? AND reply_id=?")) {
+            boolean adds = false, removes = false;
+            for (var e : replies.entrySet()) {
+                String user = e.getKey().userName();
+                long replyId = e.getKey().id();
+                boolean read = e.getValue();
+                long postId, mark;
+                locate.setString(1, user);
+                locate.setLong(2, replyId);
+                try (ResultSet rs = locate.executeQuery()) {
+                    if (!rs.next()) continue;        // reply deleted since it was toggled
+                    postId = rs.getLong(1);
+                    mark = rs.getLong(2);
+                }
+                boolean belowMark = replyId <= mark;
+                if (read == belowMark) {
+                    remove.setString(1, user);
+                    remove.setLong(2, replyId);
+                    remove.addBatch();
+                    removes = true;
+                } else {
+                    add.setString(1, user);
+                    add.setLong(2, replyId);
+                    add.setLong(3, postId);
+                    add.addBatch();
+                    adds = true;
                 }
+                if (read && !belowMark) advance.put(new ReadStateBuffer.Key(user, postId), mark);
             }
+            if (adds)    add.executeBatch();
+            if (removes) remove.executeBatch();
         }
+        for (var e : advance.entrySet()) advanceMark(c, e.getKey().userName(), e.getKey().id(), e.getValue());
     }
 
-    public static void markPostViewed(String userName, long postId) throws Exception {
-        if (userName == null) return;
-        try (Connection c = getConnection();
-             PreparedStatement ps = c.prepareStatement("""
-                 MERGE INTO post_reads(user_name, post_id, last_read_at)
+    /**
+     * Moves userName's mark in postId up to the last reply before the first unread one above
+     * it, and drops the exception rows the mark now covers.
+     */
+    private static void advanceMark(Connection c, String userName, long postId, long mark)
+            throws SQLException {
+        long newMark;
+        try (PreparedStatement ps = c.prepareStatement("""
+                 SELECT MAX(r.id) FROM replies r
+                  WHERE r.post_id = ? AND r.id > ?
+                    AND r.id < COALESCE((SELECT MIN(g.id) FROM replies g
+                                          WHERE g.post_id = ? AND g.id > ?
+                                            AND NOT EXISTS (SELECT 1 FROM reply_read_exceptions x
+                                                             WHERE x.user_name = ? AND x.reply_id = g.id)),
+                                        9223372036854775807)
+             """)) {
+            ps.setLong(1, postId);
+            ps.setLong(2, mark);
+            ps.setLong(3, postId);
+            ps.setLong(4, mark);
+            ps.setString(5, userName);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                newMark = rs.getLong(1);
+                if (rs.wasNull()) return;            // the first reply above the mark is unread
+            }
+        }
+        try (PreparedStatement ps = c.prepareStatement("""
+                 MERGE INTO reply_read_marks(user_name, post_id, last_reply_id)
                  KEY(user_name, post_id)
-                 VALUES(?, ?, CURRENT_TIMESTAMP)
+                 VALUES(?, ?, ?)
              """)) {
             ps.setString(1, userName);
             ps.setLong(2, postId);
+            ps.setLong(3, newMark);
             ps.executeUpdate();
         }
+        try (PreparedStatement ps = c.prepareStatement("""
+                 DELETE FROM reply_read_exceptions
+                  WHERE user_name = ? AND post_id = ? AND reply_id > ? AND reply_id <= ?
+             """)) {
+            ps.setString(1, userName);
+            ps.setLong(2, postId);
+            ps.setLong(3, mark);
+            ps.setLong(4, newMark);
+            ps.executeUpdate();
+        }
+    }
+
+    /** Marks a post read for userName (queued like {@link #setPostRead}). */
+    public static void markPostViewed(String userName, long postId) {
+        setPostRead(userName, postId, true);
     }
 
+    /** Unread replies of one post: a range count over replies(post_id, id) above the user's mark. */
     public static int getUnreadReplyCount(String userName, long postId) throws Exception {
+        if (userName != null) flushReadState();
         try (Connection c = getConnection();
-             PreparedStatement ps = c.prepareStatement("""
-                 SELECT COUNT(*)
-                 FROM replies r
-                 LEFT JOIN reply_reads rr
-                   ON rr.reply_id = r.id AND rr.user_name = ?
-                 WHERE r.post_id = ?
-                   AND rr.reply_id IS NULL
-             """)) {
+             PreparedStatement ps = c.prepareStatement(
+                     "SELECT " + UNREAD_COUNT + " FROM posts p"
+                   + " LEFT JOIN reply_read_marks m ON m.user_name = ? AND m.post_id = p.id"
+                   + " WHERE p.id = ?")) {
             ps.setString(1, userName);
-            ps.setLong(2, postId);
+            ps.setString(2, userName);
+            ps.setLong(3, postId);
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) return rs.getInt(1);
+                if (rs.next()) return Math.max(0, rs.getInt(1));
             }
         }
         return 0;
@@ -1070,13 +2101,19 @@ public class Database {
         String order = " ORDER BY r.created_at ASC, r.id ASC ";
         boolean unreadOnly = "UNREAD".equalsIgnoreCase(filter);
         String sql = unreadOnly
-                ? base + " LEFT JOIN reply_reads rr ON rr.reply_id = r.id AND rr.user_name = ? " + where + " AND rr.reply_id IS NULL " + order
+                ? base + " LEFT JOIN reply_read_marks m ON m.user_name = ? AND m.post_id = r.post_id "
+                       + " LEFT JOIN reply_read_exceptions x ON x.user_name = ? AND x.reply_id = r.id "
+                       + where + " AND NOT " + REPLY_IS_READ + order
                 : base + where + order;
+        if (unreadOnly) flushReadState();
 
         try (Connection c = getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
             int idx = 1;
-            if (unreadOnly) ps.setString(idx++, userName);
+            if (unreadOnly) {
+                ps.setString(idx++, userName);
+                ps.setString(idx++, userName);
+            }
             ps.setLong(idx, postId);
             List<String> out = new ArrayList<>();
             try (ResultSet rs = ps.executeQuery()) {
@@ -1090,18 +2127,7 @@ public class Database {
         }
     }
 
-    /*======================== Getters + Cleanup ========================*/
-
-    public String  getCurrentUsername()           { return currentUsername; }
-    public String  getCurrentPassword()           { return currentPassword; }
-    public String  getCurrentFirstName()          { return currentFirstName; }
-    public String  getCurrentMiddleName()         { return currentMiddleName; }
-    public String  getCurrentLastName()           { return currentLastName; }
-    public String  getCurrentPreferredFirstName() { return currentPreferredFirstName; }
-    public String  getCurrentEmailAddress()       { return currentEmailAddress; }
-    public boolean getCurrentAdminRole()          { return currentAdminRole; }
-    public boolean getCurrentStudentRole()        { return currentStudentRole; }
-    public boolean getCurrentReviewerRole()       { return currentReviewerRole; }
+    /*======================== Cleanup ========================*/
 
     public void dump() throws SQLException {
         String query = "SELECT * FROM userDB";
@@ -1117,8 +2143,15 @@ public class Database {
     }
 
     public void closeConnection() {
+        try { flushReadState(); } catch (SQLException e) { e.printStackTrace(); }
+        try { SEARCH.close(); } catch (SQLException e) { e.printStackTrace(); }
+        try { REPLY_SEARCH.close(); } catch (SQLException e) { e.printStackTrace(); }
         try { if (statement  != null) statement.close();  } catch (SQLException ignored) {}
         try { if (connection != null) connection.close(); } catch (SQLException ignored) {}
+        synchronized (Database.class) {
+            if (POOL != null) { POOL.shutdown(); POOL = null; }
+        }
+        System.out.println(StatementCache.describeTotals());
     }
    
 }
@@ -0,0 +1,292 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import entityClasses.Completion;
+import entityClasses.PostItem;
+import entityClasses.ReplyRow;
+import entityClasses.UserSnapshot;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.scene.control.Alert;
+
+/*******
+ * <p> Title: DatabaseAsync Class. </p>
+ *
+ * <p> Description: Asynchronous facade over the static {@link Database} helpers for the
+ * JavaFX screens. Each call runs on a virtual thread, at most {@link #MAX_CONCURRENT} at a
+ * time (the connection pool size), and the returned future is completed on the JavaFX
+ * Application Thread, so <code>thenAccept</code> callbacks may touch controls directly.
+ * The FX thread itself never waits on JDBC.</p>
+ *
+ * <p> Cancelling a returned future (e.g. because the user changed the filter again) skips
+ * the work if it has not started; a streamed query then stops before it executes or at its
+ * next row (see {@link CallCancellation}), and the result is dropped.
+ * Threads are never interrupted: H2 closes its data file when a thread is interrupted during
+ * file I/O.</p>
+ *
+ * <p> {@link #busyProperty()} is true while any call is outstanding; views bind a progress
+ * indicator to it.</p>
+ *
+ * <p> {@link #streamFeed} delivers a feed in chunks instead of one list: a small first chunk
+ * (about a screenful) as soon as its rows are read, then larger chunks, at most one per
+ * JavaFX pulse so the ListView never lays out thousands of new rows in a single frame.</p>
+ *
+ * @version 1.02  2026-10-18
+ *  - Cancelling a future stops its streamed query at the next row (CallCancellation)
+ *  - complete(prefix, perKind): search-as-you-type completions
+ *
+ * @version 1.01  2026-10-18
+ *  - streamFeed(...): chunked, pulse-paced delivery of feed rows
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+public class DatabaseAsync {
+
+    /** A Database call that may throw; run off the FX thread. */
+    @FunctionalInterface
+    public interface DbCall<T> {
+        T call() throws Exception;
+    }
+
+    /** A Database call without a result. */
+    @FunctionalInterface
+    public interface DbAction {
+        void run() throws Exception;
+    }
+
+    public static final int MAX_CONCURRENT = Database.POOL_MAX_SIZE;
+
+    // Rows in the first chunk of a streamed feed (one screenful) and in every later chunk
+    public static final int FIRST_CHUNK = Integer.getInteger("db.async.firstChunk", 30);
+    public static final int CHUNK       = Integer.getInteger("db.async.chunk", 200);
+
+    private static final ExecutorService EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("db-async-", 0).factory());
+
+    // Keeps virtual threads from queueing on the connection pool's borrow timeout
+    private static final Semaphore PERMITS = new Semaphore(MAX_CONCURRENT, true);
+
+    private static final AtomicInteger IN_FLIGHT = new AtomicInteger();
+    private static final ReadOnlyBooleanWrapper BUSY = new ReadOnlyBooleanWrapper(false);
+
+    private DatabaseAsync() {}
+
+    /*======================== Core ========================*/
+
+    /** Runs call on a virtual thread; the future completes on the FX thread. */
+    public static <T> CompletableFuture<T> supply(DbCall<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        CallCancellation cancellation = new CallCancellation();
+        result.whenComplete((v, err) -> { if (result.isCancelled()) cancellation.cancel(); });
+        started();
+        EXECUTOR.execute(() -> {
+            T value = null;
+            Throwable failure = null;
+            boolean acquired = false;
+            try {
+                if (!result.isDone()) {
+                    PERMITS.acquire();
+                    acquired = true;
+                    if (!result.isDone()) value = cancellation.run(call);
+                }
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                if (acquired) PERMITS.release();
+            }
+            final T v = value;
+            final Throwable f = failure;
+            Platform.runLater(() -> {
+                finished();
+                if (f != null) result.completeExceptionally(f);
+                else result.complete(v);     // no-op if cancelled meanwhile
+            });
+        });
+        return result;
+    }
+
+    public static CompletableFuture<Void> run(DbAction action) {
+        return supply(() -> { action.run(); return null; });
+    }
+
+    private static void started() {
+        if (IN_FLIGHT.getAndIncrement() == 0) runOnFx(() -> BUSY.set(IN_FLIGHT.get() > 0));
+    }
+
+    private static void finished() {
+        BUSY.set(IN_FLIGHT.decrementAndGet() > 0);
+    }
+
+    private static void runOnFx(Runnable r) {
+        if (Platform.isFxApplicationThread()) r.run();
+        else Platform.runLater(r);
+    }
+
+    /** True while any asynchronous Database call is running or queued (FX thread only). */
+    public static ReadOnlyBooleanProperty busyProperty() {
+        return BUSY.getReadOnlyProperty();
+    }
+
+    /**
+     * For <code>exceptionally(...)</code>: shows an error alert prefixed with what failed.
+     * Cancellation is not an error and is ignored.
+     */
+    public static <T> Function<Throwable, T> alertOnFailure(String prefix) {
+        return t -> {
+            Throwable cause = unwrap(t);
+            if (!(cause instanceof CancellationException)) {
+                new Alert(Alert.AlertType.ERROR, prefix + cause.getMessage()).showAndWait();
+            }
+            return null;
+        };
+    }
+
+    public static Throwable unwrap(Throwable t) {
+        while (t instanceof CompletionException && t.getCause() != null) t = t.getCause();
+        return t;
+    }
+
+    /** Stops accepting work; called when the application exits. */
+    public static void shutdown() {
+        EXECUTOR.shutdown();
+    }
+
+    /*======================== Chunked feeds ========================*/
+
+    /**
+     * Streams a feed query, calling onChunk on the FX thread with successive chunks of rows,
+     * one chunk per pulse. The returned future completes (with the row count) after the last
+     * chunk has been handed over. Cancelling it stops both the query and the delivery. Must
+     * be called on the FX thread.
+     */
+    public static CompletableFuture<Integer> streamFeed(String userName, FeedQuery q,
+                                                        Consumer<List<PostItem>> onChunk) {
+        ChunkPump pump = new ChunkPump(onChunk);
+        CompletableFuture<Integer> reading = supply(() -> {
+            Chunker chunker = new Chunker(pump);
+            Database.forEachFeedRow(userName, q, chunker);
+            return chunker.flush();
+        });
+        reading.whenComplete(pump::finish);
+        pump.done.whenComplete((n, err) -> { if (pump.done.isCancelled()) reading.cancel(true); });
+        pump.start();
+        return pump.done;
+    }
+
+    /** Row sink on the worker thread: cuts the rows into chunks and queues them on the pump. */
+    private static final class Chunker implements Consumer<PostItem> {
+        private final ChunkPump pump;
+        private List<PostItem> chunk = new ArrayList<>(FIRST_CHUNK);
+        private int limit = FIRST_CHUNK;
+        private int rows = 0;
+
+        Chunker(ChunkPump pump) {
+            this.pump = pump;
+        }
+
+        @Override
+        public void accept(PostItem item) {
+            if (pump.done.isDone()) throw new CancellationException();   // abandons the query
+            chunk.add(item);
+            rows++;
+            if (chunk.size() >= limit) {
+                pump.offer(chunk);
+                chunk = new ArrayList<>(CHUNK);
+                limit = CHUNK;
+            }
+        }
+
+        int flush() {
+            if (!chunk.isEmpty()) pump.offer(chunk);
+            chunk = new ArrayList<>();
+            return rows;
+        }
+    }
+
+    /** Hands queued chunks to the UI, one per pulse, and completes when all are delivered. */
+    private static final class ChunkPump extends AnimationTimer {
+        final CompletableFuture<Integer> done = new CompletableFuture<>();
+        private final ConcurrentLinkedQueue<List<PostItem>> queue = new ConcurrentLinkedQueue<>();
+        private final Consumer<List<PostItem>> onChunk;
+        private volatile boolean readerFinished = false;
+        private Integer rowCount;
+        private Throwable failure;
+
+        ChunkPump(Consumer<List<PostItem>> onChunk) {
+            this.onChunk = onChunk;
+        }
+
+        void offer(List<PostItem> chunk) {
+            queue.add(chunk);
+        }
+
+        // on the FX thread, when the reader's future completes
+        void finish(Integer rows, Throwable err) {
+            rowCount = rows;
+            failure = err;
+            readerFinished = true;
+        }
+
+        @Override
+        public void handle(long now) {
+            if (done.isDone()) { stop(); return; }
+            List<PostItem> chunk = queue.poll();
+            if (chunk != null) {
+                onChunk.accept(chunk);
+                return;
+            }
+            if (readerFinished) {
+                stop();
+                if (failure != null) done.completeExceptionally(unwrap(failure));
+                else done.complete(rowCount);
+            }
+        }
+    }
+
+    /*======================== Operations used by the screens ========================*/
+
+    public static CompletableFuture<List<PostItem>> loadFeed(String userName, FeedQuery q) {
+        return supply(() -> Database.loadFeed(userName, q));
+    }
+
+    public static CompletableFuture<String> getPostBody(long postId) {
+        return supply(() -> Database.getPostBody(postId));
+    }
+
+    public static CompletableFuture<List<ReplyRow>> findReplies(long postId, String userName) {
+        return supply(() -> Database.findReplies(postId, userName));
+    }
+
+    /** Marks everything matching q's filters read; returns the number of posts matched. */
+    public static CompletableFuture<Integer> markAllRead(String userName, FeedQuery q) {
+        return supply(() -> Database.markAllRead(userName, q));
+    }
+
+    /** Completions of a partly typed word: up to perKind each of terms, threads and authors. */
+    public static CompletableFuture<List<Completion>> complete(String prefix, int perKind) {
+        return supply(() -> Database.complete(prefix, perKind));
+    }
+
+    public static CompletableFuture<List<UserSnapshot>> findUsers(UserQuery q) {
+        return supply(() -> Database.findUsers(q));
+    }
+
+    public static CompletableFuture<Integer> countUsers(UserQuery q) {
+        return supply(() -> Database.countUsers(q));
+    }
+}
@@ -0,0 +1,216 @@
+package database;
+
+import java.sql.Timestamp;
+
+import entityClasses.PostItem;
+
+/*******
+ * <p> Title: FeedQuery Class. </p>
+ *
+ * <p> Description: Filter description for {@link Database#loadFeed(String, FeedQuery)}, shared
+ * by the Read Posts, My Posts and Search Posts screens. Every combination of filters is
+ * answered by one SQL statement that also returns the reply count, the user's unread count
+ * and the user's read flag for each post.</p>
+ *
+ * <p> Setters return this so a query reads as one expression, e.g.
+ * <code>FeedQuery.all().thread("Lectures").kind("Question").seen(false)</code>. Null or blank
+ * values (and "All") mean "no filter".</p>
+ *
+ * <p> Paging is keyset based on (created_at, id), the feed's sort key: {@link #after} continues
+ * below the last row of the previous page, so a page costs the same no matter how deep the
+ * user has scrolled. {@link #before} and {@link #through} run the other way, for a list opened
+ * part way down: the page is the rows nearest the cursor above it, still returned newest
+ * first.</p>
+ *
+ * <p> {@link #search} ranks posts by relevance through the post search index instead of
+ * filtering with LIKE; its results come back best match first, and paging does not apply
+ * (only {@link #limit}, counted after ranking).</p>
+ *
+ * <p> {@link #query} takes the search box's query language instead (see {@link SearchQuery}):
+ * words rank as in a search, a query of only fields and phrases comes newest first. The
+ * other filters still apply on top; paging does not.</p>
+ *
+ * @version 1.07  2026-10-18
+ *  - before(...) pages upward; through(createdAt, id) is one page ending at a post, instead
+ *    of every row from the top of the feed down to it
+ *
+ * @version 1.06  2026-10-18
+ *  - usesReadState(), for SearchResultCache
+ *
+ * @version 1.05  2026-10-18
+ *  - query(text): structured query (SearchQuery), planned by QueryPlanner
+ *
+ * @version 1.04  2026-10-18
+ *  - KEYWORD_IDS: keyword filter narrowed by the search index's candidate ids
+ *
+ * @version 1.03  2026-10-18
+ *  - search(text): BM25-ranked full-text search (BY_SEARCH)
+ *
+ * @version 1.02  2026-10-18
+ *  - FILTERS mask, so Database.markAllRead can reuse a screen's query without its paging
+ *
+ * @version 1.01  2026-10-18
+ *  - Keyset cursor (after) and seek-to-post (through) for the paged Read Posts feed
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+public class FeedQuery {
+
+    // Shape bits: which optional predicates the SQL needs (see Database.feedSql)
+    static final int BY_THREAD     = 1;
+    static final int BY_KIND       = 1 << 1;
+    static final int BY_AUTHOR     = 1 << 2;
+    static final int BY_SEEN       = 1 << 3;
+    static final int BY_KEYWORD    = 1 << 4;
+    static final int LIVE_ONLY     = 1 << 5;
+    static final int LIMITED       = 1 << 6;
+    static final int SEEN_READ     = 1 << 7;   // with BY_SEEN: keep read posts (else unread)
+    static final int AFTER         = 1 << 8;
+    static final int THROUGH       = 1 << 9;
+    static final int BY_SEARCH     = 1 << 10;
+    static final int KEYWORD_IDS   = 1 << 11;  // set by Database, not shape(): candidates for the keyword LIKE
+    static final int BEFORE        = 1 << 12;
+
+    // The bits that select posts, as opposed to paging through them (see Database.markAllRead)
+    static final int FILTERS = BY_THREAD | BY_KIND | BY_AUTHOR | BY_SEEN | SEEN_READ | BY_KEYWORD | LIVE_ONLY
+                              | BY_SEARCH | KEYWORD_IDS;
+
+    String  thread;
+    String  kind;
+    String  author;
+    Boolean seen;           // null = both, TRUE = only posts the user marked read, FALSE = only unread
+    String  keyword;        // lower-cased, trimmed
+    String  search;         // ranked full-text query, as typed
+    SearchQuery parsed;     // structured query; replaces search
+    boolean excludeDeleted;
+    int     limit;          // 0 = no limit
+    Timestamp afterCreatedAt;  // keyset cursor: rows strictly after (created_at, id) in feed order
+    long      afterId;
+    Timestamp beforeCreatedAt; // upward cursor: rows before (created_at, id) in feed order
+    long      beforeId;
+    boolean   beforeInclusive; // through(): the cursor row itself too
+
+    private FeedQuery() {}
+
+    /** Every post, newest first. */
+    public static FeedQuery all() {
+        return new FeedQuery();
+    }
+
+    public FeedQuery thread(String name) {
+        this.thread = isAll(name) ? null : name.trim();
+        return this;
+    }
+
+    /** "Question"/"Post"; the plural button labels ("Questions"/"Posts") are accepted too. */
+    public FeedQuery kind(String k) {
+        if (isAll(k)) { this.kind = null; return this; }
+        k = k.trim();
+        if ("Posts".equalsIgnoreCase(k)) k = "Post";
+        if ("Questions".equalsIgnoreCase(k)) k = "Question";
+        this.kind = k;
+        return this;
+    }
+
+    public FeedQuery author(String userName) {
+        this.author = (userName == null || userName.isBlank()) ? null : userName.trim();
+        return this;
+    }
+
+    public FeedQuery seen(Boolean seenState) {
+        this.seen = seenState;
+        return this;
+    }
+
+    public FeedQuery keyword(String text) {
+        this.keyword = (text == null || text.isBlank()) ? null : text.trim().toLowerCase();
+        return this;
+    }
+
+    /** Posts matching any term of text, best match first (see SearchIndex). */
+    public FeedQuery search(String text) {
+        this.search = (text == null || text.isBlank()) ? null : text.trim();
+        this.parsed = null;
+        return this;
+    }
+
+    /**
+     * Posts matching a query in the search language (see SearchQuery); replaces search.
+     * Throws IllegalArgumentException, with a message for the user, if text has a field it
+     * cannot use.
+     */
+    public FeedQuery query(String text) {
+        SearchQuery sq = SearchQuery.parse(text);
+        this.parsed = sq.isEmpty() ? null : sq;
+        this.search = null;
+        return this;
+    }
+
+    public FeedQuery excludeDeleted() {
+        this.excludeDeleted = true;
+        return this;
+    }
+
+    public FeedQuery limit(int maxRows) {
+        this.limit = Math.max(0, maxRows);
+        return this;
+    }
+
+    /** Continue after the given row (normally the last item of the previous page). */
+    public FeedQuery after(Timestamp createdAt, long id) {
+        this.afterCreatedAt = createdAt;
+        this.afterId = id;
+        return this;
+    }
+
+    /** Continue after the given item; null means "start from the top". */
+    public FeedQuery after(PostItem last) {
+        return last == null ? this : after(last.createdAt, last.id);
+    }
+
+    /** Continue above the given row; with a limit, the rows nearest it. Still newest first. */
+    public FeedQuery before(Timestamp createdAt, long id) {
+        this.beforeCreatedAt = createdAt;
+        this.beforeId = id;
+        this.beforeInclusive = false;
+        return this;
+    }
+
+    /** Continue above the given item (normally the first one loaded). */
+    public FeedQuery before(PostItem first) {
+        return first == null ? this : before(first.createdAt, first.id);
+    }
+
+    /** As before(), but the given row is included, so a deep link's page ends on the post. */
+    public FeedQuery through(Timestamp createdAt, long id) {
+        before(createdAt, id);
+        this.beforeInclusive = true;
+        return this;
+    }
+
+    /** Bitmask of the optional predicates in use; each value maps to one fixed SQL text. */
+    int shape() {
+        int s = 0;
+        if (thread != null)  s |= BY_THREAD;
+        if (kind != null)    s |= BY_KIND;
+        if (author != null)  s |= BY_AUTHOR;
+        if (seen != null)    s |= seen ? BY_SEEN | SEEN_READ : BY_SEEN;
+        if (keyword != null) s |= BY_KEYWORD;
+        if (search != null)  s |= BY_SEARCH;
+        if (excludeDeleted)  s |= LIVE_ONLY;
+        if (limit > 0)       s |= LIMITED;
+        if (afterCreatedAt != null) s |= AFTER;
+        if (beforeCreatedAt != null) s |= beforeInclusive ? THROUGH : BEFORE;
+        return s;
+    }
+
+    /** True if which posts match depends on the user's read state (seen, is:read, is:unread). */
+    boolean usesReadState() {
+        return seen != null || (parsed != null && parsed.usesReadState());
+    }
+
+    private static boolean isAll(String v) {
+        return v == null || v.isBlank() || "All".equalsIgnoreCase(v.trim());
+    }
+}
@@ -0,0 +1,589 @@
+package database;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*******
+ * <p> Title: IndexSegment Class. </p>
+ *
+ * <p> Description: One immutable, memory-mapped piece of the {@link SearchIndex}. A segment
+ * file holds, for a set of documents (posts, or replies):</p>
+ * <ul>
+ *   <li> the document table: document id, group id (the post a reply belongs to; a post's own
+ *        id) and indexed length, sorted by id (a doc's position in it is its ordinal);</li>
+ *   <li> the term dictionary: UTF-8 terms in unsigned byte order, each with its document
+ *        frequency and the offset of its posting list;</li>
+ *   <li> the posting lists: (ordinal gap, term frequency, first offset) triples as varints,
+ *        where the first offset is 1 + the char index of the term's first occurrence in the
+ *        document's body, or 0 if it only occurs in the title;</li>
+ *   <li> the trigram table: for every padded trigram of the dictionary (see
+ *        {@link Tokenizer#trigrams}), the slots of the terms that contain it, as varint gaps.
+ *        It answers fuzzy and substring lookups of terms without scanning the dictionary.</li>
+ * </ul>
+ *
+ * <p> The file is mapped read-only, so opening a segment costs a header read and the OS pages
+ * postings in as queries touch them; nothing is rebuilt at startup. Posts deleted or edited
+ * after the segment was written are masked by a tombstone bit per ordinal, kept next to the
+ * segment in a small <code>.del</code> file. Segments are at most 2 GB (one mapping).</p>
+ *
+ * <p> Not thread-safe; {@link SearchIndex} guards its segments.</p>
+ *
+ * @version 1.03  2026-10-18
+ *  - Format 4: the body offset of each term's first occurrence per document, for snippets
+ *
+ * @version 1.02  2026-10-18
+ *  - Format 3: a group id per document, so reply matches can be summed up per post
+ *
+ * @version 1.01  2026-10-18
+ *  - Format 2: trigram table over the term dictionary
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+final class IndexSegment {
+
+    private static final int MAGIC   = 0x46445358;      // "FDSX"
+    private static final int VERSION = 4;
+    private static final int HEADER_BYTES  = 64;
+    private static final int DOC_BYTES     = 20;        // long id, long group, int length
+    private static final int DIR_BYTES     = 20;        // int termStart, int termLength, int df, long postings
+    private static final int TRIGRAM_BYTES = 16;        // long trigram, int terms, int slot list
+
+    final long number;
+    private final MappedByteBuffer buf;
+    private final int docCount;
+    private final int termCount;
+    private final long totalLength;
+    private final int docsAt, dirAt, termsAt, postingsAt;
+    private final int trigramCount, trigramsAt, trigramSlotsAt;
+
+    // Tombstones: ordinals of docs no longer live in this segment
+    private final BitSet deleted;
+    private int deletedCount = 0;
+    private long deletedLength = 0;
+    private boolean deletesDirty = false;
+
+    private IndexSegment(long number, MappedByteBuffer buf, BitSet deleted) throws IOException {
+        this.number = number;
+        this.buf = buf;
+        if (buf.capacity() < HEADER_BYTES || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION)
+            throw new IOException("Not a search segment: " + number);
+        docCount    = buf.getInt(8);
+        termCount   = buf.getInt(12);
+        totalLength = buf.getLong(16);
+        docsAt      = HEADER_BYTES;
+        dirAt       = docsAt + docCount * DOC_BYTES;
+        termsAt     = buf.getInt(24);
+        postingsAt  = buf.getInt(28);
+        if (buf.getLong(32) != buf.capacity()) throw new IOException("Truncated search segment: " + number);
+        trigramCount   = buf.getInt(40);
+        trigramsAt     = buf.getInt(44);
+        trigramSlotsAt = buf.getInt(48);
+        this.deleted = deleted;
+        for (int ord = deleted.nextSetBit(0); ord >= 0 && ord < docCount; ord = deleted.nextSetBit(ord + 1)) {
+            deletedCount++;
+            deletedLength += docLength(ord);
+        }
+    }
+
+    /*======================== Files ========================*/
+
+    static Path segmentFile(Path dir, long number) {
+        return dir.resolve(String.format("seg-%08d.idx", number));
+    }
+
+    static Path deletesFile(Path dir, long number) {
+        return dir.resolve(String.format("seg-%08d.del", number));
+    }
+
+    /** Maps segment number in dir, with its tombstones if it has any. */
+    static IndexSegment open(Path dir, long number) throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(segmentFile(dir, number), StandardOpenOption.READ)) {
+            if (ch.size() > Integer.MAX_VALUE) throw new IOException("Search segment over 2 GB: " + number);
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        BitSet deleted = new BitSet();
+        Path del = deletesFile(dir, number);
+        if (Files.exists(del)) {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(del))) {
+                long[] words = new long[in.readInt()];
+                for (int i = 0; i < words.length; i++) words[i] = in.readLong();
+                deleted = BitSet.valueOf(words);
+            }
+        }
+        return new IndexSegment(number, buf, deleted);
+    }
+
+    /** Writes the tombstones to the .del file if they changed since the last save. */
+    void saveDeletes(Path dir) throws IOException {
+        if (!deletesDirty) return;
+        long[] words = deleted.toLongArray();
+        writeAtomically(deletesFile(dir, number), out -> {
+            out.writeInt(words.length);
+            for (long w : words) out.writeLong(w);
+        });
+        deletesDirty = false;
+    }
+
+    /*======================== Documents ========================*/
+
+    int docCount() {
+        return docCount;
+    }
+
+    int liveDocs() {
+        return docCount - deletedCount;
+    }
+
+    long liveLength() {
+        return totalLength - deletedLength;
+    }
+
+    long docId(int ord) {
+        return buf.getLong(docsAt + ord * DOC_BYTES);
+    }
+
+    long docGroup(int ord) {
+        return buf.getLong(docsAt + ord * DOC_BYTES + 8);
+    }
+
+    int docLength(int ord) {
+        return buf.getInt(docsAt + ord * DOC_BYTES + 16);
+    }
+
+    boolean isDeleted(int ord) {
+        return deleted.get(ord);
+    }
+
+    /** Ordinal of postId in this segment, or -1. */
+    int ordinalOf(long postId) {
+        int lo = 0, hi = docCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long id = docId(mid);
+            if (id < postId) lo = mid + 1;
+            else if (id > postId) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    /** Tombstones postId if this segment holds a live copy of it; returns true if it did. */
+    boolean delete(long postId) {
+        int ord = ordinalOf(postId);
+        if (ord < 0 || deleted.get(ord)) return false;
+        deleted.set(ord);
+        deletedCount++;
+        deletedLength += docLength(ord);
+        deletesDirty = true;
+        return true;
+    }
+
+    /*======================== Terms and postings ========================*/
+
+    int termCount() {
+        return termCount;
+    }
+
+    /** Dictionary slot of term (UTF-8 bytes), or -1. */
+    int findTerm(byte[] term) {
+        int lo = 0, hi = termCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareTerm(mid, term);
+            if (cmp < 0) lo = mid + 1;
+            else if (cmp > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    private int compareTerm(int slot, byte[] term) {
+        int at = termsAt + buf.getInt(dirAt + slot * DIR_BYTES);
+        int len = buf.getInt(dirAt + slot * DIR_BYTES + 4);
+        int n = Math.min(len, term.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = Integer.compare(buf.get(at + i) & 0xFF, term[i] & 0xFF);
+            if (cmp != 0) return cmp;
+        }
+        return Integer.compare(len, term.length);
+    }
+
+    String term(int slot) {
+        int at = termsAt + buf.getInt(dirAt + slot * DIR_BYTES);
+        byte[] b = new byte[buf.getInt(dirAt + slot * DIR_BYTES + 4)];
+        buf.get(at, b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /** How many terms have trigram among their padded trigrams. */
+    int trigramTerms(long trigram) {
+        int at = findTrigram(trigram);
+        return at < 0 ? 0 : buf.getInt(at + 8);
+    }
+
+    /** Dictionary slots of the terms whose padded trigrams include trigram, ascending. */
+    int[] termsWithTrigram(long trigram) {
+        int at = findTrigram(trigram);
+        if (at < 0) return new int[0];
+        int[] slots = new int[buf.getInt(at + 8)];
+        int pos = trigramSlotsAt + buf.getInt(at + 12);
+        int slot = 0;
+        for (int i = 0; i < slots.length; i++) {
+            int gap = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buf.get(pos++);
+                gap |= (b & 0x7F) << shift;
+                if (b >= 0) break;
+            }
+            slot = i == 0 ? gap : slot + gap;
+            slots[i] = slot;
+        }
+        return slots;
+    }
+
+    // Offset of trigram's entry in the trigram table, or -1
+    private int findTrigram(long trigram) {
+        int lo = 0, hi = trigramCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int at = trigramsAt + mid * TRIGRAM_BYTES;
+            long t = buf.getLong(at);
+            if (t < trigram) lo = mid + 1;
+            else if (t > trigram) hi = mid - 1;
+            else return at;
+        }
+        return -1;
+    }
+
+    /** Documents containing the term in slot, tombstoned ones included. */
+    int docFreq(int slot) {
+        return buf.getInt(dirAt + slot * DIR_BYTES + 8);
+    }
+
+    /** Positions cursor at the start of slot's posting list. */
+    void postings(int slot, Postings cursor) {
+        cursor.buf = buf;
+        cursor.pos = postingsAt + (int) buf.getLong(dirAt + slot * DIR_BYTES + 12);
+        cursor.remaining = docFreq(slot);
+        cursor.ord = 0;
+        cursor.first = true;
+    }
+
+    /** Reusable decoder for one posting list: call next() until it returns false. */
+    static final class Postings {
+        private MappedByteBuffer buf;
+        private int pos;
+        private int remaining;
+        private boolean first;
+        int ord;
+        int tf;
+        int at;     // char offset of the term's first occurrence in the body, -1 if only in the title
+
+        boolean next() {
+            if (remaining == 0) return false;
+            remaining--;
+            int gap = readVarint();
+            ord = first ? gap : ord + gap;
+            first = false;
+            tf = readVarint();
+            at = readVarint() - 1;
+            return true;
+        }
+
+        private int readVarint() {
+            int v = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buf.get(pos++);
+                v |= (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+        }
+    }
+
+    /*======================== Writing ========================*/
+
+    /**
+     * Collects documents in ascending id order and writes them as a segment file. Documents are
+     * added either whole ({@link #add}) or, when merging, as a doc table first ({@link #addDoc})
+     * followed by postings per term in ascending ordinal order ({@link #addPosting}).
+     */
+    static final class Builder {
+        private long[] ids = new long[256];
+        private long[] groups = new long[256];
+        private int[] lengths = new int[256];
+        private int docs = 0;
+        private long totalLength = 0;
+        private final Map<String, PostingsBuffer> postings = new HashMap<>();
+
+        int docCount() {
+            return docs;
+        }
+
+        /**
+         * Appends a document with its term frequencies and the body offsets of their first
+         * occurrences (terms only in the title have none); ids must ascend.
+         */
+        void add(long id, long group, Map<String, Integer> termFreqs, Map<String, Integer> firstAt, int length) {
+            int ord = addDoc(id, group, length);
+            termFreqs.forEach((term, tf) -> addPosting(term, ord, tf, firstAt.getOrDefault(term, -1)));
+        }
+
+        int addDoc(long id, long group, int length) {
+            if (docs > 0 && id <= ids[docs - 1]) throw new IllegalArgumentException("ids must ascend");
+            if (docs == ids.length) {
+                ids = Arrays.copyOf(ids, docs * 2);
+                groups = Arrays.copyOf(groups, docs * 2);
+                lengths = Arrays.copyOf(lengths, docs * 2);
+            }
+            ids[docs] = id;
+            groups[docs] = group;
+            lengths[docs] = length;
+            totalLength += length;
+            return docs++;
+        }
+
+        void addPosting(String term, int ord, int tf, int at) {
+            postings.computeIfAbsent(term, t -> new PostingsBuffer()).add(ord, tf, at);
+        }
+
+        /** Writes the segment file atomically (temp file, then rename). */
+        void write(Path dir, long number) throws IOException {
+            int n = postings.size();
+            byte[][] terms = new byte[n][];
+            PostingsBuffer[] lists = new PostingsBuffer[n];
+            int k = 0;
+            for (Map.Entry<String, PostingsBuffer> e : postings.entrySet()) {
+                terms[k] = e.getKey().getBytes(StandardCharsets.UTF_8);
+                lists[k++] = e.getValue();
+            }
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Arrays.compareUnsigned(terms[a], terms[b]));
+
+            // trigram -> slots (in sorted-dictionary order) of the terms containing it
+            Map<Long, PostingsBuffer> trigrams = new HashMap<>();
+            for (int slot = 0; slot < n; slot++) {
+                String term = new String(terms[order[slot]], StandardCharsets.UTF_8);
+                for (long t : Tokenizer.trigrams(term, true)) {
+                    trigrams.computeIfAbsent(t, x -> new PostingsBuffer()).addSlot(slot);
+                }
+            }
+            Long[] trigramOrder = trigrams.keySet().toArray(new Long[0]);
+            Arrays.sort(trigramOrder);
+
+            long termBytes = 0, postingBytes = 0, trigramSlotBytes = 0;
+            for (int i = 0; i < n; i++) {
+                termBytes += terms[i].length;
+                postingBytes += lists[i].size;
+            }
+            for (PostingsBuffer b : trigrams.values()) trigramSlotBytes += b.size;
+            long termsAt = HEADER_BYTES + (long) docs * DOC_BYTES + (long) n * DIR_BYTES;
+            long postingsAt = termsAt + termBytes;
+            long trigramsAt = postingsAt + postingBytes;
+            long trigramSlotsAt = trigramsAt + (long) trigramOrder.length * TRIGRAM_BYTES;
+            long fileLength = trigramSlotsAt + trigramSlotBytes;
+            if (fileLength > Integer.MAX_VALUE) throw new IOException("Search segment over 2 GB");
+
+            writeAtomically(segmentFile(dir, number), out -> {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(docs);
+                out.writeInt(n);
+                out.writeLong(totalLength);
+                out.writeInt((int) termsAt);
+                out.writeInt((int) postingsAt);
+                out.writeLong(fileLength);
+                out.writeInt(trigramOrder.length);
+                out.writeInt((int) trigramsAt);
+                out.writeInt((int) trigramSlotsAt);
+                out.writeInt(0);                                // reserved
+                out.writeLong(0L);                              // reserved
+                for (int i = 0; i < docs; i++) {
+                    out.writeLong(ids[i]);
+                    out.writeLong(groups[i]);
+                    out.writeInt(lengths[i]);
+                }
+                int termOff = 0;
+                long postingOff = 0;
+                for (int i : order) {
+                    out.writeInt(termOff);
+                    out.writeInt(terms[i].length);
+                    out.writeInt(lists[i].df);
+                    out.writeLong(postingOff);
+                    termOff += terms[i].length;
+                    postingOff += lists[i].size;
+                }
+                for (int i : order) out.write(terms[i]);
+                for (int i : order) out.write(lists[i].bytes, 0, lists[i].size);
+                int slotOff = 0;
+                for (Long t : trigramOrder) {
+                    PostingsBuffer b = trigrams.get(t);
+                    out.writeLong(t);
+                    out.writeInt(b.df);
+                    out.writeInt(slotOff);
+                    slotOff += b.size;
+                }
+                for (Long t : trigramOrder) {
+                    PostingsBuffer b = trigrams.get(t);
+                    out.write(b.bytes, 0, b.size);
+                }
+            });
+        }
+    }
+
+    /** Growable varint-encoded posting list under construction. */
+    private static final class PostingsBuffer {
+        byte[] bytes = new byte[8];
+        int size = 0;
+        int df = 0;
+        int lastOrd = 0;
+
+        void add(int ord, int tf, int at) {
+            writeVarint(df == 0 ? ord : ord - lastOrd);
+            writeVarint(tf);
+            writeVarint(at + 1);
+            lastOrd = ord;
+            df++;
+        }
+
+        /** For slot lists: only the gap, no frequency or offset. */
+        void addSlot(int slot) {
+            writeVarint(df == 0 ? slot : slot - lastOrd);
+            lastOrd = slot;
+            df++;
+        }
+
+        private void writeVarint(int v) {
+            if (size + 5 > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + 5));
+            while ((v & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            bytes[size++] = (byte) v;
+        }
+    }
+
+    /*======================== Merging ========================*/
+
+    /**
+     * Writes the live documents of segments as one new segment. Each document is live in at most
+     * one segment, so the merged doc table is the union of the live ones re-sorted by id.
+     */
+    static void merge(List<IndexSegment> segments, Path dir, long number) throws IOException {
+        int total = 0;
+        for (IndexSegment s : segments) total += s.liveDocs();
+        long[] ids = new long[total];
+        int k = 0;
+        for (int si = 0; si < segments.size(); si++) {
+            IndexSegment s = segments.get(si);
+            for (int ord = 0; ord < s.docCount; ord++) {
+                if (!s.deleted.get(ord)) ids[k++] = s.docId(ord);
+            }
+        }
+        Arrays.sort(ids);
+        Builder out = new Builder();
+        int[][] remap = new int[segments.size()][];
+        for (int si = 0; si < segments.size(); si++) {
+            IndexSegment s = segments.get(si);
+            remap[si] = new int[s.docCount];
+            Arrays.fill(remap[si], -1);
+        }
+        // ids are unique across live docs, so the new ordinal of a doc is its index in ids
+        for (int si = 0; si < segments.size(); si++) {
+            IndexSegment s = segments.get(si);
+            for (int ord = 0; ord < s.docCount; ord++) {
+                if (!s.deleted.get(ord)) remap[si][ord] = Arrays.binarySearch(ids, s.docId(ord));
+            }
+        }
+        int[] lengths = new int[total];
+        long[] groups = new long[total];
+        for (int si = 0; si < segments.size(); si++) {
+            IndexSegment s = segments.get(si);
+            for (int ord = 0; ord < s.docCount; ord++) {
+                if (remap[si][ord] < 0) continue;
+                lengths[remap[si][ord]] = s.docLength(ord);
+                groups[remap[si][ord]] = s.docGroup(ord);
+            }
+        }
+        for (int i = 0; i < total; i++) out.addDoc(ids[i], groups[i], lengths[i]);
+
+        // Every term of every segment; postings are gathered per term and re-sorted by new ordinal
+        Map<String, List<int[]>> slots = new HashMap<>();
+        for (int si = 0; si < segments.size(); si++) {
+            IndexSegment s = segments.get(si);
+            for (int t = 0; t < s.termCount; t++) {
+                slots.computeIfAbsent(s.term(t), x -> new ArrayList<>(2)).add(new int[] { si, t });
+            }
+        }
+        Postings cursor = new Postings();
+        long[] pairs = new long[16];             // (new ordinal, index into tfs / ats) packed so a sort orders by ordinal
+        int[] tfs = new int[16], ats = new int[16];
+        for (Map.Entry<String, List<int[]>> e : slots.entrySet()) {
+            int n = 0;
+            for (int[] st : e.getValue()) n += segments.get(st[0]).docFreq(st[1]);
+            if (pairs.length < n) {
+                pairs = new long[n];
+                tfs = new int[n];
+                ats = new int[n];
+            }
+            int m = 0;
+            for (int[] st : e.getValue()) {
+                segments.get(st[0]).postings(st[1], cursor);
+                int[] map = remap[st[0]];
+                while (cursor.next()) {
+                    int ord = map[cursor.ord];
+                    if (ord < 0) continue;
+                    tfs[m] = cursor.tf;
+                    ats[m] = cursor.at;
+                    pairs[m] = ((long) ord << 32) | m;
+                    m++;
+                }
+            }
+            Arrays.sort(pairs, 0, m);
+            for (int i = 0; i < m; i++) {
+                int j = (int) pairs[i];
+                out.addPosting(e.getKey(), (int) (pairs[i] >>> 32), tfs[j], ats[j]);
+            }
+        }
+        out.write(dir, number);
+    }
+
+    /*======================== Helpers ========================*/
+
+    @FunctionalInterface
+    interface FileBody {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /** Writes file through a temp file and a rename, so readers never see a partial file. */
+    static void writeAtomically(Path file, FileBody body) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream os = Files.newOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16))) {
+            body.write(out);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (java.nio.file.AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
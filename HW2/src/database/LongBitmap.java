@@ -0,0 +1,146 @@
+package database;
+
+import java.util.Arrays;
+
+/*******
+ * <p> Title: LongBitmap Class. </p>
+ *
+ * <p> Description: Compressed set of non-negative long ids in the style of a roaring bitmap.
+ * Ids are grouped by their high 48 bits; each group's low 16 bits live in a container that is
+ * either a sorted <code>char[]</code> (up to {@link #ARRAY_MAX} ids, 2 bytes each) or a
+ * 1024-word <code>long[]</code> bitmap (8 KB for up to 65536 ids). Database ids are dense, so
+ * a read history of 100k posts or replies takes at most a few hundred KB, against several MB
+ * for a boxed <code>Set&lt;Long&gt;</code>.</p>
+ *
+ * <p> {@link #contains(long)} is two binary searches (or one search and a bit test) and never
+ * allocates. Not thread-safe; {@link ReadSet} guards its instances.</p>
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+final class LongBitmap {
+
+    // Array containers grow up to this many ids, then turn into bitmaps (and back below half)
+    static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    private long[] keys = new long[4];              // high 48 bits, ascending
+    private Object[] containers = new Object[4];    // char[] or long[] per key
+    private int[] cardinalities = new int[4];
+    private int size = 0;                           // containers in use
+    private long cardinality = 0;
+
+    boolean contains(long id) {
+        int i = Arrays.binarySearch(keys, 0, size, id >>> 16);
+        if (i < 0) return false;
+        char low = (char) id;
+        Object c = containers[i];
+        if (c instanceof long[] bits) return (bits[low >>> 6] & (1L << low)) != 0;
+        return Arrays.binarySearch((char[]) c, 0, cardinalities[i], low) >= 0;
+    }
+
+    /** Adds id; returns false if it was already present. */
+    boolean add(long id) {
+        long high = id >>> 16;
+        char low = (char) id;
+        int i = Arrays.binarySearch(keys, 0, size, high);
+        if (i < 0) {
+            i = -i - 1;
+            insertContainer(i, high);
+        }
+        Object c = containers[i];
+        if (c instanceof long[] bits) {
+            long bit = 1L << low;
+            if ((bits[low >>> 6] & bit) != 0) return false;
+            bits[low >>> 6] |= bit;
+        } else {
+            char[] a = (char[]) c;
+            int n = cardinalities[i];
+            int at = Arrays.binarySearch(a, 0, n, low);
+            if (at >= 0) return false;
+            at = -at - 1;
+            if (n == ARRAY_MAX) {
+                long[] bits = toBitmap(a, n);
+                bits[low >>> 6] |= 1L << low;
+                containers[i] = bits;
+            } else {
+                if (n == a.length) containers[i] = a = Arrays.copyOf(a, Math.min(ARRAY_MAX, n * 2));
+                System.arraycopy(a, at, a, at + 1, n - at);
+                a[at] = low;
+            }
+        }
+        cardinalities[i]++;
+        cardinality++;
+        return true;
+    }
+
+    /** Removes id; returns false if it was not present. */
+    boolean remove(long id) {
+        int i = Arrays.binarySearch(keys, 0, size, id >>> 16);
+        if (i < 0) return false;
+        char low = (char) id;
+        Object c = containers[i];
+        int n = cardinalities[i];
+        if (c instanceof long[] bits) {
+            long bit = 1L << low;
+            if ((bits[low >>> 6] & bit) == 0) return false;
+            bits[low >>> 6] &= ~bit;
+            if (n - 1 < ARRAY_MAX / 2) containers[i] = toArray(bits, n - 1);
+        } else {
+            char[] a = (char[]) c;
+            int at = Arrays.binarySearch(a, 0, n, low);
+            if (at < 0) return false;
+            System.arraycopy(a, at + 1, a, at, n - at - 1);
+        }
+        cardinality--;
+        if (--cardinalities[i] == 0) removeContainer(i);
+        return true;
+    }
+
+    /** Number of ids in the set. */
+    long cardinality() {
+        return cardinality;
+    }
+
+    /*======================== Containers ========================*/
+
+    private void insertContainer(int i, long high) {
+        if (size == keys.length) {
+            int cap = size * 2;
+            keys = Arrays.copyOf(keys, cap);
+            containers = Arrays.copyOf(containers, cap);
+            cardinalities = Arrays.copyOf(cardinalities, cap);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        System.arraycopy(cardinalities, i, cardinalities, i + 1, size - i);
+        keys[i] = high;
+        containers[i] = new char[4];
+        cardinalities[i] = 0;
+        size++;
+    }
+
+    private void removeContainer(int i) {
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+        System.arraycopy(cardinalities, i + 1, cardinalities, i, size - i - 1);
+        containers[--size] = null;
+    }
+
+    private static long[] toBitmap(char[] a, int n) {
+        long[] bits = new long[BITMAP_WORDS];
+        for (int k = 0; k < n; k++) bits[a[k] >>> 6] |= 1L << a[k];
+        return bits;
+    }
+
+    private static char[] toArray(long[] bits, int n) {
+        char[] a = new char[Math.max(4, n)];
+        int k = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            for (long word = bits[w]; word != 0; word &= word - 1) {
+                a[k++] = (char) ((w << 6) + Long.numberOfTrailingZeros(word));
+            }
+        }
+        return a;
+    }
+}
@@ -0,0 +1,53 @@
+package database;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*******
+ * <p> Title: PostBodyCache Class. </p>
+ *
+ * <p> Description: Small LRU cache of full post bodies for {@link Database#getPostBody(long)}.
+ * Feed queries only carry the stored preview, so the body (a CLOB) is fetched when a post is
+ * opened; clicking back and forth between recent posts is then served from memory. Writers
+ * ({@link Database#updatePostByAuthor} and {@link Database#softDeletePostByAuthor}) invalidate
+ * the entry they change.</p>
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+public class PostBodyCache {
+
+    private final int capacity;
+    private final LinkedHashMap<Long, String> bodies;
+
+    public PostBodyCache(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        this.bodies = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                return size() > PostBodyCache.this.capacity;
+            }
+        };
+    }
+
+    /** Cached body, or null if it is not cached. */
+    public synchronized String get(long postId) {
+        return bodies.get(postId);
+    }
+
+    public synchronized void put(long postId, String body) {
+        if (capacity > 0 && body != null) bodies.put(postId, body);
+    }
+
+    public synchronized void invalidate(long postId) {
+        bodies.remove(postId);
+    }
+
+    public synchronized void clear() {
+        bodies.clear();
+    }
+
+    public synchronized int size() {
+        return bodies.size();
+    }
+}
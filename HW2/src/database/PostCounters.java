@@ -0,0 +1,88 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/*******
+ * <p> Title: PostCounters Class. </p>
+ *
+ * <p> Description: Maintenance for the denormalized <code>posts.reply_count</code> and
+ * <code>posts.last_activity_at</code> columns. {@link Database#addReply} and
+ * {@link Database#deleteReplyByAuthor} keep them current in the same transaction as the
+ * reply change; this class provides the one-time backfill (run by schema migration V3) and
+ * a consistency checker that finds and optionally repairs drift.</p>
+ *
+ * <p> last_activity_at is the newest of the post's own created_at and its replies'
+ * created_at.</p>
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+public class PostCounters {
+
+    // True counts/timestamps computed from the replies table, one row per post
+    private static final String ACTUAL = """
+        SELECT p.id,
+               p.reply_count,
+               p.last_activity_at,
+               COALESCE(x.n, 0) AS actual_count,
+               CASE WHEN x.last_reply IS NULL OR x.last_reply < p.created_at
+                    THEN p.created_at ELSE x.last_reply END AS actual_activity
+          FROM posts p
+          LEFT JOIN (SELECT post_id, COUNT(*) AS n, MAX(created_at) AS last_reply
+                       FROM replies GROUP BY post_id) x
+            ON x.post_id = p.id
+        """;
+
+    // Recomputes both columns from the replies table (optionally narrowed with a WHERE)
+    private static final String RECOMPUTE = """
+        UPDATE posts p
+           SET reply_count = (SELECT COUNT(*) FROM replies r WHERE r.post_id = p.id),
+               last_activity_at = COALESCE(
+                   (SELECT MAX(r.created_at) FROM replies r
+                     WHERE r.post_id = p.id AND r.created_at > p.created_at),
+                   p.created_at)
+        """;
+
+    /** One-time fill of reply_count/last_activity_at for every post. Returns rows updated. */
+    public static int backfill(Connection c) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(RECOMPUTE)) {
+            return ps.executeUpdate();
+        }
+    }
+
+    /** Ids of posts whose stored counters disagree with the replies table. */
+    public static List<Long> findDrift(Connection c) throws SQLException {
+        List<Long> drifted = new ArrayList<>();
+        try (PreparedStatement ps = c.prepareStatement(
+                "SELECT id FROM (" + ACTUAL + ") t "
+              + "WHERE reply_count <> actual_count "
+              + "   OR last_activity_at IS DISTINCT FROM actual_activity");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) drifted.add(rs.getLong(1));
+        }
+        return drifted;
+    }
+
+    /**
+     * Checks every post and, when repair is true, rewrites the counters of the ones that
+     * drifted. Returns how many posts were out of sync.
+     */
+    public static int check(Connection c, boolean repair) throws SQLException {
+        List<Long> drifted = findDrift(c);
+        if (!repair || drifted.isEmpty()) return drifted.size();
+
+        try (PreparedStatement ps = c.prepareStatement(RECOMPUTE + " WHERE p.id = ?")) {
+            for (long id : drifted) {
+                ps.setLong(1, id);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        return drifted.size();
+    }
+}
@@ -0,0 +1,152 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*******
+ * <p> Title: PostStatistics Class. </p>
+ *
+ * <p> Description: Row-count statistics of the posts table for {@link QueryPlanner}: posts
+ * per author, per thread and per kind, how many have replies or are deleted, and an
+ * equi-depth histogram of created_at ({@value #DATE_BUCKETS} buckets holding equally many
+ * posts). With them the planner estimates how many posts a predicate keeps without asking
+ * the database.</p>
+ *
+ * <p> The statistics are one immutable snapshot, gathered by a single lazy scan of the table
+ * on a background thread and gathered again once older than <code>refreshMs</code>. Until the
+ * first snapshot is ready {@link #current} returns null and the planner leaves the choice of
+ * index to H2; estimates from an older snapshot only have to be roughly right.</p>
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+final class PostStatistics {
+
+    static final int DATE_BUCKETS = 64;
+
+    private static final String SCAN_SQL = """
+        SELECT author, thread_id, kind, reply_count, created_at, COALESCE(deleted, FALSE)
+          FROM posts
+    """;
+
+    /** One set of statistics; counts include deleted posts unless named live. */
+    record Snapshot(long total, long live, long replied,
+                    Map<String, Integer> byAuthor, Map<Long, Integer> byThread, Map<String, Integer> byKind,
+                    long[] createdBounds, long builtAt) {
+
+        long author(String name) {
+            return byAuthor.getOrDefault(name, 0);
+        }
+
+        long thread(long threadId) {
+            return byThread.getOrDefault(threadId, 0);
+        }
+
+        /** Posts of kind "Question" or "Post" (a missing kind counts as Post). */
+        long kind(String kind) {
+            return byKind.getOrDefault(kind.toLowerCase(Locale.ROOT), 0);
+        }
+
+        /**
+         * Posts created in [fromMs, toMs), interpolated within the histogram's buckets;
+         * Long.MIN_VALUE / Long.MAX_VALUE leave a side open.
+         */
+        long createdBetween(long fromMs, long toMs) {
+            if (total == 0 || fromMs >= toMs) return 0;
+            double f = fractionBefore(toMs) - fractionBefore(fromMs);
+            return Math.max(0, Math.round(f * total));
+        }
+
+        // Share of posts created before ms: bound i is the first created_at of the i-th
+        // bucket, the last bound the newest created_at
+        private double fractionBefore(long ms) {
+            long[] b = createdBounds;
+            if (ms <= b[0]) return 0;
+            if (ms > b[b.length - 1]) return 1;
+            int i = Arrays.binarySearch(b, ms);
+            if (i < 0) i = -i - 2;                  // bucket containing ms
+            while (i > 0 && b[i - 1] == b[i]) i--;  // first of equal bounds
+            if (i >= b.length - 1) return 1;
+            double within = b[i + 1] == b[i] ? 0 : (double) (ms - b[i]) / (b[i + 1] - b[i]);
+            return (i + within) / (b.length - 1);
+        }
+    }
+
+    private final SearchIndex.Connections db;
+    private final long refreshMs;
+
+    private volatile Snapshot snapshot = null;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    PostStatistics(SearchIndex.Connections db, long refreshMs) {
+        this.db = db;
+        this.refreshMs = refreshMs;
+    }
+
+    /** The latest statistics, or null before the first scan has finished; starts a scan when due. */
+    Snapshot current() {
+        Snapshot s = snapshot;
+        if ((s == null || System.currentTimeMillis() - s.builtAt() > refreshMs)
+                && refreshing.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("post-statistics").start(() -> {
+                try {
+                    snapshot = load();
+                } catch (SQLException | RuntimeException e) {
+                    System.err.println("Gathering post statistics failed: " + e);
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        }
+        return s;
+    }
+
+    private Snapshot load() throws SQLException {
+        long started = System.currentTimeMillis();
+        long total = 0, live = 0, replied = 0;
+        Map<String, Integer> byAuthor = new HashMap<>();
+        Map<Long, Integer> byThread = new HashMap<>();
+        Map<String, Integer> byKind = new HashMap<>();
+        long[] created = new long[1024];
+        try (Connection c = db.get()) {
+            try (Statement s = c.createStatement()) {
+                s.execute("SET LAZY_QUERY_EXECUTION TRUE");
+            }
+            try (PreparedStatement ps = c.prepareStatement(SCAN_SQL);
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String author = rs.getString(1);
+                    if (author != null) byAuthor.merge(author, 1, Integer::sum);
+                    long thread = rs.getLong(2);
+                    if (!rs.wasNull()) byThread.merge(thread, 1, Integer::sum);
+                    String kind = rs.getString(3);
+                    byKind.merge(kind == null ? "post" : kind.toLowerCase(Locale.ROOT), 1, Integer::sum);
+                    if (rs.getInt(4) > 0) replied++;
+                    Timestamp at = rs.getTimestamp(5);
+                    if (total == created.length) created = Arrays.copyOf(created, created.length * 2);
+                    created[(int) total++] = at == null ? 0 : at.getTime();
+                    if (!rs.getBoolean(6)) live++;
+                }
+            } finally {
+                try (Statement s = c.createStatement()) {
+                    s.execute("SET LAZY_QUERY_EXECUTION FALSE");
+                }
+            }
+        }
+        Arrays.sort(created, 0, (int) total);
+        long[] bounds = new long[DATE_BUCKETS + 1];
+        for (int i = 0; i <= DATE_BUCKETS; i++) {
+            bounds[i] = total == 0 ? 0 : created[(int) Math.min(total - 1, i * total / DATE_BUCKETS)];
+        }
+        return new Snapshot(total, live, replied, byAuthor, byThread, byKind, bounds, started);
+    }
+}
@@ -0,0 +1,532 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.LongStream;
+
+import database.SearchQuery.And;
+import database.SearchQuery.Field;
+import database.SearchQuery.Key;
+import database.SearchQuery.Node;
+import database.SearchQuery.Not;
+import database.SearchQuery.Or;
+import database.SearchQuery.Phrase;
+import database.SearchQuery.Word;
+
+/*******
+ * <p> Title: QueryPlanner Class. </p>
+ *
+ * <p> Description: Turns a {@link FeedQuery} with a parsed {@link SearchQuery} into the FROM and
+ * WHERE parts of one SQL statement. Words are answered by the search index, as sorted id sets
+ * that are intersected (AND), merged (OR) and subtracted (NOT) in memory; a phrase is resolved
+ * to ids by checking the index's substring candidates with LIKE (or stays a LIKE on title and
+ * body when there are too many); fields become predicates the posts indexes can serve
+ * (author, thread, created_at). When the words alone decide, the plan carries the matching ids
+ * and no statement has to find them.</p>
+ *
+ * <p> Of the AND-ed parts one drives the statement and the rest only filter its rows. The
+ * planner estimates each part's row count from {@link PostStatistics} and prices the ways to
+ * produce the rows:</p>
+ * <ul>
+ *   <li> the id set of the words, joined to posts by primary key;</li>
+ *   <li> an author, thread or date range predicate through its index;</li>
+ *   <li> for a newest-first result, idx_posts_created_desc read in order, which stops once
+ *        the limit is reached (it visits about limit / selectivity rows);</li>
+ *   <li> a scan of the whole table;</li>
+ * </ul>
+ * <p> and forces the cheapest with <code>USE INDEX</code>, since H2's own choice ignores how
+ * many rows a value matches (it prefers idx_posts_author even for an author of most posts).
+ * Without statistics yet, it drives by a word id set, which is exact, or reads a limited
+ * newest-first page in index order, and otherwise leaves the choice to H2.</p>
+ *
+ * <p> An id set goes into the SQL as <code>p.id = ANY(?)</code> only while small: H2's cost
+ * for ANY grows faster than the array. A large set that does not drive is checked in Java on
+ * each row instead (the plan's residual), and so is an OR / NOT group below the top level,
+ * where H2 would compare every row with every element of its arrays. A statement with a
+ * residual must not be limited in SQL; the caller stops reading.</p>
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+final class QueryPlanner {
+
+    /** A condition checked in Java on a row of the planned statement. */
+    interface RowTest {
+        boolean test(ResultSet rs) throws SQLException;
+    }
+
+    static final String DESC_INDEX = "idx_posts_created_desc";
+
+    // Relative cost per row: reading an index in order, looking rows up through a secondary
+    // index or by id, and sorting (times log2 of the rows sorted)
+    private static final double SCAN_ROW   = 1.0;
+    private static final double LOOKUP_ROW = 2.0;
+    private static final double ID_ROW     = 3.0;
+    private static final double SORT_ROW   = 0.2;
+
+    // Largest id set bound as = ANY(?); larger ones are a residual unless they drive
+    static final int ANY_MAX = 1_000;
+    // Largest id set driving without statistics (and the largest array H2 accepts at all)
+    static final int DRIVE_MAX = 65_536;
+    // Share of posts a phrase is assumed to match when the index has no candidates for it
+    private static final double PHRASE_SELECTIVITY = 0.01;
+
+    // A substring match on title or body (binds the %pattern% twice), as the keyword filter does
+    private static final String LIKE = "(LOWER(p.title) LIKE ? OR LOWER(p.content) LIKE ?)";
+
+    /**
+     * The planned statement: rows come from <code>"FROM " + from</code>, are kept by
+     * <code>"WHERE 1=1" + where</code> and then by residual (null if none). Bind fromParam
+     * (if not null) before the JOIN parameters and whereParams after them. ids is set (ascending)
+     * when the search index alone answers which posts match, so the statement is only needed
+     * to fetch rows.
+     */
+    record Plan(boolean empty, long[] ids, String from, Object fromParam, String where, List<Object> whereParams,
+                RowTest residual, String rankText, String access, double cost) {
+
+        static final Plan NOTHING = new Plan(true, new long[0], "posts p", null, " AND FALSE", List.of(), null, null,
+                                             "no post can match", 0);
+
+        int bindFrom(PreparedStatement ps, int idx) throws SQLException {
+            if (fromParam != null) ps.setObject(idx++, fromParam);
+            return idx;
+        }
+
+        int bindWhere(PreparedStatement ps, int idx) throws SQLException {
+            for (Object v : whereParams) ps.setObject(idx++, v);
+            return idx;
+        }
+
+        @Override
+        public String toString() {
+            return access + (cost > 0 ? String.format(" (cost %.0f)", cost) : "")
+                 + " WHERE 1=1" + where + (residual == null ? "" : " + residual");
+        }
+    }
+
+    // One AND-ed part: its SQL or Java test, estimated rows, and the index that can drive it
+    private record Part(String sql, List<Object> params, RowTest test, double rows, String index) {}
+
+    private final SearchIndex index;
+    private final PostStatistics statistics;
+    private final int maxCandidates;
+
+    QueryPlanner(SearchIndex index, PostStatistics statistics, int maxCandidates) {
+        this.index = index;
+        this.statistics = statistics;
+        this.maxCandidates = maxCandidates;
+    }
+
+    /**
+     * Plans q (which has a parsed query) for a user who has read readPosts posts (-1 if not
+     * known). newestFirst: the statement orders by (created_at, id) descending and limit rows
+     * (0 = all) are wanted; otherwise every matching row is, in any order.
+     */
+    Plan plan(Connection c, FeedQuery q, long readPosts, boolean newestFirst, int limit) throws SQLException {
+        return new Planning(c, statistics.current(), readPosts).plan(q, newestFirst, limit);
+    }
+
+    /** The state of planning one query. */
+    private final class Planning {
+        final Connection c;
+        final PostStatistics.Snapshot stats;    // null until gathered
+        final double total;
+        final long readPosts;
+
+        long[] must = null;                     // every match is in this set (null = no such set)
+        final List<long[]> mustNot = new ArrayList<>();
+        final List<Part> parts = new ArrayList<>();
+        long afterMs = Long.MIN_VALUE, beforeMs = Long.MAX_VALUE;
+        boolean nothing = false;
+
+        Planning(Connection c, PostStatistics.Snapshot stats, long readPosts) {
+            this.c = c;
+            this.stats = stats;
+            this.total = stats == null ? 0 : Math.max(1, stats.total());
+            this.readPosts = readPosts;
+        }
+
+        Plan plan(FeedQuery q, boolean newestFirst, int limit) throws SQLException {
+            Node root = q.parsed.root();
+            if (root != null) {
+                for (Node n : root instanceof And a ? a.parts() : List.of(root)) conjunct(n);
+            }
+            // the screen's own filters are further conjuncts
+            if (q.thread != null) conjunct(new Field(Key.THREAD, q.thread, null));
+            if (q.kind != null) conjunct(new Field(Key.KIND, q.kind, null));
+            if (q.author != null) conjunct(new Field(Key.AUTHOR, q.author, null));
+            if (q.seen != null) conjunct(new Field(q.seen ? Key.IS_READ : Key.IS_UNREAD, null, null));
+            if (q.keyword != null) like(q.keyword);
+            // the search index holds live posts only, so an id set from it already excludes deleted ones
+            if (q.excludeDeleted && must == null) {
+                parts.add(new Part("COALESCE(p.deleted, FALSE) = FALSE", List.of(), null,
+                                   stats == null ? 0 : stats.live(), null));
+            }
+            if (afterMs != Long.MIN_VALUE || beforeMs != Long.MAX_VALUE) dateRange();
+
+            if (must != null) {
+                for (long[] not : mustNot) must = minus(must, not);
+                mustNot.clear();
+                if (must.length == 0) nothing = true;
+            }
+            if (nothing) return Plan.NOTHING;
+
+            List<String> terms = q.parsed.rankingTerms();
+            String rankText = terms.isEmpty() ? null : String.join(" ", terms);
+            return choose(newestFirst, limit, rankText);
+        }
+
+        /*------------------------ parts ------------------------*/
+
+        private void conjunct(Node n) throws SQLException {
+            switch (n) {
+                case Word w -> require(index.postsMatching(w.term()));
+                case Or o when allWords(o) -> require(wordSet(o));
+                case Not x when x.part() instanceof Word || (x.part() instanceof Or o && allWords(o)) ->
+                        mustNot.add(wordSet(x.part()));
+                case Phrase p -> {
+                    long[] ids = phraseIds(p.text());
+                    if (ids != null) require(ids);
+                    else like(p.text());
+                }
+                case Field f when f.key() == Key.BEFORE -> beforeMs = Math.min(beforeMs, startOfDay(f.date()));
+                case Field f when f.key() == Key.AFTER -> afterMs = Math.max(afterMs, startOfDay(f.date()));
+                case Field f -> {
+                    Part part = field(f);
+                    if (part == null) nothing = true;
+                    else parts.add(part);
+                }
+                default -> parts.add(nested(n));
+            }
+        }
+
+        private void require(long[] ids) {
+            must = must == null ? ids : intersect(must, ids);
+        }
+
+        private void like(String text) {
+            String pattern = "%" + text + "%";
+            double rows = must != null ? must.length : total * PHRASE_SELECTIVITY;
+            parts.add(new Part(LIKE, List.of(pattern, pattern), null, rows, null));
+        }
+
+        private void dateRange() {
+            StringBuilder sql = new StringBuilder();
+            List<Object> params = new ArrayList<>();
+            if (afterMs != Long.MIN_VALUE) {
+                sql.append("p.created_at >= ?");
+                params.add(new Timestamp(afterMs));
+            }
+            if (beforeMs != Long.MAX_VALUE) {
+                sql.append(sql.isEmpty() ? "" : " AND ").append("p.created_at < ?");
+                params.add(new Timestamp(beforeMs));
+            }
+            if (afterMs >= beforeMs) nothing = true;
+            double rows = stats == null ? 0 : stats.createdBetween(afterMs, beforeMs);
+            parts.add(new Part(sql.toString(), params, null, rows, DESC_INDEX));
+        }
+
+        // One field as an index-backed predicate; null if it cannot match (an unknown thread)
+        private Part field(Field f) throws SQLException {
+            double unread = readPosts < 0 || stats == null ? total / 2 : Math.max(0, total - readPosts);
+            return switch (f.key()) {
+                case AUTHOR -> new Part("p.author = ?", List.of(f.value()), null,
+                                        stats == null ? 0 : stats.author(f.value()), "idx_posts_author");
+                case THREAD -> {
+                    Long id = ThreadDictionary.idOf(c, f.value());
+                    yield id == null ? null : new Part("p.thread_id = ?", List.of(id), null,
+                                                       stats == null ? 0 : stats.thread(id), "idx_posts_thread_id");
+                }
+                case KIND -> new Part("LOWER(COALESCE(p.kind, 'Post')) = ?", List.of(f.value().toLowerCase(Locale.ROOT)),
+                                      null, stats == null ? 0 : stats.kind(f.value()), null);
+                case HAS_REPLIES -> new Part("p.reply_count > 0", List.of(), null,
+                                             stats == null ? 0 : stats.replied(), null);
+                case IS_UNREAD -> new Part("pr.post_id IS NULL", List.of(), null, unread, null);
+                case IS_READ -> new Part("pr.post_id IS NOT NULL", List.of(), null, total - unread, null);
+                case BEFORE, AFTER -> throw new IllegalStateException("dates are planned as one range");
+            };
+        }
+
+        /*------------------------ nested OR / NOT groups ------------------------*/
+
+        // A group below an OR or NOT, compiled twice: as SQL, and as a Java test on the row
+        // (null if it holds a phrase the index cannot resolve to ids). The test is preferred: H2
+        // evaluates an ANY that cannot drive by comparing each row with every element
+        private record Compiled(String sql, List<Object> params, RowTest test, double rows) {}
+
+        private Part nested(Node n) throws SQLException {
+            Compiled g = compile(n);
+            if (g.test() != null) return new Part(null, List.of(), g.test(), g.rows(), null);
+            return new Part(g.sql(), g.params(), null, g.rows(), null);
+        }
+
+        private Compiled compile(Node n) throws SQLException {
+            return switch (n) {
+                case Word w -> {
+                    long[] ids = index.postsMatching(w.term());
+                    // past H2's array limit the SQL form takes the word as a substring, which
+                    // misses its spelling variants (only used next to an unresolved phrase)
+                    yield ids(ids, ids.length <= DRIVE_MAX ? null : "%" + w.term() + "%");
+                }
+                case Phrase p -> {
+                    long[] ids = phraseIds(p.text());
+                    yield ids != null ? ids(ids, null)
+                                      : new Compiled(LIKE, List.of("%" + p.text() + "%", "%" + p.text() + "%"),
+                                                     null, total * PHRASE_SELECTIVITY);
+                }
+                case Field f -> compileField(f);
+                case Not x -> {
+                    Compiled g = compile(x.part());
+                    RowTest t = g.test();
+                    yield new Compiled("NOT (" + g.sql() + ")", g.params(), t == null ? null : rs -> !t.test(rs),
+                                       Math.max(0, total - g.rows()));
+                }
+                case And a -> combine(a.parts(), " AND ", false);
+                case Or o -> combine(o.parts(), " OR ", true);
+            };
+        }
+
+        private Compiled combine(List<Node> nodes, String op, boolean or) throws SQLException {
+            StringBuilder sql = new StringBuilder("(");
+            List<Object> params = new ArrayList<>();
+            List<RowTest> tests = new ArrayList<>();
+            double rows = or ? 0 : total;
+            for (Node n : nodes) {
+                Compiled g = compile(n);
+                if (sql.length() > 1) sql.append(op);
+                sql.append(g.sql());
+                params.addAll(g.params());
+                tests.add(g.test());
+                rows = or ? Math.min(total, rows + g.rows()) : rows * (g.rows() / Math.max(1, total));
+            }
+            RowTest test = null;
+            if (!tests.contains(null)) {
+                test = or ? rs -> { for (RowTest t : tests) if (t.test(rs)) return true; return false; }
+                          : rs -> { for (RowTest t : tests) if (!t.test(rs)) return false; return true; };
+            }
+            return new Compiled(sql.append(")").toString(), params, test, rows);
+        }
+
+        // An id set; likePattern (for sets too large for an array) replaces it in the SQL form
+        private Compiled ids(long[] ids, String likePattern) {
+            RowTest test = rs -> Arrays.binarySearch(ids, rs.getLong("id")) >= 0;
+            if (ids.length == 0) return new Compiled("FALSE", List.of(), test, 0);
+            if (likePattern != null) return new Compiled(LIKE, List.of(likePattern, likePattern), test, ids.length);
+            return new Compiled("p.id = ANY(?)", List.of((Object) Database.boxed(ids)), test, ids.length);
+        }
+
+        // The posts containing a phrase (ascending), from the index's candidates checked with
+        // LIKE; null if the index has no usable candidates
+        private long[] phraseIds(String text) throws SQLException {
+            long[] candidates = index.substringCandidates(text, maxCandidates);
+            if (candidates == null || candidates.length > DRIVE_MAX) return null;
+            if (candidates.length == 0) return candidates;
+            LongStream.Builder out = LongStream.builder();
+            try (PreparedStatement ps = c.prepareStatement(
+                    "SELECT p.id FROM TABLE(x BIGINT = ?) dv LEFT JOIN posts p ON p.id = dv.x"
+                  + " WHERE p.id IS NOT NULL AND " + LIKE)) {
+                ps.setObject(1, Database.boxed(candidates));
+                ps.setString(2, "%" + text + "%");
+                ps.setString(3, "%" + text + "%");
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) out.add(rs.getLong(1));
+                }
+            }
+            return out.build().sorted().toArray();
+        }
+
+        private Compiled compileField(Field f) throws SQLException {
+            String v = f.value();
+            return switch (f.key()) {
+                case AUTHOR -> fromPart(field(f), rs -> v.equals(rs.getString("author")));
+                case THREAD -> {
+                    Part part = field(f);
+                    yield part == null ? new Compiled("FALSE", List.of(), rs -> false, 0)
+                                       : fromPart(part, rs -> v.equalsIgnoreCase(trimmed(rs.getString("thread"))));
+                }
+                case KIND -> fromPart(field(f), rs -> v.equalsIgnoreCase(rs.getString("kind")));
+                case HAS_REPLIES -> fromPart(field(f), rs -> rs.getInt("reply_count") > 0);
+                case IS_UNREAD -> fromPart(field(f), rs -> !rs.getBoolean("is_read"));
+                case IS_READ -> fromPart(field(f), rs -> rs.getBoolean("is_read"));
+                case BEFORE -> {
+                    long ms = startOfDay(f.date());
+                    yield new Compiled("p.created_at < ?", List.of(new Timestamp(ms)), rs -> createdMs(rs) < ms,
+                                       stats == null ? 0 : stats.createdBetween(Long.MIN_VALUE, ms));
+                }
+                case AFTER -> {
+                    long ms = startOfDay(f.date());
+                    yield new Compiled("p.created_at >= ?", List.of(new Timestamp(ms)), rs -> createdMs(rs) >= ms,
+                                       stats == null ? 0 : stats.createdBetween(ms, Long.MAX_VALUE));
+                }
+            };
+        }
+
+        private static Compiled fromPart(Part part, RowTest test) {
+            return new Compiled(part.sql(), part.params(), test, part.rows());
+        }
+
+        /*------------------------ choosing the driver ------------------------*/
+
+        private Plan choose(boolean newestFirst, int limit, String rankText) {
+            // the candidate drivers: -1 = the must set, i = parts.get(i), ORDERED / SCAN
+            final int ORDERED = -2, SCAN = -3;
+            int best;
+            double bestCost = 0;
+            Part range = parts.stream().filter(p -> DESC_INDEX.equals(p.index())).findFirst().orElse(null);
+            if (stats == null) {
+                // exact id sets are always worth driving by; a limited newest-first page stops
+                // after one pass of the ordered index at worst; anything else is H2's call
+                best = must != null && must.length <= DRIVE_MAX ? -1 : newestFirst && limit > 0 ? ORDERED : SCAN;
+            } else {
+                double all = selectivity(null);
+                best = SCAN;
+                bestCost = total * SCAN_ROW + (newestFirst ? sort(total * all) : 0);
+                if (newestFirst) {
+                    double rangeRows = range == null ? total : range.rows();
+                    double others = selectivity(range);
+                    double visited = limit > 0 ? Math.min(rangeRows, limit / Math.max(others, 1 / total)) : rangeRows;
+                    double cost = visited * SCAN_ROW;
+                    if (cost < bestCost) { best = ORDERED; bestCost = cost; }
+                }
+                if (must != null && must.length <= DRIVE_MAX) {
+                    double cost = must.length * ID_ROW + (newestFirst ? sort(total * all) : 0);
+                    if (cost < bestCost) { best = -1; bestCost = cost; }
+                }
+                for (int i = 0; i < parts.size(); i++) {
+                    Part p = parts.get(i);
+                    if (p.index() == null || (p == range && newestFirst)) continue;
+                    double cost = p.rows() * LOOKUP_ROW + (newestFirst ? sort(total * all) : 0);
+                    if (cost < bestCost) { best = i; bestCost = cost; }
+                }
+            }
+
+            StringBuilder where = new StringBuilder();
+            List<Object> params = new ArrayList<>();
+            List<RowTest> residual = new ArrayList<>();
+            String from;
+            Object fromParam = null;
+            String access;
+            if (best == -1) {
+                from = "TABLE(x BIGINT = ?) dv LEFT JOIN posts p ON p.id = dv.x";
+                fromParam = Database.boxed(must);
+                where.append(" AND p.id IS NOT NULL");
+                access = "ids of the words (" + must.length + ")";
+            } else if (best == ORDERED) {
+                from = "posts p USE INDEX (" + DESC_INDEX + ")";
+                access = DESC_INDEX + " in order";
+            } else if (best >= 0) {
+                Part p = parts.get(best);
+                from = "posts p USE INDEX (" + p.index() + ")";
+                access = p.index() + " (~" + Math.round(p.rows()) + " rows)";
+            } else {
+                from = stats == null ? "posts p" : "posts p USE INDEX ()";
+                access = stats == null ? "no statistics yet" : "table scan";
+            }
+            if (must != null && best != -1) idFilter(must, false, where, params, residual);
+            for (long[] not : mustNot) idFilter(not, true, where, params, residual);
+            for (Part p : parts) {
+                if (p.sql() != null) {
+                    where.append(" AND ").append(p.sql());
+                    params.addAll(p.params());
+                } else {
+                    residual.add(p.test());
+                }
+            }
+            RowTest test = residual.isEmpty() ? null
+                         : rs -> { for (RowTest t : residual) if (!t.test(rs)) return false; return true; };
+            long[] ids = must != null && parts.isEmpty() ? must : null;
+            return new Plan(false, ids, from, fromParam, where.toString(), List.copyOf(params), test, rankText,
+                            access, bestCost);
+        }
+
+        private static void idFilter(long[] ids, boolean not, StringBuilder where, List<Object> params,
+                                     List<RowTest> residual) {
+            if (ids.length <= ANY_MAX) {
+                where.append(not ? " AND NOT (p.id = ANY(?))" : " AND p.id = ANY(?)");
+                params.add(Database.boxed(ids));
+            } else {
+                residual.add(rs -> (Arrays.binarySearch(ids, rs.getLong("id")) >= 0) != not);
+            }
+        }
+
+        // Share of posts kept by everything but skip
+        private double selectivity(Part skip) {
+            double s = 1;
+            if (must != null) s *= must.length / total;
+            for (long[] not : mustNot) s *= Math.max(0, 1 - not.length / total);
+            for (Part p : parts) if (p != skip) s *= Math.min(1, p.rows() / total);
+            return s;
+        }
+
+        private static double sort(double rows) {
+            return rows <= 1 ? 0 : rows * SORT_ROW * (Math.log(rows) / Math.log(2));
+        }
+    }
+
+    /*======================== id sets ========================*/
+
+    private static boolean allWords(Or o) {
+        return o.parts().stream().allMatch(n -> n instanceof Word);
+    }
+
+    // The posts matching a word, or any word of an OR of words
+    private long[] wordSet(Node n) throws SQLException {
+        if (n instanceof Word w) return index.postsMatching(w.term());
+        long[] out = new long[0];
+        for (Node part : ((Or) n).parts()) out = union(out, index.postsMatching(((Word) part).term()));
+        return out;
+    }
+
+    static long[] intersect(long[] a, long[] b) {
+        long[] out = new long[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) i++;
+            else if (a[i] > b[j]) j++;
+            else { out[n++] = a[i]; i++; j++; }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    static long[] union(long[] a, long[] b) {
+        long[] out = new long[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) out[n++] = a[i++];
+            else if (i == a.length || b[j] < a[i]) out[n++] = b[j++];
+            else { out[n++] = a[i]; i++; j++; }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    static long[] minus(long[] a, long[] b) {
+        long[] out = new long[a.length];
+        int j = 0, n = 0;
+        for (long id : a) {
+            while (j < b.length && b[j] < id) j++;
+            if (j == b.length || b[j] != id) out[n++] = id;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static long startOfDay(LocalDate day) {
+        return Timestamp.valueOf(day.atStartOfDay()).getTime();
+    }
+
+    private static long createdMs(ResultSet rs) throws SQLException {
+        Timestamp at = rs.getTimestamp("created_at");
+        return at == null ? Long.MIN_VALUE : at.getTime();
+    }
+
+    private static String trimmed(String s) {
+        return s == null ? null : s.trim();
+    }
+}
@@ -0,0 +1,83 @@
+package database;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*******
+ * <p> Title: ReadSet Class. </p>
+ *
+ * <p> Description: One user's read posts, held in memory as a {@link LongBitmap} for the
+ * length of a login session. Database loads it on the first isPostRead for the user (or the
+ * first cached search result) and afterwards answers those calls from memory; setPostRead
+ * updates it in place, so it never goes stale within the session.</p>
+ *
+ * <p> While the initial load runs, toggles are applied to the set and also remembered; when
+ * the rows arrive the remembered toggles are replayed on top of them, so a toggle made during
+ * the load is not lost. Lookups wait for the load to finish.</p>
+ *
+ * @version 1.02  2026-10-18
+ *  - Read replies dropped: nothing looked them up
+ *
+ * @version 1.01  2026-10-18
+ *  - readPostCount(), for the query planner's is:read / is:unread estimates
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+final class ReadSet {
+
+    private LongBitmap posts = new LongBitmap();
+
+    // Toggles made while loading, by post id
+    private Map<Long, Boolean> lateToggles = new LinkedHashMap<>();
+    private boolean loadFailed = false;
+
+    /** Installs the loaded bitmap and replays toggles made meanwhile; wakes waiting lookups. */
+    synchronized void loaded(LongBitmap readPosts) {
+        lateToggles.forEach((id, read) -> apply(readPosts, id, read));
+        posts = readPosts;
+        lateToggles = null;
+        notifyAll();
+    }
+
+    /** Abandons a failed load; the caller drops this set and the next lookup loads again. */
+    synchronized void failed() {
+        lateToggles = null;
+        loadFailed = true;
+        notifyAll();
+    }
+
+    synchronized boolean isPostRead(long postId) throws SQLException {
+        awaitLoad();
+        return posts.contains(postId);
+    }
+
+    synchronized void setPostRead(long postId, boolean read) {
+        if (lateToggles != null) lateToggles.put(postId, read);
+        apply(posts, postId, read);
+    }
+
+    /** How many posts are read, or -1 while the set is still loading. */
+    synchronized long readPostCount() {
+        return lateToggles != null ? -1 : posts.cardinality();
+    }
+
+    private static void apply(LongBitmap set, long id, boolean read) {
+        if (read) set.add(id);
+        else set.remove(id);
+    }
+
+    private void awaitLoad() throws SQLException {
+        boolean interrupted = false;
+        while (lateToggles != null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (loadFailed) throw new SQLException("Loading the read set failed");
+    }
+}
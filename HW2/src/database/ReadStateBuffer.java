@@ -0,0 +1,129 @@
+package database;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*******
+ * <p> Title: ReadStateBuffer Class. </p>
+ *
+ * <p> Description: Write-behind buffer for read tracking (post_reads and the reply read marks). Ticking a
+ * read checkbox only records the wanted state here; the buffer writes everything pending in
+ * one transaction of JDBC batches, either after {@link #flushDelayMs} or as soon as
+ * {@link #batchSize} changes are waiting. Toggling the same post or reply again before a
+ * flush just replaces the pending value, so read-heavy sessions produce a few batched
+ * writes instead of one commit per click.</p>
+ *
+ * <p> Set-based reads (feeds, reply lists, unread counts) call {@link #flush()} first so they
+ * see every change made so far; point lookups are answered by the user's in-memory
+ * {@link ReadSet}, which is updated at the same time as the buffer. If a flush fails its
+ * entries are put back (behind any newer toggle) and retried on the next flush.</p>
+ *
+ * @version 1.01  2026-10-18
+ *  - Point lookups moved to ReadSet; the pending-value overlay is gone
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+class ReadStateBuffer {
+
+    /** One user's read flag for one post or reply. */
+    record Key(String userName, long id) {}
+
+    /** Writes one flush worth of changes; implemented by Database. */
+    @FunctionalInterface
+    interface Writer {
+        void write(Map<Key, Boolean> posts, Map<Key, Boolean> replies) throws SQLException;
+    }
+
+    private final Writer writer;
+    private final int batchSize;
+    private final long flushDelayMs;
+
+    // Guarded by this: changes not yet handed to the writer
+    private Map<Key, Boolean> posts = new LinkedHashMap<>();
+    private Map<Key, Boolean> replies = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+
+    // Serializes flushes so an older batch never lands after a newer one
+    private final Object flushLock = new Object();
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "read-state-flush");
+        t.setDaemon(true);
+        return t;
+    });
+
+    ReadStateBuffer(Writer writer, int batchSize, long flushDelayMs) {
+        this.writer = writer;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushDelayMs = Math.max(0, flushDelayMs);
+    }
+
+    /*======================== Recording ========================*/
+
+    void setPostRead(String userName, long postId, boolean read) {
+        record(true, new Key(userName, postId), read);
+    }
+
+    void setReplyRead(String userName, long replyId, boolean read) {
+        record(false, new Key(userName, replyId), read);
+    }
+
+    private void record(boolean post, Key key, boolean read) {
+        boolean flushNow;
+        synchronized (this) {
+            (post ? posts : replies).put(key, read);
+            flushNow = posts.size() + replies.size() >= batchSize;
+            if (!flushNow && flushScheduled) return;
+            flushScheduled = true;
+        }
+        flusher.schedule(this::flushQuietly, flushNow ? 0 : flushDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /*======================== Flushing ========================*/
+
+    /** Writes every pending change now; returns once they are committed (or throws). */
+    void flush() throws SQLException {
+        synchronized (flushLock) {
+            Map<Key, Boolean> p, r;
+            synchronized (this) {
+                flushScheduled = false;
+                if (posts.isEmpty() && replies.isEmpty()) return;
+                p = posts;
+                r = replies;
+                posts = new LinkedHashMap<>();
+                replies = new LinkedHashMap<>();
+            }
+            boolean written = false;
+            try {
+                writer.write(p, r);
+                written = true;
+            } finally {
+                if (!written) {
+                    synchronized (this) {
+                        // keep the failed batch, but let toggles made meanwhile win
+                        p.forEach(posts::putIfAbsent);
+                        r.forEach(replies::putIfAbsent);
+                    }
+                }
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException | RuntimeException e) {
+            e.printStackTrace();
+            synchronized (this) {
+                if (flushScheduled || posts.isEmpty() && replies.isEmpty()) return;
+                flushScheduled = true;
+            }
+            flusher.schedule(this::flushQuietly, Math.max(flushDelayMs, 1_000L), TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,436 @@
+package database;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/*******
+ * <p> Title: SchemaMigrations Class. </p>
+ *
+ * <p> Description: Versioned, checksummed schema migrations for the H2 database. Every
+ * applied step is recorded in the <code>schema_version</code> table together with a checksum
+ * of its SQL. On startup the recorded versions are compared with {@link #MIGRATIONS}; when
+ * the database is already current no DDL is executed at all.</p>
+ *
+ * <p> Rules for adding a step: append it with the next version number and never edit a step
+ * that has shipped (its checksum would no longer match and startup fails loudly).</p>
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version (replaces the DDL replay in Database.ensureSchema)
+ */
+public class SchemaMigrations {
+
+    /** A Java-coded step, for data backfills that are awkward to express as plain SQL. */
+    @FunctionalInterface
+    interface Step {
+        void apply(Connection c) throws SQLException;
+    }
+
+    /** One ordered migration: a list of SQL statements and/or a Java step. */
+    static final class Migration {
+        final int version;
+        final String description;
+        final List<String> statements;
+        final Step javaStep;
+        final String javaStepTag;   // bump this when a Java step changes meaning
+
+        private Migration(int version, String description, List<String> statements,
+                          Step javaStep, String javaStepTag) {
+            this.version = version;
+            this.description = description;
+            this.statements = statements;
+            this.javaStep = javaStep;
+            this.javaStepTag = javaStepTag;
+        }
+
+        long checksum() {
+            CRC32 crc = new CRC32();
+            for (String sql : statements) {
+                crc.update(normalize(sql).getBytes(StandardCharsets.UTF_8));
+                crc.update(';');
+            }
+            if (javaStepTag != null) crc.update(javaStepTag.getBytes(StandardCharsets.UTF_8));
+            return crc.getValue();
+        }
+
+        void apply(Connection c) throws SQLException {
+            try (Statement s = c.createStatement()) {
+                for (String sql : statements) s.execute(sql);
+            }
+            if (javaStep != null) javaStep.apply(c);
+        }
+    }
+
+    static Migration sql(int version, String description, String... statements) {
+        return new Migration(version, description, List.of(statements), null, null);
+    }
+
+    static Migration java(int version, String description, String tag, Step step, String... statements) {
+        return new Migration(version, description, List.of(statements), step, tag);
+    }
+
+    /** Whitespace differences (re-indenting a text block) must not change the checksum. */
+    private static String normalize(String sql) {
+        return sql.trim().replaceAll("\\s+", " ");
+    }
+
+    /*======================== The migrations ========================*/
+
+    static final List<Migration> MIGRATIONS = List.of(
+
+        // V1 adopts databases created by the old ensureSchema(): everything is IF NOT EXISTS
+        sql(1, "Baseline tables",
+            """
+            CREATE TABLE IF NOT EXISTS userDB (
+              id INT AUTO_INCREMENT PRIMARY KEY,
+              userName VARCHAR(255) UNIQUE,
+              password VARCHAR(255),
+              firstName VARCHAR(255),
+              middleName VARCHAR(255),
+              lastName VARCHAR(255),
+              preferredFirstName VARCHAR(255),
+              emailAddress VARCHAR(255),
+              adminRole BOOL DEFAULT FALSE,
+              studentRole BOOL DEFAULT FALSE,
+              reviewerRole BOOL DEFAULT FALSE
+            )
+            """,
+            """
+            CREATE TABLE IF NOT EXISTS InvitationCodes(
+              code VARCHAR(10) PRIMARY KEY,
+              emailAddress VARCHAR(255),
+              deadline TIMESTAMP,
+              role VARCHAR(10)
+            )
+            """,
+            """
+            CREATE TABLE IF NOT EXISTS OneTimePass(
+              emailAddress VARCHAR(255),
+              password VARCHAR(32) PRIMARY KEY,
+              used BOOL DEFAULT FALSE
+            )
+            """,
+            """
+            CREATE TABLE IF NOT EXISTS threads(
+              id IDENTITY PRIMARY KEY,
+              name VARCHAR(120) NOT NULL UNIQUE
+            )
+            """,
+            """
+            CREATE TABLE IF NOT EXISTS posts (
+              id IDENTITY PRIMARY KEY,
+              author VARCHAR(100) NOT NULL,
+              title VARCHAR(255),
+              content CLOB,
+              thread VARCHAR(100) DEFAULT 'General',
+              kind VARCHAR(50) DEFAULT 'Post',
+              is_private BOOLEAN DEFAULT FALSE,
+              is_anonymous BOOLEAN DEFAULT FALSE,
+              created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+              updated_at TIMESTAMP,
+              deleted BOOLEAN DEFAULT FALSE,
+              deleted_at TIMESTAMP
+            )
+            """,
+            """
+            CREATE TABLE IF NOT EXISTS replies (
+              id IDENTITY PRIMARY KEY,
+              post_id BIGINT NOT NULL,
+              author VARCHAR(100) NOT NULL,
+              content CLOB,
+              created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+              updated_at TIMESTAMP,
+              FOREIGN KEY (post_id) REFERENCES posts(id)
+            )
+            """,
+            // databases from before these columns existed
+            "ALTER TABLE posts ADD COLUMN IF NOT EXISTS thread VARCHAR(100) DEFAULT 'General'",
+            "ALTER TABLE posts ADD COLUMN IF NOT EXISTS kind VARCHAR(50) DEFAULT 'Post'",
+            "ALTER TABLE posts ADD COLUMN IF NOT EXISTS is_private BOOLEAN DEFAULT FALSE",
+            "ALTER TABLE posts ADD COLUMN IF NOT EXISTS is_anonymous BOOLEAN DEFAULT FALSE",
+            "ALTER TABLE posts ADD COLUMN IF NOT EXISTS deleted BOOLEAN DEFAULT FALSE",
+            "ALTER TABLE posts ADD COLUMN IF NOT EXISTS deleted_at TIMESTAMP",
+            """
+            CREATE TABLE IF NOT EXISTS post_reads(
+              user_name VARCHAR(120) NOT NULL,
+              post_id BIGINT NOT NULL,
+              last_read_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+              PRIMARY KEY(user_name, post_id),
+              CONSTRAINT fk_post_reads_post FOREIGN KEY (post_id) REFERENCES posts(id)
+            )
+            """,
+            """
+            CREATE TABLE IF NOT EXISTS reply_reads(
+              user_name VARCHAR(120) NOT NULL,
+              reply_id BIGINT NOT NULL,
+              read_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+              PRIMARY KEY(user_name, reply_id),
+              CONSTRAINT fk_reply_reads_reply FOREIGN KEY (reply_id) REFERENCES replies(id)
+            )
+            """,
+            "MERGE INTO threads (name) KEY(name) VALUES ('General')"
+        ),
+
+        // V2 indexes the columns the feed, search and admin screens filter and sort on
+        sql(2, "Feed and lookup indexes",
+            "CREATE INDEX IF NOT EXISTS idx_posts_created ON posts(created_at, id)",
+            "CREATE INDEX IF NOT EXISTS idx_posts_thread_created ON posts(thread, created_at, id)",
+            "CREATE INDEX IF NOT EXISTS idx_posts_author ON posts(author)",
+            "CREATE INDEX IF NOT EXISTS idx_replies_post_created ON replies(post_id, created_at)",
+            "CREATE INDEX IF NOT EXISTS idx_reply_reads_user ON reply_reads(user_name)",
+            "CREATE INDEX IF NOT EXISTS idx_invitation_email ON InvitationCodes(emailAddress)",
+            "CREATE INDEX IF NOT EXISTS idx_userdb_email ON userDB(emailAddress)"
+        ),
+
+        // V3 denormalizes reply counts/activity onto posts (kept current by addReply/deleteReply)
+        java(3, "posts.reply_count and posts.last_activity_at", "PostCounters.backfill v1",
+            PostCounters::backfill,
+            "ALTER TABLE posts ADD COLUMN IF NOT EXISTS reply_count INT DEFAULT 0 NOT NULL",
+            "ALTER TABLE posts ADD COLUMN IF NOT EXISTS last_activity_at TIMESTAMP",
+            "CREATE INDEX IF NOT EXISTS idx_posts_last_activity ON posts(last_activity_at, id)"
+        ),
+
+        // V4 per-user read-reply counters: unread = posts.reply_count - read_count
+        sql(4, "user_post_read_counts",
+            """
+            CREATE TABLE IF NOT EXISTS user_post_read_counts(
+              user_name VARCHAR(120) NOT NULL,
+              post_id BIGINT NOT NULL,
+              read_count INT DEFAULT 0 NOT NULL,
+              PRIMARY KEY(user_name, post_id),
+              CONSTRAINT fk_read_counts_post FOREIGN KEY (post_id) REFERENCES posts(id)
+            )
+            """,
+            """
+            MERGE INTO user_post_read_counts(user_name, post_id, read_count)
+            KEY(user_name, post_id)
+            SELECT rr.user_name, r.post_id, COUNT(*)
+              FROM reply_reads rr
+              JOIN replies r ON r.id = rr.reply_id
+             GROUP BY rr.user_name, r.post_id
+            """
+        ),
+
+        // V5 short body preview so list queries never read the content CLOB
+        sql(5, "posts.preview",
+            "ALTER TABLE posts ADD COLUMN IF NOT EXISTS preview VARCHAR(120)",
+            "UPDATE posts SET preview = SUBSTRING(TRIM(content), 1, 120) WHERE content IS NOT NULL"
+        ),
+
+        // V6 posts reference threads by id; every distinct thread name becomes a threads row
+        sql(6, "posts.thread_id",
+            "ALTER TABLE posts ADD COLUMN IF NOT EXISTS thread_id BIGINT",
+            """
+            INSERT INTO threads(name)
+            SELECT MIN(TRIM(p.thread))
+              FROM posts p
+             WHERE p.thread IS NOT NULL AND TRIM(p.thread) <> ''
+               AND NOT EXISTS (SELECT 1 FROM threads t WHERE LOWER(t.name) = LOWER(TRIM(p.thread)))
+             GROUP BY LOWER(TRIM(p.thread))
+            """,
+            """
+            UPDATE posts p
+               SET thread_id = (SELECT MIN(t.id) FROM threads t
+                                 WHERE LOWER(t.name) = LOWER(COALESCE(NULLIF(TRIM(p.thread), ''), 'General')))
+            """,
+            "UPDATE posts p SET thread = (SELECT t.name FROM threads t WHERE t.id = p.thread_id)",
+            "ALTER TABLE posts ALTER COLUMN thread_id SET NOT NULL",
+            "ALTER TABLE posts ADD CONSTRAINT IF NOT EXISTS fk_posts_thread FOREIGN KEY (thread_id) REFERENCES threads(id)",
+            "CREATE INDEX IF NOT EXISTS idx_posts_thread_id ON posts(thread_id, created_at, id)",
+            "DROP INDEX IF EXISTS idx_posts_thread_created"
+        ),
+
+        // V7 keyset indexes for the sortable columns of the paged user directory
+        sql(7, "userDB directory sort indexes",
+            "CREATE INDEX IF NOT EXISTS idx_userdb_first ON userDB(firstName, userName)",
+            "CREATE INDEX IF NOT EXISTS idx_userdb_last ON userDB(lastName, userName)",
+            "CREATE INDEX IF NOT EXISTS idx_userdb_preferred ON userDB(preferredFirstName, userName)",
+            "CREATE INDEX IF NOT EXISTS idx_userdb_email_user ON userDB(emailAddress, userName)",
+            "DROP INDEX IF EXISTS idx_userdb_email"
+        ),
+
+        // V8 watermark read model: per (user, post) the highest reply id up to which everything
+        // is read, plus exception rows for replies whose state differs from that default;
+        // replaces one reply_reads row per read reply and the user_post_read_counts counters
+        sql(8, "reply_read_marks and reply_read_exceptions",
+            """
+            CREATE TABLE IF NOT EXISTS reply_read_marks(
+              user_name VARCHAR(120) NOT NULL,
+              post_id BIGINT NOT NULL,
+              last_reply_id BIGINT NOT NULL,
+              PRIMARY KEY(user_name, post_id),
+              CONSTRAINT fk_read_marks_post FOREIGN KEY (post_id) REFERENCES posts(id)
+            )
+            """,
+            """
+            CREATE TABLE IF NOT EXISTS reply_read_exceptions(
+              user_name VARCHAR(120) NOT NULL,
+              reply_id BIGINT NOT NULL,
+              post_id BIGINT NOT NULL,
+              PRIMARY KEY(user_name, reply_id),
+              CONSTRAINT fk_read_exceptions_reply FOREIGN KEY (reply_id) REFERENCES replies(id)
+            )
+            """,
+            "CREATE INDEX IF NOT EXISTS idx_read_exceptions_post ON reply_read_exceptions(user_name, post_id, reply_id)",
+            "CREATE INDEX IF NOT EXISTS idx_replies_post_id ON replies(post_id, id)",
+            // mark = last reply before the user's first unread one in each post they read in
+            """
+            INSERT INTO reply_read_marks(user_name, post_id, last_reply_id)
+            SELECT g.user_name, g.post_id, g.mark
+              FROM (SELECT u.user_name, u.post_id,
+                           (SELECT MAX(r.id) FROM replies r
+                             WHERE r.post_id = u.post_id
+                               AND r.id < COALESCE(
+                                   (SELECT MIN(q.id) FROM replies q
+                                     WHERE q.post_id = u.post_id
+                                       AND NOT EXISTS (SELECT 1 FROM reply_reads rr
+                                                        WHERE rr.user_name = u.user_name
+                                                          AND rr.reply_id = q.id)),
+                                   9223372036854775807)) AS mark
+                      FROM (SELECT DISTINCT rr.user_name, r.post_id
+                              FROM reply_reads rr
+                              JOIN replies r ON r.id = rr.reply_id) u) g
+             WHERE g.mark IS NOT NULL
+            """,
+            // replies read out of order (above the mark) become exceptions
+            """
+            INSERT INTO reply_read_exceptions(user_name, reply_id, post_id)
+            SELECT rr.user_name, rr.reply_id, r.post_id
+              FROM reply_reads rr
+              JOIN replies r ON r.id = rr.reply_id
+              LEFT JOIN reply_read_marks m ON m.user_name = rr.user_name AND m.post_id = r.post_id
+             WHERE rr.reply_id > COALESCE(m.last_reply_id, 0)
+            """,
+            "DROP TABLE IF EXISTS user_post_read_counts",
+            "DROP TABLE IF EXISTS reply_reads"
+        ),
+
+        // V9 lets the post search index find posts edited or deleted since its last checkpoint
+        // without scanning the table (new posts are found through idx_posts_created)
+        sql(9, "posts change-time indexes",
+            "CREATE INDEX IF NOT EXISTS idx_posts_updated ON posts(updated_at)",
+            "CREATE INDEX IF NOT EXISTS idx_posts_deleted_at ON posts(deleted_at)"
+        ),
+
+        // V10 serves newest-first pages by reading an index in order: H2 does not walk the
+        // ascending idx_posts_created backwards, so ORDER BY created_at DESC sorted every row
+        sql(10, "posts newest-first index",
+            "CREATE INDEX IF NOT EXISTS idx_posts_created_desc ON posts(created_at DESC, id DESC)"
+        ),
+
+        // V11 lets the reply search index find replies written or edited since its last
+        // checkpoint; edits now stamp updated_at
+        sql(11, "replies change times",
+            "ALTER TABLE replies ADD COLUMN IF NOT EXISTS updated_at TIMESTAMP",
+            "CREATE INDEX IF NOT EXISTS idx_replies_created ON replies(created_at)",
+            "CREATE INDEX IF NOT EXISTS idx_replies_updated ON replies(updated_at)"
+        ),
+
+        // V12 logs reply deletes, which remove the row, so the reply search index can catch up
+        // with them after a run that did not save it
+        sql(12, "reply deletion log",
+            """
+            CREATE TABLE IF NOT EXISTS reply_deletions (
+                reply_id   BIGINT PRIMARY KEY,
+                post_id    BIGINT NOT NULL,
+                deleted_at TIMESTAMP NOT NULL
+            )
+            """,
+            "CREATE INDEX IF NOT EXISTS idx_reply_deletions_at ON reply_deletions(deleted_at)"
+        )
+    );
+
+    public static final int LATEST_VERSION = MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+
+    // Set once this JVM has verified/brought the schema up to date
+    private static volatile boolean current = false;
+
+    /*======================== Runner ========================*/
+
+    /**
+     * Brings the schema up to {@link #LATEST_VERSION}. After the first successful call in this
+     * JVM, further calls return immediately; when the database is already current only the
+     * schema_version table is read.
+     */
+    public static void migrate(Connection c) throws SQLException {
+        if (current) return;
+        synchronized (SchemaMigrations.class) {
+            if (current) return;
+
+            Map<Integer, Long> applied = readApplied(c);
+            for (Migration m : MIGRATIONS) {
+                Long recorded = applied.get(m.version);
+                if (recorded == null) continue;
+                if (recorded != m.checksum()) {
+                    throw new SQLException("Schema migration V" + m.version + " (" + m.description
+                            + ") was changed after it was applied: checksum " + recorded
+                            + " in schema_version, " + m.checksum() + " in code");
+                }
+            }
+
+            for (Migration m : pending(applied)) {
+                applyOne(c, m);
+            }
+            current = true;
+        }
+    }
+
+    /** Versions recorded in schema_version; creates the table on a brand-new database. */
+    private static Map<Integer, Long> readApplied(Connection c) throws SQLException {
+        Map<Integer, Long> applied = new HashMap<>();
+        try (Statement s = c.createStatement();
+             ResultSet rs = s.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) applied.put(rs.getInt(1), rs.getLong(2));
+            return applied;
+        } catch (SQLException missing) {
+            try (Statement s = c.createStatement()) {
+                s.execute("""
+                    CREATE TABLE IF NOT EXISTS schema_version(
+                      version INT PRIMARY KEY,
+                      description VARCHAR(200) NOT NULL,
+                      checksum BIGINT NOT NULL,
+                      applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                    )
+                """);
+            }
+            return applied;
+        }
+    }
+
+    private static List<Migration> pending(Map<Integer, Long> applied) {
+        List<Migration> out = new ArrayList<>();
+        for (Migration m : MIGRATIONS) {
+            if (!applied.containsKey(m.version)) out.add(m);
+        }
+        return out;
+    }
+
+    private static void applyOne(Connection c, Migration m) throws SQLException {
+        boolean oldAutoCommit = c.getAutoCommit();
+        c.setAutoCommit(false);   // H2 commits DDL implicitly; data steps still roll back together
+        try {
+            m.apply(c);
+            try (PreparedStatement ps = c.prepareStatement(
+                    "INSERT INTO schema_version(version, description, checksum) VALUES (?, ?, ?)")) {
+                ps.setInt(1, m.version);
+                ps.setString(2, m.description);
+                ps.setLong(3, m.checksum());
+                ps.executeUpdate();
+            }
+            c.commit();
+        } catch (SQLException e) {
+            c.rollback();
+            throw new SQLException("Schema migration V" + m.version + " (" + m.description + ") failed", e);
+        } finally {
+            c.setAutoCommit(oldAutoCommit);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import entityClasses.Completion;
+
+/*******
+ * <p> Title: SearchCompletions Class. </p>
+ *
+ * <p> Description: Prefix completions for the search box, served from three in-memory
+ * {@link CompletionTrie}s: the most frequent terms of the {@link SearchIndex} (by document
+ * frequency), thread names (by post count) and post authors (by post count). A keystroke
+ * costs a trie walk, never a query.</p>
+ *
+ * <p> The tries are one immutable snapshot. The first completion builds it (on the caller's
+ * thread, which is never the FX thread); afterwards a snapshot older than
+ * <code>refreshMs</code> is still answered from, while one background thread builds its
+ * replacement, so new posts, threads and authors show up within about that long.</p>
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+final class SearchCompletions {
+
+    private static final String THREADS_SQL = """
+        SELECT t.name, (SELECT COUNT(*) FROM posts p WHERE p.thread_id = t.id)
+          FROM threads t
+    """;
+
+    private static final String AUTHORS_SQL = """
+        SELECT author, COUNT(*)
+          FROM posts
+         WHERE author IS NOT NULL
+         GROUP BY author
+    """;
+
+    private record Snapshot(CompletionTrie terms, CompletionTrie threads, CompletionTrie authors, long builtAt) {}
+
+    private final SearchIndex.Connections db;
+    private final SearchIndex index;
+    private final int maxTerms;
+    private final long refreshMs;
+
+    private volatile Snapshot snapshot = null;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    SearchCompletions(SearchIndex.Connections db, SearchIndex index, int maxTerms, long refreshMs) {
+        this.db = db;
+        this.index = index;
+        this.maxTerms = maxTerms;
+        this.refreshMs = refreshMs;
+    }
+
+    /** Up to perKind threads, then authors, then terms completing prefix, each kind heaviest first. */
+    List<Completion> complete(String prefix, int perKind) throws SQLException {
+        if (prefix == null || prefix.isBlank() || perKind <= 0) return List.of();
+        Snapshot s = current();
+        List<Completion> out = new ArrayList<>();
+        out.addAll(s.threads().complete(prefix, perKind));
+        out.addAll(s.authors().complete(prefix, perKind));
+        out.addAll(s.terms().complete(prefix, perKind));
+        return out;
+    }
+
+    private Snapshot current() throws SQLException {
+        Snapshot s = snapshot;
+        if (s == null) {
+            synchronized (this) {
+                if (snapshot == null) snapshot = load();
+                return snapshot;
+            }
+        }
+        if (System.currentTimeMillis() - s.builtAt() > refreshMs && refreshing.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("search-completions").start(() -> {
+                try {
+                    snapshot = load();
+                } catch (SQLException | RuntimeException e) {
+                    System.err.println("Refreshing search completions failed: " + e);
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        }
+        return s;
+    }
+
+    private Snapshot load() throws SQLException {
+        long started = System.currentTimeMillis();
+        CompletionTrie terms = CompletionTrie.build(index.topTerms(maxTerms), Completion.Kind.TERM);
+        Map<String, Integer> threads, authors;
+        try (Connection c = db.get()) {
+            threads = counts(c, THREADS_SQL);
+            authors = counts(c, AUTHORS_SQL);
+        }
+        return new Snapshot(terms,
+                CompletionTrie.build(threads, Completion.Kind.THREAD),
+                CompletionTrie.build(authors, Completion.Kind.AUTHOR),
+                started);
+    }
+
+    private static Map<String, Integer> counts(Connection c, String sql) throws SQLException {
+        Map<String, Integer> out = new HashMap<>();
+        try (Statement s = c.createStatement();
+             ResultSet rs = s.executeQuery(sql)) {
+            while (rs.next()) out.put(rs.getString(1), rs.getInt(2));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,1275 @@
+package database;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToLongFunction;
+
+/*******
+ * <p> Title: SearchIndex Class. </p>
+ *
+ * <p> Description: In-process full-text index over post titles and bodies, ranked with
+ * BM25. Search Posts used to run <code>LOWER(content) LIKE '%word%'</code>, which reads every
+ * post on every keystroke and cannot rank; this index answers from posting lists instead.</p>
+ *
+ * <p> The index is a list of immutable, memory-mapped {@link IndexSegment}s plus a small
+ * in-memory delta for posts written since the last segment. Database reports every post
+ * insert, edit and delete through {@link #indexed} / {@link #removed}; those calls only queue
+ * the change, and the queue is applied before the next search (the same flush-before-read rule
+ * as the read-state buffer), so writers never wait on the index. Before the index starts to
+ * open nothing is queued: opening reads those changes back from the table anyway. When the delta reaches
+ * <code>deltaDocs</code> posts, or at shutdown, it is written as a new segment; once there are
+ * more than <code>maxSegments</code> segments the smallest ones are merged.</p>
+ *
+ * <p> A manifest in the index directory lists the segments and a checkpoint time. On the
+ * first search of a run the segments are simply mapped again, and posts created, edited or
+ * deleted since the checkpoint are re-read from the posts table (they were still in the
+ * delta if the application did not exit cleanly). If the directory is missing or unreadable
+ * the index is rebuilt from the posts table, split by id range over several threads.</p>
+ *
+ * <p> Scoring: BM25 with k1 = {@value #K1} and b = {@value #B}; title terms count
+ * {@value #TITLE_WEIGHT} times. Query terms are OR-ed, so posts containing all of them rank
+ * first. Document frequencies include posts tombstoned since their segment was written, until
+ * the next merge drops them.</p>
+ *
+ * <p> Typos and word parts: every query term also stands for the indexed terms that contain
+ * it (<code>recurs</code> in <code>recursion</code>) or share most of their trigrams with it
+ * (<code>recursoin</code>, Jaccard similarity of padded trigrams at least
+ * {@value #FUZZY_MIN_SIMILARITY}), found through each segment's trigram table. The best
+ * {@value #MAX_VARIANTS} variants are scored together with the term itself as one term whose
+ * frequency is the sum of the variants' frequencies, each weighted by its similarity, and
+ * whose document frequency is the largest variant's; so an exact match still ranks first and
+ * a misspelling cannot outscore it by being rare. {@link #substringCandidates} answers
+ * <code>LIKE '%text%'</code> filters from the same tables.</p>
+ *
+ * <p> Replies: a second instance indexes replies (see {@link #REPLIES}), each reply grouped
+ * under its post. Given that instance, a post index finds posts through their replies too:
+ * the replies' scores are summed up per post in one pass over their postings (the best reply
+ * counts fully, the others {@value #OTHER_REPLIES_WEIGHT} each), weighted by
+ * {@value #REPLY_WEIGHT} and added to the post's own score before the same bounded top-k
+ * heap picks the results; each hit names its best-matching reply. A deleted reply's row is
+ * gone, so its delete is read back from the <code>reply_deletions</code> log on catch-up; each
+ * saved checkpoint prunes the log rows before it.</p>
+ *
+ * <p> Match positions: every posting also records where in the body the term first occurs
+ * (see {@link IndexSegment}), and the scoring pass keeps, per document, the earliest of those
+ * over the matched query terms and their variants. Each hit carries it, so snippets and
+ * scroll-to-match need no second search through the body.</p>
+ *
+ * @version 1.06  2026-10-18
+ *  - REPLIES catches up with reply deletes from reply_deletions; Hits.repliesOnly
+ *  - indexed / removed queue nothing until the index starts to open
+ *  - Hits.replyAt: offset of the first matching term in each hit's best reply
+ *  - Source.pruneSql: reply_deletions rows older than the saved checkpoint are deleted
+ *
+ * @version 1.05  2026-10-18
+ *  - Hits.matchAt: body offset of each hit's first matching term (index format 4)
+ *
+ * @version 1.04  2026-10-18
+ *  - Reply-aware search: a reply index (Source REPLIES) whose matches count toward their post
+ *  - Hits.replies: the best-matching reply of each hit
+ *
+ * @version 1.03  2026-10-18
+ *  - postsMatching(term) and search(text, limit, within) for the structured query language
+ *
+ * @version 1.02  2026-10-18
+ *  - topTerms(max) for search-as-you-type completions
+ *
+ * @version 1.01  2026-10-18
+ *  - Fuzzy and substring variants of query terms through the segments' trigram tables
+ *  - substringCandidates(keyword, max) for keyword filters
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+final class SearchIndex {
+
+    /** Hands out pooled connections; implemented by Database::getConnection. */
+    @FunctionalInterface
+    interface Connections {
+        Connection get() throws SQLException;
+    }
+
+    /**
+     * Ranked result: post ids best first with their scores, the id of their best-matching
+     * reply (0 if none matched) and the char offset in it of the first matching term, the char
+     * offset in their body of the first matching term (-1 if only the title or replies
+     * matched), whether it matched only through its replies, and how many posts matched at all.
+     */
+    record Hits(long[] ids, float[] scores, long[] replies, int[] replyAt, int[] matchAt,
+                boolean[] repliesOnly, int total) {
+        static final Hits NONE = new Hits(new long[0], new float[0], new long[0], new int[0], new int[0],
+                new boolean[0], 0);
+    }
+
+    /**
+     * Where an index's documents come from. The rebuild statement takes an id range and the
+     * change statements a time; each returns id, group, title and content, and the change
+     * statements whether the document is deleted. The optional prune statement takes the
+     * checkpoint time and deletes change-log rows older than it, which no catch-up reads again.
+     */
+    record Source(String maxIdSql, String rebuildSql, String[] changedSql, String pruneSql) {}
+
+    /** Live posts, each its own group. */
+    static final Source POSTS = new Source(
+        "SELECT COALESCE(MAX(id), 0) FROM posts",
+        """
+            SELECT id, id, title, content
+              FROM posts
+             WHERE id > ? AND id <= ? AND COALESCE(deleted, FALSE) = FALSE
+             ORDER BY id
+        """,
+        // One range scan per change-time index (idx_posts_created / _updated / _deleted_at); an OR
+        // or an IN (... UNION ...) over the three makes H2 scan the whole table
+        new String[] {
+            "SELECT id, id, title, content, COALESCE(deleted, FALSE) FROM posts WHERE created_at >= ?",
+            "SELECT id, id, title, content, COALESCE(deleted, FALSE) FROM posts WHERE updated_at >= ?",
+            "SELECT id, id, title, content, COALESCE(deleted, FALSE) FROM posts WHERE deleted_at >= ?"
+        },
+        null);
+
+    /**
+     * Replies, grouped by post (idx_replies_created / _updated); deleted replies are gone from
+     * the table and are read from the reply_deletions log instead.
+     */
+    static final Source REPLIES = new Source(
+        "SELECT COALESCE(MAX(id), 0) FROM replies",
+        """
+            SELECT id, post_id, '', content
+              FROM replies
+             WHERE id > ? AND id <= ?
+             ORDER BY id
+        """,
+        new String[] {
+            "SELECT id, post_id, '', content, FALSE FROM replies WHERE created_at >= ?",
+            "SELECT id, post_id, '', content, FALSE FROM replies WHERE updated_at >= ?",
+            "SELECT reply_id, post_id, '', '', TRUE FROM reply_deletions WHERE deleted_at >= ?"
+        },
+        "DELETE FROM reply_deletions WHERE deleted_at < ?");
+
+    // BM25 term-frequency saturation and length normalisation
+    static final float K1 = 1.2f;
+    static final float B  = 0.75f;
+    static final int TITLE_WEIGHT = 2;
+
+    // A post's replies add this share of their summed-up score to the post's; after the best
+    // reply, each further matching reply counts this much
+    static final float REPLY_WEIGHT = 0.5f;
+    static final float OTHER_REPLIES_WEIGHT = 0.25f;
+
+    private static final String MANIFEST = "manifest.properties";
+    private static final String FORMAT = "4";
+
+    // Query terms shorter than this are matched exactly; variants must be at least this similar
+    static final int   VARIANT_MIN_CHARS = 3;
+    static final float FUZZY_MIN_SIMILARITY = 0.4f;
+    static final int   MAX_VARIANTS = 16;
+    static final int   VARIANT_MAX_CANDIDATES = 10_000;
+
+    // Changes up to this long before a checkpoint are re-read on the next open, so a write that
+    // committed just before the queue was drained but reached the queue after it is never lost
+    private static final long CHECKPOINT_SLACK_MS = 5_000L;
+
+    // A rebuild gives each thread at least this many ids, and cuts its output into segments of this size
+    private static final long REBUILD_MIN_IDS = 20_000L;
+    private static final int  REBUILD_SEGMENT_DOCS = 250_000;
+
+    /**
+     * A document as indexed: its group, term frequencies (title terms weighted), the body offset
+     * of each body term's first occurrence, and total term count.
+     */
+    private record Doc(long group, Map<String, Integer> termFreqs, Map<String, Integer> firstAt, int length) {}
+
+    /** One queued write; a null title means the document was deleted. */
+    private record Change(long docId, long group, String title, String content) {}
+
+    private final Path dir;
+    private final Source source;
+    private final SearchIndex replies;  // null, or the index of this index's posts' replies
+    private final Connections db;
+    private final int threads;
+    private final int deltaDocs;
+    private final int maxSegments;
+
+    private final ConcurrentLinkedQueue<Change> changes = new ConcurrentLinkedQueue<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean opened = false;
+    // Set before opening reads the table; a change made earlier is read there, not queued
+    private volatile boolean opening = false;
+
+    // Guarded by lock
+    private final List<IndexSegment> segments = new ArrayList<>();
+    private final Map<Long, Doc> delta = new HashMap<>();
+    private final Map<String, Map<Long, Integer>> deltaPostings = new HashMap<>();
+    private final Map<Long, Set<String>> deltaTrigrams = new HashMap<>();    // padded trigram -> delta terms
+    private long deltaLength = 0;
+    private long nextSegment = 1;
+    private long checkpoint = 0;        // epoch ms; posts changed since may be missing from the segments
+    private long drainedAt = 0;         // when the change queue was last emptied
+
+    // Per-search score accumulators, reused so a query over a large segment does not allocate
+    private final ConcurrentLinkedQueue<Scratch> scratch = new ConcurrentLinkedQueue<>();
+
+    SearchIndex(Path dir, Source source, SearchIndex replies, Connections db,
+                int threads, int deltaDocs, int maxSegments) {
+        this.dir = dir;
+        this.source = source;
+        this.replies = replies;
+        this.db = db;
+        this.threads = Math.max(1, threads);
+        this.deltaDocs = Math.max(1, deltaDocs);
+        this.maxSegments = Math.max(2, maxSegments);
+    }
+
+    /*======================== Recording ========================*/
+
+    /** Queues a post insert or edit; applied before the next search. */
+    void indexed(long postId, String title, String content) {
+        indexed(postId, postId, title, content);
+    }
+
+    /** Queues an insert or edit of a document in group (a reply's post); applied before the next search. */
+    void indexed(long docId, long group, String title, String content) {
+        if (opening) changes.add(new Change(docId, group, title == null ? "" : title, content));
+    }
+
+    /** Queues a delete; applied before the next search. */
+    void removed(long docId) {
+        if (opening) changes.add(new Change(docId, 0, null, null));
+    }
+
+    /*======================== Searching ========================*/
+
+    /** The best matches for text, at most limit of them; opens the index on first use. */
+    Hits search(String text, int limit) throws SQLException {
+        return search(text, limit, null);
+    }
+
+    /**
+     * The best matches for text among the posts in within (ids ascending; null for all), at
+     * most limit of them.
+     */
+    Hits search(String text, int limit, long[] within) throws SQLException {
+        Set<String> terms = new LinkedHashSet<>(Tokenizer.terms(text));
+        if (terms.isEmpty() || limit <= 0 || (within != null && within.length == 0)) return Hits.NONE;
+        String[] t = terms.toArray(new String[0]);
+        ReplyGroups fromReplies = replies == null ? null : replies.byGroup(t, within);
+        openAndDrain();
+        lock.readLock().lock();
+        try {
+            return rank(t, limit, within, fromReplies);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of the live posts, ascending, containing term or one of the variants a search for it
+     * would score (see {@link #variants}), or with a reply that does; term is one
+     * {@link Tokenizer} term.
+     */
+    long[] postsMatching(String term) throws SQLException {
+        long[] viaReplies = replies == null ? new long[0] : replies.groupsMatching(term);
+        openAndDrain();
+        lock.readLock().lock();
+        try {
+            long[] own = groupsContaining(term);
+            if (viaReplies.length == 0) return own;
+            long[] ids = Arrays.copyOf(own, own.length + viaReplies.length);
+            int n = own.length;
+            for (long id : viaReplies) if (isLive(id)) ids[n++] = id;
+            return distinct(ids, n);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Groups (a reply's post), ascending, of the live documents containing term or a variant of it. */
+    long[] groupsMatching(String term) throws SQLException {
+        openAndDrain();
+        lock.readLock().lock();
+        try {
+            return groupsContaining(term);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Caller holds a lock
+    private long[] groupsContaining(String term) {
+        long[] ids = new long[64];
+        int n = 0;
+        IndexSegment.Postings cursor = new IndexSegment.Postings();
+        for (String variant : variants(term).keySet()) {
+            byte[] bytes = variant.getBytes(StandardCharsets.UTF_8);
+            for (IndexSegment s : segments) {
+                int slot = s.findTerm(bytes);
+                if (slot < 0) continue;
+                s.postings(slot, cursor);
+                while (cursor.next()) {
+                    if (s.isDeleted(cursor.ord)) continue;
+                    if (n == ids.length) ids = Arrays.copyOf(ids, n * 2);
+                    ids[n++] = s.docGroup(cursor.ord);
+                }
+            }
+            Map<Long, Integer> d = deltaPostings.get(variant);
+            if (d == null) continue;
+            for (long id : d.keySet()) {
+                if (n == ids.length) ids = Arrays.copyOf(ids, n * 2);
+                ids[n++] = delta.get(id).group();
+            }
+        }
+        return distinct(ids, n);
+    }
+
+    // The first n ids sorted, without duplicates
+    private static long[] distinct(long[] ids, int n) {
+        Arrays.sort(ids, 0, n);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) if (distinct == 0 || ids[i] != ids[distinct - 1]) ids[distinct++] = ids[i];
+        return Arrays.copyOf(ids, distinct);
+    }
+
+    // True if id is indexed and not tombstoned; caller holds a lock
+    private boolean isLive(long id) {
+        if (delta.containsKey(id)) return true;
+        for (IndexSegment s : segments) {
+            int ord = s.ordinalOf(id);
+            if (ord >= 0 && !s.isDeleted(ord)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The documents matching terms summed up per group (a reply's post), for the groups in
+     * within (ascending; null for all).
+     */
+    private ReplyGroups byGroup(String[] terms, long[] within) throws SQLException {
+        openAndDrain();
+        lock.readLock().lock();
+        try {
+            ReplyGroups out = new ReplyGroups();
+            score(terms, (id, group, score, at) -> {
+                if (within == null || Arrays.binarySearch(within, group) >= 0) out.add(group, id, score, at);
+            });
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Matching replies summed up per post: for each post the best reply (and where its first
+     * match is) and the sum of all scores, in an open-addressing table keyed by post id (ids are positive; 0 marks a free
+     * slot), since a common word can match replies of most posts.
+     */
+    private static final class ReplyGroups {
+        long[] posts = new long[256];
+        long[] bestReply = new long[256];
+        int[] bestAt = new int[256];
+        float[] best = new float[256];
+        float[] sum = new float[256];
+        boolean[] used = new boolean[256];     // added to a post's own score by rank()
+        int size = 0;
+
+        void add(long post, long reply, float score, int at) {
+            if (2 * (size + 1) > posts.length) grow();
+            int slot = place(post);
+            if (posts[slot] == 0) {
+                posts[slot] = post;
+                size++;
+            }
+            sum[slot] += score;
+            if (score > best[slot] || (score == best[slot] && reply > bestReply[slot])) {
+                best[slot] = score;
+                bestReply[slot] = reply;
+                bestAt[slot] = at;
+            }
+        }
+
+        /** Slot of post, or -1. */
+        int slotOf(long post) {
+            int slot = place(post);
+            return posts[slot] == 0 ? -1 : slot;
+        }
+
+        // many passing mentions must not outweigh one reply that is about the query
+        float score(int slot) {
+            return best[slot] + OTHER_REPLIES_WEIGHT * (sum[slot] - best[slot]);
+        }
+
+        // post's slot, or the free slot where it goes
+        private int place(long post) {
+            int mask = posts.length - 1;
+            int slot = (int) (post * 0x9E3779B97F4A7C15L >>> 40) & mask;
+            while (posts[slot] != 0 && posts[slot] != post) slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldPosts = posts, oldReplies = bestReply;
+            int[] oldAt = bestAt;
+            float[] oldBest = best, oldSum = sum;
+            int n = oldPosts.length * 2;
+            posts = new long[n];
+            bestReply = new long[n];
+            bestAt = new int[n];
+            best = new float[n];
+            sum = new float[n];
+            used = new boolean[n];
+            for (int i = 0; i < oldPosts.length; i++) {
+                if (oldPosts[i] == 0) continue;
+                int slot = place(oldPosts[i]);
+                posts[slot] = oldPosts[i];
+                bestReply[slot] = oldReplies[i];
+                bestAt[slot] = oldAt[i];
+                best[slot] = oldBest[i];
+                sum[slot] = oldSum[i];
+            }
+        }
+    }
+
+    /**
+     * Ids of the live posts, ascending, that have a term containing each piece of keyword (a
+     * superset of the posts whose title or body contains keyword, which the caller rechecks).
+     * Null if the index cannot narrow the search down: no piece of keyword is at least
+     * {@value #VARIANT_MIN_CHARS} characters long, or more than max posts qualify. Text past
+     * {@link Tokenizer#MAX_TERM_CHARS} characters of a single word is not indexed.
+     */
+    long[] substringCandidates(String keyword, int max) throws SQLException {
+        List<String> pieces = new ArrayList<>();
+        for (String piece : new LinkedHashSet<>(Tokenizer.terms(keyword))) {
+            if (piece.codePointCount(0, piece.length()) >= VARIANT_MIN_CHARS) pieces.add(piece);
+        }
+        if (pieces.isEmpty()) return null;
+        openAndDrain();
+        lock.readLock().lock();
+        try {
+            Set<Long> matching = null;
+            for (String piece : pieces) {
+                matching = postsContaining(piece, matching, max);
+                if (matching == null) return null;
+                if (matching.isEmpty()) break;
+            }
+            long[] ids = new long[matching.size()];
+            int i = 0;
+            for (long id : matching) ids[i++] = id;
+            Arrays.sort(ids);
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** The max terms in the most posts, with their document frequencies (for completions). */
+    Map<String, Integer> topTerms(int max) throws SQLException {
+        openAndDrain();
+        Map<String, Integer> df = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            for (IndexSegment s : segments) {
+                for (int slot = 0; slot < s.termCount(); slot++) df.merge(s.term(slot), s.docFreq(slot), Integer::sum);
+            }
+            deltaPostings.forEach((term, posts) -> df.merge(term, posts.size(), Integer::sum));
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (df.size() <= max) return df;
+        Map<String, Integer> top = new HashMap<>(max * 2);
+        df.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(max)
+                .forEach(e -> top.put(e.getKey(), e.getValue()));
+        return top;
+    }
+
+    /** Opens the index on first use and applies the queued changes. */
+    private void openAndDrain() throws SQLException {
+        ensureOpen();
+        if (changes.isEmpty()) return;
+        lock.writeLock().lock();
+        try {
+            applyChanges();
+            if (delta.size() >= deltaDocs) flush();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Receives each live document matching a search, with its group, BM25 score and the body
+     * offset of its first matching term (-1 if the terms are only in its title).
+     */
+    @FunctionalInterface
+    private interface Scored {
+        void accept(long id, long group, float score, int at);
+    }
+
+    /**
+     * The best limit posts for terms among within (null for all), adding fromReplies' scores
+     * (null without a reply index) to their posts'. Caller holds a lock.
+     */
+    private Hits rank(String[] terms, int limit, long[] within, ReplyGroups fromReplies) {
+        TopK top = new TopK(limit);
+        int[] total = { 0 };
+        score(terms, (id, group, score, at) -> {
+            if (within != null && Arrays.binarySearch(within, id) < 0) return;
+            int r = fromReplies == null ? -1 : fromReplies.slotOf(id);
+            if (r < 0) {
+                top.offer(id, score, 0, -1, at, false);
+            } else {
+                fromReplies.used[r] = true;
+                top.offer(id, score + REPLY_WEIGHT * fromReplies.score(r), fromReplies.bestReply[r], fromReplies.bestAt[r], at, false);
+            }
+            total[0]++;
+        });
+        if (fromReplies != null) {
+            // posts matched only through their replies (byGroup already applied within); whether
+            // the post is still live is only looked up for one that would make the top, so total
+            // may count a deleted post
+            for (int r = 0; r < fromReplies.posts.length; r++) {
+                long postId = fromReplies.posts[r];
+                if (postId == 0 || fromReplies.used[r]) continue;
+                total[0]++;
+                float score = REPLY_WEIGHT * fromReplies.score(r);
+                if (top.accepts(postId, score) && isLive(postId)) top.offer(postId, score, fromReplies.bestReply[r], fromReplies.bestAt[r], -1, true);
+            }
+        }
+        return top.result(total[0]);
+    }
+
+    /** Hands every live document matching one of terms to sink, with its score. Caller holds a lock. */
+    private void score(String[] terms, Scored sink) {
+        long liveDocs = delta.size();
+        long liveLength = deltaLength;
+        for (IndexSegment s : segments) {
+            liveDocs += s.liveDocs();
+            liveLength += s.liveLength();
+        }
+        if (liveDocs == 0) return;
+        float avgLength = Math.max(1f, (float) liveLength / liveDocs);
+
+        // Each query term is a group of variants with weights; per segment the dictionary slot of
+        // every variant, and per group one idf from its most frequent variant
+        String[][] variants = new String[terms.length][];
+        float[][] weights = new float[terms.length][];
+        int[][][] slots = new int[segments.size()][terms.length][];
+        float[] idf = new float[terms.length];
+        for (int g = 0; g < terms.length; g++) {
+            Map<String, Float> v = variants(terms[g]);
+            variants[g] = v.keySet().toArray(new String[0]);
+            weights[g] = new float[variants[g].length];
+            for (int i = 0; i < variants[g].length; i++) weights[g][i] = v.get(variants[g][i]);
+            long maxDf = 0;
+            for (int si = 0; si < segments.size(); si++) slots[si][g] = new int[variants[g].length];
+            for (int i = 0; i < variants[g].length; i++) {
+                byte[] term = variants[g][i].getBytes(StandardCharsets.UTF_8);
+                long df = 0;
+                for (int si = 0; si < segments.size(); si++) {
+                    int slot = segments.get(si).findTerm(term);
+                    slots[si][g][i] = slot;
+                    if (slot >= 0) df += segments.get(si).docFreq(slot);
+                }
+                Map<Long, Integer> d = deltaPostings.get(variants[g][i]);
+                if (d != null) df += d.size();
+                maxDf = Math.max(maxDf, df);
+            }
+            maxDf = Math.min(maxDf, liveDocs);
+            idf[g] = (float) Math.log(1 + (liveDocs - maxDf + 0.5) / (maxDf + 0.5));
+        }
+
+        IndexSegment.Postings cursor = new IndexSegment.Postings();
+        for (int si = 0; si < segments.size(); si++) {
+            IndexSegment s = segments.get(si);
+            Scratch sc = borrowScratch(s.docCount());
+            try {
+                for (int g = 0; g < terms.length; g++) {
+                    if (variants[g].length == 1) {          // the term alone: scored in one pass
+                        if (slots[si][g][0] < 0) continue;
+                        s.postings(slots[si][g][0], cursor);
+                        while (cursor.next()) {
+                            int ord = cursor.ord;
+                            if (s.isDeleted(ord)) continue;
+                            float w = bm25(idf[g], cursor.tf, s.docLength(ord), avgLength);
+                            if (sc.acc[ord] == 0f) sc.touch(ord);
+                            sc.acc[ord] += w;
+                            sc.matchedAt(ord, cursor.at);
+                        }
+                        continue;
+                    }
+                    for (int i = 0; i < variants[g].length; i++) {
+                        if (slots[si][g][i] < 0) continue;
+                        s.postings(slots[si][g][i], cursor);
+                        while (cursor.next()) {
+                            int ord = cursor.ord;
+                            if (s.isDeleted(ord)) continue;
+                            if (sc.tf[ord] == 0f) sc.mark(ord);
+                            sc.tf[ord] += weights[g][i] * cursor.tf;
+                            sc.matchedAt(ord, cursor.at);
+                        }
+                    }
+                    for (int i = 0; i < sc.marked; i++) {
+                        int ord = sc.group[i];
+                        float w = bm25(idf[g], sc.tf[ord], s.docLength(ord), avgLength);
+                        sc.tf[ord] = 0f;
+                        if (sc.acc[ord] == 0f) sc.touch(ord);
+                        sc.acc[ord] += w;
+                    }
+                    sc.marked = 0;
+                }
+                for (int i = 0; i < sc.touched; i++) {
+                    int ord = sc.ords[i];
+                    sink.accept(s.docId(ord), s.docGroup(ord), sc.acc[ord], sc.first[ord] - 1);
+                    sc.acc[ord] = 0f;
+                    sc.first[ord] = 0;
+                }
+            } finally {
+                sc.touched = 0;
+                sc.marked = 0;
+                scratch.add(sc);
+            }
+        }
+        Map<Long, Float> deltaScores = new HashMap<>();
+        Map<Long, Integer> deltaAt = new HashMap<>();
+        for (int g = 0; g < terms.length; g++) {
+            Map<Long, Float> groupTf = new HashMap<>();
+            for (int i = 0; i < variants[g].length; i++) {
+                String variant = variants[g][i];
+                Map<Long, Integer> d = deltaPostings.get(variant);
+                if (d == null) continue;
+                float weight = weights[g][i];
+                d.forEach((id, tf) -> {
+                    groupTf.merge(id, weight * tf, Float::sum);
+                    Integer at = delta.get(id).firstAt().get(variant);
+                    if (at != null) deltaAt.merge(id, at, Math::min);
+                });
+            }
+            float groupIdf = idf[g];
+            groupTf.forEach((id, tf) ->
+                    deltaScores.merge(id, bm25(groupIdf, tf, delta.get(id).length(), avgLength), Float::sum));
+        }
+        deltaScores.forEach((id, score) -> sink.accept(id, delta.get(id).group(), score, deltaAt.getOrDefault(id, -1)));
+    }
+
+    private static float bm25(float idf, float tf, int length, float avgLength) {
+        return idf * tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / avgLength));
+    }
+
+    /**
+     * The indexed terms standing for query term q, with weights: q itself (1), terms containing
+     * it (its share of their length) and terms similar to it (their trigram similarity); at most
+     * {@link #MAX_VARIANTS} besides q, the heaviest. Caller holds a lock.
+     */
+    private Map<String, Float> variants(String q) {
+        Map<String, Float> out = new HashMap<>();
+        out.put(q, 1f);
+        int chars = q.codePointCount(0, q.length());
+        if (chars < VARIANT_MIN_CHARS) return out;
+        long[] padded = Tokenizer.trigrams(q, true);
+        long[] inner = Tokenizer.trigrams(q, false);
+
+        // A term FUZZY_MIN_SIMILARITY similar to q shares at least need of q's padded trigrams, so
+        // it is on one of the padded.length - need + 1 shortest trigram lists; a term containing q
+        // is on every inner trigram's list, so on the shortest. Only those lists are read, and
+        // neither kind of variant is looked for if its lists name more than VARIANT_MAX_CANDIDATES
+        // terms (a query term with that common a shape is matched exactly).
+        int need = (int) Math.ceil(FUZZY_MIN_SIMILARITY * padded.length);
+        int lists = padded.length - need + 1;
+        long[][] shortest = new long[segments.size()][];
+        long[] shortestInner = new long[segments.size()];
+        long fuzzyCost = 0, containsCost = 0;
+        for (int si = 0; si < segments.size(); si++) {
+            IndexSegment s = segments.get(si);
+            shortest[si] = byListLength(padded, s::trigramTerms);
+            for (int i = 0; i < lists; i++) fuzzyCost += s.trigramTerms(shortest[si][i]);
+            shortestInner[si] = byListLength(inner, s::trigramTerms)[0];
+            containsCost += s.trigramTerms(shortestInner[si]);
+        }
+        ToLongFunction<Long> deltaTerms = t -> deltaTrigrams.getOrDefault(t, Set.of()).size();
+        long[] deltaShortest = byListLength(padded, deltaTerms::applyAsLong);
+        long deltaShortestInner = byListLength(inner, deltaTerms::applyAsLong)[0];
+        for (int i = 0; i < lists; i++) fuzzyCost += deltaTerms.applyAsLong(deltaShortest[i]);
+        containsCost += deltaTerms.applyAsLong(deltaShortestInner);
+        boolean fuzzy = fuzzyCost <= VARIANT_MAX_CANDIDATES;
+        boolean contains = containsCost <= VARIANT_MAX_CANDIDATES;
+        if (!fuzzy && !contains) return out;
+
+        Map<String, Float> found = new HashMap<>();
+        for (int si = 0; si < segments.size(); si++) {
+            IndexSegment s = segments.get(si);
+            Set<Integer> candidates = new HashSet<>();
+            if (fuzzy) {
+                for (int i = 0; i < lists; i++) for (int slot : s.termsWithTrigram(shortest[si][i])) candidates.add(slot);
+            }
+            if (contains) for (int slot : s.termsWithTrigram(shortestInner[si])) candidates.add(slot);
+            for (int slot : candidates) weigh(q, chars, padded, s.term(slot), fuzzy, found);
+        }
+        Set<String> candidates = new HashSet<>();
+        if (fuzzy) {
+            for (int i = 0; i < lists; i++) candidates.addAll(deltaTrigrams.getOrDefault(deltaShortest[i], Set.of()));
+        }
+        if (contains) candidates.addAll(deltaTrigrams.getOrDefault(deltaShortestInner, Set.of()));
+        for (String term : candidates) weigh(q, chars, padded, term, fuzzy, found);
+        found.remove(q);
+
+        found.entrySet().stream()
+                .sorted(Map.Entry.<String, Float>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(MAX_VARIANTS)
+                .forEach(e -> out.put(e.getKey(), e.getValue()));
+        return out;
+    }
+
+    // trigrams ordered by how many terms have them, fewest first
+    private static long[] byListLength(long[] trigrams, ToLongFunction<Long> terms) {
+        return Arrays.stream(trigrams).boxed()
+                .sorted(Comparator.comparingLong(terms))
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    // Adds term to found if it contains q or (when fuzzy) is similar enough to it
+    private static void weigh(String q, int chars, long[] padded, String term, boolean fuzzy,
+                              Map<String, Float> found) {
+        float weight = 0f;
+        if (fuzzy) {
+            long[] termTrigrams = Tokenizer.trigrams(term, true);
+            int shared = 0;
+            for (int i = 0, j = 0; i < padded.length && j < termTrigrams.length; ) {
+                if (padded[i] < termTrigrams[j]) i++;
+                else if (padded[i] > termTrigrams[j]) j++;
+                else { shared++; i++; j++; }
+            }
+            float similarity = (float) shared / (padded.length + termTrigrams.length - shared);
+            if (similarity >= FUZZY_MIN_SIMILARITY) weight = similarity;
+        }
+        if (term.length() > q.length() && term.contains(q)) {
+            weight = Math.max(weight, (float) chars / term.codePointCount(0, term.length()));
+        }
+        if (weight > 0f) found.merge(term, weight, Math::max);
+    }
+
+    /**
+     * Live posts with a term containing piece, restricted to within unless it is null; null if
+     * there are more than max. Caller holds a lock.
+     */
+    private Set<Long> postsContaining(String piece, Set<Long> within, int max) {
+        // every term containing piece is on each of its trigrams' lists; the shortest is read and
+        // its terms checked
+        long[] trigrams = Tokenizer.trigrams(piece, false);
+        Set<Long> out = new HashSet<>();
+        IndexSegment.Postings cursor = new IndexSegment.Postings();
+        for (IndexSegment s : segments) {
+            for (int slot : s.termsWithTrigram(byListLength(trigrams, s::trigramTerms)[0])) {
+                if (!s.term(slot).contains(piece)) continue;
+                s.postings(slot, cursor);
+                while (cursor.next()) {
+                    if (s.isDeleted(cursor.ord)) continue;
+                    long id = s.docId(cursor.ord);
+                    if ((within == null || within.contains(id)) && out.add(id) && out.size() > max) return null;
+                }
+            }
+        }
+        long rarest = byListLength(trigrams, t -> deltaTrigrams.getOrDefault(t, Set.of()).size())[0];
+        Set<String> terms = deltaTrigrams.get(rarest);          // unpadded trigrams are padded ones too
+        if (terms != null) {
+            for (String term : terms) {
+                if (!term.contains(piece)) continue;
+                for (long id : deltaPostings.get(term).keySet()) {
+                    if ((within == null || within.contains(id)) && out.add(id) && out.size() > max) return null;
+                }
+            }
+        }
+        return out;
+    }
+
+    private Scratch borrowScratch(int docs) {
+        Scratch sc = scratch.poll();
+        if (sc == null) sc = new Scratch();
+        if (sc.acc.length < docs) {
+            sc.acc = new float[docs];
+            sc.tf = new float[docs];
+            sc.first = new int[docs];
+        }
+        return sc;
+    }
+
+    /**
+     * Per ordinal of one segment: the score so far plus the ordinals that have one, 1 + the
+     * earliest body offset of a matched term (0 for none), and the weighted term frequency of
+     * the query term being scored plus the ordinals that have one.
+     */
+    private static final class Scratch {
+        float[] acc = new float[0];
+        int[] first = new int[0];
+        float[] tf = new float[0];
+        int[] ords = new int[64];
+        int[] group = new int[64];
+        int touched = 0;
+        int marked = 0;
+
+        void touch(int ord) {
+            if (touched == ords.length) ords = Arrays.copyOf(ords, touched * 2);
+            ords[touched++] = ord;
+        }
+
+        void mark(int ord) {
+            if (marked == group.length) group = Arrays.copyOf(group, marked * 2);
+            group[marked++] = ord;
+        }
+
+        void matchedAt(int ord, int at) {
+            if (at >= 0 && (first[ord] == 0 || at < first[ord] - 1)) first[ord] = at + 1;
+        }
+    }
+
+    /**
+     * Bounded min-heap keeping the best limit (score, id) pairs, each with its best reply and
+     * its match, first body match and whether only replies matched; ties go to the newer post.
+     */
+    private static final class TopK {
+        private final long[] ids;
+        private final float[] scores;
+        private final long[] replies;
+        private final int[] replyAt;
+        private final int[] matchAt;
+        private final boolean[] repliesOnly;
+        private int size = 0;
+
+        TopK(int limit) {
+            ids = new long[limit];
+            scores = new float[limit];
+            replies = new long[limit];
+            replyAt = new int[limit];
+            matchAt = new int[limit];
+            repliesOnly = new boolean[limit];
+        }
+
+        /** True if offering (id, score) would keep it. */
+        boolean accepts(long id, float score) {
+            return size < ids.length || worse(0, id, score);
+        }
+
+        void offer(long id, float score, long reply, int inReply, int at, boolean onlyReplies) {
+            if (size < ids.length) {
+                ids[size] = id;
+                scores[size] = score;
+                replies[size] = reply;
+                replyAt[size] = inReply;
+                matchAt[size] = at;
+                repliesOnly[size] = onlyReplies;
+                siftUp(size++);
+            } else if (worse(0, id, score)) {
+                ids[0] = id;
+                scores[0] = score;
+                replies[0] = reply;
+                replyAt[0] = inReply;
+                matchAt[0] = at;
+                repliesOnly[0] = onlyReplies;
+                siftDown(0);
+            }
+        }
+
+        Hits result(int total) {
+            int n = size;
+            long[] outIds = new long[n];
+            float[] outScores = new float[n];
+            long[] outReplies = new long[n];
+            int[] outReplyAt = new int[n];
+            int[] outAt = new int[n];
+            boolean[] outOnly = new boolean[n];
+            for (int i = n - 1; i >= 0; i--) {     // the heap pops worst first
+                outIds[i] = ids[0];
+                outScores[i] = scores[0];
+                outReplies[i] = replies[0];
+                outReplyAt[i] = replyAt[0];
+                outAt[i] = matchAt[0];
+                outOnly[i] = repliesOnly[0];
+                size--;
+                ids[0] = ids[size];
+                scores[0] = scores[size];
+                replies[0] = replies[size];
+                replyAt[0] = replyAt[size];
+                matchAt[0] = matchAt[size];
+                repliesOnly[0] = repliesOnly[size];
+                siftDown(0);
+            }
+            return new Hits(outIds, outScores, outReplies, outReplyAt, outAt, outOnly, total);
+        }
+
+        // true if slot i ranks below (id, score)
+        private boolean worse(int i, long id, float score) {
+            return scores[i] < score || (scores[i] == score && ids[i] < id);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!worse(i, ids[parent], scores[parent])) return;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int l = 2 * i + 1, r = l + 1, min = i;
+                if (l < size && worse(l, ids[min], scores[min])) min = l;
+                if (r < size && worse(r, ids[min], scores[min])) min = r;
+                if (min == i) return;
+                swap(i, min);
+                i = min;
+            }
+        }
+
+        private void swap(int a, int b) {
+            long id = ids[a]; ids[a] = ids[b]; ids[b] = id;
+            float s = scores[a]; scores[a] = scores[b]; scores[b] = s;
+            long r = replies[a]; replies[a] = replies[b]; replies[b] = r;
+            int ra = replyAt[a]; replyAt[a] = replyAt[b]; replyAt[b] = ra;
+            int m = matchAt[a]; matchAt[a] = matchAt[b]; matchAt[b] = m;
+            boolean o = repliesOnly[a]; repliesOnly[a] = repliesOnly[b]; repliesOnly[b] = o;
+        }
+    }
+
+    /*======================== Updating ========================*/
+
+    private static Doc analyze(long group, String title, String content) {
+        Map<String, Integer> freqs = new HashMap<>();
+        Map<String, Integer> firstAt = new HashMap<>();
+        int[] length = { 0 };
+        Tokenizer.forEachTerm(title, t -> { freqs.merge(t, TITLE_WEIGHT, Integer::sum); length[0] += TITLE_WEIGHT; });
+        Tokenizer.forEachTermAt(content, (t, at) -> {
+            freqs.merge(t, 1, Integer::sum);
+            firstAt.putIfAbsent(t, at);
+            length[0]++;
+        });
+        return new Doc(group, freqs, firstAt, length[0]);
+    }
+
+    // Caller holds the write lock
+    private void applyChanges() {
+        drainedAt = System.currentTimeMillis();
+        for (Change ch; (ch = changes.poll()) != null; ) {
+            remove(ch.docId());
+            if (ch.title() != null) add(ch.docId(), analyze(ch.group(), ch.title(), ch.content()));
+        }
+    }
+
+    private void add(long docId, Doc doc) {
+        delta.put(docId, doc);
+        deltaLength += doc.length();
+        doc.termFreqs().forEach((term, tf) -> {
+            Map<Long, Integer> posts = deltaPostings.get(term);
+            if (posts == null) {
+                deltaPostings.put(term, posts = new HashMap<>());
+                for (long t : Tokenizer.trigrams(term, true)) {
+                    deltaTrigrams.computeIfAbsent(t, x -> new HashSet<>()).add(term);
+                }
+            }
+            posts.put(docId, tf);
+        });
+    }
+
+    private void remove(long docId) {
+        Doc old = delta.remove(docId);
+        if (old != null) {
+            deltaLength -= old.length();
+            for (String term : old.termFreqs().keySet()) {
+                Map<Long, Integer> posts = deltaPostings.get(term);
+                posts.remove(docId);
+                if (!posts.isEmpty()) continue;
+                deltaPostings.remove(term);
+                for (long t : Tokenizer.trigrams(term, true)) {
+                    Set<String> terms = deltaTrigrams.get(t);
+                    terms.remove(term);
+                    if (terms.isEmpty()) deltaTrigrams.remove(t);
+                }
+            }
+        }
+        for (IndexSegment s : segments) s.delete(docId);
+    }
+
+    /**
+     * Writes the delta as a segment, merges if there are too many, and saves the manifest.
+     * Caller holds the write lock and has just applied the queued changes.
+     */
+    private void flush() throws SQLException {
+        try {
+            if (!delta.isEmpty()) {
+                IndexSegment.Builder b = new IndexSegment.Builder();
+                Long[] ids = delta.keySet().toArray(new Long[0]);
+                Arrays.sort(ids);
+                for (Long id : ids) {
+                    Doc d = delta.get(id);
+                    b.add(id, d.group(), d.termFreqs(), d.firstAt(), d.length());
+                }
+                long number = nextSegment++;
+                b.write(dir, number);
+                segments.add(IndexSegment.open(dir, number));
+                delta.clear();
+                deltaPostings.clear();
+                deltaTrigrams.clear();
+                deltaLength = 0;
+            }
+            if (segments.size() > maxSegments) mergeSmallest();
+            for (IndexSegment s : segments) s.saveDeletes(dir);
+            checkpoint = drainedAt - CHECKPOINT_SLACK_MS;
+            writeManifest();
+            deleteUnlisted();
+            pruneChangeLog();
+        } catch (IOException e) {
+            throw new SQLException("Writing the search index failed: " + e.getMessage(), e);
+        }
+    }
+
+    // Merges the smallest segments so that maxSegments / 2 + 1 remain
+    private void mergeSmallest() throws IOException {
+        List<IndexSegment> bySize = new ArrayList<>(segments);
+        bySize.sort(Comparator.comparingInt(IndexSegment::liveDocs));
+        List<IndexSegment> victims = bySize.subList(0, segments.size() - maxSegments / 2);
+        long number = nextSegment++;
+        IndexSegment.merge(victims, dir, number);
+        segments.removeAll(victims);
+        segments.add(IndexSegment.open(dir, number));
+    }
+
+    /** Applies queued changes and writes everything to disk; called when the application exits. */
+    void close() throws SQLException {
+        if (!opened) return;    // nothing loaded; the next open catches up from the old checkpoint
+        lock.writeLock().lock();
+        try {
+            applyChanges();
+            flush();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*======================== Opening ========================*/
+
+    private void ensureOpen() throws SQLException {
+        if (opened) return;
+        lock.writeLock().lock();
+        try {
+            if (opened) return;
+            opening = true;
+            try {
+                Files.createDirectories(dir);
+                // a rebuild needs no catch-up: writes made while it ran are still in the queue
+                if (load()) catchUp();
+                else rebuild();
+            } catch (IOException e) {
+                segments.clear();
+                throw new SQLException("Opening the search index failed: " + e.getMessage(), e);
+            }
+            opened = true;
+        } finally {
+            if (!opened) opening = false;    // failed: the next attempt reads the table again
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Maps the segments named in the manifest; false if there is no usable index on disk. */
+    private boolean load() {
+        Path manifest = dir.resolve(MANIFEST);
+        if (!Files.exists(manifest)) return false;
+        try (InputStream in = Files.newInputStream(manifest)) {
+            Properties p = new Properties();
+            p.load(in);
+            if (!FORMAT.equals(p.getProperty("format"))) return false;
+            nextSegment = Long.parseLong(p.getProperty("nextSegment"));
+            checkpoint = Long.parseLong(p.getProperty("checkpoint"));
+            for (String n : p.getProperty("segments", "").split(",")) {
+                if (!n.isBlank()) segments.add(IndexSegment.open(dir, Long.parseLong(n.trim())));
+            }
+            deleteUnlisted();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Search index unreadable, rebuilding: " + e);
+            segments.clear();
+            return false;
+        }
+    }
+
+    /** Re-indexes every live document, one id range per thread, and writes a fresh manifest. */
+    private void rebuild() throws IOException, SQLException {
+        long started = System.currentTimeMillis();
+        segments.clear();
+        deleteAll();
+        long maxId;
+        try (Connection c = db.get();
+             Statement s = c.createStatement();
+             ResultSet rs = s.executeQuery(source.maxIdSql())) {
+            rs.next();
+            maxId = rs.getLong(1);
+        }
+        int parts = (int) Math.max(1, Math.min(threads, maxId / REBUILD_MIN_IDS + 1));
+        AtomicLong numbers = new AtomicLong(1);
+        ExecutorService pool = Executors.newFixedThreadPool(parts, r -> {
+            Thread t = new Thread(r, "search-rebuild");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<List<Long>>> futures = new ArrayList<>();
+            for (int i = 0; i < parts; i++) {
+                long lo = maxId * i / parts, hi = maxId * (i + 1) / parts;
+                futures.add(pool.submit(() -> rebuildRange(lo, hi, numbers)));
+            }
+            for (Future<List<Long>> f : futures) {
+                for (long number : f.get()) segments.add(IndexSegment.open(dir, number));
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException se) throw se;
+            if (cause instanceof IOException ie) throw ie;
+            throw new SQLException("Rebuilding the search index failed: " + cause, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Rebuilding the search index was interrupted", e);
+        } finally {
+            pool.shutdownNow();
+        }
+        nextSegment = numbers.get();
+        checkpoint = started;
+        if (segments.size() > maxSegments) mergeSmallest();
+        writeManifest();
+        deleteUnlisted();
+        pruneChangeLog();
+    }
+
+    // Documents with lo < id <= hi as one or more segments; returns their numbers
+    private List<Long> rebuildRange(long lo, long hi, AtomicLong numbers) throws SQLException, IOException {
+        List<Long> written = new ArrayList<>();
+        IndexSegment.Builder b = new IndexSegment.Builder();
+        try (Connection c = db.get()) {
+            try (Statement s = c.createStatement()) {
+                s.execute("SET LAZY_QUERY_EXECUTION TRUE");
+            }
+            try (PreparedStatement ps = c.prepareStatement(source.rebuildSql())) {
+                ps.setLong(1, lo);
+                ps.setLong(2, hi);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Doc d = analyze(rs.getLong(2), rs.getString(3), rs.getString(4));
+                        b.add(rs.getLong(1), d.group(), d.termFreqs(), d.firstAt(), d.length());
+                        if (b.docCount() >= REBUILD_SEGMENT_DOCS) {
+                            long number = numbers.getAndIncrement();
+                            b.write(dir, number);
+                            written.add(number);
+                            b = new IndexSegment.Builder();
+                        }
+                    }
+                }
+            } finally {
+                try (Statement s = c.createStatement()) {
+                    s.execute("SET LAZY_QUERY_EXECUTION FALSE");
+                }
+            }
+        }
+        if (b.docCount() > 0) {
+            long number = numbers.getAndIncrement();
+            b.write(dir, number);
+            written.add(number);
+        }
+        return written;
+    }
+
+    // Deletes the source's change-log rows from before the saved checkpoint
+    private void pruneChangeLog() throws SQLException {
+        if (source.pruneSql() == null) return;
+        try (Connection c = db.get();
+             PreparedStatement ps = c.prepareStatement(source.pruneSql())) {
+            ps.setTimestamp(1, new Timestamp(checkpoint));
+            ps.executeUpdate();
+        }
+    }
+
+    /** Re-reads documents created, edited or deleted since the checkpoint into the delta. */
+    private void catchUp() throws SQLException {
+        Timestamp since = new Timestamp(checkpoint);
+        Set<Long> seen = new HashSet<>();
+        try (Connection c = db.get()) {
+            for (String sql : source.changedSql()) {
+                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                    ps.setTimestamp(1, since);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            long id = rs.getLong(1);
+                            if (!seen.add(id)) continue;
+                            remove(id);
+                            if (!rs.getBoolean(5)) add(id, analyze(rs.getLong(2), rs.getString(3), rs.getString(4)));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /*======================== Files ========================*/
+
+    private void writeManifest() throws IOException {
+        StringBuilder list = new StringBuilder();
+        for (IndexSegment s : segments) {
+            if (list.length() > 0) list.append(',');
+            list.append(s.number);
+        }
+        Properties p = new Properties();
+        p.setProperty("format", FORMAT);
+        p.setProperty("segments", list.toString());
+        p.setProperty("nextSegment", Long.toString(nextSegment));
+        p.setProperty("checkpoint", Long.toString(checkpoint));
+        IndexSegment.writeAtomically(dir.resolve(MANIFEST), out -> p.store(out, "Search index"));
+    }
+
+    // Segment files no longer in the manifest (merged away, or left by a crash); failures are
+    // ignored, since a mapped file cannot be deleted on some platforms until it is unmapped
+    private void deleteUnlisted() {
+        Set<Long> live = new HashSet<>();
+        for (IndexSegment s : segments) live.add(s.number);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "seg-*")) {
+            for (Path f : files) {
+                String name = f.getFileName().toString();
+                int dot = name.indexOf('.');
+                boolean listed = false;
+                try {
+                    listed = !name.endsWith(".tmp") && live.contains(Long.parseLong(name.substring(4, dot)));
+                } catch (RuntimeException ignored) {
+                }
+                if (!listed) Files.deleteIfExists(f);
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void deleteAll() throws IOException {
+        Files.deleteIfExists(dir.resolve(MANIFEST));
+        deleteUnlisted();
+    }
+}
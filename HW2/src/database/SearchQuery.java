@@ -0,0 +1,365 @@
+package database;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*******
+ * <p> Title: SearchQuery Class. </p>
+ *
+ * <p> Description: A parsed search-box query, for {@link FeedQuery#query(String)}. Besides
+ * words, the language has</p>
+ * <ul>
+ *   <li> <code>"quoted phrases"</code>, matched as written (case-insensitive) in the title or body;</li>
+ *   <li> fields: <code>author:name</code>, <code>thread:name</code> (quote names with spaces,
+ *        <code>thread:"Lecture notes"</code>), <code>kind:question</code> / <code>kind:post</code>,
+ *        <code>after:2026-10-01</code> (on or after that day), <code>before:2026-10-18</code>
+ *        (before that day), <code>has:replies</code>, <code>is:unread</code> / <code>is:read</code>;</li>
+ *   <li> <code>AND</code> (also implied between terms), <code>OR</code>, <code>NOT</code> or a
+ *        leading <code>-</code>, and parentheses. NOT binds tightest, then AND, then OR; the
+ *        operators must be written in capitals, so "or" and "not" stay ordinary words.</li>
+ * </ul>
+ *
+ * <p> A word matches posts containing it or one of its spelling variants, as in a ranked
+ * search (see {@link SearchIndex}); quoting a single word asks for it exactly as written. Parsing is forgiving about unbalanced parentheses and
+ * quotes and dangling operators; it fails with an IllegalArgumentException only for a field it
+ * cannot use (an unknown kind, a malformed date, an empty value), with a message for the user.
+ * {@link QueryPlanner} turns the result into SQL.</p>
+ *
+ * @version 1.02  2026-10-18
+ *  - A quoted single word stays a Phrase, so it is matched as written, without variants
+ *  - rankingPhrases(), for locating phrase matches in result snippets
+ *
+ * @version 1.01  2026-10-18
+ *  - usesReadState(), for SearchResultCache
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+public final class SearchQuery {
+
+    /** The field predicates; the flag-like fields (has:, is:) carry no value. */
+    enum Key { AUTHOR, THREAD, KIND, BEFORE, AFTER, HAS_REPLIES, IS_UNREAD, IS_READ }
+
+    /** A node of the parsed query. */
+    sealed interface Node permits Word, Phrase, Field, And, Or, Not {}
+
+    /** One index term (already normalised by the {@link Tokenizer}). */
+    record Word(String term) implements Node {}
+
+    /** A quoted phrase (possibly one word), lower-cased and trimmed, and its terms. */
+    record Phrase(String text, List<String> terms) implements Node {}
+
+    /** A field predicate; date is set for BEFORE and AFTER. */
+    record Field(Key key, String value, LocalDate date) implements Node {}
+
+    record And(List<Node> parts) implements Node {}
+
+    record Or(List<Node> parts) implements Node {}
+
+    record Not(Node part) implements Node {}
+
+    private final String text;
+    private final Node root;    // null for an empty query
+
+    private SearchQuery(String text, Node root) {
+        this.text = text;
+        this.root = root;
+    }
+
+    /** Parses text; blank text gives an empty query, which matches every post. */
+    public static SearchQuery parse(String text) {
+        String t = text == null ? "" : text.trim();
+        return new SearchQuery(t, new Parser(t).parse());
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /** The query as typed. */
+    public String text() {
+        return text;
+    }
+
+    Node root() {
+        return root;
+    }
+
+    /**
+     * The words and phrase words that count towards relevance: those not under a NOT. Empty
+     * if the query only filters, in which case results come newest first.
+     */
+    List<String> rankingTerms() {
+        List<String> out = new ArrayList<>();
+        if (root != null) collectRanking(root, out);
+        return out;
+    }
+
+    /** The texts of the phrases not under a NOT. */
+    List<String> rankingPhrases() {
+        List<String> out = new ArrayList<>();
+        if (root != null) collectPhrases(root, out);
+        return out;
+    }
+
+    /** True if the query has an is:read or is:unread field, so its matches depend on read state. */
+    boolean usesReadState() {
+        return root != null && usesReadState(root);
+    }
+
+    private static boolean usesReadState(Node n) {
+        return switch (n) {
+            case Field f -> f.key() == Key.IS_READ || f.key() == Key.IS_UNREAD;
+            case And a -> a.parts().stream().anyMatch(SearchQuery::usesReadState);
+            case Or o -> o.parts().stream().anyMatch(SearchQuery::usesReadState);
+            case Not x -> usesReadState(x.part());
+            case Word w -> false;
+            case Phrase p -> false;
+        };
+    }
+
+    private static void collectRanking(Node n, List<String> out) {
+        switch (n) {
+            case Word w -> out.add(w.term());
+            case Phrase p -> out.addAll(p.terms());
+            case And a -> a.parts().forEach(x -> collectRanking(x, out));
+            case Or o -> o.parts().forEach(x -> collectRanking(x, out));
+            case Field f -> { }
+            case Not x -> { }
+        }
+    }
+
+    private static void collectPhrases(Node n, List<String> out) {
+        switch (n) {
+            case Phrase p -> out.add(p.text());
+            case And a -> a.parts().forEach(x -> collectPhrases(x, out));
+            case Or o -> o.parts().forEach(x -> collectPhrases(x, out));
+            case Word w -> { }
+            case Field f -> { }
+            case Not x -> { }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return root == null ? "" : format(root);
+    }
+
+    private static String format(Node n) {
+        return switch (n) {
+            case Word w -> w.term();
+            case Phrase p -> "\"" + p.text() + "\"";
+            case Field f -> switch (f.key()) {
+                case HAS_REPLIES -> "has:replies";
+                case IS_UNREAD -> "is:unread";
+                case IS_READ -> "is:read";
+                default -> f.key().name().toLowerCase(Locale.ROOT) + ":\"" + f.value() + "\"";
+            };
+            case And a -> "(" + String.join(" AND ", a.parts().stream().map(SearchQuery::format).toList()) + ")";
+            case Or o -> "(" + String.join(" OR ", o.parts().stream().map(SearchQuery::format).toList()) + ")";
+            case Not x -> "NOT " + format(x.part());
+        };
+    }
+
+    /*======================== Parser ========================*/
+
+    /** Recursive descent over the raw text: or := and (OR and)*, and := unary (AND? unary)*. */
+    private static final class Parser {
+        private final String s;
+        private int pos = 0;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        Node parse() {
+            Node n = or();
+            // stray closing parentheses: skip them and keep going
+            while (pos < s.length()) {
+                pos++;
+                Node more = or();
+                n = n == null ? more : more == null ? n : and(List.of(n, more));
+            }
+            return n;
+        }
+
+        private Node or() {
+            List<Node> parts = new ArrayList<>();
+            Node first = and();
+            if (first != null) parts.add(first);
+            while (keyword("OR")) {
+                Node next = and();
+                if (next != null) parts.add(next);
+            }
+            if (parts.isEmpty()) return null;
+            return parts.size() == 1 ? parts.get(0) : new Or(flatten(parts, true));
+        }
+
+        private Node and() {
+            List<Node> parts = new ArrayList<>();
+            while (true) {
+                skipSpaces();
+                if (pos >= s.length() || s.charAt(pos) == ')' || peekKeyword("OR")) break;
+                if (keyword("AND")) continue;
+                Node next = unary();
+                if (next != null) parts.add(next);
+            }
+            if (parts.isEmpty()) return null;
+            return and(parts);
+        }
+
+        private Node unary() {
+            skipSpaces();
+            if (keyword("NOT")) {
+                Node n = unary();
+                return n == null ? null : new Not(n);
+            }
+            if (pos < s.length() && s.charAt(pos) == '-' && pos + 1 < s.length()
+                    && !Character.isWhitespace(s.charAt(pos + 1))) {
+                pos++;
+                Node n = primary();
+                return n == null ? null : new Not(n);
+            }
+            return primary();
+        }
+
+        private Node primary() {
+            skipSpaces();
+            if (pos >= s.length()) return null;
+            char c = s.charAt(pos);
+            if (c == '(') {
+                pos++;
+                Node n = or();
+                skipSpaces();
+                if (pos < s.length() && s.charAt(pos) == ')') pos++;
+                return n;
+            }
+            if (c == '"') return phrase(quoted());
+            String token = bare();
+            int colon = token.indexOf(':');
+            if (colon > 0) {
+                Key key = fieldKey(token.substring(0, colon).toLowerCase(Locale.ROOT));
+                if (key != null) {
+                    String value = token.substring(colon + 1);
+                    if (value.isEmpty() && pos < s.length() && s.charAt(pos) == '"') value = quoted();
+                    return field(token.substring(0, colon), key, value.trim());
+                }
+            }
+            return words(token);
+        }
+
+        // Text up to the closing quote (or the end); pos is on the opening quote
+        private String quoted() {
+            int end = s.indexOf('"', pos + 1);
+            String q = s.substring(pos + 1, end < 0 ? s.length() : end);
+            pos = end < 0 ? s.length() : end + 1;
+            return q;
+        }
+
+        // A run of characters up to white space, a parenthesis or a quote
+        private String bare() {
+            int start = pos;
+            while (pos < s.length()) {
+                char c = s.charAt(pos);
+                if (Character.isWhitespace(c) || c == '(' || c == ')' || c == '"') break;
+                pos++;
+            }
+            return s.substring(start, pos);
+        }
+
+        private static Node phrase(String text) {
+            List<String> terms = Tokenizer.terms(text);
+            if (terms.isEmpty()) return null;
+            return new Phrase(text.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " "), terms);
+        }
+
+        private static Node words(String token) {
+            List<String> terms = Tokenizer.terms(token);
+            if (terms.isEmpty()) return null;
+            if (terms.size() == 1) return new Word(terms.get(0));
+            List<Node> parts = new ArrayList<>();
+            for (String t : terms) parts.add(new Word(t));
+            return new And(parts);
+        }
+
+        private static Key fieldKey(String name) {
+            return switch (name) {
+                case "author", "by" -> Key.AUTHOR;
+                case "thread", "in" -> Key.THREAD;
+                case "kind"   -> Key.KIND;
+                case "before" -> Key.BEFORE;
+                case "after"  -> Key.AFTER;
+                case "has"    -> Key.HAS_REPLIES;
+                case "is"     -> Key.IS_UNREAD;
+                default -> null;
+            };
+        }
+
+        private static Field field(String name, Key key, String value) {
+            if (value.isEmpty()) throw new IllegalArgumentException(name + ": needs a value");
+            String v = value.toLowerCase(Locale.ROOT);
+            switch (key) {
+                case KIND -> {
+                    if (v.equals("question") || v.equals("questions")) return new Field(key, "Question", null);
+                    if (v.equals("post") || v.equals("posts")) return new Field(key, "Post", null);
+                    throw new IllegalArgumentException("kind: must be question or post, not " + value);
+                }
+                case BEFORE, AFTER -> {
+                    try {
+                        return new Field(key, value, LocalDate.parse(value));
+                    } catch (DateTimeParseException e) {
+                        throw new IllegalArgumentException(name + ": expects a date like 2026-10-18, not " + value);
+                    }
+                }
+                case HAS_REPLIES -> {
+                    if (v.equals("replies") || v.equals("reply")) return new Field(key, null, null);
+                    throw new IllegalArgumentException("has: only knows replies, not " + value);
+                }
+                case IS_UNREAD -> {
+                    if (v.equals("unread")) return new Field(Key.IS_UNREAD, null, null);
+                    if (v.equals("read")) return new Field(Key.IS_READ, null, null);
+                    throw new IllegalArgumentException("is: must be read or unread, not " + value);
+                }
+                default -> {
+                    return new Field(key, value, null);
+                }
+            }
+        }
+
+        private static Node and(List<Node> parts) {
+            return parts.size() == 1 ? parts.get(0) : new And(flatten(parts, false));
+        }
+
+        // Nested ANDs (or ORs) are merged into their parent
+        private static List<Node> flatten(List<Node> parts, boolean or) {
+            List<Node> out = new ArrayList<>();
+            for (Node n : parts) {
+                if (!or && n instanceof And a) out.addAll(a.parts());
+                else if (or && n instanceof Or o) out.addAll(o.parts());
+                else out.add(n);
+            }
+            return List.copyOf(out);
+        }
+
+        private void skipSpaces() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        // True if the next token is exactly word (capitals), not followed by a name character
+        private boolean peekKeyword(String word) {
+            skipSpaces();
+            int end = pos + word.length();
+            if (!s.startsWith(word, pos)) return false;
+            return end == s.length() || Character.isWhitespace(s.charAt(end)) || s.charAt(end) == '(' || s.charAt(end) == '"';
+        }
+
+        private boolean keyword(String word) {
+            if (!peekKeyword(word)) return false;
+            pos += word.length();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package database;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import entityClasses.PostItem;
+
+/*******
+ * <p> Title: SearchResultCache Class. </p>
+ *
+ * <p> Description: Small LRU cache of search results for {@link Database#loadFeed}, so running
+ * the same search again (Back from a post, switching a category away and back) is answered
+ * from memory instead of by another search and feed statement. Entries are keyed by user,
+ * normalised query text, category and the remaining filters; only unpaged searches
+ * ({@link FeedQuery#search} or {@link FeedQuery#query}) are cached.</p>
+ *
+ * <p> Two counters decide whether an entry may be used. The write sequence is bumped by every
+ * change to posts or replies; an entry filled before the latest write is dropped on lookup,
+ * so writers never have to know which entries they touch. The per-user read epoch is bumped
+ * by that user's read-state changes; an entry from an older epoch still lists the right posts
+ * (unless the query filters on read state), and Database only refreshes its read flags and
+ * unread counts.</p>
+ *
+ * <p> Cached rows are copies: callers get fresh PostItems on every hit and may change them.</p>
+ *
+ * @version 1.01  2026-10-18
+ *  - Copies carry the search snippet and match fields
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+final class SearchResultCache {
+
+    /** What a cached search is looked up by. */
+    record Key(String userName, String query, String thread, String filters) {}
+
+    /** Rows of one search, with the write sequence and the user's read epoch they reflect. */
+    record Entry(long writeSeq, long readEpoch, PostItem[] rows) {
+
+        /** Copies of the rows, in result order. */
+        List<PostItem> items() {
+            PostItem[] out = new PostItem[rows.length];
+            for (int i = 0; i < rows.length; i++) out[i] = copy(rows[i]);
+            return List.of(out);
+        }
+    }
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Entry> entries;
+    private final AtomicLong writes = new AtomicLong();
+    private final ConcurrentHashMap<String, AtomicLong> readEpochs = new ConcurrentHashMap<>();
+
+    SearchResultCache(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > SearchResultCache.this.capacity;
+            }
+        };
+    }
+
+    /** Key of q for userName, or null if q is not a cacheable search. */
+    Key key(String userName, FeedQuery q) {
+        if (capacity == 0 || q.afterCreatedAt != null || q.beforeCreatedAt != null) return null;
+        String query;
+        if (q.parsed != null) query = "query:" + q.parsed;
+        else if (q.search != null) query = "search:" + String.join(" ", Tokenizer.terms(q.search));
+        else return null;
+        String filters = q.kind + "|" + q.author + "|" + q.seen + "|" + q.keyword
+                       + "|" + q.excludeDeleted + "|" + q.limit;
+        return new Key(userName, query, q.thread, filters);
+    }
+
+    /** The current write sequence; read it before running the search an entry will hold. */
+    long writeSequence() {
+        return writes.get();
+    }
+
+    /** Records a change to posts or replies: every entry filled before it becomes stale. */
+    void written() {
+        writes.incrementAndGet();
+    }
+
+    /** The user's read epoch (0 without a user); read it before running the search. */
+    long readEpoch(String userName) {
+        if (userName == null) return 0;
+        AtomicLong e = readEpochs.get(userName);
+        return e == null ? 0 : e.get();
+    }
+
+    /** Records a change to the user's read state. */
+    void readChanged(String userName) {
+        if (userName != null) readEpochs.computeIfAbsent(userName, u -> new AtomicLong()).incrementAndGet();
+    }
+
+    /** The entry for key, or null if there is none or it predates the latest write. */
+    synchronized Entry get(Key key) {
+        Entry e = entries.get(key);
+        if (e != null && e.writeSeq() != writes.get()) {
+            entries.remove(key);
+            return null;
+        }
+        return e;
+    }
+
+    /** Stores e (whose rows the cache now owns) unless a write happened since it was filled. */
+    synchronized void put(Key key, Entry e) {
+        if (capacity > 0 && e.writeSeq() == writes.get()) entries.put(key, e);
+    }
+
+    static PostItem copy(PostItem p) {
+        PostItem c = new PostItem(p.id, p.author, p.thread, p.title, p.kind, p.content,
+                p.isAnonymous, p.isPrivate, p.createdAt, p.replyCount, p.unreadReplyCount);
+        c.preview = p.preview;
+        c.isDeleted = p.isDeleted;
+        c.isRead = p.isRead;
+        c.replyExcerpt = p.replyExcerpt;
+        c.replyMatches = p.replyMatches;    // match arrays are never changed, so they are shared
+        c.snippet = p.snippet;
+        c.snippetMatches = p.snippetMatches;
+        c.matchAt = p.matchAt;
+        c.matchLength = p.matchLength;
+        return c;
+    }
+}
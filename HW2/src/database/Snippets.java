@@ -0,0 +1,103 @@
+package database;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/*******
+ * <p> Title: Snippets Class. </p>
+ *
+ * <p> Description: Cuts the part of a search hit's text to show in the result list and marks
+ * the words that matched. Database runs it on the worker thread that loaded the rows, on a
+ * window of the body around the match the {@link SearchIndex} located, so the list only
+ * lays out ready-made text and ranges, whatever the length of the post.</p>
+ *
+ * <p> A word is marked if its term is one of the query terms or, for query terms of at least
+ * {@value SearchIndex#VARIANT_MIN_CHARS} characters, contains one (a longer word the search
+ * also counted), or if it is the word the index reported as the first match, which covers a
+ * misspelling the search matched by similarity.</p>
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+final class Snippets {
+
+    /**
+     * Snippet text (white space collapsed, "…" where text was cut off), the start / end pairs
+     * of its marked words, and the length of the first matching word in the source text (0 if
+     * none was found).
+     */
+    record Snippet(String text, int[] matches, int matchLength) {}
+
+    private Snippets() {}
+
+    /**
+     * About chars characters of window around the match at offset at (-1: the first word
+     * matching terms, or the start if none does), cut at spaces. window may be a piece of a
+     * longer text: textStart / textEnd say whether it begins / ends where the text does.
+     */
+    static Snippet around(String window, int at, boolean textStart, boolean textEnd,
+                          List<String> terms, int chars) {
+        String w = window == null ? "" : window;
+        if (at < 0 || at >= w.length()) at = firstMatch(w, terms);
+        int matchLength = at < 0 ? 0 : Tokenizer.termEnd(w, at) - at;
+
+        int start = at < 0 ? 0 : Math.max(0, at - chars / 4);
+        if (start > 0) start = lastSpace(w, start) + 1;
+        while (start < w.length() && Character.isWhitespace(w.charAt(start))) start++;
+        int end = Math.min(w.length(), start + chars);
+        if (end < w.length()) {
+            int space = lastSpace(w, end);
+            if (space > start) end = space;
+        }
+
+        // collapse white space, noting where the reported match lands
+        StringBuilder out = new StringBuilder(end - start + 2);
+        boolean cutStart = start > 0 || !textStart;
+        if (cutStart) out.append('…');
+        int matchOut = -1;
+        for (int i = start; i < end; i++) {
+            char c = w.charAt(i);
+            if (i == at) matchOut = out.length();
+            if (!Character.isWhitespace(c)) out.append(c);
+            else if (out.length() > 0 && out.charAt(out.length() - 1) != ' ' && out.charAt(out.length() - 1) != '…') out.append(' ');
+        }
+        while (out.length() > 0 && out.charAt(out.length() - 1) == ' ') out.setLength(out.length() - 1);
+        if (end < w.length() || !textEnd) out.append('…');
+        String text = out.toString();
+        return new Snippet(text, matches(text, terms, matchOut), matchLength);
+    }
+
+    /** Start / end pairs of the words of text matching terms, plus the word starting at extra (-1: none). */
+    static int[] matches(String text, List<String> terms, int extra) {
+        IntStream.Builder out = IntStream.builder();
+        Tokenizer.forEachTermAt(text, (term, at) -> {
+            if (at != extra && !containsAny(term, terms)) return;
+            out.add(at);
+            out.add(Tokenizer.termEnd(text, at));
+        });
+        return out.build().toArray();
+    }
+
+    // Offset of the first word of text matching terms, or -1
+    private static int firstMatch(String text, List<String> terms) {
+        int[] first = { -1 };
+        Tokenizer.forEachTermAt(text, (term, at) -> {
+            if (first[0] < 0 && containsAny(term, terms)) first[0] = at;
+        });
+        return first[0];
+    }
+
+    private static boolean containsAny(String term, List<String> terms) {
+        for (String t : terms) {
+            boolean exact = t.codePointCount(0, t.length()) < SearchIndex.VARIANT_MIN_CHARS;
+            if (exact ? term.equals(t) : term.contains(t)) return true;
+        }
+        return false;
+    }
+
+    // Last white space before index, or -1
+    private static int lastSpace(String s, int index) {
+        for (int i = Math.min(index, s.length() - 1); i >= 0; i--) if (Character.isWhitespace(s.charAt(i))) return i;
+        return -1;
+    }
+}
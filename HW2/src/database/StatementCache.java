@@ -0,0 +1,207 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*******
+ * <p> Title: StatementCache Class. </p>
+ *
+ * <p> Description: Per-connection LRU cache of PreparedStatements keyed by SQL text. A physical
+ * connection is wrapped once (see {@link #wrap(Connection, int)}); from then on every
+ * prepareStatement(sql) / prepareStatement(sql, autoGeneratedKeys) on it returns the statement
+ * H2 already parsed and planned for that text. Closing the returned statement only clears its
+ * parameters and puts it back in the cache; the real statements are closed on eviction or
+ * when the physical connection itself is closed.</p>
+ *
+ * <p> A connection is only ever used by one thread at a time (the pool guarantees this), so
+ * the cache itself is not synchronized. Hits, misses and evictions are counted across all
+ * connections; Database logs {@link #describeTotals()} at shutdown.</p>
+ *
+ * @version 1.01  2026-10-18
+ *  - Per-cache counters and the total getters dropped; only describeTotals() is read
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+public class StatementCache {
+
+    // Totals across every connection, for diagnostics
+    private static final AtomicLong TOTAL_HITS      = new AtomicLong();
+    private static final AtomicLong TOTAL_MISSES    = new AtomicLong();
+    private static final AtomicLong TOTAL_EVICTIONS = new AtomicLong();
+
+    private final Connection raw;
+    private final int capacity;
+    private final LinkedHashMap<String, Entry> entries;
+
+    private StatementCache(Connection raw, int capacity) {
+        this.raw = raw;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= StatementCache.this.capacity) return false;
+                evict(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Wraps a physical connection so its prepareStatement calls go through a cache of the given
+     * size. Closing the wrapper closes all cached statements and then the physical connection.
+     * A capacity of 0 disables caching.
+     */
+    public static Connection wrap(Connection raw, int capacity) {
+        if (capacity <= 0) return raw;
+        StatementCache cache = new StatementCache(raw, capacity);
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                cache.new CachingConnection());
+    }
+
+    /*======================== Stats ========================*/
+
+    /** One-line summary, logged at shutdown. */
+    public static String describeTotals() {
+        long h = TOTAL_HITS.get(), m = TOTAL_MISSES.get();
+        long pct = (h + m) == 0 ? 0 : (100 * h) / (h + m);
+        return "statement cache: " + h + " hits, " + m + " misses (" + pct + "% hit), "
+                + TOTAL_EVICTIONS.get() + " evictions";
+    }
+
+    /*======================== Cache operations ========================*/
+
+    private PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : "N:" + sql;
+        Entry e = entries.get(key);
+        if (e != null && !e.inUse) {
+            TOTAL_HITS.incrementAndGet();
+            e.inUse = true;
+            return e.handle;
+        }
+        TOTAL_MISSES.incrementAndGet();
+        PreparedStatement real = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS
+                ? raw.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                : raw.prepareStatement(sql);
+        if (e != null) {
+            // same SQL is already open on this connection (nested use): hand out a one-off
+            return real;
+        }
+        Entry created = new Entry(real);
+        created.inUse = true;
+        entries.put(key, created);
+        return created.handle;
+    }
+
+    private void release(Entry e) {
+        try {
+            ResultSet open = e.real.getResultSet();
+            if (open != null) open.close();
+            e.real.clearParameters();
+            e.real.clearBatch();
+        } catch (SQLException ex) {
+            // statement is unusable; drop it from the cache
+            e.evicted = true;
+            entries.values().remove(e);
+        }
+        e.inUse = false;
+        if (e.evicted) closeQuietly(e.real);
+    }
+
+    private void evict(Entry e) {
+        TOTAL_EVICTIONS.incrementAndGet();
+        e.evicted = true;
+        if (!e.inUse) closeQuietly(e.real);
+    }
+
+    private void closeAll() {
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            closeQuietly(it.next().real);
+            it.remove();
+        }
+    }
+
+    private static void closeQuietly(Statement s) {
+        try { s.close(); } catch (SQLException ignored) {}
+    }
+
+    /*======================== Proxies ========================*/
+
+    private final class Entry {
+        final PreparedStatement real;
+        final PreparedStatement handle;
+        boolean inUse = false;
+        boolean evicted = false;
+
+        Entry(PreparedStatement real) {
+            this.real = real;
+            this.handle = (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class },
+                    new CachedStatement(this));
+        }
+    }
+
+    /** Statement handed to callers; close() returns it to the cache instead of closing it. */
+    private final class CachedStatement implements InvocationHandler {
+        private final Entry entry;
+
+        CachedStatement(Entry entry) { this.entry = entry; }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (entry.inUse) release(entry);
+                    return null;
+                case "isClosed":
+                    return !entry.inUse || entry.real.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    if (!entry.inUse) throw new SQLException("Statement is closed");
+            }
+            try {
+                return method.invoke(entry.real, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /** Physical connection wrapper that routes prepareStatement through the cache. */
+    private final class CachingConnection implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("prepareStatement".equals(name) && args != null) {
+                if (args.length == 1) return prepare((String) args[0], Statement.NO_GENERATED_KEYS);
+                if (args.length == 2 && method.getParameterTypes()[1] == int.class)
+                    return prepare((String) args[0], (Integer) args[1]);
+            }
+            if ("close".equals(name)) closeAll();
+            if ("equals".equals(name)) return proxy == args[0];
+            if ("hashCode".equals(name)) return System.identityHashCode(proxy);
+            try {
+                return method.invoke(raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/*******
+ * <p> Title: ThreadDictionary Class. </p>
+ *
+ * <p> Description: In-memory name &harr; id map of the <code>threads</code> table. Posts
+ * reference their thread by <code>posts.thread_id</code>, so category filters compare
+ * integers; this dictionary turns the names shown in the UI into those ids without a
+ * database round trip.</p>
+ *
+ * <p> The maps are copy-on-write: readers use the current immutable snapshot without locking,
+ * and adding a thread publishes a new snapshot. Names are matched case-insensitively, as the
+ * old <code>LOWER(name) = LOWER(?)</code> lookups did.</p>
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version (replaces the per-call thread lookups in Database)
+ */
+public class ThreadDictionary {
+
+    public static final String GENERAL = "General";
+
+    // One SQL statement that inserts the name if needed and returns its id either way
+    private static final String UPSERT =
+            "SELECT id, name FROM FINAL TABLE (MERGE INTO threads(name) KEY(name) VALUES (?))";
+
+    /** Immutable view of the threads table at some point in time. */
+    private static final class Snapshot {
+        final Map<String, Long> idByKey;    // lower-cased name -> id
+        final Map<Long, String> nameById;
+
+        Snapshot(Map<String, Long> idByKey, Map<Long, String> nameById) {
+            this.idByKey = Collections.unmodifiableMap(idByKey);
+            this.nameById = Collections.unmodifiableMap(nameById);
+        }
+    }
+
+    private static volatile Snapshot snapshot = null;
+
+    private ThreadDictionary() {}
+
+    private static String key(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** Loads every thread once per JVM (or again after {@link #reset()}). */
+    private static Snapshot snapshot(Connection c) throws SQLException {
+        Snapshot s = snapshot;
+        if (s != null) return s;
+        synchronized (ThreadDictionary.class) {
+            if (snapshot != null) return snapshot;
+            Map<String, Long> ids = new HashMap<>();
+            Map<Long, String> names = new HashMap<>();
+            try (Statement st = c.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT id, name FROM threads ORDER BY id")) {
+                while (rs.next()) {
+                    long id = rs.getLong(1);
+                    String name = rs.getString(2);
+                    ids.putIfAbsent(key(name), id);   // oldest row wins for case variants
+                    names.put(id, name);
+                }
+            }
+            snapshot = new Snapshot(ids, names);
+            return snapshot;
+        }
+    }
+
+    /** Id of an existing thread, or null if no thread has that name. */
+    public static Long idOf(Connection c, String name) throws SQLException {
+        if (name == null || name.isBlank()) return null;
+        return snapshot(c).idByKey.get(key(name));
+    }
+
+    /** Display name of a thread id, or null if unknown. */
+    public static String nameOf(Connection c, long id) throws SQLException {
+        return snapshot(c).nameById.get(id);
+    }
+
+    /** Id of the named thread (General when blank), creating the thread if it is new. */
+    public static long resolve(Connection c, String name) throws SQLException {
+        if (name == null || name.isBlank()) name = GENERAL;
+        Long id = idOf(c, name);
+        if (id != null) return id;
+
+        synchronized (ThreadDictionary.class) {
+            Snapshot s = snapshot(c);
+            id = s.idByKey.get(key(name));
+            if (id != null) return id;
+
+            String stored;
+            try (PreparedStatement ps = c.prepareStatement(UPSERT)) {
+                ps.setString(1, name.trim());
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (!rs.next()) throw new SQLException("Thread upsert returned no row for: " + name);
+                    id = rs.getLong(1);
+                    stored = rs.getString(2);
+                }
+            }
+
+            Map<String, Long> ids = new HashMap<>(s.idByKey);
+            Map<Long, String> names = new HashMap<>(s.nameById);
+            ids.put(key(stored), id);
+            names.put(id, stored);
+            snapshot = new Snapshot(ids, names);
+            return id;
+        }
+    }
+
+    /** Drops the snapshot so the next lookup reloads from the database. */
+    public static void reset() {
+        snapshot = null;
+    }
+}
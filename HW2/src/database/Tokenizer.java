@@ -0,0 +1,100 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/*******
+ * <p> Title: Tokenizer Class. </p>
+ *
+ * <p> Description: Splits post text into search terms for {@link SearchIndex}. A term is a
+ * maximal run of letters and digits (any script), lower-cased; everything else separates
+ * terms. Terms longer than {@link #MAX_TERM_CHARS} are cut, so a pasted hash or URL cannot
+ * bloat the dictionary. Posts and queries go through the same code, so a query term matches
+ * exactly the terms the post was indexed under.</p>
+ *
+ * <p> {@link #trigrams} cuts a term into overlapping three-character pieces for the fuzzy and
+ * substring lookups of the term dictionary.</p>
+ *
+ * @version 1.02  2026-10-18
+ *  - forEachTermAt(text, sink): terms with their offsets, for match positions and snippets
+ *
+ * @version 1.01  2026-10-18
+ *  - trigrams(term, padded)
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+final class Tokenizer {
+
+    static final int MAX_TERM_CHARS = 40;
+
+    private Tokenizer() {}
+
+    /** Hands each term of text to sink, in order (duplicates included). */
+    static void forEachTerm(String text, Consumer<String> sink) {
+        forEachTermAt(text, (term, at) -> sink.accept(term));
+    }
+
+    /** Like {@link #forEachTerm}, with the offset (a char index into text) where each term starts. */
+    static void forEachTermAt(String text, ObjIntConsumer<String> sink) {
+        if (text == null) return;
+        StringBuilder term = new StringBuilder(16);
+        int start = 0;
+        int n = text.length();
+        for (int i = 0; i < n; ) {
+            int cp = text.codePointAt(i);
+            if (Character.isLetterOrDigit(cp)) {
+                if (term.length() == 0) start = i;
+                if (term.length() < MAX_TERM_CHARS) term.appendCodePoint(Character.toLowerCase(cp));
+            } else if (term.length() > 0) {
+                sink.accept(term.toString(), start);
+                term.setLength(0);
+            }
+            i += Character.charCount(cp);
+        }
+        if (term.length() > 0) sink.accept(term.toString(), start);
+    }
+
+    /** End (exclusive char index) of the run of letters and digits starting at at in text. */
+    static int termEnd(String text, int at) {
+        int i = at;
+        while (i < text.length()) {
+            int cp = text.codePointAt(i);
+            if (!Character.isLetterOrDigit(cp)) break;
+            i += Character.charCount(cp);
+        }
+        return i;
+    }
+
+    /** The terms of text as a list. */
+    static List<String> terms(String text) {
+        List<String> out = new ArrayList<>();
+        forEachTerm(text, out::add);
+        return out;
+    }
+
+    /**
+     * The distinct trigrams of term, ascending, each packed into a long (three code points of 21
+     * bits). Padded, the term is framed as <code>"  term "</code> first, as pg_trgm does, so a
+     * one- or two-letter term still has trigrams and the start of a word counts for more. The
+     * unpadded trigrams are the ones any term containing this one as a substring must also have;
+     * they are always a subset of the padded ones.
+     */
+    static long[] trigrams(String term, boolean padded) {
+        int[] cps = (padded ? "  " + term + " " : term).codePoints().toArray();
+        if (cps.length < 3) return new long[0];
+        long[] out = new long[cps.length - 2];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = ((long) cps[i] << 42) | ((long) cps[i + 1] << 21) | cps[i + 2];
+        }
+        Arrays.sort(out);
+        int n = 0;
+        for (int i = 0; i < out.length; i++) {
+            if (n == 0 || out[i] != out[n - 1]) out[n++] = out[i];
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+}
@@ -0,0 +1,134 @@
+package database;
+
+import java.util.Locale;
+import java.util.function.Function;
+
+import entityClasses.UserSnapshot;
+
+/*******
+ * <p> Title: UserQuery Class. </p>
+ *
+ * <p> Description: Filter, sort and page description for {@link Database#findUsers(UserQuery)},
+ * used by the List Users table and the Add/Remove Roles user picker. One SQL statement per
+ * combination answers it, so a page of the directory is a single round trip however many
+ * accounts exist.</p>
+ *
+ * <p> Setters return this, e.g.
+ * <code>UserQuery.all().prefix("al").role("Student").sortBy(Sort.LAST_NAME, true)</code>.
+ * Null or blank values (and "All") mean "no filter".</p>
+ *
+ * <p> Paging is keyset based on (sort column, userName): {@link #after(UserSnapshot)} continues
+ * after the last row of the previous page in the current sort order. NULL column values sort
+ * first when ascending and last when descending.</p>
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+public class UserQuery {
+
+    /** Sortable directory columns; the table's columns map onto these. */
+    public enum Sort {
+        USER_NAME("userName", UserSnapshot::userName),
+        FIRST_NAME("firstName", UserSnapshot::firstName),
+        MIDDLE_NAME("middleName", UserSnapshot::middleName),
+        LAST_NAME("lastName", UserSnapshot::lastName),
+        PREFERRED_FIRST_NAME("preferredFirstName", UserSnapshot::preferredFirstName),
+        EMAIL_ADDRESS("emailAddress", UserSnapshot::emailAddress),
+        ADMIN_ROLE("adminRole", UserSnapshot::adminRole),
+        STUDENT_ROLE("studentRole", UserSnapshot::studentRole),
+        REVIEWER_ROLE("reviewerRole", UserSnapshot::reviewerRole);
+
+        final String column;
+        final Function<UserSnapshot, Object> key;
+
+        Sort(String column, Function<UserSnapshot, Object> key) {
+            this.column = column;
+            this.key = key;
+        }
+    }
+
+    // Shape bits: which optional predicates the SQL needs (see Database.userSql); the sort
+    // column's ordinal is stored above SORT_SHIFT
+    static final int BY_PREFIX    = 1;
+    static final int ADMIN        = 1 << 1;
+    static final int STUDENT      = 1 << 2;
+    static final int REVIEWER     = 1 << 3;
+    static final int LIMITED      = 1 << 4;
+    static final int AFTER        = 1 << 5;
+    static final int AFTER_NULL   = 1 << 6;   // with AFTER: the cursor's sort value is NULL
+    static final int DESCENDING   = 1 << 7;
+    static final int COUNT        = 1 << 8;   // set by Database.countUsers, never by the query
+    static final int SORT_SHIFT   = 9;
+
+    String  prefix;          // lower-cased LIKE pattern ("al%"), wildcards in the input escaped
+    boolean admin;
+    boolean student;
+    boolean reviewer;
+    Sort    sort = Sort.USER_NAME;
+    boolean ascending = true;
+    int     limit;           // 0 = no limit
+    boolean hasAfter;
+    Object  afterValue;      // keyset cursor: rows strictly after (afterValue, afterUserName)
+    String  afterUserName;
+
+    private UserQuery() {}
+
+    /** Every user, by user name. */
+    public static UserQuery all() {
+        return new UserQuery();
+    }
+
+    /** Users whose user name, first, last or preferred name, or email starts with text. */
+    public UserQuery prefix(String text) {
+        if (text == null || text.isBlank()) { this.prefix = null; return this; }
+        String t = text.trim().toLowerCase(Locale.ROOT)
+                .replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+        this.prefix = t + "%";
+        return this;
+    }
+
+    /** Only users holding this role ("Admin", "Student" or "Reviewer"); repeat to require several. */
+    public UserQuery role(String name) {
+        if (name == null || name.isBlank() || "All".equalsIgnoreCase(name.trim())) return this;
+        switch (name.trim()) {
+            case "Admin"    -> admin = true;
+            case "Student"  -> student = true;
+            case "Reviewer" -> reviewer = true;
+            default -> throw new IllegalArgumentException("Unknown role: " + name);
+        }
+        return this;
+    }
+
+    public UserQuery sortBy(Sort column, boolean ascending) {
+        this.sort = column == null ? Sort.USER_NAME : column;
+        this.ascending = ascending;
+        return this;
+    }
+
+    public UserQuery limit(int maxRows) {
+        this.limit = Math.max(0, maxRows);
+        return this;
+    }
+
+    /** Continue after the given row (normally the last row of the previous page); null = top. */
+    public UserQuery after(UserSnapshot last) {
+        if (last == null) return this;
+        this.hasAfter = true;
+        this.afterValue = sort.key.apply(last);
+        this.afterUserName = last.userName();
+        return this;
+    }
+
+    /** Bitmask of the optional predicates and the sort; each value maps to one fixed SQL text. */
+    int shape() {
+        int s = sort.ordinal() << SORT_SHIFT;
+        if (prefix != null) s |= BY_PREFIX;
+        if (admin)          s |= ADMIN;
+        if (student)        s |= STUDENT;
+        if (reviewer)       s |= REVIEWER;
+        if (limit > 0)      s |= LIMITED;
+        if (hasAfter)       s |= afterValue == null ? AFTER | AFTER_NULL : AFTER;
+        if (!ascending)     s |= DESCENDING;
+        return s;
+    }
+}
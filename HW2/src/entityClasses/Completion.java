@@ -0,0 +1,16 @@
+package entityClasses;
+
+/*******
+ * <p> Title: Completion Record. </p>
+ *
+ * <p> Description: One suggestion for a partly typed search word, returned by
+ * Database.complete: an indexed search term, a thread name or a post author, with the text to
+ * insert or select.</p>
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+public record Completion(Kind kind, String text) {
+
+    public enum Kind { TERM, THREAD, AUTHOR }
+}
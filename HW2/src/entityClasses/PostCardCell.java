@@ -1,7 +1,8 @@
 package entityClasses;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.BiConsumer;
-import java.util.function.Function;
 
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -12,6 +13,8 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.Priority;
 import javafx.scene.layout.Region;
 import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
 
 
 
@@ -25,18 +28,20 @@ import javafx.scene.layout.VBox;
  * @author Group 14
  * 
  * @version 1.00		2025-10-24 Initial documentation alignment for guiReadPosts and guiMyPosts
+ * @version 1.01		2026-10-18 Show the matching reply excerpt of a search hit
+ * @version 1.02		2026-10-18 Show a search hit's body snippet, matching words highlighted
  */
 public class PostCardCell extends ListCell<PostItem> {
 
-    private static Function<Long, Boolean> isReadFn;
-    private static BiConsumer<Long, Boolean> setReadFn;
+    private static BiConsumer<PostItem, Boolean> setReadFn;
 
 	/**********
-	 * <p> Method: setReadProviders() </p>
+	 * <p> Method: setReadHandler() </p>
 	 * 
-	 * <p> Description: Updates internal state and/or UI controls accordingly.</p>
-	 */    public static void setReadProviders(Function<Long, Boolean> isFn, BiConsumer<Long, Boolean> setFn) {
-        isReadFn = isFn;
+	 * <p> Description: Registers the callback run when the read checkbox is toggled. The
+	 * checkbox state itself comes from PostItem.isRead, which the feed query fills in.</p>
+	 */
+    public static void setReadHandler(BiConsumer<PostItem, Boolean> setFn) {
         setReadFn = setFn;
     }
 
@@ -52,6 +57,12 @@ public class PostCardCell extends ListCell<PostItem> {
     private final Label counts = new Label();
     private final Region spacer = new Region();
 
+    // Search hits: the body around the first match, and the best-matching reply
+    private final TextFlow snippet = new TextFlow();
+    private final TextFlow replyExcerpt = new TextFlow();
+
+    private static final String MATCH_STYLE = "-fx-font-weight:bold; -fx-fill:#b35900;";
+
     public PostCardCell() {
         super();
         selectedProperty().addListener((obs, was, isSel) -> {
@@ -67,6 +78,12 @@ public class PostCardCell extends ListCell<PostItem> {
         kind.getStyleClass().add("post-meta");
         counts.getStyleClass().add("post-counts");
         dot.getStyleClass().add("post-unread-dot");
+        snippet.getStyleClass().add("post-snippet");
+        snippet.setStyle("-fx-opacity:0.9;");
+        snippet.setMaxWidth(Double.MAX_VALUE);
+        replyExcerpt.getStyleClass().add("post-reply-excerpt");
+        replyExcerpt.setStyle("-fx-opacity:0.8;");
+        replyExcerpt.setMaxWidth(Double.MAX_VALUE);
         root.getStyleClass().add("post-row");
 
         root.setPadding(new Insets(6, 8, 6, 8));
@@ -74,7 +91,7 @@ public class PostCardCell extends ListCell<PostItem> {
 
         topRow.getChildren().addAll(readBox, dot, title);
         metaRow.getChildren().addAll(category, kind, spacer, counts);
-        root.getChildren().addAll(topRow, metaRow);
+        root.getChildren().addAll(topRow, metaRow, snippet, replyExcerpt);
     }
 
     @Override
@@ -114,17 +131,16 @@ public class PostCardCell extends ListCell<PostItem> {
         }
         counts.setText(c);
 
+        // Search hits: where the body matched, and the best-matching reply
+        showMatches(snippet, "", item.snippet, item.snippetMatches, "");
+        showMatches(replyExcerpt, "↳ ", item.replyExcerpt, item.replyMatches, "-fx-font-style:italic;");
+
         // Checkbox wiring
-        if (isReadFn != null) {
-            boolean isRead = false;
-            try { isRead = isReadFn.apply(item.id); } catch (Exception ignored) {}
-            readBox.setSelected(isRead);
-        } else {
-            readBox.setSelected(false);
-        }
+        readBox.setSelected(item.isRead);
         readBox.setOnAction(e -> {
+            item.isRead = readBox.isSelected();
             if (setReadFn != null) {
-                try { setReadFn.accept(item.id, readBox.isSelected()); } catch (Exception ignored) {}
+                try { setReadFn.accept(item, item.isRead); } catch (Exception ignored) {}
             }
         });
 
@@ -138,4 +154,40 @@ public class PostCardCell extends ListCell<PostItem> {
 
         setGraphic(root);
     }
+
+	/**********
+	 * <p> Method: showMatches() </p>
+	 * 
+	 * <p> Description: Fills flow with prefix and text, the ranges in matches (start/end
+	 * pairs, computed with the search results) highlighted; hides flow when text is empty.</p>
+	 */
+    private static void showMatches(TextFlow flow, String prefix, String text, int[] matches, String style) {
+        boolean show = text != null && !text.isBlank();
+        flow.setVisible(show);
+        flow.setManaged(show);
+        if (!show) {
+            flow.getChildren().clear();
+            return;
+        }
+        List<Text> parts = new ArrayList<>();
+        parts.add(styled(prefix, style));
+        int pos = 0;
+        if (matches != null) {
+            for (int i = 0; i + 1 < matches.length; i += 2) {
+                int s = Math.max(pos, matches[i]), e = Math.min(text.length(), matches[i + 1]);
+                if (s >= e) continue;
+                parts.add(styled(text.substring(pos, s), style));
+                parts.add(styled(text.substring(s, e), style + MATCH_STYLE));
+                pos = e;
+            }
+        }
+        parts.add(styled(text.substring(pos), style));
+        flow.getChildren().setAll(parts);
+    }
+
+    private static Text styled(String s, String style) {
+        Text t = new Text(s);
+        t.setStyle(style);
+        return t;
+    }
 }
@@ -12,6 +12,8 @@ import java.sql.Timestamp;
  * @author Group 14
  * 
  * @version 1.00		2025-10-24 Initial documentation alignment for guiReadPosts and guiMyPosts
+ * @version 1.01		2026-10-18 replyExcerpt for search hits found through a reply
+ * @version 1.02		2026-10-18 Search snippets with marked matches, and the body offset of the first match
  */
 public class PostItem {
 	
@@ -20,13 +22,21 @@ public class PostItem {
     public final String thread;   // category
     public String title;
     public final String kind;     // "Question" or "Post"
-    public String content;
+    public String content;       // full body; null in feed rows (see preview)
+    public String preview;       // first characters of the body, as stored in posts.preview
     public final boolean isAnonymous;
     public final boolean isPrivate;
     public final Timestamp createdAt;
     public int replyCount;
     public int unreadReplyCount; 
     public boolean isDeleted;
+    public boolean isRead;       // current user's post-level read checkbox
+    public String replyExcerpt;  // search hits: part of the reply that matched best, else null
+    public int[] replyMatches;   // start/end pairs of the matching words in replyExcerpt
+    public String snippet;       // search hits: part of the body around the first match, else null
+    public int[] snippetMatches; // start/end pairs of the matching words in snippet
+    public int matchAt = -1;     // search hits: body offset of the first matching word, else -1
+    public int matchLength;      // length of that word in the body
 
     public PostItem(long id, String author, String thread, String title, String kind,
                     String content, boolean isAnonymous, boolean isPrivate,
@@ -51,7 +61,7 @@ public class PostItem {
     public String safeTitle() {
         String t = title == null ? "" : title.trim();
         if (!t.isEmpty()) return t;
-        String body = content == null ? "" : content.trim();
+        String body = content != null ? content.trim() : (preview == null ? "" : preview.trim());
         return body.length() > 60 ? body.substring(0,60) + "…" : body;
     }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package entityClasses;
+
+import java.sql.Timestamp;
+
+/*******
+ * <p> Title: PostRow Record. </p>
+ *
+ * <p> Description: Immutable, typed row returned by Database.findPosts / forEachPost, one per
+ * post, replacing the per-row HashMap of earlier versions.</p>
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+public record PostRow(
+        long id,
+        String author,
+        String thread,
+        String title,
+        String kind,
+        String content,
+        boolean deleted,
+        Timestamp createdAt,
+        int replyCount) {
+}
@@ -0,0 +1,21 @@
+package entityClasses;
+
+import java.sql.Timestamp;
+
+/*******
+ * <p> Title: ReplyRow Record. </p>
+ *
+ * <p> Description: Immutable, typed row returned by Database.findReplies / forEachReply, one
+ * per reply. read is the given user's reply checkbox (false when no user was given).</p>
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version
+ */
+public record ReplyRow(
+        long id,
+        long postId,
+        String author,
+        String content,
+        Timestamp createdAt,
+        boolean read) {
+}
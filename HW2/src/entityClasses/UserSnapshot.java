@@ -0,0 +1,25 @@
+package entityClasses;
+
+/*******
+ * <p> Title: UserSnapshot Record. </p>
+ *
+ * <p> Description: Immutable copy of one userDB row as it was when it was read. User lookups
+ * in Database return one of these instead of filling the Database's own "current user"
+ * fields, so any number of threads can read and update users at the same time. A later
+ * update does not change a snapshot; read the user again to see it.</p>
+ *
+ * @version 1.00  2026-10-18
+ *  - Initial version (replaces Database.getCurrent*())
+ */
+public record UserSnapshot(
+        String userName,
+        String password,
+        String firstName,
+        String middleName,
+        String lastName,
+        String preferredFirstName,
+        String emailAddress,
+        boolean adminRole,
+        boolean studentRole,
+        boolean reviewerRole) {
+}
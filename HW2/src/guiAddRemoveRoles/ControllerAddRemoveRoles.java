@@ -1,9 +1,22 @@
 package guiAddRemoveRoles;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import database.Database;
+import database.DatabaseAsync;
+import database.UserQuery;
+import entityClasses.UserSnapshot;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.Orientation;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.control.ComboBox;
+import javafx.scene.control.ListView;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.control.skin.ComboBoxListViewSkin;
 
 public class ControllerAddRemoveRoles {
 	
@@ -20,19 +33,94 @@ public class ControllerAddRemoveRoles {
 	// Reference for the in-memory database so this package has access
 	private static Database theDatabase = applicationMain.HW2Main.database;		
 
+	// User picker paging: the picker holds "<Select a User>" followed by pages of user names
+	private static final double PREFETCH_AT = 0.9;	// popup scroll fraction that loads the next page
+	private static UserSnapshot lastPickerRow = null;
+	private static boolean pickerExhausted = false;
+	private static boolean pickerLoading = false;
+	private static boolean pickerHooked = false;
+	private static CompletableFuture<?> pickerRequest = null;
+
+
+	/**********
+	 * <p> Method: reloadUserPicker() </p>
+	 * 
+	 * <p> Description: Resets the user picker to its prompt and loads the first page of user
+	 * names matching the filter text. Later pages are loaded as the picker's list is scrolled,
+	 * so the page never reads every account. </p>
+	 * 
+	 */
+	protected static void reloadUserPicker() {
+		if (pickerRequest != null) pickerRequest.cancel(true);
+		ViewAddRemoveRoles.combobox_SelectUser.getSelectionModel().select(0);
+		ObservableList<String> items = ViewAddRemoveRoles.combobox_SelectUser.getItems();
+		items.remove(1, items.size());
+		lastPickerRow = null;
+		pickerExhausted = false;
+		pickerLoading = false;
+		loadPickerPage();
+	}
+
+
+	/**********
+	 * <p> Method: loadPickerPage() </p>
+	 * 
+	 * <p> Description: Appends the next page of matching user names to the picker. </p>
+	 * 
+	 */
+	private static void loadPickerPage() {
+		if (pickerLoading || pickerExhausted) return;
+		pickerLoading = true;
+		
+		UserQuery q = UserQuery.all().prefix(ViewAddRemoveRoles.text_UserFilter.getText())
+				.after(lastPickerRow).limit(Database.USER_PAGE_SIZE);
+		CompletableFuture<List<UserSnapshot>> req = DatabaseAsync.findUsers(q);
+		pickerRequest = req;
+		req.thenAccept(page -> {
+			pickerExhausted = page.size() < Database.USER_PAGE_SIZE;
+			if (!page.isEmpty()) lastPickerRow = page.get(page.size() - 1);
+			ViewAddRemoveRoles.combobox_SelectUser.getItems().addAll(
+					page.stream().map(UserSnapshot::userName).toList());
+		}).exceptionally(DatabaseAsync.alertOnFailure("Failed to load users: "))
+		  .whenComplete((v, err) -> { if (pickerRequest == req) pickerLoading = false; });
+	}
+
+
+	/**********
+	 * <p> Method: hookPickerPaging() </p>
+	 * 
+	 * <p> Description: Called when the picker's popup is shown (its list only exists from then
+	 * on): loads the next page when the list is scrolled near its end. </p>
+	 * 
+	 */
+	protected static void hookPickerPaging() {
+		if (pickerHooked) return;
+		if (!(ViewAddRemoveRoles.combobox_SelectUser.getSkin() instanceof ComboBoxListViewSkin<?> skin)
+				|| !(skin.getPopupContent() instanceof ListView<?> list)) return;
+		Platform.runLater(() -> {
+			for (Node n : list.lookupAll(".scroll-bar")) {
+				if (n instanceof ScrollBar sb && sb.getOrientation() == Orientation.VERTICAL) {
+					sb.valueProperty().addListener((obs, o, v) -> {
+						if (v.doubleValue() >= sb.getMin() + (sb.getMax() - sb.getMin()) * PREFETCH_AT)
+							loadPickerPage();
+					});
+					pickerHooked = true;
+				}
+			}
+		});
+	}
+
 	
 	/**********
 	 * <p> Method: doSelectUser() </p>
 	 * 
 	 * <p> Description: This method uses the ComboBox widget, fetches which item in the ComboBox
-	 * was selected (a user in this case), and establishes that user and the current user, setting
-	 * easily accessible values without needing to do a query. </p>
+	 * was selected (a user in this case), and shows that user's current roles. </p>
 	 * 
 	 */
 	protected static void doSelectUser() {
 		ViewAddRemoveRoles.theSelectedUser = 
 				(String) ViewAddRemoveRoles.combobox_SelectUser.getValue();
-		theDatabase.getUserAccountDetails(ViewAddRemoveRoles.theSelectedUser);
 		setupSelectedUser();
 	}
 	
@@ -55,6 +143,7 @@ public class ControllerAddRemoveRoles {
 					ViewAddRemoveRoles.label_PageTitle, ViewAddRemoveRoles.label_UserDetails, 
 					ViewAddRemoveRoles.button_UpdateThisUser, ViewAddRemoveRoles.line_Separator1,
 					ViewAddRemoveRoles.label_SelectUser, ViewAddRemoveRoles.combobox_SelectUser, 
+					ViewAddRemoveRoles.text_UserFilter,
 					ViewAddRemoveRoles.line_Separator4, ViewAddRemoveRoles.button_Return,
 					ViewAddRemoveRoles.button_Logout, ViewAddRemoveRoles.button_Quit);
 		}
@@ -65,6 +154,7 @@ public class ControllerAddRemoveRoles {
 					ViewAddRemoveRoles.button_UpdateThisUser, ViewAddRemoveRoles.line_Separator1,
 					ViewAddRemoveRoles.label_SelectUser,
 					ViewAddRemoveRoles.combobox_SelectUser, 
+					ViewAddRemoveRoles.text_UserFilter,
 					ViewAddRemoveRoles.label_CurrentRoles,
 					ViewAddRemoveRoles.label_SelectRoleToBeAdded,
 					ViewAddRemoveRoles.combobox_SelectRoleToAdd,
@@ -96,28 +186,36 @@ public class ControllerAddRemoveRoles {
 	 */
 	private static void setupSelectedUser() {
 		System.out.println("*** Entering setupSelectedUser");
+		if (ViewAddRemoveRoles.theSelectedUser == null)
+			ViewAddRemoveRoles.theSelectedUser = "<Select a User>";
+		
+		// Read the selected user's roles fresh; no selection (or an unknown user) has no roles
+		UserSnapshot selected = theDatabase.getUserAccountDetails(ViewAddRemoveRoles.theSelectedUser);
+		boolean adminRole    = selected != null && selected.adminRole();
+		boolean studentRole  = selected != null && selected.studentRole();
+		boolean reviewerRole = selected != null && selected.reviewerRole();
 		
 		// Create the list of roles that could be added for the currently selected user (e.g., Do
 		// not show a role to add that the user already has!)
 		ViewAddRemoveRoles.addList.clear();
 		ViewAddRemoveRoles.addList.add("<Select a role>");
-		if (!theDatabase.getCurrentAdminRole())
+		if (!adminRole)
 			ViewAddRemoveRoles.addList.add("Admin");
-		if (!theDatabase.getCurrentStudentRole())
+		if (!studentRole)
 			ViewAddRemoveRoles.addList.add("Student");
-		if (!theDatabase.getCurrentReviewerRole())
+		if (!reviewerRole)
 			ViewAddRemoveRoles.addList.add("Reviewer");
 
 		// Create the list of roles that could be removed for the currently selected user (e.g., Do
 		// not show a role to remove that the user does not have!)
 		ViewAddRemoveRoles.removeList.clear();
 		ViewAddRemoveRoles.removeList.add("<Select a role>");
-		if (theDatabase.getCurrentAdminRole() && !(ViewAddRemoveRoles.theUser.getUserName().compareTo(ViewAddRemoveRoles.theSelectedUser) == 0 )) {
+		if (adminRole && !(ViewAddRemoveRoles.theUser.getUserName().compareTo(ViewAddRemoveRoles.theSelectedUser) == 0 )) {
 			ViewAddRemoveRoles.removeList.add("Admin");
 		}
-		if (theDatabase.getCurrentStudentRole())
+		if (studentRole)
 			ViewAddRemoveRoles.removeList.add("Student");
-		if (theDatabase.getCurrentReviewerRole())
+		if (reviewerRole)
 			ViewAddRemoveRoles.removeList.add("Reviewer");
 		
 		// Create the list or roles that the user currently has with proper use of a comma between
@@ -126,13 +224,13 @@ public class ControllerAddRemoveRoles {
 		String theCurrentRoles = "";
 		
 		// Admin role - It can only be at the head of a list
-		if (theDatabase.getCurrentAdminRole()) {
+		if (adminRole) {
 			theCurrentRoles += "Admin";
 			notTheFirst = true;
 		}
 		
 		// Student role - It could be at the head of the list or later in the list
-		if (theDatabase.getCurrentStudentRole()) {
+		if (studentRole) {
 			if (notTheFirst)
 				theCurrentRoles += ", Student"; 
 			else {
@@ -142,7 +240,7 @@ public class ControllerAddRemoveRoles {
 		}
 
 		// Reviewer role - It could be at the head of the list or later in the list
-		if (theDatabase.getCurrentReviewerRole()) {
+		if (reviewerRole) {
 			if (notTheFirst)
 				theCurrentRoles += ", Reviewer"; 
 			else {
@@ -267,6 +365,6 @@ public class ControllerAddRemoveRoles {
 	 * 
 	 */
 	protected static void performQuit() {
-		System.exit(0);
+		applicationMain.HW2Main.quit();
 	}
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
 import javafx.scene.layout.Pane;
 import javafx.scene.shape.Line;
 import javafx.scene.text.Font;
@@ -62,6 +63,7 @@ public class ViewAddRemoveRoles {
 	// not need to push a button to make this happen.
 	protected static Label label_SelectUser = new Label("Select a user to be updated:");
 	protected static ComboBox <String> combobox_SelectUser = new ComboBox <String>();
+	protected static TextField text_UserFilter = new TextField();	// narrows the picker by prefix
 	
 	// Area 2b: When a user has been selected these widgets are shown and can be used
 	protected static List<String> addList = new ArrayList<String>();
@@ -142,12 +144,10 @@ public class ViewAddRemoveRoles {
 		if (theView == null) theView = new ViewAddRemoveRoles();
 		
 		
-		List<String> userList = theDatabase.getUserList();	
-		combobox_SelectUser.setItems(FXCollections.observableArrayList(userList));
-		combobox_SelectUser.getSelectionModel().select(0);
-		combobox_SelectUser.getSelectionModel().selectedItemProperty()
-    	.addListener((ObservableValue<? extends String> observable, 
-    		String oldvalue, String newValue) -> {ControllerAddRemoveRoles.doSelectUser();});
+		// The picker is filled a page at a time, starting over with an empty filter
+		text_UserFilter.setText("");
+		ControllerAddRemoveRoles.reloadUserPicker();
+
 		// Populate the dynamic aspects of the GUI with the data from the user and the current
 		// state of the system.  This page is different from the others.  Since there are two 
 		// modes (1: user has not been selected, and 2: user has been selected) there are two
@@ -194,12 +194,19 @@ public class ViewAddRemoveRoles {
 		setupLabelUI(label_SelectUser, "Arial", 20, 300, Pos.BASELINE_LEFT, 20, 130);
 		
 		setupComboBoxUI(combobox_SelectUser, "Dialog", 16, 250, 280, 125);
-		List<String> userList = theDatabase.getUserList();	
-		combobox_SelectUser.setItems(FXCollections.observableArrayList(userList));
+		combobox_SelectUser.setItems(FXCollections.observableArrayList("<Select a User>"));
 		combobox_SelectUser.getSelectionModel().select(0);
 		combobox_SelectUser.getSelectionModel().selectedItemProperty()
     	.addListener((ObservableValue<? extends String> observable, 
     		String oldvalue, String newValue) -> {ControllerAddRemoveRoles.doSelectUser();});
+		combobox_SelectUser.setOnShown((event) -> {ControllerAddRemoveRoles.hookPickerPaging(); });
+		
+		text_UserFilter.setPromptText("Filter by name or email");
+		text_UserFilter.setLayoutX(550);
+		text_UserFilter.setLayoutY(125);
+		text_UserFilter.setPrefWidth(230);
+		text_UserFilter.textProperty().addListener((observable, oldValue, newValue) -> 
+			{ControllerAddRemoveRoles.reloadUserPicker(); });
 		
 		// GUI Area 2b
 		setupLabelUI(label_CurrentRoles, "Arial", 16, 300, Pos.BASELINE_LEFT, 50, 170);	
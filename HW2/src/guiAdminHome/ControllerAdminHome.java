@@ -1,6 +1,9 @@
 package guiAdminHome;
 
 import database.Database;
+import database.DatabaseAsync;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Alert.AlertType;
 
 /*******
  * <p> Title: GUIAdminHomePage Class. </p>
@@ -22,6 +25,7 @@ import database.Database;
  * @author Lynn Robert Carter
  * 
  * @version 1.00		2025-08-17 Initial version
+ * @version 1.01		2026-10-18 Repair Post Counters runs Database.checkPostCounters(true)
  *  
  */
 
@@ -103,6 +107,23 @@ public class ControllerAdminHome {
 		guiAddRemoveRoles.ViewAddRemoveRoles.displayAddRemoveRoles(ViewAdminHome.theStage, 
 				ViewAdminHome.theUser);
 	}
+	/**********
+	 * <p> 
+	 * 
+	 * Title: repairPostCounters () Method. </p>
+	 * 
+	 * <p> Description: Protected method that compares every post's stored reply count and last
+	 * activity time with its replies and rewrites the ones that drifted (e.g. after replies were
+	 * changed outside the application). It scans all posts, so it runs off the FX thread and
+	 * reports the number of posts repaired when done.</p>
+	 */
+	protected static void repairPostCounters() {
+		DatabaseAsync.supply(() -> Database.checkPostCounters(true))
+			.thenAccept(n -> new Alert(AlertType.INFORMATION,
+					n == 0 ? "All post counters are correct." : "Repaired the counters of " + n + " posts.")
+					.showAndWait())
+			.exceptionally(DatabaseAsync.alertOnFailure("Checking post counters failed: "));
+	}
 	/**********
 	 * <p> 
 	 * 
@@ -124,6 +145,6 @@ public class ControllerAdminHome {
 	 * </p>
 	 */
 	protected static void performQuit() {
-		System.exit(0);
+		applicationMain.HW2Main.quit();
 	}
 }
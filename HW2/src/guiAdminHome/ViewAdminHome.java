@@ -43,6 +43,7 @@ import guiUserUpdate.ViewUserUpdate;
  * @author Lynn Robert Carter
  * 
  * @version 1.00		2025-08-17 Initial version
+ * @version 1.01		2026-10-18 Repair Post Counters button
  *  
  */
 
@@ -79,6 +80,7 @@ public class ViewAdminHome {
 	protected static Button button_DeleteUser = new Button("Delete a User");
 	protected static Button button_ListUsers = new Button("List All Users");
 	protected static Button button_AddRemoveRoles = new Button("Add/Remove Roles");
+	protected static Button button_RepairPostCounters = new Button("Repair Post Counters");
 	protected static Alert alertNotImplemented = new Alert(AlertType.INFORMATION);
 
 	// This is a separator and it is used to partition the GUI for various tasks
@@ -145,7 +147,6 @@ public class ViewAdminHome {
 		
 		// Populate the dynamic aspects of the GUI with the data from the user and the current
 		// state of the system.
-		theDatabase.getUserAccountDetails(user.getUserName());		// Fetch this user's data
 		System.out.println(user.getUserName());
 		applicationMain.HW2Main.activeHomePage = theRole;	// Set this as the active Home																	
 				
@@ -203,6 +204,9 @@ public class ViewAdminHome {
 
 		setupButtonUI(button_AddRemoveRoles, "Dialog", 16, 250, Pos.CENTER, 270, 400);
 		button_AddRemoveRoles.setOnAction((event) -> {ControllerAdminHome.addRemoveRoles(); });
+
+		setupButtonUI(button_RepairPostCounters, "Dialog", 16, 250, Pos.CENTER, 270, 450);
+		button_RepairPostCounters.setOnAction((event) -> {ControllerAdminHome.repairPostCounters(); });
 		
 		// GUI Area 5
 		setupButtonUI(button_Logout, "Dialog", 18, 250, Pos.CENTER, 100, 540);
@@ -221,6 +225,7 @@ public class ViewAdminHome {
     		button_DeleteUser,
     		button_ListUsers,
     		button_AddRemoveRoles,
+    		button_RepairPostCounters,
     		line_Separator4, 
     		button_Logout,
     		button_Quit
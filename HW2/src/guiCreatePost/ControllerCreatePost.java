@@ -1,6 +1,7 @@
 package guiCreatePost;
 
 import database.Database;
+import database.DatabaseAsync;
 import entityClasses.User;
 import javafx.application.Platform;
 import javafx.scene.control.*;
@@ -89,13 +90,12 @@ public class ControllerCreatePost {
             return;
         }
 
-        try {
-            Database.createPostStudent(user.getUserName(), category, title, kind, body, isPrivate, isAnonymous);
-            new Alert(Alert.AlertType.INFORMATION, "Post created.").showAndWait();
-            onBack();
-        } catch (Exception e) {
-            new Alert(Alert.AlertType.ERROR, "Failed to create post: " + e.getMessage()).showAndWait();
-        }
+        DatabaseAsync.run(() -> Database.createPostStudent(user.getUserName(), category, title, kind, body, isPrivate, isAnonymous))
+                .thenRun(() -> {
+                    new Alert(Alert.AlertType.INFORMATION, "Post created.").showAndWait();
+                    onBack();
+                })
+                .exceptionally(DatabaseAsync.alertOnFailure("Failed to create post: "));
     }
 
     /*********
@@ -86,6 +86,6 @@ public class ControllerDeleteUser {
 	 * 
 	 */
 	protected static void performQuit() {
-		System.exit(0);
+		applicationMain.HW2Main.quit();
 	}
 }
\ No newline at end of file
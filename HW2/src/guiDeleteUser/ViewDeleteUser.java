@@ -226,7 +226,7 @@ public class ViewDeleteUser {
 	//Used in the Delete User Button to show different alerts
 	// The alerts can either be for errors or for confirming the user's choice to delete
 	private static void deleteUserButtonLogic(String username) {
-		if (theDatabase.getUserAccountDetails(username) == false) {
+		if (theDatabase.getUserAccountDetails(username) == null) {
      		// Inform the admin that they input an invalid username
 			label_DeletionResult.setText("");
     		alertUsernameError.setContentText(
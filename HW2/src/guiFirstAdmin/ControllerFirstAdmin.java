@@ -398,7 +398,7 @@ public class ControllerFirstAdmin {
 	 */
 	protected static void performQuit() {
 		System.out.println("Perform Quit");
-		System.exit(0);
+		applicationMain.HW2Main.quit();
 	}	
 }
 
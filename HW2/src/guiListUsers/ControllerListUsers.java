@@ -39,6 +39,6 @@ public class ControllerListUsers {
 	 * 
 	 */
 	protected static void performQuit() {
-		System.exit(0);
+		applicationMain.HW2Main.quit();
 	}
 }
\ No newline at end of file
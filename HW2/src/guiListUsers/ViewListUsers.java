@@ -1,30 +1,45 @@
 package guiListUsers;
 
 import java.util.Arrays;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import database.Database;
+import database.DatabaseAsync;
+import database.UserQuery;
 import entityClasses.User;
+import entityClasses.UserSnapshot;
+import javafx.application.Platform;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.value.ChangeListener;
 import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.geometry.Orientation;
 import javafx.geometry.Pos;
+import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.ScrollBar;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
 import javafx.scene.layout.Pane;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
+import javafx.util.Callback;
 
 /**
  * <p> Title: ViewListUsers Class. </p>
  *
  * <p> Description: JavaFX view that lists all users in the system with basic account details
  * and role flags. </p>
+ *
+ * <p> The table is a window onto the user directory: rows are fetched a page at a time
+ * (Database.USER_PAGE_SIZE) as the user scrolls, and sorting, prefix search and the role
+ * filter are applied by the database, so large rosters open as fast as small ones. </p>
  */
 public class ViewListUsers {
 
@@ -40,12 +55,28 @@ public class ViewListUsers {
 
     private static TableView<UserRow> table = new TableView<>();
 
+    // Filter bar: prefix search over user name, names and email, plus a role filter
+    private static TextField text_Search = new TextField();
+    private static ComboBox<String> combobox_Role =
+    		new ComboBox<>(FXCollections.observableArrayList("All", "Admin", "Student", "Reviewer"));
+    private static Label label_Count = new Label();
+
+    // Paging state for the table (all on the FX thread)
+    private static final double PREFETCH_AT = 0.9;	// scroll fraction that triggers the next page
+    private static boolean pagingHooked = false;
+    private static boolean loadingPage = false;
+    private static boolean exhausted = false;
+    private static CompletableFuture<?> pageRequest = null;
+    private static CompletableFuture<?> countRequest = null;
+
+    // Listeners shared by every display of the page, so they are attached only once
+    private static final ChangeListener<String> SEARCH_LISTENER = (obs, o, n) -> reloadUsers();
+    private static final Callback<TableView<UserRow>, Boolean> SERVER_SORT = t -> { reloadUsers(); return true; };
+
     // Keep track of the current admin user to return to Admin Home
     protected static User theUser;
     protected static Stage theStage;
     
-    private static Database theDatabase = applicationMain.HW2Main.database;
-
     
     /**********
 	 * <p> Method: public displayListUsers(Stage ps, User user) </p>
@@ -70,9 +101,18 @@ public class ViewListUsers {
         setupLabel(label_Title, "Arial", 32, Pos.CENTER, 0, 20, width);
         setupLabel(label_Subtitle, "Arial", 16, Pos.CENTER, 0, 64, width);
 
+        setupFilterBar();
         setupTable();
 
-        table.setItems(loadUsers());
+        // rows are read off the FX thread a page at a time; the indicator spins meanwhile
+        table.setItems(FXCollections.observableArrayList());
+        reloadUsers();
+
+        ProgressIndicator busy = new ProgressIndicator();
+        busy.setPrefSize(28, 28);
+        busy.setLayoutX(width - 60);
+        busy.setLayoutY(24);
+        busy.visibleProperty().bind(DatabaseAsync.busyProperty());
 
         setupButtonUI(button_Return, "Dialog", 18, 210, Pos.CENTER, 20, 540);
 		button_Return.setOnAction((event) -> {ControllerListUsers.performReturn(); });
@@ -83,56 +123,86 @@ public class ViewListUsers {
 		setupButtonUI(button_Quit, "Dialog", 18, 210, Pos.CENTER, 570, 540);
 		button_Quit.setOnAction((event) -> {ControllerListUsers.performQuit(); });
 
-        root.getChildren().addAll(label_Title, label_Subtitle, table, button_Return, button_Logout, button_Quit);
+        root.getChildren().addAll(label_Title, label_Subtitle, text_Search, combobox_Role, label_Count,
+        		table, busy, button_Return, button_Logout, button_Quit);
 
         Scene scene = new Scene(root, width, height);
         ps.setTitle("List Users");
         ps.setScene(scene);
         ps.show();
+        installScrollPaging();
+    }
+
+    private static void setupFilterBar() {
+        text_Search.textProperty().removeListener(SEARCH_LISTENER);
+        text_Search.setText("");
+        text_Search.setPromptText("Search user name, name or email");
+        text_Search.setLayoutX(20);
+        text_Search.setLayoutY(92);
+        text_Search.setPrefWidth(300);
+        text_Search.textProperty().addListener(SEARCH_LISTENER);
+
+        combobox_Role.setOnAction(null);
+        combobox_Role.setValue("All");
+        combobox_Role.setLayoutX(330);
+        combobox_Role.setLayoutY(92);
+        combobox_Role.setPrefWidth(130);
+        combobox_Role.setOnAction(e -> reloadUsers());
+
+        setupLabel(label_Count, "Arial", 14, Pos.BASELINE_RIGHT, width - 320, 96, 240);
     }
 
     private static void setupTable() {
         table.getColumns().clear();
         table.setLayoutX(20);
-        table.setLayoutY(100);
+        table.setLayoutY(130);
         table.setPrefWidth(width - 40);
-        table.setPrefHeight(height - 180);
+        table.setPrefHeight(height - 210);
 
         TableColumn<UserRow, String> cUsername = new TableColumn<>("Username");
         cUsername.setPrefWidth(160);
         cUsername.setCellValueFactory(cd -> new SimpleStringProperty(cd.getValue().getUsername()));
+        cUsername.setUserData(UserQuery.Sort.USER_NAME);
 
         TableColumn<UserRow, String> cFirst = new TableColumn<>("First");
         cFirst.setPrefWidth(120);
         cFirst.setCellValueFactory(cd -> new SimpleStringProperty(cd.getValue().getFirstName()));
+        cFirst.setUserData(UserQuery.Sort.FIRST_NAME);
 
         TableColumn<UserRow, String> cMiddle = new TableColumn<>("Middle");
         cMiddle.setPrefWidth(120);
         cMiddle.setCellValueFactory(cd -> new SimpleStringProperty(cd.getValue().getMiddleName()));
+        cMiddle.setUserData(UserQuery.Sort.MIDDLE_NAME);
 
         TableColumn<UserRow, String> cLast = new TableColumn<>("Last");
         cLast.setPrefWidth(140);
         cLast.setCellValueFactory(cd -> new SimpleStringProperty(cd.getValue().getLastName()));
+        cLast.setUserData(UserQuery.Sort.LAST_NAME);
 
         TableColumn<UserRow, String> cPref = new TableColumn<>("Preferred");
         cPref.setPrefWidth(140);
         cPref.setCellValueFactory(cd -> new SimpleStringProperty(cd.getValue().getPreferredFirstName()));
+        cPref.setUserData(UserQuery.Sort.PREFERRED_FIRST_NAME);
 
         TableColumn<UserRow, String> cEmail = new TableColumn<>("Email");
         cEmail.setPrefWidth(220);
         cEmail.setCellValueFactory(cd -> new SimpleStringProperty(cd.getValue().getEmailAddress()));
+        cEmail.setUserData(UserQuery.Sort.EMAIL_ADDRESS);
 
         TableColumn<UserRow, Boolean> cAdmin = new TableColumn<>("Admin");
         cAdmin.setPrefWidth(80);
         cAdmin.setCellValueFactory(cd -> new SimpleBooleanProperty(cd.getValue().getAdminRole()));
+        cAdmin.setUserData(UserQuery.Sort.ADMIN_ROLE);
 
         TableColumn<UserRow, Boolean> cStudent = new TableColumn<>("Student");
         cStudent.setPrefWidth(80);
         cStudent.setCellValueFactory(cd -> new SimpleBooleanProperty(cd.getValue().getStudent()));
+        cStudent.setUserData(UserQuery.Sort.STUDENT_ROLE);
 
         TableColumn<UserRow, Boolean> cReviewer = new TableColumn<>("Reviewer");
         cReviewer.setPrefWidth(80);
         cReviewer.setCellValueFactory(cd -> new SimpleBooleanProperty(cd.getValue().getReviewer()));
+        cReviewer.setUserData(UserQuery.Sort.REVIEWER_ROLE);
         
         // Make columns share the table width
         table.setColumnResizePolicy(TableView.UNCONSTRAINED_RESIZE_POLICY);
@@ -166,6 +236,9 @@ public class ViewListUsers {
         table.getColumns().addAll(Arrays.asList(
         		cUsername, cFirst, cMiddle, cLast, cPref, cEmail, cAdmin, cStudent, cReviewer
         		));
+
+        // Clicking a header re-queries in that order instead of sorting the loaded rows
+        if (table.getSortPolicy() != SERVER_SORT) table.setSortPolicy(SERVER_SORT);
     }
 
     private static void setupLabel(Label l, String ff, double f, Pos align, double x, double y, double w) {
@@ -176,36 +249,98 @@ public class ViewListUsers {
         l.setPrefWidth(w);
     }
 
-    private static ObservableList<UserRow> loadUsers() {
-        List<UserRow> rows = new ArrayList<>();
-        try {
-            List<String> usernames = theDatabase.getUserList();
-            if (usernames != null) {
-                for (String u : usernames) {
-                    if ("<Select a User>".equals(u)) continue;
-                    if (theDatabase.getUserAccountDetails(u)) {
-                        UserRow r = new UserRow(
-                        		theDatabase.getCurrentUsername(),
-                        		theDatabase.getCurrentFirstName(),
-                        		theDatabase.getCurrentMiddleName(),
-                        		theDatabase.getCurrentLastName(),
-                        		theDatabase.getCurrentPreferredFirstName(),
-                        		theDatabase.getCurrentEmailAddress(),
-                        		theDatabase.getCurrentAdminRole(),
-                        		theDatabase.getCurrentStudentRole(),
-                        		theDatabase.getCurrentReviewerRole()
-                        );
-                        rows.add(r);
-                    }
-                }
+    /**********
+	 * <p> Method: currentQuery() </p>
+	 * 
+	 * <p> Description: UserQuery for the search text, role filter and the table's first sort
+	 * column (user name ascending when the table is unsorted). </p>
+	 */
+    private static UserQuery currentQuery() {
+        UserQuery.Sort sort = UserQuery.Sort.USER_NAME;
+        boolean ascending = true;
+        if (!table.getSortOrder().isEmpty()) {
+            TableColumn<UserRow, ?> first = table.getSortOrder().get(0);
+            if (first.getUserData() instanceof UserQuery.Sort s) sort = s;
+            ascending = first.getSortType() == TableColumn.SortType.ASCENDING;
+        }
+        return UserQuery.all().prefix(text_Search.getText()).role(combobox_Role.getValue())
+                .sortBy(sort, ascending);
+    }
+
+    /**********
+	 * <p> Method: reloadUsers() </p>
+	 * 
+	 * <p> Description: Replaces the rows with the first page of the current query and refreshes
+	 * the match count. Earlier requests still in flight are cancelled. </p>
+	 */
+    private static void reloadUsers() {
+        if (pageRequest != null) pageRequest.cancel(true);
+        if (countRequest != null) countRequest.cancel(true);
+        loadingPage = true;
+        exhausted = false;
+
+        UserQuery q = currentQuery();
+        CompletableFuture<List<UserSnapshot>> req =
+        		DatabaseAsync.findUsers(q.limit(Database.USER_PAGE_SIZE));
+        pageRequest = req;
+        req.thenAccept(page -> {
+            exhausted = page.size() < Database.USER_PAGE_SIZE;
+            table.getItems().setAll(page.stream().map(UserRow::new).toList());
+            table.scrollTo(0);
+        }).exceptionally(DatabaseAsync.alertOnFailure("Failed to load users: "))
+          .whenComplete((v, err) -> { if (pageRequest == req) loadingPage = false; });
+
+        CompletableFuture<Integer> count = DatabaseAsync.countUsers(q);
+        countRequest = count;
+        count.thenAccept(n -> label_Count.setText(n + (n == 1 ? " user" : " users")))
+             .exceptionally(t -> {
+                 // never leave the previous query's count standing
+                 if (countRequest == count) label_Count.setText("");
+                 return DatabaseAsync.<Void>alertOnFailure("Failed to count users: ").apply(t);
+             });
+    }
+
+    /**********
+	 * <p> Method: loadNextPage() </p>
+	 * 
+	 * <p> Description: Appends the page after the last loaded row, keyed on its sort value and
+	 * user name, so each page costs the same however far the admin has scrolled. </p>
+	 */
+    private static void loadNextPage() {
+        if (loadingPage || exhausted || table.getItems().isEmpty()) return;
+        loadingPage = true;
+
+        UserSnapshot last = table.getItems().get(table.getItems().size() - 1).getSnapshot();
+        CompletableFuture<List<UserSnapshot>> req = DatabaseAsync.findUsers(
+        		currentQuery().after(last).limit(Database.USER_PAGE_SIZE));
+        pageRequest = req;
+        req.thenAccept(page -> {
+            exhausted = page.size() < Database.USER_PAGE_SIZE;
+            table.getItems().addAll(page.stream().map(UserRow::new).toList());
+        }).exceptionally(DatabaseAsync.alertOnFailure("Failed to load users: "))
+          .whenComplete((v, err) -> { if (pageRequest == req) loadingPage = false; });
+    }
+
+    private static void installScrollPaging() {
+        if (pagingHooked) return;
+        if (table.getSkin() != null) hookScrollBar();
+        else table.skinProperty().addListener((obs, o, n) -> { if (n != null) Platform.runLater(ViewListUsers::hookScrollBar); });
+    }
+
+    private static void hookScrollBar() {
+        if (pagingHooked) return;
+        for (Node n : table.lookupAll(".scroll-bar")) {
+            if (n instanceof ScrollBar sb && sb.getOrientation() == Orientation.VERTICAL) {
+                sb.valueProperty().addListener((obs, o, v) -> {
+                    if (v.doubleValue() >= sb.getMin() + (sb.getMax() - sb.getMin()) * PREFETCH_AT) loadNextPage();
+                });
+                pagingHooked = true;
             }
-        } catch (Exception ex) {
-            ex.printStackTrace();
         }
-        return FXCollections.observableArrayList(rows);
     }
 
     public static class UserRow {
+        private UserSnapshot snapshot;
         private String username;
         private String firstName;
         private String middleName;
@@ -229,8 +364,17 @@ public class ViewListUsers {
             this.reviewerRole = reviewerRole;
         }
 
+        public UserRow(UserSnapshot u) {
+            this(u.userName(), u.firstName(), u.middleName(), u.lastName(), u.preferredFirstName(),
+                    u.emailAddress(), u.adminRole(), u.studentRole(), u.reviewerRole());
+            this.snapshot = u;
+        }
+
         private String nvl(String s) { return s == null ? "" : s; }
 
+        /** The directory row this table row shows (the keyset cursor for the next page). */
+        public UserSnapshot getSnapshot() { return snapshot; }
+
         public String getUsername() { return username; }
         public String getFirstName() { return firstName; }
         public String getMiddleName() { return middleName; }
@@ -48,7 +48,7 @@ public class ControllerManageInvitations {
 		}
 
 		// Verify that the current user cannot send an invitation to themselves, display an error message
-			if (emailAddress.equals(theDatabase.getCurrentEmailAddress())) {
+			if (emailAddress.equals(ViewManageInvitations.theUser.getEmailAddress())) {
 				System.out.println("Please choose another user that isn't you.");
 				// need to add an alert here
 				ViewManageInvitations.alertCurrentError.setContentText("Please choose another user that isn't you.");
@@ -376,6 +376,6 @@ public class ControllerManageInvitations {
 	 * 
 	 */
 	protected static void performQuit() {
-		System.exit(0);
+		applicationMain.HW2Main.quit();
 	}
 }
\ No newline at end of file
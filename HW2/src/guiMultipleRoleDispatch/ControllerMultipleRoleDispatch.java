@@ -81,7 +81,7 @@ public class ControllerMultipleRoleDispatch {
 	 * 
 	 */
 	static protected void performQuit() {
-		System.exit(0);
+		applicationMain.HW2Main.quit();
 	}
 
 }
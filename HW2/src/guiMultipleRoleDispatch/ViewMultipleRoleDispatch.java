@@ -14,6 +14,7 @@ import javafx.scene.text.Font;
 import javafx.stage.Stage;
 import database.Database;
 import entityClasses.User;
+import entityClasses.UserSnapshot;
 
 /*******
  * <p> Title: GUIMultipleRoleDispatchPage Class. </p>
@@ -143,14 +144,14 @@ public class ViewMultipleRoleDispatch {
 		setupComboBoxUI(combobox_SelectRole, "Dialog", 16, 100, 305, 105);
 
 		List<String> list = new ArrayList<String>();	// Create a new list empty list
-		theDatabase.getUserAccountDetails(theUser.getUserName());
+		UserSnapshot account = theDatabase.getUserAccountDetails(theUser.getUserName());
 
 		System.out.println("*** Getting multiple role details for user: " + theUser.getUserName());
 		list = new ArrayList<String>();
 		list.add("<Select a role>");
-		if (theDatabase.getCurrentAdminRole()) list.add("Admin");
-		if (theDatabase.getCurrentStudentRole()) list.add("Student");
-		if (theDatabase.getCurrentReviewerRole()) list.add("Reviewer");
+		if (account != null && account.adminRole()) list.add("Admin");
+		if (account != null && account.studentRole()) list.add("Student");
+		if (account != null && account.reviewerRole()) list.add("Reviewer");
 		combobox_SelectRole.setItems(FXCollections.observableArrayList(list));
 
 		setupButtonUI(button_PerformRole, "Dialog", 16, 100, Pos.CENTER, 495, 105);
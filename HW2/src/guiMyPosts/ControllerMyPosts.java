@@ -1,8 +1,11 @@
 package guiMyPosts;
 
 import database.Database;
+import database.DatabaseAsync;
+import database.FeedQuery;
 import entityClasses.User;
 import javafx.application.Platform;
+import java.util.concurrent.CompletableFuture;
 import javafx.scene.Node;
 import javafx.scene.control.*;
 import javafx.scene.layout.HBox;
@@ -11,15 +14,12 @@ import javafx.scene.layout.Region;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import entityClasses.PostItem;
+import entityClasses.ReplyRow;
 import entityClasses.PostCardCell;
 
 /*******
@@ -32,6 +32,7 @@ import entityClasses.PostCardCell;
  * @author Group 14
  * 
  * @version 1.00		2025-10-24 Initial documentation alignment for guiMyPosts
+ * @version 1.01		2026-10-18 Reply and post writes and the edit dialog's body load run through DatabaseAsync
  */
 
 public class ControllerMyPosts {
@@ -60,7 +61,9 @@ public class ControllerMyPosts {
 
     private final Long initialPostId;
 
-    private final List<PostItem> allPosts = new ArrayList<>();
+    // Requests in flight; a newer request of the same kind cancels the older one
+    private CompletableFuture<?> feedRequest = null;
+    private CompletableFuture<?> repliesRequest = null;
 
     public ControllerMyPosts(
             Stage stage,
@@ -101,24 +104,12 @@ public class ControllerMyPosts {
         }
 
         // Wire post-level checkbox handlers into the ListCell template (unread tracking)
-        PostCardCell.setReadProviders(
-                id -> {
-                    try { return Database.isPostRead(user.getUserName(), id); }
-                    catch (Exception e) { return false; }
-                },
-                (id, checked) -> {
-                    try { Database.setPostRead(user.getUserName(), id, checked); } catch (Exception ignored) {}
-                    try {
-                        PostItem it = postList.getItems().stream().filter(p -> p.id == id).findFirst().orElse(null);
-                        if (it != null) {
-                            it.unreadReplyCount = Database.getUnreadReplyCount(user.getUserName(), id);
-                            postList.refresh();
-                        }
-                    } catch (Exception ignored) {}
-                    // If we’re filtering by Seen/Unseen, reflect it immediately
-                    applyFilters();
-                }
-        );
+        // (Database queues the write and batches it, so the click never waits on JDBC)
+        PostCardCell.setReadHandler((it, checked) -> {
+            Database.setPostRead(user.getUserName(), it.id, checked);
+            // If we’re filtering by Seen/Unseen, reflect it immediately
+            if (getToggleText(seenGroup) != null) applyFilters();
+        });
 
         this.replyBtn.setOnAction(e -> onReply());
         this.editPostBtn.setOnAction(e -> onEditPost());
@@ -172,56 +163,7 @@ public class ControllerMyPosts {
 	 * <p> Description: Loads or redraws UI elements based on current model state.</p>
 	 */
     public void loadMyPosts(User user) {
-        allPosts.clear();
-
-        try (Connection c = Database.getConnection();
-             PreparedStatement ps = c.prepareStatement(
-                     """
-                     SELECT p.id, p.author, p.thread, p.title, p.kind, p.content, p.is_anonymous, p.is_private,
-                            p.created_at, p.deleted,
-                            (SELECT COUNT(*) FROM replies r WHERE r.post_id = p.id) AS reply_count
-                     FROM posts p WHERE p.author = ?
-                     ORDER BY p.created_at DESC, p.id DESC
-                     """)) {
-        	ps.setString(1, user.getUserName());
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    PostItem it = new PostItem(
-                            rs.getLong("id"),
-                            rs.getString("author"),
-                            rs.getString("thread"),
-                            rs.getString("title"),
-                            rs.getString("kind"),
-                            rs.getString("content"),
-                            rs.getBoolean("is_anonymous"),
-                            rs.getBoolean("is_private"),
-                            rs.getTimestamp("created_at"),
-                            rs.getInt("reply_count"),
-                            Database.getUnreadReplyCount(user.getUserName(), rs.getLong("id"))
-                    );
-                    it.isDeleted = rs.getBoolean("deleted");
-                    allPosts.add(it);
-                }
-            }
-        } catch (Exception e) {
-            new Alert(Alert.AlertType.ERROR, "Failed to load posts: " + e.getMessage()).showAndWait();
-        }
-
-        applyFilters();
-
-        // auto-select first or a specific id if provided
-        if (!postList.getItems().isEmpty()) {
-            if (initialPostId != null) {
-                for (int i = 0; i < postList.getItems().size(); i++) {
-                    if (postList.getItems().get(i).id == initialPostId) {
-                        postList.getSelectionModel().select(i);
-                        break;
-                    }
-                }
-            } else {
-                postList.getSelectionModel().select(0);
-            }
-        }
+        reloadFeed(true);
     }
     
     /**********
@@ -231,39 +173,55 @@ public class ControllerMyPosts {
 	 */
 
     public void applyFilters() {
+        reloadFeed(false);
+    }
+
+    private void reloadFeed(boolean selectInitial) {
+        FeedQuery q = currentQuery();
+
+        if (feedRequest != null) feedRequest.cancel(true);
+        postList.getItems().clear();
+        postList.getSelectionModel().clearSelection();
+        showPlaceholder(true);
+
+        // rows are appended chunk by chunk; the initial post is selected as soon as it arrives
+        boolean[] pending = { selectInitial };
+        feedRequest = DatabaseAsync.streamFeed(user.getUserName(), q, chunk -> {
+            int offset = postList.getItems().size();
+            postList.getItems().addAll(chunk);
+            if (pending[0] && selectInitialPost(chunk, offset)) pending[0] = false;
+        });
+        feedRequest.exceptionally(DatabaseAsync.alertOnFailure("Failed to load posts: "));
+    }
+
+    /**********
+	 * <p> Method: currentQuery() </p>
+	 * 
+	 * <p> Description: FeedQuery for my posts under the active category / kind / seen filters.</p>
+	 */
+    private FeedQuery currentQuery() {
         final String selectedCat  = getToggleText(catGroup);
-        final String selectedKind = getToggleText(kindGroup);
-        final String normKind     = normalizeKind(selectedKind);
+        final String normKind     = normalizeKind(getToggleText(kindGroup));
         final String seenChoice   = getToggleText(seenGroup); // "Unseen" / "Seen" / null (both)
 
-        List<PostItem> filtered = new ArrayList<>(allPosts);
+        FeedQuery q = FeedQuery.all().author(user.getUserName()).thread(selectedCat).kind(normKind);
+        if (seenChoice != null) q.seen("Seen".equalsIgnoreCase(seenChoice));
+        return q;
+    }
 
-        if (selectedCat != null && !"All".equalsIgnoreCase(selectedCat)) {
-            filtered = filtered.stream()
-                    .filter(p -> selectedCat.equalsIgnoreCase(p.thread))
-                    .collect(Collectors.toList());
-        }
-        if (normKind != null && !"All".equalsIgnoreCase(normKind)) {
-            final String fKind = normKind;
-            filtered = filtered.stream()
-                    .filter(p -> fKind.equalsIgnoreCase(p.kind))
-                    .collect(Collectors.toList());
+    // auto-select first or a specific id if provided; true once the selection is made
+    private boolean selectInitialPost(List<PostItem> chunk, int offset) {
+        if (initialPostId == null) {
+            postList.getSelectionModel().select(offset);
+            return true;
         }
-        if (seenChoice != null) {
-            final boolean wantSeen = "Seen".equalsIgnoreCase(seenChoice);
-            filtered = filtered.stream().filter(p -> {
-                try {
-                    boolean isSeen = Database.isPostRead(user.getUserName(), p.id);
-                    return wantSeen == isSeen;
-                } catch (Exception e) {
-                    return false; // on error, hide
-                }
-            }).collect(Collectors.toList());
+        for (int i = 0; i < chunk.size(); i++) {
+            if (chunk.get(i).id == initialPostId) {
+                postList.getSelectionModel().select(offset + i);
+                return true;
+            }
         }
-
-        postList.getItems().setAll(filtered);
-        postList.getSelectionModel().clearSelection();
-        showPlaceholder(true);
+        return false;
     }
 
     /* ====================== Selection & rendering ====================== */
@@ -291,7 +249,7 @@ public class ControllerMyPosts {
             titleLbl.setStyle("-fx-opacity: 0.6;");
             metaLbl.setStyle("-fx-opacity: 0.6;");
         } else {
-            bodyArea.setText(cur.content == null ? "" : cur.content);
+            showBody(cur);
             titleLbl.setStyle("-fx-opacity: 1.0;");
             metaLbl.setStyle("-fx-opacity: 1.0;");
         }
@@ -306,12 +264,49 @@ public class ControllerMyPosts {
         renderReplies(cur);
     }
 
+	/**********
+	 * <p> Method: showBody() </p>
+	 * 
+	 * <p> Description: Shows the post body. Feed rows only carry the preview, so the full body
+	 * comes from the body cache or is loaded through DatabaseAsync; a late result is dropped
+	 * if the user has moved on to another post.</p>
+	 */
+    private void showBody(PostItem cur) {
+        String body = cur.content != null ? cur.content : Database.peekPostBody(cur.id);
+        if (body != null) {
+            bodyArea.setText(body);
+            return;
+        }
+        bodyArea.setText(cur.preview == null ? "" : cur.preview + "…");
+
+        DatabaseAsync.getPostBody(cur.id).whenComplete((loaded, err) -> {
+            if (postList.getSelectionModel().getSelectedItem() != cur) return;
+            if (err == null) bodyArea.setText(loaded);
+            else bodyArea.setText("Failed to load post: " + DatabaseAsync.unwrap(err).getMessage());
+        });
+    }
+
     private void renderReplies(PostItem cur) {
+        repliesBox.getChildren().clear();
+        if (repliesRequest != null) repliesRequest.cancel(true);
+
+        CompletableFuture<List<ReplyRow>> req = DatabaseAsync.findReplies(cur.id, user.getUserName());
+        repliesRequest = req;
+        req.thenAccept(rows -> {
+            if (postList.getSelectionModel().getSelectedItem() == cur) showReplies(cur, rows);
+        }).exceptionally(DatabaseAsync.alertOnFailure("Failed to load replies: "));
+    }
+
+	/**********
+	 * <p> Method: showReplies() </p>
+	 * 
+	 * <p> Description: Builds the reply rows for the selected post.</p>
+	 */
+    private void showReplies(PostItem cur, List<ReplyRow> rows) {
         repliesBox.setFillWidth(true);
         repliesBox.getChildren().clear();
 
         try {
-            List<Map<String,Object>> rows = Database.findReplies(cur.id);
             if (rows.isEmpty()) {
                 repliesBox.setManaged(false);
                 repliesBox.setVisible(false);
@@ -320,25 +315,21 @@ public class ControllerMyPosts {
             repliesBox.setManaged(true);
             repliesBox.setVisible(true);
 
-            for (Map<String, Object> r : rows) {
-                long rid = ((Number) r.getOrDefault("id", 0L)).longValue();
-                String a = (String) r.getOrDefault("author", null);
-                String content = (String) r.getOrDefault("content", "");
+            for (ReplyRow r : rows) {
+                long rid = r.id();
+                String a = r.author();
+                String content = r.content() == null ? "" : r.content();
 
                 HBox row = new HBox(8);
                 row.setFillHeight(true);
                 row.setMaxWidth(Double.MAX_VALUE);
 
                 CheckBox cb = new CheckBox();
-                boolean isRead = false;
-                try { isRead = Database.isReplyRead(user.getUserName(), rid); } catch (Exception ignored) {}
-                cb.setSelected(isRead);
+                cb.setSelected(r.read());
                 cb.setOnAction(e -> {
-                    try { Database.setReplyRead(user.getUserName(), rid, cb.isSelected()); } catch (Exception ignored2) {}
-                    try {
-                        cur.unreadReplyCount = Database.getUnreadReplyCount(user.getUserName(), cur.id);
-                        postList.refresh();
-                    } catch (Exception ignored3) {}
+                    Database.setReplyRead(user.getUserName(), rid, cb.isSelected());
+                    cur.unreadReplyCount = Math.max(0, cur.unreadReplyCount + (cb.isSelected() ? -1 : 1));
+                    postList.refresh();
                 });
 
                 Label la = new Label(a == null || a.isBlank() ? "Anonymous" : a);
@@ -374,12 +365,9 @@ public class ControllerMyPosts {
                                 return;
                             }
 
-                            try {
-                                Database.updateReplyByAuthor(rid, user.getUserName(), nv);
-                                renderReplies(cur);
-                            } catch (Exception ex) {
-                                new Alert(Alert.AlertType.ERROR, "Failed to update reply: " + ex.getMessage()).showAndWait();
-                            }
+                            DatabaseAsync.run(() -> Database.updateReplyByAuthor(rid, user.getUserName(), nv))
+                                    .thenRun(() -> renderReplies(cur))
+                                    .exceptionally(DatabaseAsync.alertOnFailure("Failed to update reply: "));
                         }
                     });
 
@@ -388,14 +376,13 @@ public class ControllerMyPosts {
                         Alert confirm = new Alert(Alert.AlertType.CONFIRMATION, "Delete this reply?", ButtonType.OK, ButtonType.CANCEL);
                         Optional<ButtonType> ares = confirm.showAndWait();
                         if (ares.isPresent() && ares.get() == ButtonType.OK) {
-                            try {
-                                Database.deleteReplyByAuthor(rid, user.getUserName());
-                                cur.replyCount = Math.max(0, cur.replyCount - 1);
-                                renderReplies(cur);
-                                postList.refresh();
-                            } catch (Exception ex) {
-                                new Alert(Alert.AlertType.ERROR, "Failed to delete reply: " + ex.getMessage()).showAndWait();
-                            }
+                            DatabaseAsync.run(() -> Database.deleteReplyByAuthor(rid, user.getUserName()))
+                                    .thenRun(() -> {
+                                        cur.replyCount = Math.max(0, cur.replyCount - 1);
+                                        renderReplies(cur);
+                                        postList.refresh();
+                                    })
+                                    .exceptionally(DatabaseAsync.alertOnFailure("Failed to delete reply: "));
                         }
                     });
 
@@ -442,21 +429,21 @@ public class ControllerMyPosts {
             return;
         }
 
-        try {
-            Database.addReply(user == null ? "Anonymous" : user.getUserName(), cur.id, text);
-            renderReplies(cur);
-            cur.replyCount += 1;
-            onPostSelected(cur);
-            postList.refresh();
-        } catch (Exception ex) {
-            new Alert(Alert.AlertType.ERROR, "Failed to add reply: " + ex.getMessage()).showAndWait();
-        }
+        String author = user == null ? "Anonymous" : user.getUserName();
+        DatabaseAsync.run(() -> Database.addReply(author, cur.id, text))
+                .thenRun(() -> {
+                    cur.replyCount += 1;
+                    onPostSelected(cur);    // redraws the replies
+                    postList.refresh();
+                })
+                .exceptionally(DatabaseAsync.alertOnFailure("Failed to add reply: "));
     }
     
     /**********
 	 * <p> Method: onEditPost() </p>
 	 * 
-	 * <p> Description: Event handler for UI interaction tied to editing a post.</p>
+	 * <p> Description: Event handler for UI interaction tied to editing a post. The full body
+	 * comes from the body cache or is loaded through DatabaseAsync before the dialog opens.</p>
 	 */
 
     private void onEditPost() {
@@ -471,13 +458,30 @@ public class ControllerMyPosts {
             return;
         }
 
+        String cached = cur.content != null ? cur.content : Database.peekPostBody(cur.id);
+        if (cached != null) {
+            editPost(cur, cached);
+            return;
+        }
+        DatabaseAsync.getPostBody(cur.id)
+                .thenAccept(body -> editPost(cur, body))
+                .exceptionally(DatabaseAsync.alertOnFailure("Failed to load post: "));
+    }
+
+    /**********
+	 * <p> Method: editPost() </p>
+	 * 
+	 * <p> Description: Shows the edit dialog for a post with its full body, and saves the
+	 * changes through DatabaseAsync.</p>
+	 */
+    private void editPost(PostItem cur, String body) {
         Dialog<ButtonType> dlg = new Dialog<>();
         dlg.setTitle("Edit Post");
         dlg.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
 
         TextField titleField = new TextField(cur.title == null ? "" : cur.title);
         titleField.setPromptText("Title (optional)");
-        TextArea contentArea = new TextArea(cur.content == null ? "" : cur.content);
+        TextArea contentArea = new TextArea(body);
         contentArea.setPrefRowCount(10);
 
         VBox box = new VBox(8, new Label("Title:"), titleField, new Label("Content:"), contentArea);
@@ -500,15 +504,33 @@ public class ControllerMyPosts {
             return;
         }
 
-        try {
-            Database.updatePostByAuthor(cur.id, user.getUserName(), newTitle, newBody);
-            cur.title = newTitle;
-            cur.content = newBody;
-            onPostSelected(cur);
-            postList.refresh();
-        } catch (Exception e) {
-            new Alert(Alert.AlertType.ERROR, "Edit failed: " + e.getMessage()).showAndWait();
-        }
+        DatabaseAsync.run(() -> Database.updatePostByAuthor(cur.id, user.getUserName(), newTitle, newBody))
+                .thenRun(() -> {
+                    cur.title = newTitle;
+                    cur.preview = Database.previewOf(newBody);
+                    onPostSelected(cur);
+                    postList.refresh();
+                })
+                .exceptionally(DatabaseAsync.alertOnFailure("Edit failed: "));
+    }
+    
+    /**********
+	 * <p> Method: onMarkAllRead() </p>
+	 * 
+	 * <p> Description: Marks every one of my posts matching the active filters, and all of
+	 * their replies, as read in one database call, then reloads the list.</p>
+	 */
+    private void onMarkAllRead() {
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION,
+                "Mark every post in this view, and all of their replies, as read?",
+                ButtonType.OK, ButtonType.CANCEL);
+        confirm.setHeaderText("Mark All Read");
+        Optional<ButtonType> res = confirm.showAndWait();
+        if (res.isEmpty() || res.get() != ButtonType.OK) return;
+
+        DatabaseAsync.markAllRead(user.getUserName(), currentQuery())
+                .thenAccept(n -> applyFilters())
+                .exceptionally(DatabaseAsync.alertOnFailure("Mark all read failed: "));
     }
     
     /**********
@@ -528,14 +550,13 @@ public class ControllerMyPosts {
         Optional<ButtonType> res = confirm.showAndWait();
         if (res.isEmpty() || res.get() != ButtonType.OK) return;
 
-        try {
-            Database.softDeletePostByAuthor(cur.id, user.getUserName());
-            cur.isDeleted = true;
-            onPostSelected(cur);   // hides Delete button
-            postList.refresh();
-        } catch (Exception e) {
-            new Alert(Alert.AlertType.ERROR, "Delete failed: " + e.getMessage()).showAndWait();
-        }
+        DatabaseAsync.run(() -> Database.softDeletePostByAuthor(cur.id, user.getUserName()))
+                .thenRun(() -> {
+                    cur.isDeleted = true;
+                    onPostSelected(cur);   // hides Delete button
+                    postList.refresh();
+                })
+                .exceptionally(DatabaseAsync.alertOnFailure("Delete failed: "));
     }
 
     /* ====================== Helpers ====================== */
@@ -675,7 +696,11 @@ public class ControllerMyPosts {
         HBox kindBox = new HBox(6, all, q, p);
         HBox seenBox = new HBox(6, unseen, seen);
 
-        HBox bar = new HBox(16, title, kindBox, seenBox);
+        // bulk action: everything the current filters show
+        Button markAll = new Button("Mark all read");
+        markAll.setOnAction(e -> onMarkAllRead());
+
+        HBox bar = new HBox(16, title, kindBox, seenBox, markAll);
         bar.getStyleClass().add("kindbar");
         return bar;
     }
@@ -1,5 +1,6 @@
 package guiMyPosts;
 
+import database.DatabaseAsync;
 import entityClasses.User;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -133,7 +134,10 @@ public class ViewMyPosts {
         HBox topBar = new HBox();
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
-        topBar.getChildren().addAll(spacer, filterBar, backBtn);
+        ProgressIndicator busy = new ProgressIndicator();   // shown while a query is running
+        busy.setPrefSize(22, 22);
+        busy.visibleProperty().bind(DatabaseAsync.busyProperty());
+        topBar.getChildren().addAll(spacer, filterBar, busy, backBtn);
         topBar.setPadding(new Insets(12, 12, 0, 12));
 
         // === Main layout ===
@@ -377,9 +377,6 @@ public class ControllerNewAccount {
 	            // The account has been set, so remove the invitation from the system
 	            theDatabase.removeInvitationAfterUse(
 	            		ViewNewAccount.text_Invitation.getText());
-	            
-	            // Set the database so it has this user and the current user
-	            theDatabase.getUserAccountDetails(username);
 	
 	            // Navigate to the Welcome Login Page
 	            guiUserUpdate.ViewUserUpdate.displayUserUpdate(ViewNewAccount.theStage, user, false);
@@ -405,6 +402,6 @@ public class ControllerNewAccount {
 	 */	
 	protected static void performQuit() {
 		System.out.println("Perform Quit");
-		System.exit(0);
+		applicationMain.HW2Main.quit();
 	}	
 }
@@ -326,6 +326,6 @@ public class ControllerOneTimePassword {
 	 * 
 	 */	
 	protected static void performQuit() {
-		System.exit(0);
+		applicationMain.HW2Main.quit();
 	}
 }
\ No newline at end of file
@@ -112,7 +112,6 @@ public class ViewOneTimePassword {
 		
 		// Populate the dynamic aspects of the GUI with the data from the user and the current
 		// state of the system.
-		theDatabase.getUserAccountDetails(user.getUserName());
 		applicationMain.HW2Main.activeHomePage = theRole;
 		
 		label_UserDetails.setText("Admin: " + theUser.getUserName());
@@ -1,8 +1,12 @@
 package guiReadPosts;
 
 import database.Database;
+import database.DatabaseAsync;
+import database.FeedQuery;
 import entityClasses.User;
 import javafx.application.Platform;
+import java.util.concurrent.CompletableFuture;
+import javafx.geometry.Orientation;
 import javafx.scene.Node;
 import javafx.scene.control.*;
 import javafx.scene.layout.HBox;
@@ -11,16 +15,13 @@ import javafx.scene.layout.Region;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
 
 import entityClasses.PostCardCell;
 import entityClasses.PostItem;
+import entityClasses.ReplyRow;
 
 
 
@@ -34,6 +35,9 @@ import entityClasses.PostItem;
  * @author Group 14
  * 
  * @version 1.00		2025-10-24 Initial documentation alignment for guiReadPosts
+ * @version 1.01		2026-10-18 Select and scroll to the initial post's search match
+ * @version 1.02		2026-10-18 Reply and post writes and the edit dialog's body load run through DatabaseAsync
+ * @version 1.03		2026-10-18 Opened on a post, the list loads the page ending at it and pages upward on demand
  */
 public class ControllerReadPosts {
 
@@ -60,8 +64,19 @@ public class ControllerReadPosts {
     private final Button deletePostBtn;
 
     private final Long initialPostId;
+    private int initialMatchAt;         // body range of the initial post to select; -1 when done or none
+    private final int initialMatchLength;
 
-    private final List<PostItem> allPosts = new ArrayList<>();
+    // Keyset paging state for the post list
+    private static final double PREFETCH_AT = 0.9;   // fetch the next page at 90% scrolled
+    private boolean loadingPage = false;
+    private boolean feedExhausted = false;
+    private boolean topReached = true;               // false while rows above the first loaded one are unread
+
+    // Requests in flight; a newer request of the same kind cancels the older one
+    private CompletableFuture<?> feedRequest = null;
+    private CompletableFuture<?> pageRequest = null;
+    private CompletableFuture<?> repliesRequest = null;
 
     public ControllerReadPosts(
             Stage stage,
@@ -78,7 +93,9 @@ public class ControllerReadPosts {
             Button replyBtn,
             Button editPostBtn,
             Button deletePostBtn,
-            Long initialPostId
+            Long initialPostId,
+            int initialMatchAt,
+            int initialMatchLength
     ) {
         this.stage = stage;
         this.user = user;
@@ -95,6 +112,8 @@ public class ControllerReadPosts {
         this.editPostBtn = editPostBtn;
         this.deletePostBtn = deletePostBtn;
         this.initialPostId = initialPostId;
+        this.initialMatchAt = initialPostId == null ? -1 : initialMatchAt;
+        this.initialMatchLength = initialMatchLength;
 
         // style hook for CSS
         if (detailsBox instanceof javafx.scene.layout.Region r) {
@@ -102,24 +121,12 @@ public class ControllerReadPosts {
         }
 
         // Wire post-level checkbox handlers into the ListCell template (unread tracking)
-        PostCardCell.setReadProviders(
-                id -> {
-                    try { return Database.isPostRead(user.getUserName(), id); }
-                    catch (Exception e) { return false; }
-                },
-                (id, checked) -> {
-                    try { Database.setPostRead(user.getUserName(), id, checked); } catch (Exception ignored) {}
-                    try {
-                        PostItem it = postList.getItems().stream().filter(p -> p.id == id).findFirst().orElse(null);
-                        if (it != null) {
-                            it.unreadReplyCount = Database.getUnreadReplyCount(user.getUserName(), id);
-                            postList.refresh();
-                        }
-                    } catch (Exception ignored) {}
-                    // If we’re filtering by Seen/Unseen, reflect it immediately
-                    applyFilters();
-                }
-        );
+        // (Database queues the write and batches it, so the click never waits on JDBC)
+        PostCardCell.setReadHandler((it, checked) -> {
+            Database.setPostRead(user.getUserName(), it.id, checked);
+            // If we’re filtering by Seen/Unseen, reflect it immediately
+            if (getToggleText(seenGroup) != null) applyFilters();
+        });
 
         this.replyBtn.setOnAction(e -> onReply());
         this.editPostBtn.setOnAction(e -> onEditPost());
@@ -127,6 +134,13 @@ public class ControllerReadPosts {
 
         postList.getSelectionModel().selectedItemProperty().addListener((obs, o, n) -> onPostSelected(n));
 
+        // infinite scroll: next page when scrolled (or arrowed) near the end of what is loaded
+        installScrollPaging();
+        postList.getSelectionModel().selectedIndexProperty().addListener((obs, o, n) -> {
+            if (n.intValue() >= postList.getItems().size() - 5) loadNextPage();
+            else if (n.intValue() >= 0 && n.intValue() < 5) loadPreviousPage();
+        });
+
         // wrap long bodies instead of stretching horizontally
         bodyArea.setWrapText(true);
 
@@ -170,106 +184,142 @@ public class ControllerReadPosts {
 	/**********
 	 * <p> Method: loadAllPosts() </p>
 	 * 
-	 * <p> Description: Loads or redraws UI elements based on current model state.</p>
+	 * <p> Description: Loads the first page of the feed and selects its first post. Opened for
+	 * a specific post, it looks up the post's (created_at, id) and loads the page ending at it
+	 * instead, then the page below; the rows above are paged in as the user scrolls up.</p>
 	 */
     public void loadAllPosts() {
-        allPosts.clear();
-
-        try (Connection c = Database.getConnection();
-             PreparedStatement ps = c.prepareStatement(
-                     """
-                     SELECT p.id, p.author, p.thread, p.title, p.kind, p.content, p.is_anonymous, p.is_private,
-                            p.created_at, p.deleted,
-                            (SELECT COUNT(*) FROM replies r WHERE r.post_id = p.id) AS reply_count
-                     FROM posts p
-                     ORDER BY p.created_at DESC, p.id DESC
-                     """)) {
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    PostItem it = new PostItem(
-                            rs.getLong("id"),
-                            rs.getString("author"),
-                            rs.getString("thread"),
-                            rs.getString("title"),
-                            rs.getString("kind"),
-                            rs.getString("content"),
-                            rs.getBoolean("is_anonymous"),
-                            rs.getBoolean("is_private"),
-                            rs.getTimestamp("created_at"),
-                            rs.getInt("reply_count"),
-                            Database.getUnreadReplyCount(user.getUserName(), rs.getLong("id"))
-                    );
-                    it.isDeleted = rs.getBoolean("deleted");
-                    allPosts.add(it);
-                }
-            }
-        } catch (Exception e) {
-            new Alert(Alert.AlertType.ERROR, "Failed to load posts: " + e.getMessage()).showAndWait();
+        if (initialPostId == null) {
+            reloadFeed(true);
+            return;
         }
 
-        applyFilters();
-
-     // auto-select first or a specific id if provided (with fallback)
-        if (!postList.getItems().isEmpty()) {
-            if (initialPostId != null) {
-                boolean matched = false;
-                for (int i = 0; i < postList.getItems().size(); i++) {
-                    if (postList.getItems().get(i).id == initialPostId) {
-                        postList.getSelectionModel().select(i);
-                        matched = true;
-                        break;
-                    }
-                }
-                // Fallback: if requested id isn't in the current filtered list,
-                // select the first item so the details pane opens.
-                if (!matched) {
-                    postList.getSelectionModel().select(0);
-                }
-            } else {
-                postList.getSelectionModel().select(0);
+        final long target = initialPostId;
+        cancelFeedRequests();
+        feedExhausted = false;
+        topReached = false;
+        postList.getItems().clear();
+        CompletableFuture<List<PostItem>> seek = DatabaseAsync.supply(() -> Database.getPostCreatedAt(target))
+                .thenCompose(createdAt -> createdAt == null
+                        ? CompletableFuture.completedFuture(List.<PostItem>of())
+                        : DatabaseAsync.loadFeed(user.getUserName(),
+                                currentQuery().through(createdAt, target).limit(Database.FEED_PAGE_SIZE)));
+        feedRequest = seek;
+        seek.whenComplete((page, err) -> {
+            if (seek.isCancelled()) return;
+            if (err != null || page.isEmpty() || page.get(page.size() - 1).id != target) {
+                // not in the feed (or the lookup failed): open on the first page instead
+                reloadFeed(true);
+                return;
             }
-        }
+            topReached = page.size() < Database.FEED_PAGE_SIZE;
+            postList.getItems().addAll(page);
+            int at = page.size() - 1;
+            postList.getSelectionModel().select(at);
+            postList.scrollTo(at);
+            loadNextPage();   // the rows below the target
+        });
     }
 
 	/**********
 	 * <p> Method: applyFilters() </p>
 	 * 
-	 * <p> Description: Applies active filter controls to the current posts list.</p>
+	 * <p> Description: Applies active filter controls, reloading the feed from its first page.</p>
 	 */
     public void applyFilters() {
-        final String selectedCat  = getToggleText(catGroup);
-        final String selectedKind = getToggleText(kindGroup);
-        final String normKind     = normalizeKind(selectedKind);
-        final String seenChoice   = getToggleText(seenGroup); // "Unseen" / "Seen" / null (both)
-
-        List<PostItem> filtered = new ArrayList<>(allPosts);
-
-        if (selectedCat != null && !"All".equalsIgnoreCase(selectedCat)) {
-            filtered = filtered.stream()
-                    .filter(p -> selectedCat.equalsIgnoreCase(p.thread))
-                    .collect(Collectors.toList());
-        }
-        if (normKind != null && !"All".equalsIgnoreCase(normKind)) {
-            final String fKind = normKind;
-            filtered = filtered.stream()
-                    .filter(p -> fKind.equalsIgnoreCase(p.kind))
-                    .collect(Collectors.toList());
-        }
-        if (seenChoice != null) {
-            final boolean wantSeen = "Seen".equalsIgnoreCase(seenChoice);
-            filtered = filtered.stream().filter(p -> {
-                try {
-                    boolean isSeen = Database.isPostRead(user.getUserName(), p.id);
-                    return wantSeen == isSeen;
-                } catch (Exception e) {
-                    return false; // on error, hide
-                }
-            }).collect(Collectors.toList());
-        }
+        reloadFeed(false);
+    }
 
-        postList.getItems().setAll(filtered);
+	/**********
+	 * <p> Method: reloadFeed(boolean selectFirst) </p>
+	 * 
+	 * <p> Description: Replaces the list with the first page of the current query. Rows are
+	 * appended chunk by chunk (the first one a screenful), so earlier rows keep their index
+	 * and the selection made on the first chunk stays put while the rest arrive.</p>
+	 */
+    private void reloadFeed(boolean selectFirst) {
+        cancelFeedRequests();
+        feedExhausted = false;
+        topReached = true;
+        postList.getItems().clear();
         postList.getSelectionModel().clearSelection();
         showPlaceholder(true);
+        CompletableFuture<Integer> req = DatabaseAsync.streamFeed(user.getUserName(),
+                currentQuery().limit(Database.FEED_PAGE_SIZE), chunk -> {
+            boolean first = postList.getItems().isEmpty();
+            postList.getItems().addAll(chunk);
+            if (first && selectFirst) postList.getSelectionModel().select(0);
+        });
+        feedRequest = req;
+        req.thenAccept(rows -> feedExhausted = rows < Database.FEED_PAGE_SIZE)
+           .exceptionally(DatabaseAsync.alertOnFailure("Failed to load posts: "));
+    }
+
+    private void cancelFeedRequests() {
+        if (feedRequest != null) feedRequest.cancel(true);
+        if (pageRequest != null) pageRequest.cancel(true);
+        loadingPage = false;
+    }
+
+	/**********
+	 * <p> Method: loadNextPage() </p>
+	 * 
+	 * <p> Description: Appends the page after the last loaded post, keyed on its
+	 * (created_at, id), so each page costs the same however far the user has scrolled.</p>
+	 */
+    public void loadNextPage() {
+        if (loadingPage || feedExhausted || postList.getItems().isEmpty()) return;
+        if (feedRequest != null && !feedRequest.isDone()) return;   // list is about to be replaced
+        loadingPage = true;
+
+        PostItem last = postList.getItems().get(postList.getItems().size() - 1);
+        CompletableFuture<List<PostItem>> req = DatabaseAsync.loadFeed(user.getUserName(),
+                currentQuery().after(last).limit(Database.FEED_PAGE_SIZE));
+        pageRequest = req;
+        req.thenAccept(page -> {
+            feedExhausted = page.size() < Database.FEED_PAGE_SIZE;
+            postList.getItems().addAll(page);
+        }).exceptionally(DatabaseAsync.alertOnFailure("Failed to load posts: "))
+          .whenComplete((v, err) -> { if (pageRequest == req) loadingPage = false; });
+    }
+
+	/**********
+	 * <p> Method: loadPreviousPage() </p>
+	 * 
+	 * <p> Description: Prepends the page above the first loaded post when the list was opened
+	 * part way down, keyed on its (created_at, id) like loadNextPage. The view is scrolled by
+	 * the rows added, so what the user was looking at stays in place.</p>
+	 */
+    public void loadPreviousPage() {
+        if (loadingPage || topReached || postList.getItems().isEmpty()) return;
+        if (feedRequest != null && !feedRequest.isDone()) return;   // list is about to be replaced
+        loadingPage = true;
+
+        PostItem first = postList.getItems().get(0);
+        CompletableFuture<List<PostItem>> req = DatabaseAsync.loadFeed(user.getUserName(),
+                currentQuery().before(first).limit(Database.FEED_PAGE_SIZE));
+        pageRequest = req;
+        req.thenAccept(page -> {
+            topReached = page.size() < Database.FEED_PAGE_SIZE;
+            postList.getItems().addAll(0, page);
+            postList.scrollTo(page.size());
+        }).exceptionally(DatabaseAsync.alertOnFailure("Failed to load posts: "))
+          .whenComplete((v, err) -> { if (pageRequest == req) loadingPage = false; });
+    }
+
+	/**********
+	 * <p> Method: currentQuery() </p>
+	 * 
+	 * <p> Description: FeedQuery for the active category / kind / seen filters.</p>
+	 */
+    private FeedQuery currentQuery() {
+        final String selectedCat  = getToggleText(catGroup);
+        final String normKind     = normalizeKind(getToggleText(kindGroup));
+        final String seenChoice   = getToggleText(seenGroup); // "Unseen" / "Seen" / null (both)
+
+        FeedQuery q = FeedQuery.all().thread(selectedCat).kind(normKind);
+        if (seenChoice != null) q.seen("Seen".equalsIgnoreCase(seenChoice));
+        return q;
     }
 
     /* ====================== Selection & rendering ====================== */
@@ -296,7 +346,7 @@ public class ControllerReadPosts {
             titleLbl.setStyle("-fx-opacity: 0.6;");
             metaLbl.setStyle("-fx-opacity: 0.6;");
         } else {
-            bodyArea.setText(cur.content == null ? "" : cur.content);
+            showBody(cur);
             titleLbl.setStyle("-fx-opacity: 1.0;");
             metaLbl.setStyle("-fx-opacity: 1.0;");
         }
@@ -311,17 +361,75 @@ public class ControllerReadPosts {
         renderReplies(cur);
     }
 
+	/**********
+	 * <p> Method: showBody() </p>
+	 * 
+	 * <p> Description: Shows the post body. Feed rows only carry the preview, so the full body
+	 * comes from the body cache or is loaded through DatabaseAsync; a late result is dropped
+	 * if the user has moved on to another post.</p>
+	 */
+    private void showBody(PostItem cur) {
+        String body = cur.content != null ? cur.content : Database.peekPostBody(cur.id);
+        if (body != null) {
+            bodyArea.setText(body);
+            selectInitialMatch(cur);
+            return;
+        }
+        bodyArea.setText(cur.preview == null ? "" : cur.preview + "…");
+
+        DatabaseAsync.getPostBody(cur.id).whenComplete((loaded, err) -> {
+            if (postList.getSelectionModel().getSelectedItem() != cur) return;
+            if (err == null) {
+                bodyArea.setText(loaded);
+                selectInitialMatch(cur);
+            } else {
+                bodyArea.setText("Failed to load post: " + DatabaseAsync.unwrap(err).getMessage());
+            }
+        });
+    }
+
+	/**********
+	 * <p> Method: selectInitialMatch() </p>
+	 * 
+	 * <p> Description: The first time the post opened from a search shows its full body,
+	 * selects the match the search found (its offset came with the result, so nothing is
+	 * searched here), which scrolls the body to it.</p>
+	 */
+    private void selectInitialMatch(PostItem cur) {
+        if (initialMatchAt < 0 || initialPostId == null || cur.id != initialPostId) return;
+        int length = bodyArea.getLength();
+        int from = Math.min(initialMatchAt, length);
+        int to = Math.min(from + Math.max(0, initialMatchLength), length);
+        initialMatchAt = -1;
+        bodyArea.selectRange(from, to);
+    }
+
 	/**********
 	 * <p> Method: renderReplies() </p>
 	 * 
 	 * <p> Description: Loads or redraws UI elements based on current model state.</p>
 	 */
     private void renderReplies(PostItem cur) {
+        repliesBox.getChildren().clear();
+        if (repliesRequest != null) repliesRequest.cancel(true);
+
+        CompletableFuture<List<ReplyRow>> req = DatabaseAsync.findReplies(cur.id, user.getUserName());
+        repliesRequest = req;
+        req.thenAccept(rows -> {
+            if (postList.getSelectionModel().getSelectedItem() == cur) showReplies(cur, rows);
+        }).exceptionally(DatabaseAsync.alertOnFailure("Failed to load replies: "));
+    }
+
+	/**********
+	 * <p> Method: showReplies() </p>
+	 * 
+	 * <p> Description: Builds the reply rows for the selected post.</p>
+	 */
+    private void showReplies(PostItem cur, List<ReplyRow> rows) {
         repliesBox.setFillWidth(true);
         repliesBox.getChildren().clear();
 
         try {
-            List<Map<String,Object>> rows = Database.findReplies(cur.id);
             if (rows.isEmpty()) {
                 repliesBox.setManaged(false);
                 repliesBox.setVisible(false);
@@ -330,25 +438,21 @@ public class ControllerReadPosts {
             repliesBox.setManaged(true);
             repliesBox.setVisible(true);
 
-            for (Map<String, Object> r : rows) {
-                long rid = ((Number) r.getOrDefault("id", 0L)).longValue();
-                String a = (String) r.getOrDefault("author", null);
-                String content = (String) r.getOrDefault("content", "");
+            for (ReplyRow r : rows) {
+                long rid = r.id();
+                String a = r.author();
+                String content = r.content() == null ? "" : r.content();
 
                 HBox row = new HBox(8);
                 row.setFillHeight(true);
                 row.setMaxWidth(Double.MAX_VALUE);
 
                 CheckBox cb = new CheckBox();
-                boolean isRead = false;
-                try { isRead = Database.isReplyRead(user.getUserName(), rid); } catch (Exception ignored) {}
-                cb.setSelected(isRead);
+                cb.setSelected(r.read());
                 cb.setOnAction(e -> {
-                    try { Database.setReplyRead(user.getUserName(), rid, cb.isSelected()); } catch (Exception ignored2) {}
-                    try {
-                        cur.unreadReplyCount = Database.getUnreadReplyCount(user.getUserName(), cur.id);
-                        postList.refresh();
-                    } catch (Exception ignored3) {}
+                    Database.setReplyRead(user.getUserName(), rid, cb.isSelected());
+                    cur.unreadReplyCount = Math.max(0, cur.unreadReplyCount + (cb.isSelected() ? -1 : 1));
+                    postList.refresh();
                 });
 
                 Label la = new Label(a == null || a.isBlank() ? "Anonymous" : a);
@@ -384,12 +488,9 @@ public class ControllerReadPosts {
                                 return;
                             }
 
-                            try {
-                                Database.updateReplyByAuthor(rid, user.getUserName(), nv);
-                                renderReplies(cur);
-                            } catch (Exception ex) {
-                                new Alert(Alert.AlertType.ERROR, "Failed to update reply: " + ex.getMessage()).showAndWait();
-                            }
+                            DatabaseAsync.run(() -> Database.updateReplyByAuthor(rid, user.getUserName(), nv))
+                                    .thenRun(() -> renderReplies(cur))
+                                    .exceptionally(DatabaseAsync.alertOnFailure("Failed to update reply: "));
                         }
                     });
 
@@ -398,14 +499,13 @@ public class ControllerReadPosts {
                         Alert confirm = new Alert(Alert.AlertType.CONFIRMATION, "Delete this reply?", ButtonType.OK, ButtonType.CANCEL);
                         Optional<ButtonType> ares = confirm.showAndWait();
                         if (ares.isPresent() && ares.get() == ButtonType.OK) {
-                            try {
-                                Database.deleteReplyByAuthor(rid, user.getUserName());
-                                cur.replyCount = Math.max(0, cur.replyCount - 1);
-                                renderReplies(cur);
-                                postList.refresh();
-                            } catch (Exception ex) {
-                                new Alert(Alert.AlertType.ERROR, "Failed to delete reply: " + ex.getMessage()).showAndWait();
-                            }
+                            DatabaseAsync.run(() -> Database.deleteReplyByAuthor(rid, user.getUserName()))
+                                    .thenRun(() -> {
+                                        cur.replyCount = Math.max(0, cur.replyCount - 1);
+                                        renderReplies(cur);
+                                        postList.refresh();
+                                    })
+                                    .exceptionally(DatabaseAsync.alertOnFailure("Failed to delete reply: "));
                         }
                     });
 
@@ -451,21 +551,21 @@ public class ControllerReadPosts {
             return;
         }
 
-        try {
-            Database.addReply(user == null ? "Anonymous" : user.getUserName(), cur.id, text);
-            renderReplies(cur);
-            cur.replyCount += 1;
-            onPostSelected(cur);
-            postList.refresh();
-        } catch (Exception ex) {
-            new Alert(Alert.AlertType.ERROR, "Failed to add reply: " + ex.getMessage()).showAndWait();
-        }
+        String author = user == null ? "Anonymous" : user.getUserName();
+        DatabaseAsync.run(() -> Database.addReply(author, cur.id, text))
+                .thenRun(() -> {
+                    cur.replyCount += 1;
+                    onPostSelected(cur);    // redraws the replies
+                    postList.refresh();
+                })
+                .exceptionally(DatabaseAsync.alertOnFailure("Failed to add reply: "));
     }
 
 	/**********
 	 * <p> Method: onEditPost() </p>
 	 * 
-	 * <p> Description: Event handler for UI interaction tied to editing a post.</p>
+	 * <p> Description: Event handler for UI interaction tied to editing a post. The full body
+	 * comes from the body cache or is loaded through DatabaseAsync before the dialog opens.</p>
 	 */
 
     private void onEditPost() {
@@ -480,13 +580,30 @@ public class ControllerReadPosts {
             return;
         }
 
+        String cached = cur.content != null ? cur.content : Database.peekPostBody(cur.id);
+        if (cached != null) {
+            editPost(cur, cached);
+            return;
+        }
+        DatabaseAsync.getPostBody(cur.id)
+                .thenAccept(body -> editPost(cur, body))
+                .exceptionally(DatabaseAsync.alertOnFailure("Failed to load post: "));
+    }
+
+	/**********
+	 * <p> Method: editPost() </p>
+	 * 
+	 * <p> Description: Shows the edit dialog for a post with its full body, and saves the
+	 * changes through DatabaseAsync.</p>
+	 */
+    private void editPost(PostItem cur, String body) {
         Dialog<ButtonType> dlg = new Dialog<>();
         dlg.setTitle("Edit Post");
         dlg.getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
 
         TextField titleField = new TextField(cur.title == null ? "" : cur.title);
         titleField.setPromptText("Title (optional)");
-        TextArea contentArea = new TextArea(cur.content == null ? "" : cur.content);
+        TextArea contentArea = new TextArea(body);
         contentArea.setPrefRowCount(10);
 
         VBox box = new VBox(8, new Label("Title:"), titleField, new Label("Content:"), contentArea);
@@ -509,15 +626,33 @@ public class ControllerReadPosts {
             return;
         }
 
-        try {
-            Database.updatePostByAuthor(cur.id, user.getUserName(), newTitle, newBody);
-            cur.title = newTitle;
-            cur.content = newBody;
-            onPostSelected(cur);
-            postList.refresh();
-        } catch (Exception e) {
-            new Alert(Alert.AlertType.ERROR, "Edit failed: " + e.getMessage()).showAndWait();
-        }
+        DatabaseAsync.run(() -> Database.updatePostByAuthor(cur.id, user.getUserName(), newTitle, newBody))
+                .thenRun(() -> {
+                    cur.title = newTitle;
+                    cur.preview = Database.previewOf(newBody);
+                    onPostSelected(cur);
+                    postList.refresh();
+                })
+                .exceptionally(DatabaseAsync.alertOnFailure("Edit failed: "));
+    }
+
+	/**********
+	 * <p> Method: onMarkAllRead() </p>
+	 * 
+	 * <p> Description: Marks every post matching the active filters (not only the loaded page), and all of
+	 * their replies, as read in one database call, then reloads the list.</p>
+	 */
+    private void onMarkAllRead() {
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION,
+                "Mark every post in this view, and all of their replies, as read?",
+                ButtonType.OK, ButtonType.CANCEL);
+        confirm.setHeaderText("Mark All Read");
+        Optional<ButtonType> res = confirm.showAndWait();
+        if (res.isEmpty() || res.get() != ButtonType.OK) return;
+
+        DatabaseAsync.markAllRead(user.getUserName(), currentQuery())
+                .thenAccept(n -> applyFilters())
+                .exceptionally(DatabaseAsync.alertOnFailure("Mark all read failed: "));
     }
 
 	/**********
@@ -537,18 +672,40 @@ public class ControllerReadPosts {
         Optional<ButtonType> res = confirm.showAndWait();
         if (res.isEmpty() || res.get() != ButtonType.OK) return;
 
-        try {
-            Database.softDeletePostByAuthor(cur.id, user.getUserName());
-            cur.isDeleted = true;
-            onPostSelected(cur);   // hides Delete button
-            postList.refresh();
-        } catch (Exception e) {
-            new Alert(Alert.AlertType.ERROR, "Delete failed: " + e.getMessage()).showAndWait();
-        }
+        DatabaseAsync.run(() -> Database.softDeletePostByAuthor(cur.id, user.getUserName()))
+                .thenRun(() -> {
+                    cur.isDeleted = true;
+                    onPostSelected(cur);   // hides Delete button
+                    postList.refresh();
+                })
+                .exceptionally(DatabaseAsync.alertOnFailure("Delete failed: "));
     }
 
     /* ====================== Helpers ====================== */
 
+	/**********
+	 * <p> Method: installScrollPaging() </p>
+	 * 
+	 * <p> Description: Hooks the list's vertical scroll bar (available once the skin exists)
+	 * so that scrolling near the end loads the next page, and near the top the previous one.</p>
+	 */
+    private void installScrollPaging() {
+        if (postList.getSkin() != null) hookScrollBar();
+        else postList.skinProperty().addListener((obs, o, n) -> { if (n != null) Platform.runLater(this::hookScrollBar); });
+    }
+
+    private void hookScrollBar() {
+        for (Node n : postList.lookupAll(".scroll-bar")) {
+            if (n instanceof ScrollBar sb && sb.getOrientation() == Orientation.VERTICAL) {
+                sb.valueProperty().addListener((obs, o, v) -> {
+                    double span = sb.getMax() - sb.getMin();
+                    if (v.doubleValue() >= sb.getMin() + span * PREFETCH_AT) loadNextPage();
+                    else if (v.doubleValue() <= sb.getMin() + span * (1 - PREFETCH_AT)) loadPreviousPage();
+                });
+            }
+        }
+    }
+
 	/**********
 	 * <p> Method: showPlaceholder() </p>
 	 * 
@@ -679,7 +836,11 @@ public class ControllerReadPosts {
         HBox kindBox = new HBox(6, all, q, p);
         HBox seenBox = new HBox(6, unseen, seen);
 
-        HBox bar = new HBox(16, title, kindBox, seenBox);
+        // bulk action: everything the current filters show, including rows not loaded yet
+        Button markAll = new Button("Mark all read");
+        markAll.setOnAction(e -> onMarkAllRead());
+
+        HBox bar = new HBox(16, title, kindBox, seenBox, markAll);
         bar.getStyleClass().add("kindbar");
         return bar;
     }
@@ -1,5 +1,6 @@
 package guiReadPosts;
 
+import database.DatabaseAsync;
 import entityClasses.User;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -24,6 +25,7 @@ import entityClasses.PostItem;
  * @author Group 14
  * 
  * @version 1.00		2025-10-24 Initial documentation alignment for guiReadPosts
+ * @version 1.01		2026-10-18 Open a post with a range of its body selected (a search match)
  */
 public class ViewReadPosts {
 
@@ -48,6 +50,18 @@ public class ViewReadPosts {
 	 */
 	
 	public static void displayReadPosts(Stage stage, User user, Long initialPostId) {
+        displayReadPosts(stage, user, initialPostId, -1, 0);
+    }
+
+	/**********
+	 * <p> Method: displayReadPosts() </p>
+	 * 
+	 * <p> Description: Displays the page with initialPostId preselected and, once its body is
+	 * shown, matchLength characters of it from offset matchAt selected and scrolled into view
+	 * (matchAt -1: none).</p>
+	 */
+	
+	public static void displayReadPosts(Stage stage, User user, Long initialPostId, int matchAt, int matchLength) {
         // === Left: Categories rail ===
         Label catHdr = new Label("CATEGORIES");
         catHdr.setStyle("-fx-font-weight: bold; -fx-text-fill: #666;");
@@ -134,7 +148,10 @@ public class ViewReadPosts {
         HBox topBar = new HBox();
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
-        topBar.getChildren().addAll(spacer, filterBar, backBtn);
+        ProgressIndicator busy = new ProgressIndicator();   // shown while a query is running
+        busy.setPrefSize(22, 22);
+        busy.visibleProperty().bind(DatabaseAsync.busyProperty());
+        topBar.getChildren().addAll(spacer, filterBar, busy, backBtn);
         topBar.setPadding(new Insets(12, 12, 0, 12));
 
         // === Main layout ===
@@ -159,7 +176,7 @@ public class ViewReadPosts {
                 stage, user, catGroup, kindGroup,
                 postList, titleLbl, metaLbl, bodyArea,
                 repliesBox, detailsBox, placeholder,   // pass the actual details & placeholder VBOXes
-                replyBtn, editPostBtn, deletePostBtn, initialPostId
+                replyBtn, editPostBtn, deletePostBtn, initialPostId, matchAt, matchLength
         );
 
         // category & kind filters
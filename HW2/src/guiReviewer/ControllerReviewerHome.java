@@ -18,7 +18,7 @@ public class ControllerReviewerHome {
 	}
 	
 	protected static void performQuit() {
-		System.exit(0);
+		applicationMain.HW2Main.quit();
 	}
 
 }
@@ -120,7 +120,6 @@ public class ViewReviewerHome {
 		
 		// Populate the dynamic aspects of the GUI with the data from the user and the current
 		// state of the system.
-		theDatabase.getUserAccountDetails(user.getUserName());
 		applicationMain.HW2Main.activeHomePage = theRole;
 		
 		label_UserDetails.setText("Reviewer User: " + theUser.getUserName());// Set the username
@@ -1,15 +1,19 @@
 package guiSearchPosts;
 
-import database.Database;
+import database.DatabaseAsync;
+import database.FeedQuery;
 import entityClasses.User;
+import javafx.animation.PauseTransition;
 import javafx.application.Platform;
+import javafx.geometry.Side;
 import javafx.scene.control.*;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
-import java.sql.*;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import entityClasses.Completion;
 import entityClasses.PostItem;
 import entityClasses.PostCardCell;
 
@@ -21,10 +25,22 @@ import entityClasses.PostCardCell;
  * list view. The controller communicates with the database to retrieve posts and manages
  * navigation to post details and back to the student home page. </p>
  * 
+ * <p> Search runs as the user types: keystrokes are debounced ({@link #DEBOUNCE_MS}), and a
+ * newer search cancels the one in flight, which then stops reading rows and never reaches the
+ * list, so stale results never overwrite the current ones. The word being typed is completed from the database's
+ * in-memory completion tries (terms, thread names, authors) in a popup under the field. </p>
+ * 
+ * <p> The text is a query in the search language of {@link database.SearchQuery}: besides
+ * words, "quoted phrases", fields such as author:, thread:, kind:question, before: / after:,
+ * has:replies and is:unread, and AND / OR / NOT. </p>
+ * 
  * <p> Copyright: Arizona State University © 2025 </p>
  * 
  * @author Group 14
  * 
+ * @version 1.03    2026-10-18 Results show highlighted snippets; opening one scrolls the body to the first match
+ * @version 1.02    2026-10-18 Structured queries; a picked author completion becomes author: text
+ * @version 1.01    2026-10-18 Search-as-you-type with debouncing, cancellation and completions
  * @version 1.00    2025-10-27 Initial implementation
  */
 public class ControllerSearchPosts {
@@ -34,6 +50,19 @@ public class ControllerSearchPosts {
     private final TextField searchField;
     private final ToggleGroup categoryGroup; // can be "All" => search all threads
     private final ListView<PostItem> resultsList;
+    private CompletableFuture<?> pendingSearch = null;
+    private CompletableFuture<?> pendingCompletion = null;
+
+    // Quiet time after the last keystroke before a live search starts
+    static final int DEBOUNCE_MS = 100;
+    // Completions offered per kind (threads, authors, terms)
+    static final int COMPLETIONS_PER_KIND = 5;
+    // Most posts listed for one query
+    static final int MAX_RESULTS = 200;
+
+    private final PauseTransition debounce = new PauseTransition(Duration.millis(DEBOUNCE_MS));
+    private final ContextMenu suggestions = new ContextMenu();
+    private boolean applying = false;       // the text is being set from a picked completion
 
     /**
      * <p> Constructor: ControllerSearchPosts() </p>
@@ -58,97 +87,185 @@ public class ControllerSearchPosts {
         this.categoryGroup = categoryGroup;
         this.resultsList = resultsList;
         this.resultsList.setCellFactory(lv -> new PostCardCell());
+        this.debounce.setOnFinished(e -> runLiveSearch());
+    }
+
+    /**
+     * <p> Method: onQueryTyped() </p>
+     * 
+     * <p> Description: Called on every change of the search text. Restarts the debounce timer
+     * (the search itself starts once typing pauses), cancels a search that the new text has
+     * made stale, and asks for completions of the word being typed. </p>
+     * 
+     */
+    public void onQueryTyped() {
+        if (applying) return;
+        if (pendingSearch != null) pendingSearch.cancel(true);
+        debounce.playFromStart();
+        requestCompletions();
+    }
+
+    /**
+     * <p> Method: runLiveSearch() </p>
+     * 
+     * <p> Description: Debounced search: an empty box clears the results instead of listing
+     * every post, and a query that does not parse yet (a half-typed date, say) keeps the
+     * current results. </p>
+     * 
+     */
+    private void runLiveSearch() {
+        String q = searchField.getText();
+        if (q == null || q.isBlank()) {
+            if (pendingSearch != null) pendingSearch.cancel(true);
+            resultsList.getItems().clear();
+            return;
+        }
+        search(false);
     }
 
     /**
      * <p> Method: onSearch() </p>
      * 
      * <p> Description: Executes a search query based on the current search text and selected
-     * category filter. Queries the database for matching posts, calculates unread reply counts
-     * for each post, and updates the results list view with the matching posts sorted by 
-     * creation date. </p>
+     * category filter. The post search index ranks posts by relevance (BM25 over titles and
+     * bodies, tolerating typos and word fragments); a query of only fields and phrases lists
+     * its posts newest first. The matching posts are loaded off the FX thread together with the user's
+     * unread reply counts, and the results list view shows them. A query that cannot be used
+     * is reported in an alert. </p>
      * 
      */
     public void onSearch() {
-        String q = searchField.getText() == null ? "" : searchField.getText().trim().toLowerCase();
+        search(true);
+    }
+
+    /**
+     * <p> Method: search() </p>
+     * 
+     * <p> Description: Starts a search for the current text and category; a newer search
+     * supersedes one that is still running. </p>
+     * 
+     * @param report Whether a query that does not parse is reported (else it is ignored)
+     */
+    private void search(boolean report) {
+        debounce.stop();
         String cat = getToggleText(categoryGroup); // may be "All" => search all
+        FeedQuery query;
+        try {
+            query = FeedQuery.all().query(searchField.getText()).thread(cat).excludeDeleted().limit(MAX_RESULTS);
+        } catch (IllegalArgumentException e) {
+            if (report) new Alert(Alert.AlertType.WARNING, e.getMessage()).showAndWait();
+            return;
+        }
 
-        List<PostItem> out = new ArrayList<>();
-        
-        String sql = """
-        	    SELECT p.id, p.author, p.thread AS thread,
-        	           COALESCE(p.title,'') AS title, COALESCE(p.kind,'Post') AS kind,
-        	           p.content, p.is_anonymous, p.is_private, p.created_at,
-        	           (SELECT COUNT(*) FROM replies r WHERE r.post_id = p.id) AS reply_count
-        	      FROM posts p
-        	     WHERE COALESCE(p.deleted, FALSE) = FALSE
-        	""";
-
-        boolean hasCat = (cat != null && !"All".equalsIgnoreCase(cat));
-        boolean hasQ = (q != null && !q.isBlank());
-        if (hasQ) sql += " AND (LOWER(p.title) LIKE ? OR LOWER(p.content) LIKE ?) ";
-        if (hasCat) sql += " AND LOWER(p.thread) = LOWER(?) ";
-        sql += " ORDER BY p.created_at DESC, p.id DESC ";
-
-        try (Connection c = Database.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            int idx = 1;
-            if (hasQ) {
-                ps.setString(idx++, "%" + q + "%");
-                ps.setString(idx++, "%" + q + "%");
-            }
-            if (hasCat) {
-                ps.setString(idx++, cat);
-            }
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    PostItem it = new PostItem(
-                            rs.getLong("id"),
-                            rs.getString("author"),
-                            rs.getString("thread"),
-                            rs.getString("title"),
-                            rs.getString("kind"),
-                            rs.getString("content"),
-                            rs.getBoolean("is_anonymous"),
-                            rs.getBoolean("is_private"),
-                            rs.getTimestamp("created_at"),
-                            rs.getInt("reply_count")
-                    );
-                    out.add(it);
-                }
-            }
-        } catch (Exception ex) {
-            new Alert(Alert.AlertType.ERROR, "Database error: " + ex.getMessage()).showAndWait();
+        if (pendingSearch != null) pendingSearch.cancel(true);
+        CompletableFuture<List<PostItem>> req = DatabaseAsync.loadFeed(
+                user == null ? null : user.getUserName(), query);
+        pendingSearch = req;
+        req.thenAccept(out -> resultsList.getItems().setAll(out))
+           .exceptionally(DatabaseAsync.alertOnFailure("Database error: "));
+    }
+
+    /**
+     * <p> Method: requestCompletions() </p>
+     * 
+     * <p> Description: Looks up completions of the word at the end of the search text and
+     * shows them under the field; a newer keystroke cancels an older lookup. </p>
+     * 
+     */
+    private void requestCompletions() {
+        if (pendingCompletion != null) pendingCompletion.cancel(true);
+        String word = lastWord(searchField.getText());
+        if (word.isEmpty()) {
+            suggestions.hide();
+            return;
         }
+        CompletableFuture<List<Completion>> req = DatabaseAsync.complete(word, COMPLETIONS_PER_KIND);
+        pendingCompletion = req;
+        req.thenAccept(this::showCompletions)
+           .exceptionally(t -> { suggestions.hide(); return null; });    // completions are optional
+    }
 
-        // fill unread counts
-        if (user != null && user.getUserName() != null) {
-            for (int i = 0; i < out.size(); i++) {
-                PostItem p = out.get(i);
-                try {
-                    int unread = Database.getUnreadReplyCount(user.getUserName(), p.id);
-                    out.set(i, new PostItem(p.id, p.author, p.thread, p.title, p.kind,
-                            p.content, p.isAnonymous, p.isPrivate, p.createdAt, p.replyCount, unread));
-                } catch (Exception ignored) {}
+    /**
+     * <p> Method: showCompletions() </p>
+     * 
+     * <p> Description: Fills the suggestion popup; picking a term completes the word being
+     * typed, a thread selects its category and an author adds an author: field. </p>
+     * 
+     * @param found The completions, threads and authors first
+     */
+    private void showCompletions(List<Completion> found) {
+        suggestions.getItems().clear();
+        String word = lastWord(searchField.getText());
+        for (Completion c : found) {
+            if (c.kind() == Completion.Kind.TERM && c.text().equalsIgnoreCase(word)) continue;
+            MenuItem item = new MenuItem(switch (c.kind()) {
+                case THREAD -> "Thread: " + c.text();
+                case AUTHOR -> "Author: " + c.text();
+                case TERM   -> c.text();
+            });
+            item.setOnAction(e -> applyCompletion(c));
+            suggestions.getItems().add(item);
+        }
+        if (suggestions.getItems().isEmpty() || !searchField.isFocused()) suggestions.hide();
+        else if (!suggestions.isShowing()) suggestions.show(searchField, Side.BOTTOM, 0, 0);
+    }
+
+    /**
+     * <p> Method: applyCompletion() </p>
+     * 
+     * <p> Description: Applies a picked completion and searches right away. A term replaces
+     * the typed word; a thread replaces it by selecting its category and an author by an
+     * author: field (either also takes a field name typed before the word, as in "by:jo"). </p>
+     * 
+     * @param c The picked completion
+     */
+    private void applyCompletion(Completion c) {
+        String text = searchField.getText();
+        String kept = text.substring(0, text.length() - lastWord(text).length());
+        if (c.kind() != Completion.Kind.TERM) kept = kept.replaceFirst("[A-Za-z]+:$", "");
+        switch (c.kind()) {
+            case TERM -> kept += c.text() + " ";
+            case THREAD -> {
+                for (Toggle t : categoryGroup.getToggles()) {
+                    if (((ToggleButton) t).getText().equalsIgnoreCase(c.text())) categoryGroup.selectToggle(t);
+                }
             }
+            case AUTHOR -> kept += "author:" + (c.text().contains(" ") ? "\"" + c.text() + "\"" : c.text()) + " ";
         }
+        if (pendingCompletion != null) pendingCompletion.cancel(true);
+        suggestions.hide();
+        applying = true;
+        try {
+            searchField.setText(kept);
+        } finally {
+            applying = false;
+        }
+        searchField.positionCaret(kept.length());
+        onSearch();
+    }
 
-        resultsList.getItems().setAll(out);
+    /** The letters and digits at the end of text (the word being typed), or "". */
+    private static String lastWord(String text) {
+        if (text == null) return "";
+        int i = text.length();
+        while (i > 0 && Character.isLetterOrDigit(text.charAt(i - 1))) i--;
+        return text.substring(i);
     }
 
     /**
      * <p> Method: onOpenSelected() </p>
      * 
      * <p> Description: Opens the detailed view for the currently selected post in the search
-     * results list. If no post is selected, no action is taken. </p>
+     * results list, its body scrolled to the first match the search found. If no post is
+     * selected, no action is taken. </p>
      * 
      */
     public void onOpenSelected() {
         PostItem sel = resultsList.getSelectionModel().getSelectedItem();
         if (sel == null) return;
         try {
-            // open reader with the post preselected
-            guiReadPosts.ViewReadPosts.displayReadPosts(stage, user, sel.id);
+            // open reader with the post preselected and its first match selected
+            guiReadPosts.ViewReadPosts.displayReadPosts(stage, user, sel.id, sel.matchAt, sel.matchLength);
         } catch (Throwable t) {
             Platform.runLater(stage::close);
         } 
@@ -1,5 +1,6 @@
 package guiSearchPosts;
 
+import database.DatabaseAsync;
 import entityClasses.User;
 import javafx.geometry.Insets;
 import javafx.scene.Scene;
@@ -23,6 +24,8 @@ import entityClasses.PostItem;
  * 
  * @author Group 14
  * 
+ * @version 1.02    2026-10-18 Query-language prompt; the author chip gives way to author: fields
+ * @version 1.01    2026-10-18 Search as you type; author filter chip for picked completions
  * @version 1.00    2025-10-24 Initial implementation
  */
 public class ViewSearchPosts {
@@ -35,7 +38,7 @@ public class ViewSearchPosts {
      * results list view, and action buttons. It applies appropriate stylesheets, creates
      * the controller instance, and connects all UI event handlers to controller methods.
      * The interface allows users to search for posts by keyword and filter by category,
-     * with automatic live refresh when category selections change. </p>
+     * with automatic live refresh as the user types and when category selections change. </p>
      * 
      * @param stage The JavaFX stage on which to display the search interface
      * @param user  The currently logged-in user
@@ -47,7 +50,7 @@ public class ViewSearchPosts {
 
         // Create search input field
         TextField q = new TextField();
-        q.setPromptText("Search keyword…");
+        q.setPromptText("Search…  e.g. recursion author:alice kind:question after:2026-10-01 -\"due date\"");
 
         // Create category filter toggle buttons
         ToggleButton allBtn = new ToggleButton("All");
@@ -75,7 +78,10 @@ public class ViewSearchPosts {
 
         // Create search bar with search button
         Button searchBtn = new Button("Search");
-        HBox searchBar = new HBox(8, q, searchBtn);
+        ProgressIndicator busy = new ProgressIndicator();
+        busy.setPrefSize(22, 22);
+        busy.visibleProperty().bind(DatabaseAsync.busyProperty());
+        HBox searchBar = new HBox(8, q, searchBtn, busy);
         HBox.setHgrow(q, Priority.ALWAYS);
 
         // Create action buttons
@@ -116,6 +122,9 @@ public class ViewSearchPosts {
         
      // Live-refresh when category changes (non-invasive)
         catGroup.selectedToggleProperty().addListener((obs, o, n) -> controller.onSearch());
+
+        // Live search as the user types (debounced by the controller)
+        q.textProperty().addListener((obs, o, n) -> controller.onQueryTyped());
         
     }
 }
@@ -107,6 +107,6 @@ public class ControllerStudentHome {
 	 * 
 	 */	
 	protected static void performQuit() {
-		System.exit(0);
+		applicationMain.HW2Main.quit();
 	}
 }
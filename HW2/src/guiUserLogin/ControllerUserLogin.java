@@ -2,6 +2,7 @@ package guiUserLogin;
 
 import database.Database;
 import entityClasses.User;
+import entityClasses.UserSnapshot;
 import javafx.stage.Stage;
 
 public class ControllerUserLogin {
@@ -40,7 +41,8 @@ public class ControllerUserLogin {
     	boolean loginResult = false;
     	
 		// Fetch the user and verify the username
-     	if (theDatabase.getUserAccountDetails(username) == false) {
+		UserSnapshot account = theDatabase.getUserAccountDetails(username);
+     	if (account == null) {
      		// Don't provide too much information.  Don't say the username is invalid or the
      		// password is invalid.  Just say the pair is invalid.
     		ViewUserLogin.alertUsernamePasswordError.setContentText(
@@ -51,7 +53,7 @@ public class ControllerUserLogin {
 		System.out.println("*** Username is valid");
 		
 		// Check to see that the login password matches the account password
-    	String actualPassword = theDatabase.getCurrentPassword();
+    	String actualPassword = account.password();
     	
     	if (password.compareTo(actualPassword) != 0) {
     		ViewUserLogin.alertUsernamePasswordError.setContentText(
@@ -63,11 +65,11 @@ public class ControllerUserLogin {
 		System.out.println("*** Password is valid for this user");
 		
 		// Establish this user's details
-    	User user = new User(username, password, theDatabase.getCurrentFirstName(), 
-    			theDatabase.getCurrentMiddleName(), theDatabase.getCurrentLastName(), 
-    			theDatabase.getCurrentPreferredFirstName(), theDatabase.getCurrentEmailAddress(), 
-    			theDatabase.getCurrentAdminRole(), 
-    			theDatabase.getCurrentStudentRole(), theDatabase.getCurrentReviewerRole());
+    	User user = new User(username, password, account.firstName(), 
+    			account.middleName(), account.lastName(), 
+    			account.preferredFirstName(), account.emailAddress(), 
+    			account.adminRole(), 
+    			account.studentRole(), account.reviewerRole());
     	
     	// See which home page dispatch to use
 		int numberOfRoles = theDatabase.getNumberOfRoles(user);		
@@ -138,7 +140,7 @@ public class ControllerUserLogin {
 	 */	
 	protected static void performQuit() {
 		System.out.println("Perform Quit");
-		System.exit(0);
+		applicationMain.HW2Main.quit();
 	}	
 
 }
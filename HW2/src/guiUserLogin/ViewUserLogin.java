@@ -79,6 +79,11 @@ public class ViewUserLogin {
 		// Establish the references to the GUI. There is no current user yet.
 		theStage = ps;
 		
+		// Write out the previous user's queued read/unread changes and drop their cached
+		// read set (no-op at startup)
+		database.DatabaseAsync.run(database.Database::endReadSession)
+				.exceptionally(database.DatabaseAsync.alertOnFailure("Saving read state failed: "));
+		
 		// If not yet established, populate the static aspects of the GUI
 		if (theView == null) theView = new ViewUserLogin();
 		
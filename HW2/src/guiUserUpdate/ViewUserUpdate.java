@@ -14,6 +14,7 @@ import javafx.scene.layout.Pane;
 import javafx.scene.text.Font;
 import javafx.stage.Stage;
 import entityClasses.User;
+import entityClasses.UserSnapshot;
 import guiNewAccount.ViewNewAccount;
 import guiUserLogin.ViewUserLogin;
 
@@ -234,7 +235,7 @@ public class ViewUserUpdate {
     	}
     		
     	if(passValid) {
-    		if(originalPass.equals(theDatabase.getCurrentPassword())) { // If there are no changes in the password, then proceed to corresponding home page
+    		if(originalPass.equals(theUser.getPassword())) { // If there are no changes in the password, then proceed to corresponding home page
     			ControllerUserUpdate.goToUserHomePage(theStage, theUser);
     			return;
     		}
@@ -388,7 +389,8 @@ public class ViewUserUpdate {
     		
     		if(passValid) { // update the database with the updated password, set corresponding view changes
     			theDatabase.updatePassword2(name, theUser.getUserName());
-        		String newPass = theDatabase.getCurrentPassword();
+        		UserSnapshot account = theDatabase.getUserAccountDetails(theUser.getUserName());
+        		String newPass = (account == null) ? name : account.password();
         		theUser.setPassword(newPass);
         		label_CurrentPassword.setText(newPass);
     		}
@@ -401,8 +403,7 @@ public class ViewUserUpdate {
         setupButtonUI(button_UpdateFirstName, "Dialog", 18, 275, Pos.CENTER, 500, 193);
         button_UpdateFirstName.setOnAction((event) -> {result = dialogUpdateFirstName.showAndWait();
         	result.ifPresent(name -> theDatabase.updateFirstName(theUser.getUserName(), result.get()));
-        	theDatabase.getUserAccountDetails(theUser.getUserName());
-         	String newName = theDatabase.getCurrentFirstName();
+        	String newName = theDatabase.getFirstName(theUser.getUserName());
            	theUser.setFirstName(newName);
         	if (newName == null || newName.length() < 1)label_CurrentFirstName.setText("<none>");
         	else label_CurrentFirstName.setText(newName);
@@ -414,8 +415,7 @@ public class ViewUserUpdate {
         setupButtonUI(button_UpdateMiddleName, "Dialog", 18, 275, Pos.CENTER, 500, 243);
         button_UpdateMiddleName.setOnAction((event) -> {result = dialogUpdateMiddleName.showAndWait();
     		result.ifPresent(name -> theDatabase.updateMiddleName(theUser.getUserName(), result.get()));
-    		theDatabase.getUserAccountDetails(theUser.getUserName());
-    		String newName = theDatabase.getCurrentMiddleName();
+    		String newName = theDatabase.getMiddleName(theUser.getUserName());
            	theUser.setMiddleName(newName);
         	if (newName == null || newName.length() < 1)label_CurrentMiddleName.setText("<none>");
         	else label_CurrentMiddleName.setText(newName);
@@ -427,8 +427,7 @@ public class ViewUserUpdate {
         setupButtonUI(button_UpdateLastName, "Dialog", 18, 275, Pos.CENTER, 500, 293);
         button_UpdateLastName.setOnAction((event) -> {result = dialogUpdateLastName.showAndWait();
     		result.ifPresent(name -> theDatabase.updateLastName(theUser.getUserName(), result.get()));
-    		theDatabase.getUserAccountDetails(theUser.getUserName());
-    		String newName = theDatabase.getCurrentLastName();
+    		String newName = theDatabase.getLastName(theUser.getUserName());
            	theUser.setLastName(newName);
       	if (newName == null || newName.length() < 1)label_CurrentLastName.setText("<none>");
         	else label_CurrentLastName.setText(newName);
@@ -444,8 +443,7 @@ public class ViewUserUpdate {
         	{result = dialogUpdatePreferredFirstName.showAndWait();
     		result.ifPresent(name -> 
     		theDatabase.updatePreferredFirstName(theUser.getUserName(), result.get()));
-    		theDatabase.getUserAccountDetails(theUser.getUserName());
-    		String newName = theDatabase.getCurrentPreferredFirstName();
+    		String newName = theDatabase.getPreferredFirstName(theUser.getUserName());
            	theUser.setPreferredFirstName(newName);
          	if (newName == null || newName.length() < 1)label_CurrentPreferredFirstName.setText("<none>");
         	else label_CurrentPreferredFirstName.setText(newName);
@@ -460,7 +458,7 @@ public class ViewUserUpdate {
         	emailValid = true;
     		result.ifPresent(name -> {
     			if(name.equals("")) {
-    				ViewUserUpdate.label_CurrentEmailAddress.setText(theDatabase.getCurrentEmailAddress());
+    				ViewUserUpdate.label_CurrentEmailAddress.setText(theUser.getEmailAddress());
     				emailValid = false;
     				ViewUserUpdate.invalidEmailAlert.showAndWait();
     				return;
@@ -660,7 +658,7 @@ public class ViewUserUpdate {
 					emailAddressIndexofError = currentCharNdx;		// Copy the index of the current character;
 					emailAddressErrorMessage = "May only be alphanumberic.\n";
 					emailValid = false;
-					ViewUserUpdate.label_CurrentEmailAddress.setText(theDatabase.getCurrentEmailAddress());
+					ViewUserUpdate.label_CurrentEmailAddress.setText(theUser.getEmailAddress());
 	    			ViewUserUpdate.invalidEmailAlert.showAndWait();
 	    			return;
 
@@ -671,7 +669,7 @@ public class ViewUserUpdate {
 					emailAddressIndexofError = currentCharNdx;
 					emailAddressErrorMessage = "May only use alphanumeric, an '@' symbol, or a period.\n";
 					emailValid = false;
-					ViewUserUpdate.label_CurrentEmailAddress.setText(theDatabase.getCurrentEmailAddress());
+					ViewUserUpdate.label_CurrentEmailAddress.setText(theUser.getEmailAddress());
 	    			ViewUserUpdate.invalidEmailAlert.showAndWait();
 	    			return;
 					
@@ -682,7 +680,7 @@ public class ViewUserUpdate {
 					emailAddressIndexofError = currentCharNdx;
 					emailAddressErrorMessage = "May only use alphanumeric.\n";
 					emailValid = false;
-					ViewUserUpdate.label_CurrentEmailAddress.setText(theDatabase.getCurrentEmailAddress());
+					ViewUserUpdate.label_CurrentEmailAddress.setText(theUser.getEmailAddress());
 	    			ViewUserUpdate.invalidEmailAlert.showAndWait();
 	    			return;
 					
@@ -697,7 +695,7 @@ public class ViewUserUpdate {
 						emailAddressIndexofError = currentCharNdx;		// Copy the index of the current character;
 						emailAddressErrorMessage = "This must be the end of the input.\n";
 						emailValid = false;
-						ViewUserUpdate.label_CurrentEmailAddress.setText(theDatabase.getCurrentEmailAddress());
+						ViewUserUpdate.label_CurrentEmailAddress.setText(theUser.getEmailAddress());
 		    			ViewUserUpdate.invalidEmailAlert.showAndWait();
 		    			return;
 					}
@@ -707,7 +705,7 @@ public class ViewUserUpdate {
 						emailAddressErrorMessage = "";
 						emailValid = true;
 						theDatabase.updateEmailAddress(theUser.getUserName(), name);
-		        		String newEmail = theDatabase.getCurrentEmailAddress();
+		        		String newEmail = theDatabase.getEmailAddress(theUser.getUserName());
 		        		System.out.println(newEmail);
 		        		theUser.setEmailAddress(newEmail);
 		        		label_CurrentEmailAddress.setText(newEmail);
@@ -721,7 +719,7 @@ public class ViewUserUpdate {
 					emailAddressIndexofError = currentCharNdx;
 					emailAddressErrorMessage = "May only use alphanumeric.\n";
 					emailValid = false;
-					ViewUserUpdate.label_CurrentEmailAddress.setText(theDatabase.getCurrentEmailAddress());
+					ViewUserUpdate.label_CurrentEmailAddress.setText(theUser.getEmailAddress());
 	    			ViewUserUpdate.invalidEmailAlert.showAndWait();
 	    			return;
 				default: